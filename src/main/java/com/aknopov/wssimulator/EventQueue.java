@@ -0,0 +1,199 @@
+package com.aknopov.wssimulator;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+/**
+ * Bounded queue of events released by any number of threads and taken by a single scenario thread.
+ * Unlike {@link ResettableLock}, events released in a burst are kept in order till scenario takes them.
+ * <p>
+ * The queue is lock-free - each slot has a sequence number that tells whether it is free for producer with
+ * the given position (twice the position) or holds an event for consumer (one more). Producers claim positions
+ * with CAS on the tail, the consumer owns the head. Waiting consumer is parked and unparked by the producer that
+ * publishes an event. When the queue is full, {@link OverflowPolicy} decides whether producer waits for a free slot
+ * or drops the event.
+ *
+ * @param <T> event payload type
+ */
+public class EventQueue<T> {
+    private static final long BLOCKED_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Class<T> dataClass;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long head;
+    @Nullable
+    private volatile Thread waiter;
+    private volatile boolean closed;
+
+    /**
+     * Creates the queue
+     *
+     * @param dataClass payload class
+     * @param capacity maximum number of events waiting for scenario
+     * @param overflowPolicy policy of events released into full queue
+     */
+    public EventQueue(Class<T> dataClass, int capacity, OverflowPolicy overflowPolicy) {
+        Utils.checkArgument(capacity > 0, "Capacity should be positive");
+        this.dataClass = dataClass;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.elements = new Object[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            // Doubled positions keep free and taken slot apart even with capacity of one
+            sequences.set(i, 2L * i);
+        }
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Adds event to the queue. With {@link OverflowPolicy#BLOCK} waits while the queue is full.
+     *
+     * @param payload event payload
+     * @return {@code false} if event was dropped because the queue is full or closed
+     */
+    public boolean offer(T payload) {
+        while (!closed) {
+            if (tryOffer(payload)) {
+                Thread consumer = waiter;
+                if (consumer != null) {
+                    LockSupport.unpark(consumer);
+                }
+                return true;
+            }
+            if (overflowPolicy != OverflowPolicy.BLOCK) {
+                break;
+            }
+            LockSupport.parkNanos(this, BLOCKED_RETRY_NANOS);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Takes the oldest event waiting up to the given time. Returns immediately if there is an event.
+     * Only one thread can invoke the method at a time
+     *
+     * @param waitDuration the maximum time to wait
+     * @return event payload
+     * @throws InterruptedException if any thread interrupted the current thread
+     * @throws TimeoutException if no event was released before expiry
+     */
+    public T await(Duration waitDuration) throws InterruptedException {
+        T payload = poll();
+        if (payload != null) {
+            return payload;
+        }
+        long deadline = System.nanoTime() + waitDuration.toNanos();
+        try {
+            waiter = Thread.currentThread();
+            long waitNanos;
+            // Event is checked after publishing the waiter, so that producer either sees it or the event is found
+            while ((payload = poll()) == null && (waitNanos = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        finally {
+            waiter = null;
+        }
+        if (payload == null) {
+            throw new TimeoutException(dataClass.getSimpleName() + " wasn't released in "
+                    + waitDuration.toMillis() + " msec");
+        }
+        return payload;
+    }
+
+    /**
+     * Takes the oldest event without waiting. Must be called by the consumer thread.
+     *
+     * @return event payload or {@code null} if the queue is empty
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = head;
+        int index = (int)(position % capacity);
+        if (sequences.get(index) != 2 * position + 1) {
+            return null;
+        }
+        T payload = (T)elements[index];
+        elements[index] = null;
+        // Frees the slot for the producer that comes one round later
+        sequences.set(index, 2 * (position + capacity));
+        head = position + 1;
+        return payload;
+    }
+
+    /**
+     * Closes the queue - released events are dropped and blocked producers return
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets number of events waiting in the queue
+     *
+     * @return event count
+     */
+    public int size() {
+        return (int)Math.max(0, Math.min(capacity, tail.get() - head));
+    }
+
+    /**
+     * Gets number of events dropped because the queue was full or closed
+     *
+     * @return dropped event count
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private boolean tryOffer(T payload) {
+        long position = tail.get();
+        while (true) {
+            int index = (int)(position % capacity);
+            long difference = sequences.get(index) - 2 * position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = payload;
+                    // Publishes the payload to the consumer
+                    sequences.set(index, 2 * position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0) {
+                // Slot still holds an event from the previous round - queue is full
+                return false;
+            }
+            else {
+                position = tail.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.aknopov.wssimulator;
+
+/**
+ * What happens to an event when {@link EventQueue} is full
+ */
+public enum OverflowPolicy {
+    /**
+     * Releasing thread waits till scenario takes an event, so that the peer is slowed down and no event is lost
+     */
+    BLOCK,
+    /**
+     * New event is dropped
+     */
+    DROP_NEWEST,
+    /**
+     * New event is dropped and simulator records an error
+     */
+    FAIL
+}
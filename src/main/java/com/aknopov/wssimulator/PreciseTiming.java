@@ -0,0 +1,82 @@
+package com.aknopov.wssimulator;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delays with sub-millisecond precision. Unlike {@link Thread#sleep(long)} waiting is not rounded to milliseconds -
+ * thread is parked with {@link LockSupport#parkNanos(long)} and, optionally, spins for the last part of the wait
+ * to avoid scheduler overshoot. Spinning occupies a core, so it is off by default and should be enabled only when
+ * delays of tens of microseconds matter.
+ * <p>
+ * Times are in {@link System#nanoTime()} scale.
+ */
+public final class PreciseTiming {
+    private static volatile long spinNanos;
+
+    private PreciseTiming() {
+    }
+
+    /**
+     * Sets duration of the final spin phase of every wait
+     *
+     * @param spinTime spin duration; {@link Duration#ZERO} - no spinning
+     */
+    public static void setSpinTime(Duration spinTime) {
+        Utils.checkArgument(!spinTime.isNegative(), "Spin time should not be negative");
+        spinNanos = spinTime.toNanos();
+    }
+
+    public static Duration getSpinTime() {
+        return Duration.ofNanos(spinNanos);
+    }
+
+    /**
+     * Waits until given time. Returns early if thread is interrupted, leaving interrupt flag set.
+     *
+     * @param deadlineNanos time to wait until
+     * @return {@code true} if deadline was reached, {@code false} if thread was interrupted
+     */
+    public static boolean sleepUntil(long deadlineNanos) {
+        long spin = spinNanos;
+        long waitNanos;
+        while ((waitNanos = deadlineNanos - System.nanoTime()) > spin) {
+            LockSupport.parkNanos(waitNanos - spin);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        while (deadlineNanos - System.nanoTime() > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    /**
+     * Waits given time
+     *
+     * @param sleepTime wait duration
+     * @throws InterruptedException if thread was interrupted; interrupt flag is cleared
+     */
+    public static void sleep(Duration sleepTime) throws InterruptedException {
+        if (!sleepUntil(System.nanoTime() + sleepTime.toNanos()) && Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Waits given time ignoring interruption - like with {@link Thread#sleep(long)} interrupt flag is cleared
+     * and wait ends early.
+     *
+     * @param sleepTime wait duration
+     */
+    public static void sleepUnchecked(Duration sleepTime) {
+        if (!sleepUntil(System.nanoTime() + sleepTime.toNanos())) {
+            // Clear the flag as Thread.sleep() does
+            boolean unused = Thread.interrupted();
+        }
+    }
+}
@@ -1,23 +1,27 @@
 package com.aknopov.wssimulator;
 
 import java.time.Duration;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 /**
- * Reusable synchronization object that waits for an event that can produce an object
+ * Reusable synchronization object that waits for an event that can produce an object.
+ * Payload released before the waiting thread comes is kept and handed off at once.
  *
  * @param <T> object type
  */
 public class ResettableLock<T> {
-    private final AtomicReference<T> refPayload = new AtomicReference<>();
     private final Class<T> dataClass;
+    @Nullable
+    private T payload;
 
     public ResettableLock(Class<T> dataClass) {
         this.dataClass = dataClass;
     }
 
     /**
-     * Causes the current thread to wait until it is awakened.
+     * Causes the current thread to wait until payload is released. Returns immediately if it was released already.
      * Only one thread can invoke the method at a time
      *
      * @param waitDuration the maximum time to wait
@@ -26,14 +30,20 @@ public class ResettableLock<T> {
      * @throws TimeoutException if data wasn't released before expiry
      */
     public T await(Duration waitDuration) throws InterruptedException {
+        long deadline = System.nanoTime() + waitDuration.toNanos();
         synchronized(this) {
-            this.wait(Math.max(1, waitDuration.toMillis()));
-        }
-        T retVal = refPayload.getAndSet(null);
-        if (retVal == null) {
-            throw new TimeoutException(dataClass.getSimpleName() + " wasn't released in " + waitDuration.toMillis() + " msec");
+            long waitNanos;
+            while (payload == null && (waitNanos = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            }
+            T retVal = payload;
+            if (retVal == null) {
+                throw new TimeoutException(dataClass.getSimpleName() + " wasn't released in "
+                        + waitDuration.toMillis() + " msec");
+            }
+            payload = null;
+            return retVal;
         }
-        return retVal;
     }
 
     /**
@@ -41,7 +51,7 @@ public class ResettableLock<T> {
      */
     public void release(T payload) {
         synchronized(this) {
-            refPayload.set(payload);
+            this.payload = payload;
             this.notifyAll();
         }
     }
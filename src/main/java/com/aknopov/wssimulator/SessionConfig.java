@@ -2,18 +2,51 @@ package com.aknopov.wssimulator;
 
 import java.time.Duration;
 
+import com.aknopov.wssimulator.scenario.HistoryRetention;
+
 /**
- * Configuration for creating WebSocket endpoint
+ * Configuration for creating WebSocket endpoint. Optional features are set on top of the basic config with
+ * {@code with...} methods:
+ * <pre>
+ * new SessionConfig(contextPath, idleTimeout, bufferSize).withThreadMode(ThreadMode.VIRTUAL)
+ * </pre>
  *
  * @param contextPath server endpoint context path
  * @param idleTimeout connection idle timeout
  * @param bufferSize read buffer size (message max size)
+ * @param threadMode kind of threads that play scenario and run server
+ * @param eventQueueCapacity maximum number of received messages waiting for scenario acts
+ * @param overflowPolicy what happens to received event when its queue is full
+ * @param historyRetention what events are kept in simulator history
  */
-public record SessionConfig(String contextPath, Duration idleTimeout, int bufferSize) {
+public record SessionConfig(String contextPath, Duration idleTimeout, int bufferSize, ThreadMode threadMode,
+                            int eventQueueCapacity, OverflowPolicy overflowPolicy,
+                            HistoryRetention historyRetention) {
+    public static final int DEFAULT_EVENT_QUEUE_CAPACITY = 4096;
     private static final Duration IDLE_TIMEOUT = Duration.ofSeconds(60);
     private static final int BUFFER_SIZE = 1024;
 
     public SessionConfig(String contextPath) {
         this(contextPath, IDLE_TIMEOUT, BUFFER_SIZE);
     }
+
+    public SessionConfig(String contextPath, Duration idleTimeout, int bufferSize) {
+        this(contextPath, idleTimeout, bufferSize, ThreadMode.PLATFORM, DEFAULT_EVENT_QUEUE_CAPACITY,
+                OverflowPolicy.BLOCK, HistoryRetention.unbounded());
+    }
+
+    public SessionConfig withThreadMode(ThreadMode threadMode) {
+        return new SessionConfig(contextPath, idleTimeout, bufferSize, threadMode, eventQueueCapacity, overflowPolicy,
+                historyRetention);
+    }
+
+    public SessionConfig withEventQueue(int eventQueueCapacity, OverflowPolicy overflowPolicy) {
+        return new SessionConfig(contextPath, idleTimeout, bufferSize, threadMode, eventQueueCapacity, overflowPolicy,
+                historyRetention);
+    }
+
+    public SessionConfig withHistoryRetention(HistoryRetention historyRetention) {
+        return new SessionConfig(contextPath, idleTimeout, bufferSize, threadMode, eventQueueCapacity, overflowPolicy,
+                historyRetention);
+    }
 }
@@ -1,8 +1,11 @@
 package com.aknopov.wssimulator;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,12 +28,36 @@ public class SocketFactory {
         }
     }
 
+    /**
+     * Creates server socket backed by a channel, so that accepted sockets also have channels.
+     */
     public ServerSocket createServerSocket(int port) throws IOException {
-        return new ServerSocket(port, BACKLOG_LENGTH, null);
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(port), BACKLOG_LENGTH);
+        return channel.socket();
     }
 
-
+    /**
+     * Creates connected socket backed by a channel.
+     */
     public Socket creatUpstreamSocket(int port) throws IOException {
-        return new Socket("localhost", port);
+        return SocketChannel.open(new InetSocketAddress("localhost", port)).socket();
+    }
+
+    public ServerSocketChannel createServerChannel(int port) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(new InetSocketAddress(port), BACKLOG_LENGTH);
+        return channel;
+    }
+
+    /**
+     * Opens non-blocking channel and initiates connection - it might not be finished upon return.
+     */
+    public SocketChannel openUpstreamChannel(int port) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(new InetSocketAddress("localhost", port));
+        return channel;
     }
 }
@@ -0,0 +1,91 @@
+package com.aknopov.wssimulator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Kind of threads that run blocking work of proxies and simulators - connection forwarding, scenario playback
+ * and server lifecycle. Virtual threads let one JVM run thousands of proxied connections and simulators
+ * without tuning thread pools.
+ * <p>
+ * Virtual threads are created through reflection, so that the library still runs on Java 17. Where they
+ * are not available, {@link #VIRTUAL} falls back to daemon platform threads.
+ */
+public enum ThreadMode {
+    /**
+     * Platform threads
+     */
+    PLATFORM,
+    /**
+     * Virtual threads if supported by JVM, daemon platform threads otherwise
+     */
+    VIRTUAL;
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadMode.class);
+    @Nullable
+    private static final Method OF_VIRTUAL;
+    @Nullable
+    private static final Method BUILDER_NAME;
+    @Nullable
+    private static final Method BUILDER_UNSTARTED;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderUnstarted = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class);
+            builderUnstarted = builderClass.getMethod("unstarted", Runnable.class);
+        }
+        catch (ClassNotFoundException | NoSuchMethodException ex) {
+            logger.debug("Virtual threads are not supported, platform threads are used instead");
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_UNSTARTED = builderUnstarted;
+    }
+
+    /**
+     * Tells if JVM supports virtual threads
+     *
+     * @return {@code true} if {@link #VIRTUAL} mode creates virtual threads
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates unstarted thread of this kind
+     *
+     * @param task thread task
+     * @param name thread name
+     * @return new thread
+     */
+    public Thread newThread(Runnable task, String name) {
+        if (this == PLATFORM) {
+            return new Thread(task, name);
+        }
+        Method ofVirtual = OF_VIRTUAL;
+        Method builderName = BUILDER_NAME;
+        Method builderUnstarted = BUILDER_UNSTARTED;
+        if (ofVirtual == null || builderName == null || builderUnstarted == null) {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+        try {
+            Object builder = builderName.invoke(ofVirtual.invoke(null), name);
+            return (Thread)builderUnstarted.invoke(builder, task);
+        }
+        catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalStateException("Can't create virtual thread", ex);
+        }
+    }
+}
@@ -85,12 +85,13 @@ public final class Utils {
     }
 
     /**
-     * Sleeps specified time and ignores {@link InterruptedException}
+     * Sleeps specified time with sub-millisecond precision and ignores interruption
      *
      * @param sleepTime sleep duration
+     * @see PreciseTiming
      */
     public static void sleepUnchecked(Duration sleepTime) {
-        sleepUnchecked(sleepTime.toMillis());
+        PreciseTiming.sleepUnchecked(sleepTime);
     }
 
     /**
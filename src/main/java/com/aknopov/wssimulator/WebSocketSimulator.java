@@ -24,6 +24,12 @@ public interface WebSocketSimulator {
      */
     List<Event> getHistory();
 
+    /**
+     * Releases history resources such as spill file, once the history isn't needed anymore.
+     * Spilled events can't be read afterwards.
+     */
+    void discardHistory();
+
     /**
      * Gets actual port of the communication
      *
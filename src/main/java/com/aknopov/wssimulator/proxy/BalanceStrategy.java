@@ -0,0 +1,22 @@
+package com.aknopov.wssimulator.proxy;
+
+/**
+ * Strategy of spreading connections of a balanced route between its upstreams
+ */
+public enum BalanceStrategy {
+    /**
+     * Upstreams take connections in turn
+     */
+    ROUND_ROBIN,
+    /**
+     * Connection goes to upstream with the smallest number of active connections
+     */
+    LEAST_CONNECTIONS,
+    /**
+     * Client address and port are hashed on a ring of upstreams, so that the client connection sticks to the same
+     * upstream. Port is part of the hash because all clients of the localhost proxy have the same address; as a
+     * result, a client reconnecting from a new port may land on another upstream.
+     * When upstream is down, only its clients move to other upstreams.
+     */
+    CONSISTENT_HASH
+}
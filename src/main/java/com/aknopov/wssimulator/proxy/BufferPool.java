@@ -0,0 +1,166 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Pool of equally sized buffers carved out of larger slabs. Slabs of {@value #SLAB_BUFFERS} buffers are allocated
+ * on demand until pool capacity is reached and are never freed, so memory of the pool stays flat however many
+ * connections lease and release buffers. When all buffers are leased, a heap buffer is handed out instead
+ * and pool exhaustion is counted.
+ * <p>
+ * Lease counts references to its buffer - one for the leaser and one for each data chunk that still refers to
+ * the buffer. The buffer is returned to the pool when the last reference is released. Leases are not thread-safe -
+ * a lease should be used by one thread at a time.
+ */
+final class BufferPool {
+    static final int SLAB_BUFFERS = 16;
+
+    private final int bufSize;
+    private final int capacity;
+    private final boolean direct;
+    private final ArrayBlockingQueue<Lease> free;
+    private final LongAdder exhaustions = new LongAdder();
+    private int allocated;
+
+    /**
+     * Creates pool
+     *
+     * @param bufSize size of buffers
+     * @param capacity maximum number of pooled buffers
+     * @param direct if pooled buffers are direct
+     */
+    BufferPool(int bufSize, int capacity, boolean direct) {
+        Utils.checkArgument(bufSize > 0, "Buffer size should be positive");
+        Utils.checkArgument(capacity > 0, "Pool capacity should be positive");
+        this.bufSize = bufSize;
+        this.capacity = capacity;
+        this.direct = direct;
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Leases a cleared buffer with one reference
+     *
+     * @return the lease
+     */
+    Lease lease() {
+        Lease lease = free.poll();
+        if (lease == null) {
+            lease = allocateSlab();
+        }
+        if (lease == null) {
+            exhaustions.increment();
+            lease = new Lease(null, ByteBuffer.allocate(bufSize));
+        }
+        lease.refCount = 1;
+        return lease;
+    }
+
+    int getBufSize() {
+        return bufSize;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets number of buffers that are allocated and not leased
+     *
+     * @return available buffer count
+     */
+    int getAvailable() {
+        return free.size();
+    }
+
+    /**
+     * Gets number of pooled buffers that are leased
+     *
+     * @return leased buffer count
+     */
+    synchronized int getLeased() {
+        return allocated - free.size();
+    }
+
+    /**
+     * Gets number of leases that weren't served from the pool
+     *
+     * @return exhaustion count
+     */
+    long getExhaustions() {
+        return exhaustions.sum();
+    }
+
+    @Nullable
+    private synchronized Lease allocateSlab() {
+        // Other thread might have allocated a slab meanwhile
+        Lease lease = free.poll();
+        if (lease != null) {
+            return lease;
+        }
+        int count = Math.min(SLAB_BUFFERS, capacity - allocated);
+        if (count <= 0) {
+            return null;
+        }
+        ByteBuffer slab = direct ? ByteBuffer.allocateDirect(bufSize * count) : ByteBuffer.allocate(bufSize * count);
+        for (int i = 1; i < count; i++) {
+            free.add(new Lease(this, slab.slice(i * bufSize, bufSize)));
+        }
+        allocated += count;
+        return new Lease(this, slab.slice(0, bufSize));
+    }
+
+    /**
+     * Leased buffer with reference count
+     */
+    static final class Lease {
+        @Nullable
+        private final BufferPool pool;
+        private final ByteBuffer buffer;
+        private int refCount;
+
+        private Lease(@Nullable BufferPool pool, ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+        }
+
+        ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * Tells if buffer came from the pool, rather than was allocated because pool was exhausted
+         *
+         * @return {@code true} for pooled buffer
+         */
+        boolean isPooled() {
+            return pool != null;
+        }
+
+        /**
+         * Adds reference to the buffer
+         */
+        void retain() {
+            Utils.checkState(refCount > 0, "Buffer is released");
+            refCount++;
+        }
+
+        /**
+         * Removes reference to the buffer, returning buffer to the pool once there are no references left
+         */
+        void release() {
+            Utils.checkState(refCount > 0, "Buffer is released");
+            refCount--;
+            if (refCount == 0 && pool != null) {
+                buffer.clear();
+                pool.free.add(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+/**
+ * Sequential reader of capture files written by proxy with {@link ProxyConfig#captureFile()}.
+ * File is read through memory-mapped regions; payloads are not copied. Capture that wasn't closed keeps zero-filled
+ * space of the last mapped region at its end - reading stops there, since connection IDs start from 1.
+ * <pre>
+ * try (CaptureReader reader = new CaptureReader(path)) {
+ *     while (reader.next()) {
+ *         ... // reader.getTimestamp(), reader.getPayload(), ...
+ *     }
+ * }
+ * </pre>
+ */
+public final class CaptureReader implements Closeable {
+    private static final StreamDirection[] DIRECTIONS = StreamDirection.values();
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Instant startTime;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private long timestamp;
+    private long connectionId;
+    private StreamDirection direction = StreamDirection.DOWNSTREAM;
+    private int payloadLength;
+    private ByteBuffer payload = ByteBuffer.allocate(0);
+
+    /**
+     * Opens capture file
+     *
+     * @param path file path
+     * @throws IOException if file can't be read or it is not a capture file
+     */
+    public CaptureReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        if (fileSize < CaptureWriter.FILE_HEADER_SIZE) {
+            channel.close();
+            throw new IOException("Not a capture file: " + path);
+        }
+        this.region = map(0, CaptureWriter.FILE_HEADER_SIZE);
+        if (region.getLong() != CaptureWriter.MAGIC) {
+            channel.close();
+            throw new IOException("Not a capture file: " + path);
+        }
+        this.startTime = Instant.ofEpochMilli(region.getLong());
+        this.position = CaptureWriter.FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Advances to the next record
+     *
+     * @return {@code false} if there are no more records
+     * @throws IOException if file can't be read or is truncated
+     */
+    public boolean next() throws IOException {
+        if (fileSize - position < CaptureWriter.RECORD_HEADER_SIZE) {
+            return false;
+        }
+        ensureMapped(CaptureWriter.RECORD_HEADER_SIZE);
+        timestamp = region.getLong();
+        connectionId = region.getLong();
+        int ordinal = region.get();
+        if (ordinal < 0 || ordinal >= DIRECTIONS.length) {
+            throw new IOException("Corrupted capture record at " + position);
+        }
+        direction = DIRECTIONS[ordinal];
+        payloadLength = region.getInt();
+        if (connectionId == 0 && payloadLength == 0) {
+            // Zero-filled tail of unclosed capture
+            position = fileSize;
+            return false;
+        }
+        position += CaptureWriter.RECORD_HEADER_SIZE;
+
+        int length = Math.max(payloadLength, 0);
+        if (fileSize - position < length) {
+            throw new IOException("Truncated capture record at " + position);
+        }
+        ensureMapped(length);
+        payload = region.slice(region.position(), length).asReadOnlyBuffer();
+        region.position(region.position() + length);
+        position += length;
+        return true;
+    }
+
+    /**
+     * Gets capture start time
+     *
+     * @return wall clock time of capture start
+     */
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets time of the current record
+     *
+     * @return nanoseconds since capture start
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    public StreamDirection getDirection() {
+        return direction;
+    }
+
+    /**
+     * Tells if the current record marks end of stream in its direction
+     *
+     * @return {@code true} for end of stream record
+     */
+    public boolean isEndOfStream() {
+        return payloadLength == CaptureWriter.END_OF_STREAM;
+    }
+
+    /**
+     * Gets payload of the current record. The buffer is valid until the reader is closed.
+     *
+     * @return read-only payload buffer
+     */
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void ensureMapped(int size) throws IOException {
+        if (regionStart + region.limit() - position < size) {
+            long mapSize = Math.min(Math.max(CaptureWriter.REGION_SIZE, size), fileSize - position);
+            region = map(position, mapSize);
+        }
+    }
+
+    private MappedByteBuffer map(long start, long size) throws IOException {
+        regionStart = start;
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    }
+}
@@ -0,0 +1,130 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+/**
+ * Appends proxied data to a capture file through memory-mapped regions, so that captured traffic isn't kept on heap.
+ * <p>
+ * File format (big-endian):
+ * <pre>
+ * header: magic "WSCAP001" (8 bytes), capture start epoch time in ms (8 bytes)
+ * record: time since capture start in ns (8 bytes), connection ID (8 bytes), direction ordinal (1 byte),
+ *         payload length (4 bytes, {@value #END_OF_STREAM} - end of stream), payload
+ * </pre>
+ * Records of all connections are appended under a lock. A failure to map file disables capturing.
+ */
+final class CaptureWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CaptureWriter.class);
+    static final long MAGIC = 0x5753434150303031L;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 21;
+    static final int END_OF_STREAM = -1;
+    static final int REGION_SIZE = 16 << 20;
+
+    private final FileChannel channel;
+    private final long startNanos;
+    @Nullable
+    private MappedByteBuffer region;
+    private long position;
+    private boolean closed;
+
+    /**
+     * Creates capture file, replacing existing one
+     *
+     * @param path file path
+     * @throws IOException if file can't be created
+     */
+    CaptureWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.startNanos = System.nanoTime();
+        MappedByteBuffer header = reserve(FILE_HEADER_SIZE);
+        header.putLong(MAGIC);
+        header.putLong(System.currentTimeMillis());
+        position = FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Appends data record
+     *
+     * @param connectionId connection ID
+     * @param direction data direction
+     * @param data data to record, its position is not changed
+     */
+    void append(long connectionId, StreamDirection direction, ByteBuffer data) {
+        append(connectionId, direction, data, data.remaining());
+    }
+
+    /**
+     * Appends end of stream record
+     *
+     * @param connectionId connection ID
+     * @param direction data direction
+     */
+    void appendEnd(long connectionId, StreamDirection direction) {
+        append(connectionId, direction, null, END_OF_STREAM);
+    }
+
+    private synchronized void append(long connectionId, StreamDirection direction, @Nullable ByteBuffer data,
+            int length) {
+        if (closed) {
+            return;
+        }
+        long timestamp = System.nanoTime() - startNanos;
+        try {
+            MappedByteBuffer target = reserve(RECORD_HEADER_SIZE + Math.max(length, 0));
+            target.putLong(timestamp);
+            target.putLong(connectionId);
+            target.put((byte)direction.ordinal());
+            target.putInt(length);
+            if (data != null) {
+                target.put(data.duplicate());
+            }
+            position += RECORD_HEADER_SIZE + Math.max(length, 0);
+        }
+        catch (IOException ex) {
+            logger.error("Failed to write capture file, capturing stopped", ex);
+            closed = true;
+        }
+    }
+
+    // Gets mapped region with at least given number of bytes available at current position
+    private MappedByteBuffer reserve(int size) throws IOException {
+        MappedByteBuffer current = region;
+        if (current == null || current.remaining() < size) {
+            current = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(REGION_SIZE, size));
+            region = current;
+        }
+        return current;
+    }
+
+    /**
+     * Closes the file truncating unused part of the last region
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        closed = true;
+        if (region != null) {
+            region.force();
+            region = null;
+        }
+        channel.truncate(position);
+        channel.close();
+    }
+}
@@ -0,0 +1,180 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Queue of data chunks ordered by their due times; chunks with equal times keep FIFO order.
+ * Backed by growing ring arrays, so that queueing doesn't allocate per chunk.
+ * In-order chunks are appended in O(1), out-of-order chunks are inserted from the tail.
+ * Each chunk can keep a lease of the pooled buffer it refers to.
+ */
+final class ChunkQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private ByteBuffer[] chunks = new ByteBuffer[INITIAL_CAPACITY];
+    private BufferPool.Lease[] owners = new BufferPool.Lease[INITIAL_CAPACITY];
+    private long[] dueTimes = new long[INITIAL_CAPACITY];
+    private long[] readTimes = new long[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private boolean headStarted;
+
+    /**
+     * Adds chunk to the queue after all chunks that are due not later than it.
+     * Partially written head chunk is never preceded by new chunks.
+     *
+     * @param chunk data chunk
+     * @param readTime time when chunk data was read in {@link System#nanoTime()} scale
+     * @param dueTime time when chunk is due
+     */
+    void add(ByteBuffer chunk, long readTime, long dueTime) {
+        add(chunk, null, readTime, dueTime);
+    }
+
+    /**
+     * Adds chunk with lease of its buffer to the queue after all chunks that are due not later than it.
+     *
+     * @param chunk data chunk
+     * @param owner lease of the buffer that chunk refers to or {@code null}
+     * @param readTime time when chunk data was read in {@link System#nanoTime()} scale
+     * @param dueTime time when chunk is due
+     */
+    void add(ByteBuffer chunk, @Nullable BufferPool.Lease owner, long readTime, long dueTime) {
+        if (size == chunks.length) {
+            grow();
+        }
+        int mask = chunks.length - 1;
+        int minIdx = headStarted ? 1 : 0;
+        int idx = size;
+        while (idx > minIdx && dueTimes[(head + idx - 1) & mask] - dueTime > 0) {
+            int to = (head + idx) & mask;
+            int from = (head + idx - 1) & mask;
+            chunks[to] = chunks[from];
+            owners[to] = owners[from];
+            dueTimes[to] = dueTimes[from];
+            readTimes[to] = readTimes[from];
+            idx--;
+        }
+        int pos = (head + idx) & mask;
+        chunks[pos] = chunk;
+        owners[pos] = owner;
+        dueTimes[pos] = dueTime;
+        readTimes[pos] = readTime;
+        size++;
+    }
+
+    /**
+     * Marks first chunk as partially written
+     */
+    void markHeadStarted() {
+        headStarted = size > 0;
+    }
+
+    /**
+     * Gets first chunk
+     *
+     * @return the chunk
+     */
+    ByteBuffer peek() {
+        Utils.checkState(size > 0, "Queue is empty");
+        return chunks[head];
+    }
+
+    /**
+     * Gets lease of the buffer that first chunk refers to
+     *
+     * @return the lease or {@code null}
+     */
+    @Nullable
+    BufferPool.Lease peekOwner() {
+        Utils.checkState(size > 0, "Queue is empty");
+        return owners[head];
+    }
+
+    /**
+     * Gets due time of first chunk
+     *
+     * @return the time
+     */
+    long peekDueTime() {
+        Utils.checkState(size > 0, "Queue is empty");
+        return dueTimes[head];
+    }
+
+    /**
+     * Gets read time of first chunk
+     *
+     * @return the time
+     */
+    long peekReadTime() {
+        Utils.checkState(size > 0, "Queue is empty");
+        return readTimes[head];
+    }
+
+    /**
+     * Copies leading chunks that are due by given time to the array, so that they can be written by one call
+     *
+     * @param target array to fill from index 0
+     * @param nanoTime current time
+     * @return number of copied chunks, at most length of the array
+     */
+    int gather(ByteBuffer[] target, long nanoTime) {
+        int mask = chunks.length - 1;
+        int count = Math.min(size, target.length);
+        for (int i = 0; i < count; i++) {
+            int pos = (head + i) & mask;
+            if (dueTimes[pos] - nanoTime > 0) {
+                return i;
+            }
+            target[i] = chunks[pos];
+        }
+        return count;
+    }
+
+    /**
+     * Removes first chunk
+     */
+    void remove() {
+        Utils.checkState(size > 0, "Queue is empty");
+        chunks[head] = null;
+        owners[head] = null;
+        head = (head + 1) & (chunks.length - 1);
+        size--;
+        headStarted = false;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = chunks.length;
+        ByteBuffer[] newChunks = new ByteBuffer[capacity * 2];
+        System.arraycopy(chunks, head, newChunks, 0, capacity - head);
+        System.arraycopy(chunks, 0, newChunks, capacity - head, head);
+        chunks = newChunks;
+        BufferPool.Lease[] newOwners = new BufferPool.Lease[capacity * 2];
+        System.arraycopy(owners, head, newOwners, 0, capacity - head);
+        System.arraycopy(owners, 0, newOwners, capacity - head, head);
+        owners = newOwners;
+        dueTimes = unwrap(dueTimes);
+        readTimes = unwrap(readTimes);
+        head = 0;
+    }
+
+    private long[] unwrap(long[] times) {
+        int capacity = times.length;
+        long[] newTimes = new long[capacity * 2];
+        System.arraycopy(times, head, newTimes, 0, capacity - head);
+        System.arraycopy(times, 0, newTimes, capacity - head, head);
+        return newTimes;
+    }
+}
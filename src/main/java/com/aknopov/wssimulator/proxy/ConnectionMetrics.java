@@ -0,0 +1,86 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+/**
+ * Traffic metrics of a single proxied connection
+ */
+public final class ConnectionMetrics {
+    private final long id;
+    private final Instant startTime = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+    private volatile boolean closed;
+    private final Map<StreamDirection, TrafficCounters> counters = new EnumMap<>(StreamDirection.class);
+
+    ConnectionMetrics(long id, ProxyMetrics proxyMetrics) {
+        this.id = id;
+        for (StreamDirection direction: StreamDirection.values()) {
+            counters.put(direction, new TrafficCounters(proxyMetrics.getCounters(direction)));
+        }
+    }
+
+    /**
+     * Marks connection closed
+     */
+    void close() {
+        endNanos = System.nanoTime();
+        closed = true;
+    }
+
+    /**
+     * Gets sequential number of connection in proxy
+     *
+     * @return connection ID
+     */
+    public long getId() {
+        return id;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets connection lifetime so far
+     *
+     * @return time since connection was accepted till now or till connection was closed
+     */
+    public Duration getLifetime() {
+        return Duration.ofNanos((closed ? endNanos : System.nanoTime()) - startNanos);
+    }
+
+    /**
+     * Gets counters of traffic direction
+     *
+     * @param direction traffic direction
+     * @return traffic counters
+     */
+    public TrafficCounters getCounters(StreamDirection direction) {
+        return counters.get(direction);
+    }
+
+    /**
+     * Gets average throughput of direction over connection lifetime
+     *
+     * @param direction traffic direction
+     * @return written bytes per second
+     */
+    public double getThroughput(StreamDirection direction) {
+        return ProxyMetrics.throughput(getCounters(direction).getBytesWritten(), getLifetime());
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionMetrics{id=" + id + ", lifetime=" + getLifetime() + ", counters=" + counters + '}';
+    }
+}
@@ -0,0 +1,110 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Histogram of data delays with buckets of power of two microseconds, i.e. percentiles are precise within factor 2.
+ * Recording is lock-free and cheap under contention.
+ */
+public final class DelayHistogram {
+    private static final int BUCKET_COUNT = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    DelayHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records delay, negative delays are recorded as zero
+     *
+     * @param delayNanos delay in nanoseconds
+     */
+    void record(long delayNanos) {
+        long nanos = Math.max(0, delayNanos);
+        buckets[bucketOf(nanos)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Gets number of recorded delays
+     *
+     * @return delay count
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket: buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Gets mean delay
+     *
+     * @return mean delay or zero if nothing is recorded
+     */
+    public Duration getMean() {
+        long count = getCount();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / count);
+    }
+
+    /**
+     * Gets maximum delay
+     *
+     * @return maximum delay
+     */
+    public Duration getMax() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+    /**
+     * Gets upper estimate of delay percentile
+     *
+     * @param percentile percentile in range (0, 100]
+     * @return delay that is not exceeded by the given percent of recorded delays
+     */
+    public Duration getPercentile(double percentile) {
+        Utils.checkArgument(percentile > 0 && percentile <= 100, "Percentile should be in (0, 100]");
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        long threshold = (long)Math.ceil(total * percentile / 100);
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += counts[i];
+            if (accumulated >= threshold && accumulated > 0) {
+                return Duration.ofNanos(Math.min(bucketLimit(i), maxNanos.get()));
+            }
+        }
+        return Duration.ZERO;
+    }
+
+    // Bucket 0 holds delays below 1 us, bucket i - delays in [2^(i-1), 2^i) us
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static long bucketLimit(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1000L << bucket) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "DelayHistogram{count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+                + ", p99=" + getPercentile(99) + ", max=" + getMax() + '}';
+    }
+}
@@ -0,0 +1,141 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.proxy.toxy.DeliverySchedule;
+import com.aknopov.wssimulator.proxy.toxy.Interruptible;
+import com.aknopov.wssimulator.proxy.toxy.ReadPacing;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.aknopov.wssimulator.proxy.toxy.Toxic;
+import com.aknopov.wssimulator.proxy.toxy.ToxicChain;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+
+/**
+ * Toxic of one connection direction that follows {@link ToxicControl}. When a new snapshot is published,
+ * toxics of the direction are recreated on the next data chunk - checking for it costs one volatile read.
+ * Recreated toxics start anew, e.g. their start delay counts from the change.
+ * <p>
+ * Toxic is refreshed only by the thread that owns the direction - event loop or forwarding thread. Event loop
+ * resolves it once per chunk with {@link #current()}, so that a change between checks can't make the loop run
+ * a blocking toxic and blocking toxic runs on executor without refreshing.
+ */
+final class DynamicToxic extends Toxic {
+    private final ToxicControl control;
+    private final Interruptible connection;
+    private final StreamDirection direction;
+    private final Toxic passThrough = new ToxicNoop();
+    private long version = -1;
+    @Nullable
+    private volatile Toxic delegate;
+
+    /**
+     * Creates the toxic
+     *
+     * @param control source of toxic set
+     * @param connection connection that toxics can interrupt
+     * @param direction intoxicated direction
+     */
+    DynamicToxic(ToxicControl control, Interruptible connection, StreamDirection direction) {
+        super(Duration.ZERO);
+        this.control = control;
+        this.connection = connection;
+        this.direction = direction;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        refresh();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        Toxic toxic = delegate;
+        if (toxic != null) {
+            toxic.stop();
+        }
+    }
+
+    /**
+     * Picks up the latest toxic set and gives toxic for the next chunk. Must be called by the thread that owns
+     * the direction.
+     *
+     * @return current toxic, pass-through one if no toxics apply to the direction
+     */
+    Toxic current() {
+        Toxic toxic = refresh();
+        return toxic != null ? toxic : passThrough;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        Toxic toxic = refresh();
+        return toxic != null && toxic.isBlocking();
+    }
+
+    @Override
+    public boolean isPassThrough() {
+        Toxic toxic = refresh();
+        return toxic == null || toxic.isPassThrough();
+    }
+
+    @Override
+    public int getReceiveBufferSize() {
+        Toxic toxic = refresh();
+        return toxic != null ? toxic.getReceiveBufferSize() : 0;
+    }
+
+    @Nullable
+    @Override
+    public ReadPacing getReadPacing() {
+        Toxic toxic = refresh();
+        return toxic != null ? toxic.getReadPacing() : null;
+    }
+
+    @Override
+    public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
+        Toxic toxic = refresh();
+        return toxic != null ? toxic.transformData(inData) : Collections.singletonList(inData);
+    }
+
+    @Override
+    public void transformData(ByteBuffer inData, DeliverySchedule schedule) {
+        Toxic toxic = refresh();
+        if (toxic != null) {
+            toxic.transformData(inData, schedule);
+        }
+        else {
+            schedule.deliver(inData);
+        }
+    }
+
+    @Nullable
+    private Toxic refresh() {
+        ToxicControl.Snapshot snapshot = control.getSnapshot();
+        if (snapshot.version() == version || stopped) {
+            return delegate;
+        }
+        version = snapshot.version();
+
+        // Replaced toxics are not stopped - stopping can interrupt a thread that isn't running them anymore
+        List<Toxic> toxics = new ArrayList<>();
+        for (ToxicControl.Entry entry: snapshot.entries()) {
+            if (entry.appliesTo(direction)) {
+                toxics.add(entry.factory().create(connection, direction));
+            }
+        }
+        Toxic newToxic = toxics.isEmpty() ? null : toxics.size() == 1 ? toxics.get(0) : new ToxicChain(toxics);
+        if (newToxic != null) {
+            newToxic.start();
+        }
+        delegate = newToxic;
+        return newToxic;
+    }
+}
@@ -0,0 +1,179 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single thread selector loop that multiplexes non-blocking channels.
+ * All channel handlers registered with the loop are invoked on the loop thread only.
+ */
+final class EventLoop implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(EventLoop.class);
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    @Nullable
+    private volatile Thread loopThread;
+
+    /**
+     * Callback of channels registered with the loop
+     */
+    interface ChannelHandler {
+        /**
+         * Handles channel readiness
+         *
+         * @param key selection key of the ready channel
+         */
+        void onReady(SelectionKey key);
+
+        /**
+         * Releases handler resources when the loop shuts down or the handler fails
+         */
+        void close();
+    }
+
+    EventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Runs the task on the loop thread - immediately if called from the loop, otherwise on next loop iteration.
+     *
+     * @param task the task
+     */
+    void execute(Runnable task) {
+        if (inLoop()) {
+            task.run();
+        }
+        else {
+            tasks.add(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Queues the task to run on the loop thread after tasks that are already queued, even if called from the loop.
+     *
+     * @param task the task
+     */
+    void executeLater(Runnable task) {
+        tasks.add(task);
+        if (!inLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Checks if current thread is the loop thread
+     *
+     * @return check result
+     */
+    boolean inLoop() {
+        return Thread.currentThread() == loopThread;
+    }
+
+    /**
+     * Registers channel with the loop selector. Should be called on the loop thread.
+     *
+     * @param channel non-blocking channel
+     * @param ops interest operations
+     * @param handler channel handler
+     * @return selection key
+     * @throws ClosedChannelException if channel is closed
+     */
+    SelectionKey register(SelectableChannel channel, int ops, ChannelHandler handler) throws ClosedChannelException {
+        return channel.register(selector, ops, handler);
+    }
+
+    /**
+     * Requests the loop to stop. Registered handlers are closed on the loop thread.
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        loopThread = Thread.currentThread();
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.attachment() instanceof ChannelHandler handler) {
+                        dispatch(key, handler);
+                    }
+                }
+            }
+        }
+        catch (IOException ex) {
+            logger.error("Event loop failure", ex);
+        }
+        finally {
+            closeHandlers();
+        }
+    }
+
+    // Failure of one handler, such as toxic error or cancelled key, closes that handler only
+    private void dispatch(SelectionKey key, ChannelHandler handler) {
+        try {
+            handler.onReady(key);
+        }
+        catch (RuntimeException ex) {
+            logger.error("Channel handler failed, closing it", ex);
+            try {
+                handler.close();
+            }
+            catch (RuntimeException closeEx) {
+                logger.warn("Can't close failed channel handler", closeEx);
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            }
+            catch (RuntimeException ex) {
+                logger.error("Event loop task failed", ex);
+            }
+        }
+    }
+
+    private void closeHandlers() {
+        Set<ChannelHandler> handlers = new LinkedHashSet<>();
+        for (SelectionKey key: selector.keys()) {
+            if (key.attachment() instanceof ChannelHandler handler) {
+                handlers.add(handler);
+            }
+        }
+        handlers.forEach(ChannelHandler::close);
+        tasks.clear();
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.aknopov.wssimulator.proxy;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.aknopov.wssimulator.ThreadMode;
+
 /**
  * Thread pool factory
  */
@@ -20,6 +23,40 @@ public final class NamedThreadPool {
      * @return thread pool executor
      */
     public static ExecutorService createFixedPool(int poolSize, String threadNamePrefix) {
-        return Executors.newFixedThreadPool(poolSize, r -> new Thread(r, threadNamePrefix + "-" + ID.incrementAndGet()));
+        return createFixedPool(poolSize, threadNamePrefix, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * Creates fixed thread pool of given kind of threads which have name "prefix-id"
+     * @param poolSize maximum pool size
+     * @param threadNamePrefix thread name prefix
+     * @param threadMode kind of threads
+     * @return thread pool executor
+     */
+    public static ExecutorService createFixedPool(int poolSize, String threadNamePrefix, ThreadMode threadMode) {
+        return Executors.newFixedThreadPool(poolSize, namedThreadFactory(threadNamePrefix, threadMode));
+    }
+
+    /**
+     * Creates cached thread pool which threads have name "prefix-id"
+     * @param threadNamePrefix thread name prefix
+     * @return thread pool executor
+     */
+    public static ExecutorService createCachedPool(String threadNamePrefix) {
+        return createCachedPool(threadNamePrefix, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * Creates cached thread pool of given kind of threads which have name "prefix-id"
+     * @param threadNamePrefix thread name prefix
+     * @param threadMode kind of threads
+     * @return thread pool executor
+     */
+    public static ExecutorService createCachedPool(String threadNamePrefix, ThreadMode threadMode) {
+        return Executors.newCachedThreadPool(namedThreadFactory(threadNamePrefix, threadMode));
+    }
+
+    private static ThreadFactory namedThreadFactory(String threadNamePrefix, ThreadMode threadMode) {
+        return r -> threadMode.newThread(r, threadNamePrefix + "-" + ID.incrementAndGet());
     }
 }
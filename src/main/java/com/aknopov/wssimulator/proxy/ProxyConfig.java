@@ -1,15 +1,81 @@
 package com.aknopov.wssimulator.proxy;
 
+import java.nio.file.Path;
 import java.time.Duration;
 
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.ThreadMode;
+
 /**
- * Socket proxy configuration
+ * Socket proxy configuration. Optional features are set on top of the basic config with {@code with...} methods:
+ * <pre>
+ * new ProxyConfig(downPort, upPort, 60_000, 1024, shutdownTime).withEventLoops(2).withCaptureFile(path)
+ * </pre>
  *
  * @param downPort proxy downstream (incoming) port on localhost
- * @param upPort proxy upstream (outgoing) port on localhost
+ * @param upPort proxy upstream (outgoing) port on localhost; spreading connections between several upstreams
+ *               is done by {@link ProxyHub} routes, see {@link ProxyHub#addRoute(int, java.util.List,
+ *               BalanceStrategy, Duration)}
  * @param soTimeout socket idle timeout (SO_TIMEOUT)
  * @param bufSize proxy buffer size
  * @param shutdownTime maximum time after which proxy shuts down
+ * @param eventLoops number of selector threads multiplexing connections;
+ *                   {@code 0} - serve one connection at a time with blocking streams
+ * @param captureFile file to record data of all connections to, see {@link CaptureReader};
+ *                    {@code null} - no recording
+ * @param bufferPoolSize maximum number of pooled direct buffers of {@code bufSize} shared by connections
+ *                       served by event loops
+ * @param threadMode kind of threads that forward data of blocking streams and run blocking toxics;
+ *                   selector threads are always platform ones. Without event loops {@link ThreadMode#VIRTUAL}
+ *                   serves connections concurrently, rather than one at a time
+ * @param upstreamPoolSize number of upstream connections established in advance and handed out to accepted
+ *                         connections; {@code 0} - connect upstream when connection is accepted
+ * @param upstreamIdleTime maximum time pre-established connection waits in the pool before it is replaced
+ * @param shadowPort port of shadow upstream that gets a copy of downstream data, its responses are dropped;
+ *                   {@code 0} - no mirroring
+ * @param shadowQueueSize maximum number of bytes of shadow copies waiting to be written; copies exceeding it
+ *                        are dropped
  */
-public record ProxyConfig(int downPort, int upPort, int soTimeout, int bufSize, Duration shutdownTime) {
+public record ProxyConfig(int downPort, int upPort, int soTimeout, int bufSize, Duration shutdownTime, int eventLoops,
+                          @Nullable Path captureFile, int bufferPoolSize, ThreadMode threadMode,
+                          int upstreamPoolSize, Duration upstreamIdleTime, int shadowPort, int shadowQueueSize) {
+    public static final int DEFAULT_BUFFER_POOL_SIZE = 256;
+    public static final Duration DEFAULT_UPSTREAM_IDLE_TIME = Duration.ofSeconds(30);
+    public static final int DEFAULT_SHADOW_QUEUE_SIZE = 1 << 20;
+
+    public ProxyConfig(int downPort, int upPort, int soTimeout, int bufSize, Duration shutdownTime) {
+        this(downPort, upPort, soTimeout, bufSize, shutdownTime, 0, null, DEFAULT_BUFFER_POOL_SIZE, ThreadMode.PLATFORM,
+                0, DEFAULT_UPSTREAM_IDLE_TIME, 0, DEFAULT_SHADOW_QUEUE_SIZE);
+    }
+
+    public ProxyConfig withEventLoops(int eventLoops) {
+        return new ProxyConfig(downPort, upPort, soTimeout, bufSize, shutdownTime, eventLoops, captureFile,
+                bufferPoolSize, threadMode, upstreamPoolSize, upstreamIdleTime, shadowPort, shadowQueueSize);
+    }
+
+    public ProxyConfig withCaptureFile(@Nullable Path captureFile) {
+        return new ProxyConfig(downPort, upPort, soTimeout, bufSize, shutdownTime, eventLoops, captureFile,
+                bufferPoolSize, threadMode, upstreamPoolSize, upstreamIdleTime, shadowPort, shadowQueueSize);
+    }
+
+    public ProxyConfig withBufferPoolSize(int bufferPoolSize) {
+        return new ProxyConfig(downPort, upPort, soTimeout, bufSize, shutdownTime, eventLoops, captureFile,
+                bufferPoolSize, threadMode, upstreamPoolSize, upstreamIdleTime, shadowPort, shadowQueueSize);
+    }
+
+    public ProxyConfig withThreadMode(ThreadMode threadMode) {
+        return new ProxyConfig(downPort, upPort, soTimeout, bufSize, shutdownTime, eventLoops, captureFile,
+                bufferPoolSize, threadMode, upstreamPoolSize, upstreamIdleTime, shadowPort, shadowQueueSize);
+    }
+
+    public ProxyConfig withUpstreamPool(int upstreamPoolSize, Duration upstreamIdleTime) {
+        return new ProxyConfig(downPort, upPort, soTimeout, bufSize, shutdownTime, eventLoops, captureFile,
+                bufferPoolSize, threadMode, upstreamPoolSize, upstreamIdleTime, shadowPort, shadowQueueSize);
+    }
+
+    public ProxyConfig withShadow(int shadowPort, int shadowQueueSize) {
+        return new ProxyConfig(downPort, upPort, soTimeout, bufSize, shutdownTime, eventLoops, captureFile,
+                bufferPoolSize, threadMode, upstreamPoolSize, upstreamIdleTime, shadowPort, shadowQueueSize);
+    }
 }
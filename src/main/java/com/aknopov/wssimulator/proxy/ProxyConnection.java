@@ -0,0 +1,549 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.proxy.toxy.DeliverySchedule;
+import com.aknopov.wssimulator.proxy.toxy.Interruptible;
+import com.aknopov.wssimulator.proxy.toxy.ReadPacing;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.aknopov.wssimulator.proxy.toxy.Toxic;
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
+
+/**
+ * Non-blocking pair of downstream and upstream channels served by an event loop.
+ * Each direction has its own toxic. Blocking toxics are run on a separate executor,
+ * while the direction stops reading until the transformed data is written out.
+ * Directions with pass-through toxics forward data without calling the toxic.
+ * Pass-through state is checked on each read, since toxics can change it at runtime.
+ * Non-blocking toxics schedule data for later delivery - reading goes on while delayed data waits
+ * for the timer, up to {@value #MAX_PENDING_CHUNKS} chunks. Chunks that are due by the time of writing are written
+ * with one gathering call, while chunks scheduled for later go out separately at their time.
+ * Toxics can pace reading instead of delaying data, so that the sender is throttled by TCP backpressure.
+ * Data is read into buffers leased from a pool for the time of reading and transformation. Chunks produced
+ * by toxics keep the buffer leased until they are written out, so idle connections don't hold any buffers.
+ */
+final class ProxyConnection implements EventLoop.ChannelHandler, Interruptible {
+    private static final Logger logger = LoggerFactory.getLogger(ProxyConnection.class);
+    private static final int MAX_PENDING_CHUNKS = 1024;
+    private static final int MAX_GATHERED_CHUNKS = 64;
+
+    private final EventLoop loop;
+    private final SocketChannel downChannel;
+    private final SocketChannel upChannel;
+    private final Executor toxicExecutor;
+    private final TimingWheel timer;
+    private final BufferPool bufferPool;
+    private final Consumer<ProxyConnection> closeListener;
+    private final ProxyMetrics metrics;
+    private final ConnectionMetrics connectionMetrics;
+    @Nullable
+    private final CaptureWriter capture;
+    @Nullable
+    private final ShadowMirror shadow;
+    private final Direction downstream;
+    private final Direction upstream;
+    @Nullable
+    private SelectionKey downKey;
+    @Nullable
+    private SelectionKey upKey;
+    private boolean upstreamFailed;
+    private boolean closed;
+
+    /**
+     * Creates connection
+     *
+     * @param loop event loop serving the connection
+     * @param downChannel accepted downstream channel
+     * @param upChannel upstream channel, possibly still connecting
+     * @param toxicFactory factory of direction toxics
+     * @param bufferPool pool of read buffers
+     * @param toxicExecutor executor for blocking toxics
+     * @param timer timer of delayed data delivery
+     * @param metrics proxy metrics
+     * @param capture writer of captured data or {@code null}
+     * @param shadow mirror of downstream data or {@code null}
+     * @param closeListener callback invoked once connection is closed
+     */
+    ProxyConnection(EventLoop loop, SocketChannel downChannel, SocketChannel upChannel, ToxicFactory toxicFactory,
+            BufferPool bufferPool, Executor toxicExecutor, TimingWheel timer, ProxyMetrics metrics,
+            @Nullable CaptureWriter capture, @Nullable ShadowMirror shadow, Consumer<ProxyConnection> closeListener) {
+        this.loop = loop;
+        this.downChannel = downChannel;
+        this.upChannel = upChannel;
+        this.toxicExecutor = toxicExecutor;
+        this.timer = timer;
+        this.bufferPool = bufferPool;
+        this.closeListener = closeListener;
+        this.metrics = metrics;
+        this.connectionMetrics = metrics.openConnection();
+        this.capture = capture;
+        this.shadow = shadow;
+        this.downstream = new Direction(downChannel, upChannel, toxicFactory, StreamDirection.DOWNSTREAM);
+        this.upstream = new Direction(upChannel, downChannel, toxicFactory, StreamDirection.UPSTREAM);
+    }
+
+    /**
+     * Registers connection channels with the event loop. Must be called on the loop thread.
+     */
+    void open() {
+        try {
+            downKey = loop.register(downChannel, 0, this);
+            if (upChannel.isConnectionPending()) {
+                upKey = loop.register(upChannel, SelectionKey.OP_CONNECT, this);
+            }
+            else {
+                upKey = loop.register(upChannel, 0, this);
+                startExchange();
+            }
+        }
+        catch (IOException ex) {
+            logger.error("Failed to register connection", ex);
+            close();
+        }
+    }
+
+    @Override
+    public void onReady(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                finishConnect();
+                return;
+            }
+            boolean isDownKey = key.channel() == downChannel;
+            if (key.isWritable()) {
+                (isDownKey ? upstream : downstream).flush();
+            }
+            if (!closed && key.isValid() && key.isReadable()) {
+                (isDownKey ? downstream : upstream).read();
+            }
+            updateInterest();
+        }
+        catch (IOException ex) {
+            logger.debug("Connection failure - {}", ex.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Tells if connection was closed because upstream connect failed
+     *
+     * @return {@code true} if upstream connect failed
+     */
+    boolean isUpstreamFailed() {
+        return upstreamFailed;
+    }
+
+    @Override
+    public void interrupt() {
+        logger.debug("Interrupting connection");
+        loop.execute(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        downstream.stop();
+        upstream.stop();
+        closeChannel(downChannel);
+        closeChannel(upChannel);
+        // End of downstream data is mirrored when it is read
+        if (shadow != null && !downstream.isEnded()) {
+            shadow.appendEnd(connectionMetrics.getId());
+        }
+        metrics.closeConnection(connectionMetrics);
+        closeListener.accept(this);
+    }
+
+    private void finishConnect() throws IOException {
+        try {
+            if (!upChannel.finishConnect()) {
+                return;
+            }
+        }
+        catch (IOException ex) {
+            upstreamFailed = true;
+            throw ex;
+        }
+        logger.debug("Connected upstream {}", upChannel.getRemoteAddress());
+        startExchange();
+    }
+
+    private void startExchange() {
+        downstream.start();
+        upstream.start();
+        updateInterest();
+    }
+
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+        setInterest(downKey, downstream.wantsRead(), upstream.wantsWrite());
+        setInterest(upKey, upstream.wantsRead(), downstream.wantsWrite());
+    }
+
+    private static void setInterest(@Nullable SelectionKey key, boolean read, boolean write) {
+        if (key != null && key.isValid()) {
+            key.interestOps((read ? SelectionKey.OP_READ : 0) | (write ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    private static void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            //ignore
+        }
+    }
+
+    /**
+     * One way data flow from source to target channel
+     */
+    private final class Direction implements DeliverySchedule {
+        private final SocketChannel source;
+        private final SocketChannel target;
+        private final Toxic toxic;
+        private final StreamDirection direction;
+        private final ChunkQueue pending = new ChunkQueue();
+        private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_CHUNKS];
+        private final String logHint;
+        private final TrafficCounters counters;
+        private final DelayHistogram configuredDelay;
+        private final DelayHistogram actualDelay;
+        @Nullable
+        private BufferPool.Lease lease;
+        private boolean passThrough;
+        private long readTime;
+        private long scheduleTime;
+        private long timerTime;
+        private boolean timerArmed;
+        private boolean transforming;
+        private boolean flushQueued;
+        private boolean readPaused;
+        private boolean writeBlocked;
+        private boolean endOfStream;
+        private boolean done;
+
+        Direction(SocketChannel source, SocketChannel target, ToxicFactory toxicFactory, StreamDirection direction) {
+            this.source = source;
+            this.target = target;
+            this.toxic = toxicFactory.create(ProxyConnection.this, direction);
+            this.direction = direction;
+            this.passThrough = toxic.isPassThrough();
+            this.logHint = direction.name().toLowerCase(Locale.ROOT);
+            this.counters = connectionMetrics.getCounters(direction);
+            this.configuredDelay = metrics.getConfiguredDelay(direction);
+            this.actualDelay = metrics.getActualDelay(direction);
+            this.scheduleTime = System.nanoTime();
+        }
+
+        void start() {
+            logger.debug("Starting exchange {}", logHint);
+            toxic.start();
+            int receiveBufferSize = toxic.getReceiveBufferSize();
+            if (receiveBufferSize > 0) {
+                try {
+                    source.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+                }
+                catch (IOException ex) {
+                    logger.debug("Can't set receive buffer {} - {}", logHint, ex.getMessage());
+                }
+            }
+        }
+
+        void stop() {
+            toxic.stop();
+            // Blocking toxic can still be reading the buffer, it is released once transformation is done
+            if (!transforming) {
+                releaseLease();
+                releaseBuffers();
+            }
+        }
+
+        boolean wantsRead() {
+            return !endOfStream && !transforming && !readPaused && !writeBlocked
+                    && pending.size() < MAX_PENDING_CHUNKS;
+        }
+
+        boolean wantsWrite() {
+            return writeBlocked;
+        }
+
+        boolean isEnded() {
+            return endOfStream;
+        }
+
+        void read() throws IOException {
+            // Toxics can be reconfigured at runtime - all decisions about read chunks are made for the same toxic
+            Toxic active = currentToxic();
+            passThrough = active.isPassThrough();
+            ReadPacing pacing = active.getReadPacing();
+            int len;
+            int capacity;
+            do {
+                if (pacing != null && pauseReading(pacing)) {
+                    return;
+                }
+                BufferPool.Lease readLease = leaseBuffer();
+                lease = readLease;
+                ByteBuffer buffer = readLease.buffer();
+                try {
+                    if (pacing != null) {
+                        buffer.limit(Math.min(buffer.capacity(), pacing.getReadSize()));
+                    }
+                    capacity = buffer.limit();
+                    len = source.read(buffer);
+                    if (len < 0) {
+                        logger.debug("Done with exchange {}", logHint);
+                        if (capture != null) {
+                            capture.appendEnd(connectionMetrics.getId(), direction);
+                        }
+                        if (shadow != null && direction == StreamDirection.DOWNSTREAM) {
+                            shadow.appendEnd(connectionMetrics.getId());
+                        }
+                        endOfStream = true;
+                        finishIfDrained();
+                    }
+                    else if (len > 0) {
+                        counters.onRead(len);
+                        if (pacing != null) {
+                            counters.onBackpressure(pacing.onRead(len, System.nanoTime()));
+                        }
+                        buffer.flip();
+                        if (capture != null) {
+                            capture.append(connectionMetrics.getId(), direction, buffer);
+                        }
+                        if (shadow != null && direction == StreamDirection.DOWNSTREAM) {
+                            shadow.append(connectionMetrics.getId(), buffer);
+                        }
+                        transform(buffer, active);
+                    }
+                }
+                finally {
+                    // Pending chunks keep their own references, failed read leaves nothing to keep
+                    if (!transforming) {
+                        releaseLease();
+                    }
+                }
+            }
+            // Full buffer in pass-through mode likely means more data is available right away
+            while (passThrough && len == capacity && pending.isEmpty() && !closed);
+        }
+
+        // Stops reading till pacing allows it
+        private boolean pauseReading(ReadPacing pacing) {
+            long resumeTime = pacing.nextReadTime();
+            if (resumeTime - System.nanoTime() <= 0) {
+                return false;
+            }
+            readPaused = true;
+            timer.schedule(resumeTime, () -> loop.execute(this::resumeReading));
+            return true;
+        }
+
+        private void resumeReading() {
+            readPaused = false;
+            if (!closed) {
+                updateInterest();
+            }
+        }
+
+        @Override
+        public long dueTime() {
+            return scheduleTime;
+        }
+
+        @Override
+        public void delayUntil(long nanoTime) {
+            if (nanoTime - scheduleTime > 0) {
+                scheduleTime = nanoTime;
+            }
+        }
+
+        @Override
+        public void deliver(ByteBuffer chunk) {
+            deliverAt(chunk, scheduleTime);
+        }
+
+        @Override
+        public void deliverAt(ByteBuffer chunk, long nanoTime) {
+            if (!closed) {
+                BufferPool.Lease owner = lease;
+                if (owner != null) {
+                    owner.retain();
+                }
+                pending.add(chunk, owner, readTime, nanoTime);
+            }
+        }
+
+        private Toxic currentToxic() {
+            return toxic instanceof DynamicToxic dynamicToxic ? dynamicToxic.current() : toxic;
+        }
+
+        private void transform(ByteBuffer buffer, Toxic active) throws IOException {
+            readTime = System.nanoTime();
+            delayUntil(readTime);
+            if (passThrough) {
+                deliver(buffer);
+            }
+            else if (active.isBlocking()) {
+                toxicExecutor.execute(() -> transformAsync(buffer, active));
+                // Completion is handed back to this loop thread, so the flag is set in time
+                transforming = true;
+                return;
+            }
+            else {
+                active.transformData(buffer, this);
+            }
+            flush();
+        }
+
+        // Runs on toxic executor - output is handed back to the loop chunk by chunk to keep toxic timing
+        private void transformAsync(ByteBuffer buffer, Toxic active) {
+            try {
+                for (ByteBuffer chunk: active.transformData(buffer)) {
+                    loop.execute(() -> enqueue(chunk));
+                }
+            }
+            finally {
+                loop.execute(this::transformed);
+            }
+        }
+
+        private void enqueue(ByteBuffer chunk) {
+            delayUntil(System.nanoTime());
+            deliver(chunk);
+            // Chunks that the toxic handed over in a burst are flushed together
+            if (!flushQueued) {
+                flushQueued = true;
+                loop.executeLater(this::queuedFlush);
+            }
+        }
+
+        private void queuedFlush() {
+            flushQueued = false;
+            flushAndUpdate();
+        }
+
+        private void transformed() {
+            transforming = false;
+            releaseLease();
+            if (closed) {
+                releaseBuffers();
+                return;
+            }
+            flushAndUpdate();
+        }
+
+        private void onTimer() {
+            timerArmed = false;
+            flushAndUpdate();
+        }
+
+        private void flushAndUpdate() {
+            if (closed) {
+                return;
+            }
+            try {
+                flush();
+                updateInterest();
+            }
+            catch (IOException ex) {
+                logger.debug("Error in transmission {} - {}", logHint, ex.getMessage());
+                close();
+            }
+        }
+
+        void flush() throws IOException {
+            writeBlocked = false;
+            long now = System.nanoTime();
+            while (!pending.isEmpty()) {
+                int count = pending.gather(gathered, now);
+                if (count == 0) {
+                    armTimer(pending.peekDueTime());
+                    return;
+                }
+                counters.onWrite(count == 1 ? target.write(gathered[0]) : target.write(gathered, 0, count));
+                Arrays.fill(gathered, 0, count, null);
+                for (int i = 0; i < count; i++) {
+                    if (pending.peek().hasRemaining()) {
+                        writeBlocked = true;
+                        pending.markHeadStarted();
+                        return;
+                    }
+                    long chunkReadTime = pending.peekReadTime();
+                    configuredDelay.record(pending.peekDueTime() - chunkReadTime);
+                    actualDelay.record(now - chunkReadTime);
+                    counters.onChunkWritten();
+                    removeChunk();
+                }
+            }
+            finishIfDrained();
+        }
+
+        private void removeChunk() {
+            BufferPool.Lease owner = pending.peekOwner();
+            pending.remove();
+            if (owner != null) {
+                owner.release();
+            }
+        }
+
+        private void releaseLease() {
+            BufferPool.Lease readLease = lease;
+            if (readLease != null) {
+                lease = null;
+                readLease.release();
+            }
+        }
+
+        private void releaseBuffers() {
+            while (!pending.isEmpty()) {
+                removeChunk();
+            }
+        }
+
+        private BufferPool.Lease leaseBuffer() {
+            BufferPool.Lease newLease = bufferPool.lease();
+            if (!newLease.isPooled()) {
+                metrics.onBufferPoolExhausted();
+            }
+            return newLease;
+        }
+
+        private void armTimer(long dueTime) {
+            if (!timerArmed || dueTime - timerTime < 0) {
+                timerArmed = true;
+                timerTime = dueTime;
+                timer.schedule(dueTime, () -> loop.execute(this::onTimer));
+            }
+        }
+
+        private void finishIfDrained() throws IOException {
+            if (endOfStream && !done && !transforming && pending.isEmpty()) {
+                done = true;
+                target.shutdownOutput();
+                if (downstream.done && upstream.done) {
+                    close();
+                }
+            }
+        }
+    }
+}
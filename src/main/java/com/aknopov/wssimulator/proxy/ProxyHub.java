@@ -0,0 +1,206 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.ThreadMode;
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
+
+/**
+ * Hub of proxy routes on localhost. All routes share the same event loops, toxic executor and timer,
+ * so simulating many backend nodes doesn't cost threads per node. Routes can be added and removed while hub runs.
+ * <pre>
+ * ProxyHub hub = new ProxyHub(2, 16384);
+ * hub.start();
+ * ProxyRoute node1 = hub.addRoute(0, node1Port, c -> new ToxicNoop());
+ * ProxyRoute node2 = hub.addRoute(0, node2Port, control.toxicFactory());
+ * ProxyRoute cluster = hub.addRoute(0, List.of(new UpstreamNode(node3Port, c -> new ToxicNoop()),
+ *         new UpstreamNode(node4Port, c -> new ToxicNoop())), BalanceStrategy.LEAST_CONNECTIONS,
+ *         Duration.ofSeconds(1));
+ * ...
+ * hub.stop();
+ * </pre>
+ */
+public class ProxyHub {
+    private static final Logger logger = LoggerFactory.getLogger(ProxyHub.class);
+
+    private final SelectorEngine engine;
+    private final Map<Integer, ProxyRoute> routes = new ConcurrentHashMap<>();
+    private volatile boolean stopped;
+
+    /**
+     * Creates the hub
+     *
+     * @param eventLoops number of selector threads shared by all routes
+     * @param bufSize proxy buffer size
+     * @throws IOException if selectors can't be opened
+     */
+    public ProxyHub(int eventLoops, int bufSize) throws IOException {
+        this(eventLoops, bufSize, ProxyConfig.DEFAULT_BUFFER_POOL_SIZE);
+    }
+
+    /**
+     * Creates the hub
+     *
+     * @param eventLoops number of selector threads shared by all routes
+     * @param bufSize proxy buffer size
+     * @param bufferPoolSize maximum number of pooled buffers shared by all routes
+     * @throws IOException if selectors can't be opened
+     */
+    public ProxyHub(int eventLoops, int bufSize, int bufferPoolSize) throws IOException {
+        this(eventLoops, bufSize, bufferPoolSize, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * Creates the hub
+     *
+     * @param eventLoops number of selector threads shared by all routes
+     * @param bufSize proxy buffer size
+     * @param bufferPoolSize maximum number of pooled buffers shared by all routes
+     * @param threadMode kind of threads running blocking toxics
+     * @throws IOException if selectors can't be opened
+     */
+    public ProxyHub(int eventLoops, int bufSize, int bufferPoolSize, ThreadMode threadMode) throws IOException {
+        this(eventLoops, bufSize, bufferPoolSize, threadMode, new SocketFactory(), s -> {});
+    }
+
+    // VisibleForTesting
+    ProxyHub(int eventLoops, int bufSize, int bufferPoolSize, ThreadMode threadMode, SocketFactory socketFactory,
+            Consumer<Socket> socketModifier) throws IOException {
+        this.engine = new SelectorEngine(eventLoops, bufSize, bufferPoolSize, null, threadMode, socketFactory,
+                socketModifier);
+    }
+
+    /**
+     * Starts event loops. Routes can be added before or after start.
+     *
+     * @throws IOException if hub can't be started
+     */
+    public void start() throws IOException {
+        logger.debug("Starting proxy hub");
+        engine.start();
+    }
+
+    /**
+     * Stops the hub closing all routes and connections
+     */
+    public void stop() {
+        logger.debug("Stopping proxy hub");
+        stopped = true;
+        engine.stop();
+        routes.clear();
+    }
+
+    /**
+     * Adds route and starts accepting its connections
+     *
+     * @param downPort proxy port; {@code 0} - any free port, see {@link ProxyRoute#getDownPort()}
+     * @param upPort upstream port
+     * @param toxicFactory factory of route toxics
+     * @return the route
+     * @throws IOException if proxy port can't be bound
+     */
+    public ProxyRoute addRoute(int downPort, int upPort, ToxicFactory toxicFactory) throws IOException {
+        return addRoute(downPort, upPort, 0, ProxyConfig.DEFAULT_UPSTREAM_IDLE_TIME, toxicFactory);
+    }
+
+    /**
+     * Adds route with a pool of pre-established upstream connections and starts accepting its connections
+     *
+     * @param downPort proxy port; {@code 0} - any free port, see {@link ProxyRoute#getDownPort()}
+     * @param upPort upstream port
+     * @param upstreamPoolSize number of upstream connections established in advance; {@code 0} - no pool
+     * @param upstreamIdleTime maximum time pre-established connection waits in the pool before it is replaced
+     * @param toxicFactory factory of route toxics
+     * @return the route
+     * @throws IOException if proxy port can't be bound
+     */
+    public ProxyRoute addRoute(int downPort, int upPort, int upstreamPoolSize, Duration upstreamIdleTime,
+            ToxicFactory toxicFactory) throws IOException {
+        Utils.checkState(!stopped, "Hub is stopped");
+        ProxyMetrics metrics = new ProxyMetrics();
+        ProxyRoute route = new ProxyRoute(engine.addListener(downPort, upPort, upstreamPoolSize, upstreamIdleTime,
+                toxicFactory, metrics), metrics);
+        routes.put(route.getDownPort(), route);
+        return route;
+    }
+
+    /**
+     * Adds route that spreads its connections between upstream nodes and starts accepting connections.
+     * Node is skipped for down time after connect to it fails.
+     *
+     * @param downPort proxy port; {@code 0} - any free port, see {@link ProxyRoute#getDownPort()}
+     * @param upstreams upstream nodes with distinct ports and their own toxics
+     * @param strategy balance strategy
+     * @param downTime time failed node doesn't get new connections
+     * @return the route
+     * @throws IOException if proxy port can't be bound
+     */
+    public ProxyRoute addRoute(int downPort, List<UpstreamNode> upstreams, BalanceStrategy strategy,
+            Duration downTime) throws IOException {
+        Utils.checkState(!stopped, "Hub is stopped");
+        ProxyMetrics metrics = new ProxyMetrics();
+        UpstreamBalancer balancer = new UpstreamBalancer(upstreams, strategy, downTime);
+        ProxyRoute route = new ProxyRoute(engine.addListener(downPort, balancer, metrics), metrics);
+        routes.put(route.getDownPort(), route);
+        return route;
+    }
+
+    /**
+     * Removes route closing its proxy port and connections
+     *
+     * @param route the route
+     * @return {@code false} if route doesn't belong to the hub
+     */
+    public boolean removeRoute(ProxyRoute route) {
+        if (!routes.remove(route.getDownPort(), route)) {
+            return false;
+        }
+        engine.removeListener(route.getListener());
+        return true;
+    }
+
+    /**
+     * Gets route by proxy port
+     *
+     * @param downPort proxy port
+     * @return the route or {@code null} if there is no route on the port
+     */
+    @Nullable
+    public ProxyRoute getRoute(int downPort) {
+        return routes.get(downPort);
+    }
+
+    /**
+     * Gets active routes
+     *
+     * @return routes ordered by proxy port
+     */
+    public List<ProxyRoute> getRoutes() {
+        return routes.values().stream()
+                .sorted(Comparator.comparingInt(ProxyRoute::getDownPort))
+                .toList();
+    }
+
+    /**
+     * Gets number of currently proxied connections of all routes
+     *
+     * @return connection count
+     */
+    public int getConnectionCount() {
+        return engine.getConnectionCount();
+    }
+}
@@ -0,0 +1,231 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+/**
+ * Traffic metrics of proxy - aggregate counters of all connections, metrics of active connections and histograms
+ * of data delays. Configured delay is the time from reading a chunk till its scheduled delivery, actual delay
+ * is the time till the chunk is written out. Scheduled delivery is known only on event loops; with blocking
+ * streams configured delay isn't recorded.
+ * <p>
+ * Counters are updated with {@link LongAdder}s, so they can be read at any time while proxy runs.
+ */
+public final class ProxyMetrics {
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong nextId = new AtomicLong();
+    private final LongAdder openedConnections = new LongAdder();
+    private final LongAdder closedConnections = new LongAdder();
+    private final LongAdder bufferPoolExhaustions = new LongAdder();
+    private final LongAdder upstreamPoolHits = new LongAdder();
+    private final LongAdder upstreamPoolMisses = new LongAdder();
+    private final LongAdder shadowMirroredBytes = new LongAdder();
+    private final LongAdder shadowDroppedBytes = new LongAdder();
+    private final Set<ConnectionMetrics> activeConnections = ConcurrentHashMap.newKeySet();
+    private final Map<StreamDirection, TrafficCounters> counters = new EnumMap<>(StreamDirection.class);
+    private final Map<StreamDirection, DelayHistogram> configuredDelays = new EnumMap<>(StreamDirection.class);
+    private final Map<StreamDirection, DelayHistogram> actualDelays = new EnumMap<>(StreamDirection.class);
+
+    ProxyMetrics() {
+        for (StreamDirection direction: StreamDirection.values()) {
+            counters.put(direction, new TrafficCounters(null));
+            configuredDelays.put(direction, new DelayHistogram());
+            actualDelays.put(direction, new DelayHistogram());
+        }
+    }
+
+    /**
+     * Creates metrics of a new connection
+     *
+     * @return connection metrics
+     */
+    ConnectionMetrics openConnection() {
+        ConnectionMetrics connectionMetrics = new ConnectionMetrics(nextId.incrementAndGet(), this);
+        openedConnections.increment();
+        activeConnections.add(connectionMetrics);
+        return connectionMetrics;
+    }
+
+    /**
+     * Marks connection closed
+     *
+     * @param connectionMetrics connection metrics
+     */
+    void closeConnection(ConnectionMetrics connectionMetrics) {
+        if (activeConnections.remove(connectionMetrics)) {
+            connectionMetrics.close();
+            closedConnections.increment();
+        }
+    }
+
+    /**
+     * Counts read buffer that was allocated because buffer pool was exhausted
+     */
+    void onBufferPoolExhausted() {
+        bufferPoolExhaustions.increment();
+    }
+
+    /**
+     * Counts upstream connection taken from the pool of pre-established connections
+     */
+    void onUpstreamPoolHit() {
+        upstreamPoolHits.increment();
+    }
+
+    /**
+     * Counts upstream connection that was opened because the pool was empty
+     */
+    void onUpstreamPoolMiss() {
+        upstreamPoolMisses.increment();
+    }
+
+    /**
+     * Counts bytes written to shadow upstream
+     *
+     * @param byteCount number of bytes
+     */
+    void onShadowMirrored(long byteCount) {
+        shadowMirroredBytes.add(byteCount);
+    }
+
+    /**
+     * Counts bytes that weren't copied to shadow upstream
+     *
+     * @param byteCount number of bytes
+     */
+    void onShadowDropped(long byteCount) {
+        shadowDroppedBytes.add(byteCount);
+    }
+
+    /**
+     * Gets aggregate counters of all connections
+     *
+     * @param direction traffic direction
+     * @return traffic counters
+     */
+    public TrafficCounters getCounters(StreamDirection direction) {
+        return counters.get(direction);
+    }
+
+    /**
+     * Gets histogram of delays that toxics scheduled
+     *
+     * @param direction traffic direction
+     * @return delay histogram
+     */
+    public DelayHistogram getConfiguredDelay(StreamDirection direction) {
+        return configuredDelays.get(direction);
+    }
+
+    /**
+     * Gets histogram of delays between reading and writing data
+     *
+     * @param direction traffic direction
+     * @return delay histogram
+     */
+    public DelayHistogram getActualDelay(StreamDirection direction) {
+        return actualDelays.get(direction);
+    }
+
+    public long getOpenedConnections() {
+        return openedConnections.sum();
+    }
+
+    public long getClosedConnections() {
+        return closedConnections.sum();
+    }
+
+    /**
+     * Gets number of read buffers that were allocated because all pooled buffers were leased.
+     * Growing count suggests to increase {@link ProxyConfig#bufferPoolSize()}.
+     *
+     * @return exhaustion count
+     */
+    public long getBufferPoolExhaustions() {
+        return bufferPoolExhaustions.sum();
+    }
+
+    /**
+     * Gets number of accepted connections served with a pre-established upstream connection
+     *
+     * @return pool hit count
+     */
+    public long getUpstreamPoolHits() {
+        return upstreamPoolHits.sum();
+    }
+
+    /**
+     * Gets number of accepted connections that waited for upstream connect because the pool was empty.
+     * Growing count suggests to increase {@link ProxyConfig#upstreamPoolSize()}.
+     *
+     * @return pool miss count
+     */
+    public long getUpstreamPoolMisses() {
+        return upstreamPoolMisses.sum();
+    }
+
+    /**
+     * Gets number of downstream bytes written to shadow upstream
+     *
+     * @return mirrored byte count
+     */
+    public long getShadowMirroredBytes() {
+        return shadowMirroredBytes.sum();
+    }
+
+    /**
+     * Gets number of downstream bytes that weren't copied to shadow upstream - because the mirror queue was full
+     * or shadow connection failed. Growing count suggests to increase {@link ProxyConfig#shadowQueueSize()}
+     * or that shadow upstream is too slow.
+     *
+     * @return dropped byte count
+     */
+    public long getShadowDroppedBytes() {
+        return shadowDroppedBytes.sum();
+    }
+
+    /**
+     * Gets metrics of active connections
+     *
+     * @return list of connection metrics ordered by connection ID
+     */
+    public List<ConnectionMetrics> getActiveConnections() {
+        return activeConnections.stream()
+                .sorted(Comparator.comparingLong(ConnectionMetrics::getId))
+                .toList();
+    }
+
+    /**
+     * Gets average throughput of direction since proxy creation
+     *
+     * @param direction traffic direction
+     * @return written bytes per second
+     */
+    public double getThroughput(StreamDirection direction) {
+        return throughput(getCounters(direction).getBytesWritten(), Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    static double throughput(long byteCount, Duration interval) {
+        long nanos = interval.toNanos();
+        return nanos <= 0 ? 0 : byteCount * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ProxyMetrics{opened=" + getOpenedConnections() + ", closed=" + getClosedConnections()
+                + ", bufferPoolExhaustions=" + getBufferPoolExhaustions()
+                + ", upstreamPoolHits=" + getUpstreamPoolHits() + ", upstreamPoolMisses=" + getUpstreamPoolMisses()
+                + ", shadowMirroredBytes=" + getShadowMirroredBytes()
+                + ", shadowDroppedBytes=" + getShadowDroppedBytes()
+                + ", counters=" + counters + ", actualDelays=" + actualDelays + '}';
+    }
+}
@@ -0,0 +1,113 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.util.List;
+
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.Interruptible;
+
+/**
+ * Route of {@link ProxyHub} - proxy port forwarded to an upstream port with its own toxics and metrics.
+ * Balanced route spreads connections between several upstream nodes.
+ */
+public final class ProxyRoute implements Interruptible {
+    private final SelectorEngine.Listener listener;
+    private final ProxyMetrics metrics;
+
+    ProxyRoute(SelectorEngine.Listener listener, ProxyMetrics metrics) {
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets proxy port the route listens on
+     *
+     * @return port number
+     */
+    public int getDownPort() {
+        return listener.getDownPort();
+    }
+
+    /**
+     * Gets port of the first upstream node
+     *
+     * @return port number
+     */
+    public int getUpPort() {
+        return listener.getUpPort();
+    }
+
+    /**
+     * Gets upstream nodes of the route with their connection counts
+     *
+     * @return upstream nodes
+     */
+    public List<UpstreamNode> getUpstreams() {
+        return listener.getUpstreams();
+    }
+
+    /**
+     * Simulates crash of upstream node - closes its connections and stops giving it new ones,
+     * so that clients reconnect to other nodes
+     *
+     * @param upPort port of upstream node
+     */
+    public void killUpstream(int upPort) {
+        listener.killUpstream(getUpstream(upPort));
+    }
+
+    /**
+     * Brings killed upstream node back
+     *
+     * @param upPort port of upstream node
+     */
+    public void reviveUpstream(int upPort) {
+        getUpstream(upPort).setKilled(false);
+    }
+
+    private UpstreamNode getUpstream(int upPort) {
+        UpstreamNode node = getUpstreams().stream()
+                .filter(n -> n.getPort() == upPort)
+                .findFirst()
+                .orElse(null);
+        Utils.checkArgument(node != null, "No upstream on port " + upPort);
+        return node;
+    }
+
+    /**
+     * Gets traffic metrics of route connections
+     *
+     * @return route metrics
+     */
+    public ProxyMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets number of currently proxied connections of the route
+     *
+     * @return connection count
+     */
+    public int getConnectionCount() {
+        return listener.getConnectionCount();
+    }
+
+    /**
+     * Closes all connections of the route, the route keeps accepting new ones
+     */
+    @Override
+    public void interrupt() {
+        listener.interruptAll();
+    }
+
+    SelectorEngine.Listener getListener() {
+        return listener;
+    }
+
+    @Override
+    public String toString() {
+        List<UpstreamNode> upstreams = getUpstreams();
+        return "ProxyRoute{" + getDownPort() + " -> "
+                + (upstreams.size() == 1 ? getUpPort() : upstreams.stream().map(UpstreamNode::getPort).toList())
+                + '}';
+    }
+}
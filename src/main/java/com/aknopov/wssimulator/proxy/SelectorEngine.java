@@ -0,0 +1,413 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.ThreadMode;
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
+
+/**
+ * Proxy engine that multiplexes any number of connections over a fixed number of selector threads.
+ * Engine serves one or more listeners - pairs of proxy and upstream ports with their own toxics.
+ * Listeners can be added and removed while engine runs. Each listener accepts connections on the first loop
+ * and distributes them between all loops. Delayed data of all connections is woken up by a shared timing wheel.
+ * Read buffers of all connections are leased from a shared pool of direct buffers. Listeners can keep a pool
+ * of pre-established upstream connections and copy downstream data to a shadow upstream. Listener spreads its
+ * connections between one or more upstream nodes with their own toxics.
+ */
+final class SelectorEngine {
+    private static final Logger logger = LoggerFactory.getLogger(SelectorEngine.class);
+    private static final Duration TIMER_TICK = Duration.ofMillis(1);
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    private final BufferPool bufferPool;
+    @Nullable
+    private final Path captureFile;
+    private final SocketFactory socketFactory;
+    private final Consumer<Socket> socketModifier;
+    private final EventLoop[] loops;
+    private final ExecutorService loopExecutor;
+    private final ExecutorService toxicExecutor;
+    private final TimingWheel timer;
+    private final Set<Listener> listeners = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    @Nullable
+    private CaptureWriter capture;
+
+    /**
+     * Creates engine
+     *
+     * @param eventLoops number of selector threads
+     * @param bufSize read buffer size
+     * @param bufferPoolSize maximum number of pooled read buffers
+     * @param captureFile file to capture data to or {@code null}
+     * @param threadMode kind of threads running blocking toxics
+     * @param socketFactory socket factory
+     * @param socketModifier modifier of created sockets
+     * @throws IOException if selectors can't be opened
+     */
+    SelectorEngine(int eventLoops, int bufSize, int bufferPoolSize, @Nullable Path captureFile, ThreadMode threadMode,
+            SocketFactory socketFactory, Consumer<Socket> socketModifier) throws IOException {
+        Utils.checkArgument(eventLoops > 0, "Number of event loops should be positive");
+        this.bufferPool = new BufferPool(bufSize, bufferPoolSize, true);
+        this.captureFile = captureFile;
+        this.socketFactory = socketFactory;
+        this.socketModifier = socketModifier;
+        this.loops = new EventLoop[eventLoops];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+        }
+        this.loopExecutor = NamedThreadPool.createFixedPool(loops.length, "TcpProxyLoop");
+        this.toxicExecutor = NamedThreadPool.createCachedPool("TcpProxyToxic", threadMode);
+        this.timer = new TimingWheel(TIMER_TICK, TIMER_WHEEL_SIZE, "TcpProxyTimer");
+    }
+
+    /**
+     * Starts event loops
+     *
+     * @throws IOException if capture file can't be created
+     */
+    void start() throws IOException {
+        if (captureFile != null) {
+            capture = new CaptureWriter(captureFile);
+        }
+        timer.start();
+        for (EventLoop loop: loops) {
+            Future<?> unused = loopExecutor.submit(loop);
+        }
+    }
+
+    /**
+     * Binds proxy port and starts accepting connections on it
+     *
+     * @param downPort proxy port; {@code 0} - any free port
+     * @param upPort upstream port
+     * @param toxicFactory factory of connection toxics
+     * @param metrics metrics of listener connections
+     * @return the listener
+     * @throws IOException if server channel can't be created
+     */
+    Listener addListener(int downPort, int upPort, ToxicFactory toxicFactory, ProxyMetrics metrics)
+            throws IOException {
+        return addListener(downPort, upPort, 0, ProxyConfig.DEFAULT_UPSTREAM_IDLE_TIME, toxicFactory, metrics);
+    }
+
+    /**
+     * Binds proxy port and starts accepting connections on it
+     *
+     * @param downPort proxy port; {@code 0} - any free port
+     * @param upPort upstream port
+     * @param upstreamPoolSize number of pre-established upstream connections; {@code 0} - no pool
+     * @param upstreamIdleTime maximum time pre-established connection stays in the pool
+     * @param toxicFactory factory of connection toxics
+     * @param metrics metrics of listener connections
+     * @return the listener
+     * @throws IOException if server channel can't be created
+     */
+    Listener addListener(int downPort, int upPort, int upstreamPoolSize, Duration upstreamIdleTime,
+            ToxicFactory toxicFactory, ProxyMetrics metrics) throws IOException {
+        return addListener(downPort, upPort, upstreamPoolSize, upstreamIdleTime, 0,
+                ProxyConfig.DEFAULT_SHADOW_QUEUE_SIZE, toxicFactory, metrics);
+    }
+
+    /**
+     * Binds proxy port and starts accepting connections on it
+     *
+     * @param downPort proxy port; {@code 0} - any free port
+     * @param upPort upstream port
+     * @param upstreamPoolSize number of pre-established upstream connections; {@code 0} - no pool
+     * @param upstreamIdleTime maximum time pre-established connection stays in the pool
+     * @param shadowPort port of shadow upstream getting copy of downstream data; {@code 0} - no mirroring
+     * @param shadowQueueSize maximum number of bytes waiting to be copied to shadow upstream
+     * @param toxicFactory factory of connection toxics
+     * @param metrics metrics of listener connections
+     * @return the listener
+     * @throws IOException if server channel can't be created
+     */
+    Listener addListener(int downPort, int upPort, int upstreamPoolSize, Duration upstreamIdleTime, int shadowPort,
+            int shadowQueueSize, ToxicFactory toxicFactory, ProxyMetrics metrics) throws IOException {
+        ServerSocketChannel channel = socketFactory.createServerChannel(downPort);
+        UpstreamPool upstreamPool = upstreamPoolSize > 0
+                ? new UpstreamPool(upPort, upstreamPoolSize, upstreamIdleTime, socketFactory, metrics)
+                : null;
+        ShadowMirror shadow = shadowPort > 0
+                ? new ShadowMirror(shadowPort, shadowQueueSize, socketFactory, metrics)
+                : null;
+        UpstreamBalancer balancer = new UpstreamBalancer(List.of(new UpstreamNode(upPort, toxicFactory)),
+                BalanceStrategy.ROUND_ROBIN, Duration.ZERO);
+        Listener listener = new Listener(channel, balancer, upstreamPool, shadow, metrics);
+        if (upstreamPool != null) {
+            upstreamPool.start();
+        }
+        if (shadow != null) {
+            shadow.start();
+        }
+        return register(listener);
+    }
+
+    /**
+     * Binds proxy port and starts spreading its connections between upstreams
+     *
+     * @param downPort proxy port; {@code 0} - any free port
+     * @param balancer balancer of upstream nodes
+     * @param metrics metrics of listener connections
+     * @return the listener
+     * @throws IOException if server channel can't be created
+     */
+    Listener addListener(int downPort, UpstreamBalancer balancer, ProxyMetrics metrics) throws IOException {
+        ServerSocketChannel channel = socketFactory.createServerChannel(downPort);
+        return register(new Listener(channel, balancer, null, null, metrics));
+    }
+
+    private Listener register(Listener listener) {
+        ServerSocketChannel channel = listener.serverChannel;
+        listeners.add(listener);
+        loops[0].execute(() -> {
+            try {
+                loops[0].register(channel, SelectionKey.OP_ACCEPT, listener);
+                logger.debug("Started proxy server on port {}", listener.getDownPort());
+            }
+            catch (IOException ex) {
+                logger.error("Failed to register server channel", ex);
+            }
+        });
+        return listener;
+    }
+
+    /**
+     * Stops accepting connections of the listener and closes its connections
+     *
+     * @param listener the listener
+     */
+    void removeListener(Listener listener) {
+        if (listeners.remove(listener)) {
+            loops[0].execute(listener::close);
+            listener.interruptAll();
+        }
+    }
+
+    /**
+     * Stops event loops closing all connections
+     */
+    void stop() {
+        for (EventLoop loop: loops) {
+            loop.shutdown();
+        }
+        loopExecutor.shutdown();
+        toxicExecutor.shutdownNow();
+        timer.stop();
+        listeners.forEach(Listener::close);
+        if (capture != null) {
+            try {
+                capture.close();
+            }
+            catch (IOException ex) {
+                logger.error("Failed to close capture file", ex);
+            }
+        }
+    }
+
+    /**
+     * Interrupts all active connections
+     */
+    void interruptAll() {
+        listeners.forEach(Listener::interruptAll);
+    }
+
+    /**
+     * Gets number of active connections
+     *
+     * @return connection count
+     */
+    int getConnectionCount() {
+        return listeners.stream().mapToInt(Listener::getConnectionCount).sum();
+    }
+
+    /**
+     * Gets number of pooled read buffers held by connections
+     *
+     * @return leased buffer count
+     */
+    int getLeasedBuffers() {
+        return bufferPool.getLeased();
+    }
+
+    /**
+     * Accepting channel of one proxy port
+     */
+    final class Listener implements EventLoop.ChannelHandler {
+        private final ServerSocketChannel serverChannel;
+        private final int downPort;
+        private final UpstreamBalancer balancer;
+        @Nullable
+        private final UpstreamPool upstreamPool;
+        @Nullable
+        private final ShadowMirror shadow;
+        private final ProxyMetrics metrics;
+        private final Map<ProxyConnection, UpstreamNode> connections = new ConcurrentHashMap<>();
+
+        Listener(ServerSocketChannel serverChannel, UpstreamBalancer balancer, @Nullable UpstreamPool upstreamPool,
+                @Nullable ShadowMirror shadow, ProxyMetrics metrics) {
+            this.serverChannel = serverChannel;
+            this.downPort = serverChannel.socket().getLocalPort();
+            this.balancer = balancer;
+            this.upstreamPool = upstreamPool;
+            this.shadow = shadow;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Gets bound proxy port
+         *
+         * @return port number
+         */
+        int getDownPort() {
+            return downPort;
+        }
+
+        int getUpPort() {
+            return balancer.getNodes().get(0).getPort();
+        }
+
+        List<UpstreamNode> getUpstreams() {
+            return balancer.getNodes();
+        }
+
+        int getConnectionCount() {
+            return connections.size();
+        }
+
+        void interruptAll() {
+            connections.keySet().forEach(ProxyConnection::interrupt);
+        }
+
+        /**
+         * Stops giving connections to upstream node and closes its connections
+         *
+         * @param node the node
+         */
+        void killUpstream(UpstreamNode node) {
+            node.setKilled(true);
+            connections.forEach((connection, connectionNode) -> {
+                if (connectionNode == node) {
+                    connection.interrupt();
+                }
+            });
+        }
+
+        @Override
+        public void onReady(SelectionKey key) {
+            if (!key.isAcceptable()) {
+                return;
+            }
+            try {
+                SocketChannel downChannel;
+                while ((downChannel = serverChannel.accept()) != null) {
+                    dispatch(downChannel);
+                }
+            }
+            catch (IOException ex) {
+                logger.error("Failed to accept connection", ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (upstreamPool != null) {
+                upstreamPool.stop();
+            }
+            if (shadow != null) {
+                shadow.stop();
+            }
+            try {
+                serverChannel.close();
+            }
+            catch (IOException e) {
+                //ignore
+            }
+        }
+
+        private void dispatch(SocketChannel downChannel) {
+            logger.debug("Connection accepted");
+            UpstreamNode node = null;
+            try {
+                downChannel.configureBlocking(false);
+                socketModifier.accept(downChannel.socket());
+                node = balancer.select((InetSocketAddress)downChannel.socket().getRemoteSocketAddress());
+                if (node == null) {
+                    logger.debug("All upstreams of port {} are killed", downPort);
+                    closeChannel(downChannel);
+                    return;
+                }
+                SocketChannel upChannel = openUpstreamChannel(node.getPort());
+                socketModifier.accept(upChannel.socket());
+
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                UpstreamNode connectionNode = node;
+                ProxyConnection connection = new ProxyConnection(loop, downChannel, upChannel,
+                        node.getToxicFactory(), bufferPool, toxicExecutor, timer, metrics, capture, shadow,
+                        c -> onClosed(c, connectionNode));
+                node.onOpen();
+                connections.put(connection, node);
+                loop.execute(connection::open);
+            }
+            catch (IOException ex) {
+                logger.error("Failed to open upstream connection on port {}", node != null ? node.getPort() : 0, ex);
+                if (node != null) {
+                    balancer.onFailure(node);
+                }
+                closeChannel(downChannel);
+            }
+        }
+
+        private void onClosed(ProxyConnection connection, UpstreamNode node) {
+            if (connections.remove(connection) != null) {
+                node.onClose();
+            }
+            if (connection.isUpstreamFailed()) {
+                logger.debug("Upstream on port {} is down", node.getPort());
+                balancer.onFailure(node);
+            }
+        }
+
+        private SocketChannel openUpstreamChannel(int upPort) throws IOException {
+            Socket pooledSocket = upstreamPool != null ? upstreamPool.poll() : null;
+            SocketChannel pooledChannel = pooledSocket != null ? pooledSocket.getChannel() : null;
+            if (pooledChannel != null) {
+                pooledChannel.configureBlocking(false);
+                return pooledChannel;
+            }
+            return socketFactory.openUpstreamChannel(upPort);
+        }
+    }
+
+    private static void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            //ignore
+        }
+    }
+}
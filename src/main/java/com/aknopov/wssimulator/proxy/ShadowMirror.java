@@ -0,0 +1,373 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Copies downstream data of proxied connections to a shadow upstream, e.g. a candidate build that should see
+ * live-like traffic. Each proxied connection gets its own shadow connection; data is copied as it was read
+ * from downstream, before toxics apply. Shadow responses are read and dropped.
+ * <p>
+ * Copies wait for the mirror thread in a queue bounded by number of bytes, so that adding a copy never blocks
+ * the primary path. When the queue is full, the copy is dropped and the shadow connection is closed - the rest
+ * of its stream makes no sense without the dropped part. Dropped bytes are counted by
+ * {@link ProxyMetrics#getShadowDroppedBytes()}.
+ */
+final class ShadowMirror {
+    private static final Logger logger = LoggerFactory.getLogger(ShadowMirror.class);
+    private static final int DISCARD_BUFFER_SIZE = 8192;
+    private static final ByteBuffer DROPPED = ByteBuffer.allocate(0);
+
+    private final int shadowPort;
+    private final long queueSize;
+    private final SocketFactory socketFactory;
+    private final ProxyMetrics metrics;
+    private final Queue<Copy> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    // Connections whose data isn't copied anymore
+    private final Set<Long> droppedConnections = ConcurrentHashMap.newKeySet();
+    private final Selector selector;
+    private final Thread mirrorThread;
+    // Accessed by mirror thread only
+    private final Map<Long, Shadow> shadows = new HashMap<>();
+    private final ByteBuffer discardBuffer = ByteBuffer.allocateDirect(DISCARD_BUFFER_SIZE);
+    private volatile boolean running = true;
+
+    // Chunk of connection data; null data - end of stream, DROPPED - the rest of stream is dropped
+    private record Copy(long connectionId, @Nullable ByteBuffer data) {
+    }
+
+    /**
+     * Creates the mirror
+     *
+     * @param shadowPort shadow upstream port
+     * @param queueSize maximum number of bytes waiting to be written to shadow connections
+     * @param socketFactory factory of shadow connections
+     * @param metrics metrics to record mirrored and dropped bytes to
+     * @throws IOException if selector can't be opened
+     */
+    ShadowMirror(int shadowPort, int queueSize, SocketFactory socketFactory, ProxyMetrics metrics)
+            throws IOException {
+        Utils.checkArgument(queueSize > 0, "Queue size should be positive");
+        this.shadowPort = shadowPort;
+        this.queueSize = queueSize;
+        this.socketFactory = socketFactory;
+        this.metrics = metrics;
+        this.selector = Selector.open();
+        this.mirrorThread = new Thread(this::run, "ShadowMirror-" + shadowPort);
+        this.mirrorThread.setDaemon(true);
+    }
+
+    /**
+     * Starts mirror thread
+     */
+    void start() {
+        mirrorThread.start();
+    }
+
+    /**
+     * Stops mirror thread and closes shadow connections
+     */
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Copies connection data to the queue or drops it if the queue is full. Never blocks.
+     *
+     * @param connectionId connection ID
+     * @param data data to copy, its position is not changed
+     */
+    void append(long connectionId, ByteBuffer data) {
+        int length = data.remaining();
+        if (length == 0) {
+            return;
+        }
+        if (droppedConnections.contains(connectionId)) {
+            metrics.onShadowDropped(length);
+            return;
+        }
+        if (!reserve(length)) {
+            metrics.onShadowDropped(length);
+            droppedConnections.add(connectionId);
+            enqueue(new Copy(connectionId, DROPPED));
+            return;
+        }
+        enqueue(new Copy(connectionId, ByteBuffer.allocate(length).put(data.duplicate()).flip()));
+    }
+
+    /**
+     * Closes shadow connection output once queued data is written
+     *
+     * @param connectionId connection ID
+     */
+    void appendEnd(long connectionId) {
+        droppedConnections.remove(connectionId);
+        enqueue(new Copy(connectionId, null));
+    }
+
+    /**
+     * Gets number of bytes waiting to be written to shadow connections
+     *
+     * @return queued byte count
+     */
+    long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    private boolean reserve(int length) {
+        long queued;
+        do {
+            queued = queuedBytes.get();
+            if (queued + length > queueSize) {
+                return false;
+            }
+        }
+        while (!queuedBytes.compareAndSet(queued, queued + length));
+        return true;
+    }
+
+    private void enqueue(Copy copy) {
+        queue.add(copy);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        logger.debug("Started mirroring to port {}", shadowPort);
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                for (SelectionKey key: selector.selectedKeys()) {
+                    ((Shadow)key.attachment()).onReady();
+                }
+                selector.selectedKeys().clear();
+                Copy copy;
+                while ((copy = queue.poll()) != null) {
+                    dispatch(copy);
+                }
+            }
+        }
+        catch (IOException ex) {
+            logger.error("Mirroring to port {} failed", shadowPort, ex);
+        }
+        finally {
+            new ArrayList<>(shadows.values()).forEach(Shadow::abort);
+            shadows.clear();
+            try {
+                selector.close();
+            }
+            catch (IOException e) {
+                //ignore
+            }
+        }
+        logger.debug("Stopped mirroring to port {}", shadowPort);
+    }
+
+    private void dispatch(Copy copy) {
+        long connectionId = copy.connectionId();
+        ByteBuffer data = copy.data();
+        Shadow shadow = shadows.get(connectionId);
+        if (data == null) {
+            droppedConnections.remove(connectionId);
+            if (shadow != null) {
+                shadow.end();
+            }
+        }
+        else if (data == DROPPED) {
+            if (shadow != null) {
+                shadow.abort();
+            }
+        }
+        else if (shadow == null) {
+            shadow = new Shadow(connectionId);
+            shadows.put(connectionId, shadow);
+            shadow.add(data);
+        }
+        else {
+            shadow.add(data);
+        }
+    }
+
+    private void release(long byteCount, boolean dropped) {
+        queuedBytes.addAndGet(-byteCount);
+        if (dropped) {
+            metrics.onShadowDropped(byteCount);
+        }
+        else {
+            metrics.onShadowMirrored(byteCount);
+        }
+    }
+
+    /**
+     * Shadow connection of one proxied connection
+     */
+    private final class Shadow {
+        private final long connectionId;
+        private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+        @Nullable
+        private SocketChannel channel;
+        @Nullable
+        private SelectionKey key;
+        private boolean ended;
+        private boolean outputShut;
+        private boolean inputShut;
+        private boolean failed;
+
+        Shadow(long connectionId) {
+            this.connectionId = connectionId;
+            try {
+                SocketChannel shadowChannel = socketFactory.openUpstreamChannel(shadowPort);
+                channel = shadowChannel;
+                key = shadowChannel.register(selector,
+                        shadowChannel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ, this);
+            }
+            catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        void add(ByteBuffer data) {
+            if (failed) {
+                release(data.remaining(), true);
+                return;
+            }
+            pending.add(data);
+            flush();
+        }
+
+        void end() {
+            ended = true;
+            if (failed) {
+                shadows.remove(connectionId);
+            }
+            else {
+                flush();
+            }
+        }
+
+        void onReady() {
+            SelectionKey shadowKey = key;
+            SocketChannel shadowChannel = channel;
+            if (shadowKey == null || shadowChannel == null || !shadowKey.isValid()) {
+                return;
+            }
+            try {
+                if (shadowKey.isConnectable() && !shadowChannel.finishConnect()) {
+                    return;
+                }
+                if (shadowKey.isReadable()) {
+                    discardInput(shadowChannel);
+                }
+                flush();
+            }
+            catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        // Closes connection dropping data that isn't written yet
+        void abort() {
+            failed = true;
+            long droppedBytes = 0;
+            for (ByteBuffer data: pending) {
+                droppedBytes += data.remaining();
+            }
+            pending.clear();
+            if (droppedBytes > 0) {
+                release(droppedBytes, true);
+            }
+            closeChannel();
+            if (ended) {
+                shadows.remove(connectionId);
+            }
+        }
+
+        private void flush() {
+            SocketChannel shadowChannel = channel;
+            SelectionKey shadowKey = key;
+            if (failed || shadowChannel == null || shadowKey == null || shadowChannel.isConnectionPending()) {
+                return;
+            }
+            try {
+                ByteBuffer data;
+                while ((data = pending.peek()) != null) {
+                    int written = shadowChannel.write(data);
+                    release(written, false);
+                    if (data.hasRemaining()) {
+                        break;
+                    }
+                    pending.poll();
+                }
+                if (ended && pending.isEmpty() && !outputShut) {
+                    shadowChannel.shutdownOutput();
+                    outputShut = true;
+                }
+                if (outputShut && inputShut) {
+                    closeChannel();
+                    shadows.remove(connectionId);
+                    return;
+                }
+                shadowKey.interestOps((inputShut ? 0 : SelectionKey.OP_READ)
+                        | (pending.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+            }
+            catch (IOException ex) {
+                fail(ex);
+            }
+        }
+
+        private void discardInput(SocketChannel shadowChannel) throws IOException {
+            int len;
+            do {
+                len = shadowChannel.read(discardBuffer.clear());
+            }
+            while (len > 0);
+            inputShut = len < 0;
+        }
+
+        private void fail(IOException ex) {
+            logger.debug("Shadow connection on port {} failed - {}", shadowPort, ex.getMessage());
+            if (!ended) {
+                droppedConnections.add(connectionId);
+            }
+            abort();
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                }
+                catch (IOException e) {
+                    //ignore
+                }
+            }
+        }
+    }
+}
@@ -7,11 +7,20 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -20,30 +29,61 @@ import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.aknopov.wssimulator.PreciseTiming;
 import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.ThreadMode;
 import com.aknopov.wssimulator.proxy.toxy.Interruptible;
+import com.aknopov.wssimulator.proxy.toxy.ReadPacing;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
 import com.aknopov.wssimulator.proxy.toxy.Toxic;
+import com.aknopov.wssimulator.proxy.toxy.ToxicBandwidth;
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
 import com.aknopov.wssimulator.proxy.toxy.ToxicInterrupter;
 import com.aknopov.wssimulator.proxy.toxy.ToxicLatency;
 import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+import com.aknopov.wssimulator.proxy.toxy.ToxicReorder;
 import com.aknopov.wssimulator.proxy.toxy.ToxicSlicer;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlowReader;
+import com.aknopov.wssimulator.proxy.toxy.ToxicWebSocketFrames;
 
 /**
- * TCP proxy implementation for "localhost"
+ * TCP proxy implementation for "localhost".
+ * Depending on {@link ProxyConfig#eventLoops()} connections are either served with blocking socket channels
+ * (streams for sockets without channels) or multiplexed on selector event loops. Blocking proxy serves one
+ * connection at a time with {@link ThreadMode#PLATFORM} threads and gives every connection its own virtual threads
+ * with {@link ThreadMode#VIRTUAL} ones. In either case connections go to the single {@link ProxyConfig#upPort()};
+ * spreading them between several upstreams is done by {@link ProxyHub} routes.
  */
 public class TcpProxy implements Interruptible {
     private static final Logger logger = LoggerFactory.getLogger(TcpProxy.class);
+    // Connection acceptor, shutdown sleeper and upstream pump
+    private static final int PROXY_THREADS = 3;
+    // One connection at a time needs a buffer per direction
+    private static final int BLOCKING_POOL_SIZE = 2;
+    private static final int MAX_GATHERED_CHUNKS = 64;
 
     private final ProxyConfig proxyConfig;
     private final SocketFactory socketFactory;
     private final ExecutorService executor;
-    private final Toxic toxic;
+    // Serves accepted connections with virtual threads, one per connection direction
+    @Nullable
+    private final ExecutorService connectionExecutor;
+    private final ToxicFactory toxicFactory;
     private final CountDownLatch stopped = new CountDownLatch(1);
+    private final ProxyMetrics metrics = new ProxyMetrics();
+    private final BufferPool channelBuffers;
+    private final BufferPool streamBuffers;
+    // Downstream and upstream sockets of served connections
+    private final Map<Socket, Socket> connections = new ConcurrentHashMap<>();
+    private final Consumer<Socket> socketModifier;
     @Nullable
-    private Socket downstreamSocket;
+    private SelectorEngine engine;
     @Nullable
-    private Socket upstreamSocket;
-    private final Consumer<Socket> socketModifier;
+    private UpstreamPool upstreamPool;
+    @Nullable
+    private ShadowMirror shadow;
+    @Nullable
+    private volatile CaptureWriter capture;
 
     /**
      * Creates not intoxicated proxy with configuration and socket factory
@@ -52,12 +92,12 @@ public class TcpProxy implements Interruptible {
      * @return proxy without toxic
      */
     public static TcpProxy createNonToxicProxy(ProxyConfig proxyConfig) {
-        return new TcpProxy(proxyConfig, new SocketFactory(), new ToxicNoop());
+        return createNonToxicProxy(proxyConfig, new SocketFactory());
     }
 
     // VisibleForTesting
     static TcpProxy createNonToxicProxy(ProxyConfig proxyConfig, SocketFactory socketFactory) {
-        return new TcpProxy(proxyConfig, socketFactory, new ToxicNoop());
+        return new TcpProxy(proxyConfig, socketFactory, c -> new ToxicNoop(), s -> {});
     }
 
     /**
@@ -77,7 +117,7 @@ public class TcpProxy implements Interruptible {
     // VisibleForTesting
     static TcpProxy createJitterProxy(ProxyConfig proxyConfig, Duration startTime, Duration latency, Duration jitter,
             SocketFactory socketFactory) {
-        return new TcpProxy(proxyConfig, socketFactory, new ToxicLatency(startTime, latency, jitter));
+        return new TcpProxy(proxyConfig, socketFactory, c -> new ToxicLatency(startTime, latency, jitter), s -> {});
     }
 
     /**
@@ -94,7 +134,8 @@ public class TcpProxy implements Interruptible {
     // VisibleForTesting
     static TcpProxy createInterruptingProxy(ProxyConfig proxyConfig, Duration interruptTime,
             SocketFactory socketFactory) {
-        return new TcpProxy(proxyConfig, socketFactory, interruptTime);
+        return new TcpProxy(proxyConfig, socketFactory, c -> new ToxicInterrupter(interruptTime, c),
+                TcpProxy::resetOnClose);
     }
 
     /**
@@ -112,23 +153,130 @@ public class TcpProxy implements Interruptible {
     // VisibleForTesting
     static TcpProxy createSlicerProxy(ProxyConfig proxyConfig, int sliceSize, Duration delay,
             SocketFactory socketFactory) {
-        return new TcpProxy(proxyConfig, socketFactory, new ToxicSlicer(delay, sliceSize));
+        return new TcpProxy(proxyConfig, socketFactory, c -> new ToxicSlicer(delay, sliceSize), s -> {});
     }
 
-    private TcpProxy(ProxyConfig proxyConfig, SocketFactory socketFactory, Toxic toxic) {
-        this.proxyConfig = proxyConfig;
-        this.socketFactory = socketFactory;
-        this.executor = NamedThreadPool.createFixedPool(3, "TcpProxy");
-        this.toxic = toxic;
-        this.socketModifier = s -> {};
+    /**
+     * Creates proxy that limits throughput of each connection direction
+     *
+     * @param proxyConfig proxy config
+     * @param startTime interval since proxy start to limit data transmission
+     * @param bytesPerSecond throughput limit
+     * @param burstSize maximum number of bytes sent without pause
+     * @return throttling proxy
+     */
+    public static TcpProxy createBandwidthProxy(ProxyConfig proxyConfig, Duration startTime, long bytesPerSecond,
+            int burstSize) {
+        return createBandwidthProxy(proxyConfig, startTime, bytesPerSecond, burstSize, new SocketFactory());
+    }
+
+    // VisibleForTesting
+    static TcpProxy createBandwidthProxy(ProxyConfig proxyConfig, Duration startTime, long bytesPerSecond,
+            int burstSize, SocketFactory socketFactory) {
+        return new TcpProxy(proxyConfig, socketFactory, c -> new ToxicBandwidth(startTime, bytesPerSecond, burstSize),
+                s -> {});
+    }
+
+    /**
+     * Creates proxy whose downstream peer reads upstream data slowly - proxy drains upstream socket with limited
+     * rate and small receive buffer, so that upstream server experiences TCP backpressure. Time the server was held
+     * back is reported by {@link TrafficCounters#getBackpressureTime()} of upstream direction.
+     *
+     * @param proxyConfig proxy config
+     * @param startTime interval since proxy start to throttle reading
+     * @param bytesPerSecond read rate limit
+     * @param readSize maximum number of bytes read at a time
+     * @param receiveBufferSize receive buffer size (SO_RCVBUF) of upstream socket; {@code 0} - system default
+     * @return slow reader proxy
+     */
+    public static TcpProxy createSlowReaderProxy(ProxyConfig proxyConfig, Duration startTime, long bytesPerSecond,
+            int readSize, int receiveBufferSize) {
+        return createSlowReaderProxy(proxyConfig, startTime, bytesPerSecond, readSize, receiveBufferSize,
+                new SocketFactory());
+    }
+
+    // VisibleForTesting
+    static TcpProxy createSlowReaderProxy(ProxyConfig proxyConfig, Duration startTime, long bytesPerSecond,
+            int readSize, int receiveBufferSize, SocketFactory socketFactory) {
+        return new TcpProxy(proxyConfig, socketFactory, ToxicFactory.perDirection(c -> new ToxicNoop(),
+                c -> new ToxicSlowReader(startTime, bytesPerSecond, readSize, receiveBufferSize)), s -> {});
+    }
+
+    /**
+     * Creates proxy that drops and reorders data chunks
+     *
+     * @param proxyConfig proxy config
+     * @param startTime interval since proxy start to disturb data transmission
+     * @param reorderRate probability of chunk being held back
+     * @param dropRate probability of chunk drop
+     * @param windowSize maximum number of chunks held at a time
+     * @param holdTime time a chunk is held back
+     * @return lossy proxy
+     */
+    public static TcpProxy createReorderProxy(ProxyConfig proxyConfig, Duration startTime, double reorderRate,
+            double dropRate, int windowSize, Duration holdTime) {
+        return createReorderProxy(proxyConfig, startTime, reorderRate, dropRate, windowSize, holdTime,
+                new SocketFactory());
+    }
+
+    // VisibleForTesting
+    static TcpProxy createReorderProxy(ProxyConfig proxyConfig, Duration startTime, double reorderRate,
+            double dropRate, int windowSize, Duration holdTime, SocketFactory socketFactory) {
+        return new TcpProxy(proxyConfig, socketFactory,
+                c -> new ToxicReorder(startTime, reorderRate, dropRate, windowSize, holdTime), s -> {});
+    }
+
+    /**
+     * Creates proxy that delays, drops and re-fragments WebSocket frames after HTTP Upgrade
+     *
+     * @param proxyConfig proxy config
+     * @param startTime interval since proxy start to apply frame toxics
+     * @param frameConfig frame toxic configuration
+     * @return WebSocket frame proxy
+     */
+    public static TcpProxy createWebSocketFrameProxy(ProxyConfig proxyConfig, Duration startTime,
+            ToxicWebSocketFrames.Config frameConfig) {
+        return createWebSocketFrameProxy(proxyConfig, startTime, frameConfig, new SocketFactory());
     }
 
-    private TcpProxy(ProxyConfig proxyConfig, SocketFactory socketFactory, Duration interruptTime) {
+    // VisibleForTesting
+    static TcpProxy createWebSocketFrameProxy(ProxyConfig proxyConfig, Duration startTime,
+            ToxicWebSocketFrames.Config frameConfig, SocketFactory socketFactory) {
+        return new TcpProxy(proxyConfig, socketFactory, c -> new ToxicWebSocketFrames(startTime, frameConfig),
+                s -> {});
+    }
+
+    /**
+     * Creates proxy with custom toxics. Use {@link ToxicFactory#perDirection(ToxicFactory, ToxicFactory)}
+     * for asymmetric links and {@link ToxicFactory#chain(ToxicFactory...)} to combine several toxics.
+     *
+     * @param proxyConfig proxy config
+     * @param toxicFactory factory of connection toxics
+     * @return proxy with custom toxics
+     */
+    public static TcpProxy createToxicProxy(ProxyConfig proxyConfig, ToxicFactory toxicFactory) {
+        return createToxicProxy(proxyConfig, toxicFactory, new SocketFactory());
+    }
+
+    // VisibleForTesting
+    static TcpProxy createToxicProxy(ProxyConfig proxyConfig, ToxicFactory toxicFactory, SocketFactory socketFactory) {
+        return new TcpProxy(proxyConfig, socketFactory, toxicFactory, s -> {});
+    }
+
+    private TcpProxy(ProxyConfig proxyConfig, SocketFactory socketFactory, ToxicFactory toxicFactory,
+            Consumer<Socket> socketModifier) {
         this.proxyConfig = proxyConfig;
         this.socketFactory = socketFactory;
-        this.executor = NamedThreadPool.createFixedPool(3, "TcpProxy");
-        this.toxic = new ToxicInterrupter(interruptTime, this);
-        this.socketModifier = TcpProxy::resetOnClose;
+        this.executor = NamedThreadPool.createFixedPool(PROXY_THREADS, "TcpProxy", proxyConfig.threadMode());
+        boolean concurrent = proxyConfig.threadMode() == ThreadMode.VIRTUAL;
+        this.connectionExecutor = concurrent ? NamedThreadPool.createCachedPool("TcpProxyConnection",
+                ThreadMode.VIRTUAL) : null;
+        this.toxicFactory = toxicFactory;
+        this.socketModifier = socketModifier;
+        int poolSize = concurrent ? proxyConfig.bufferPoolSize()
+                : Math.min(BLOCKING_POOL_SIZE, proxyConfig.bufferPoolSize());
+        this.channelBuffers = new BufferPool(proxyConfig.bufSize(), poolSize, true);
+        this.streamBuffers = new BufferPool(proxyConfig.bufSize(), poolSize, false);
     }
 
     /**
@@ -137,7 +285,49 @@ public class TcpProxy implements Interruptible {
     public void start() {
         logger.debug("Starting proxy");
         Future<?> unused1 = executor.submit(this::sleepToShutdown);
-        Future<?> unused2 = executor.submit(this::waitForIncomingConnections);
+        if (proxyConfig.eventLoops() > 0) {
+            startEngine();
+        }
+        else {
+            if (proxyConfig.upstreamPoolSize() > 0) {
+                UpstreamPool pool = new UpstreamPool(proxyConfig.upPort(), proxyConfig.upstreamPoolSize(),
+                        proxyConfig.upstreamIdleTime(), socketFactory, metrics);
+                upstreamPool = pool;
+                pool.start();
+            }
+            if (proxyConfig.shadowPort() > 0) {
+                startShadow();
+            }
+            Future<?> unused2 = executor.submit(this::waitForIncomingConnections);
+        }
+    }
+
+    private void startEngine() {
+        try {
+            SelectorEngine selectorEngine = new SelectorEngine(proxyConfig.eventLoops(), proxyConfig.bufSize(),
+                    proxyConfig.bufferPoolSize(), proxyConfig.captureFile(), proxyConfig.threadMode(), socketFactory,
+                    socketModifier);
+            engine = selectorEngine;
+            selectorEngine.start();
+            selectorEngine.addListener(proxyConfig.downPort(), proxyConfig.upPort(), proxyConfig.upstreamPoolSize(),
+                    proxyConfig.upstreamIdleTime(), proxyConfig.shadowPort(), proxyConfig.shadowQueueSize(),
+                    toxicFactory, metrics);
+        }
+        catch (IOException ex) {
+            logger.error("Failed to create server socket", ex);
+        }
+    }
+
+    private void startShadow() {
+        try {
+            ShadowMirror mirror = new ShadowMirror(proxyConfig.shadowPort(), proxyConfig.shadowQueueSize(),
+                    socketFactory, metrics);
+            shadow = mirror;
+            mirror.start();
+        }
+        catch (IOException ex) {
+            logger.error("Failed to start mirroring", ex);
+        }
     }
 
     /**
@@ -148,26 +338,61 @@ public class TcpProxy implements Interruptible {
         if (stopped.getCount() > 0) {
             stopped.countDown();
             executor.shutdownNow();
+            if (connectionExecutor != null) {
+                connectionExecutor.shutdownNow();
+            }
+            if (engine != null) {
+                engine.stop();
+            }
+            if (upstreamPool != null) {
+                upstreamPool.stop();
+            }
+            if (shadow != null) {
+                shadow.stop();
+            }
+        }
+    }
+
+    /**
+     * Gets number of currently proxied connections
+     *
+     * @return connection count
+     */
+    public int getConnectionCount() {
+        if (engine != null) {
+            return engine.getConnectionCount();
         }
+        return connections.size();
+    }
+
+    /**
+     * Gets traffic metrics of the proxy. Metrics are updated while proxy runs.
+     *
+     * @return proxy metrics
+     */
+    public ProxyMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public void interrupt() {
         logger.debug("Interrupting connection");
-        closeSocket(downstreamSocket);
-        closeSocket(upstreamSocket);
-        downstreamSocket = null;
-        upstreamSocket = null;
+        if (engine != null) {
+            engine.interruptAll();
+        }
+        for (Map.Entry<Socket, Socket> connection: connections.entrySet()) {
+            closeSocket(connection.getKey());
+            closeSocket(connection.getValue());
+            connections.remove(connection.getKey());
+        }
     }
 
-    private static void closeSocket(@Nullable Socket socket) {
-        if (socket != null) {
-            try {
-                socket.close();
-            }
-            catch (IOException e) {
-                //ignore
-            }
+    private static void closeSocket(Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            //ignore
         }
     }
 
@@ -199,68 +424,247 @@ public class TcpProxy implements Interruptible {
 
     //VisibleForTesting
     void waitForIncomingConnections() {
-        try (ServerSocket serverSocket = socketFactory.createServerSocket(proxyConfig.downPort())) {
+        Path captureFile = proxyConfig.captureFile();
+        try (ServerSocket serverSocket = socketFactory.createServerSocket(proxyConfig.downPort());
+             CaptureWriter captureWriter = captureFile != null ? new CaptureWriter(captureFile) : null) {
+            capture = captureWriter;
             logger.debug("Started proxy server on port {}", proxyConfig.downPort());
             while (stopped.getCount() > 0) {
                 logger.debug("Waiting for incoming connection");
-                try (Socket downstreamSocket = serverSocket.accept()) {
-                    proxyCommunications(downstreamSocket);
+                Socket downstreamSocket = serverSocket.accept();
+                if (connectionExecutor != null) {
+                    try {
+                        connectionExecutor.execute(() -> serveConnection(downstreamSocket));
+                    }
+                    catch (RejectedExecutionException ex) {
+                        // Proxy is stopping
+                        closeSocket(downstreamSocket);
+                    }
+                }
+                else {
+                    serveConnection(downstreamSocket);
                 }
             }
         }
+        catch (ClosedByInterruptException ex) {
+            logger.debug("Proxy server stopped");
+        }
         catch (IOException ex) {
             logger.error("Failed to create server socket", ex);
         }
+        finally {
+            capture = null;
+        }
+    }
+
+    private void serveConnection(Socket downstreamSocket) {
+        try (downstreamSocket) {
+            proxyCommunications(downstreamSocket);
+        }
+        catch (IOException ex) {
+            logger.debug("Can't close downstream socket - {}", ex.getMessage());
+        }
     }
 
     //VisibleForTesting
     void proxyCommunications(Socket downstreamSocket) {
         logger.debug("Connection accepted");
-        this.downstreamSocket = downstreamSocket;
-        try (Socket upstreamSocket = socketFactory.creatUpstreamSocket(proxyConfig.upPort())) {
+        ConnectionMetrics connectionMetrics = metrics.openConnection();
+        Toxic downToxic = toxicFactory.create(this, StreamDirection.DOWNSTREAM);
+        Toxic upToxic = toxicFactory.create(this, StreamDirection.UPSTREAM);
+        try (Socket upstreamSocket = openUpstreamSocket()) {
             logger.debug("Created proxy client on port {}", proxyConfig.upPort());
-            this.upstreamSocket = upstreamSocket;
+            connections.put(downstreamSocket, upstreamSocket);
             // Modify sockets
             socketModifier.accept(downstreamSocket);
             socketModifier.accept(upstreamSocket);
 
-            try (InputStream downInStream = downstreamSocket.getInputStream();
-                 OutputStream downOutStream = downstreamSocket.getOutputStream();
-                 OutputStream upOutStream = upstreamSocket.getOutputStream();
-                 InputStream upInStream = upstreamSocket.getInputStream()
-            ) {
-                toxic.start();
-                Future<?> upTask = executor.submit(() -> hookupStreams(upInStream, downOutStream, "upstream"));
-                hookupStreams(downInStream, upOutStream, "downstream");
-                var unused = upTask.get();
+            SocketChannel downChannel = downstreamSocket.getChannel();
+            SocketChannel upChannel = upstreamSocket.getChannel();
+            downToxic.start();
+            upToxic.start();
+            setReceiveBuffer(downstreamSocket, downToxic);
+            setReceiveBuffer(upstreamSocket, upToxic);
+            if (downChannel != null && upChannel != null) {
+                pumpChannels(downChannel, upChannel, downToxic, upToxic, connectionMetrics);
             }
-            catch (InterruptedException | ExecutionException e) {
-                logger.warn("Exchange interrupted");
+            else {
+                pumpStreams(downstreamSocket, upstreamSocket, downToxic, upToxic, connectionMetrics);
             }
         }
-        catch (SocketException ex) {
+        catch (SocketException | ClosedByInterruptException ex) {
             // just ignore - server socket closed forcefully
         }
         catch (IOException ex) {
             logger.error("Failed to accept connection", ex);
         }
         finally {
-            toxic.stop();
-            this.downstreamSocket = null;
-            this.upstreamSocket = null;
+            downToxic.stop();
+            upToxic.stop();
+            metrics.closeConnection(connectionMetrics);
+            connections.remove(downstreamSocket);
+        }
+    }
+
+    private ExecutorService pumpExecutor() {
+        return connectionExecutor != null ? connectionExecutor : executor;
+    }
+
+    private Socket openUpstreamSocket() throws IOException {
+        UpstreamPool pool = upstreamPool;
+        Socket pooledSocket = pool != null ? pool.poll() : null;
+        return pooledSocket != null ? pooledSocket : socketFactory.creatUpstreamSocket(proxyConfig.upPort());
+    }
+
+    private void pumpStreams(Socket downstreamSocket, Socket upstreamSocket, Toxic downToxic, Toxic upToxic,
+            ConnectionMetrics connectionMetrics) throws IOException {
+        try (InputStream downInStream = downstreamSocket.getInputStream();
+             OutputStream downOutStream = downstreamSocket.getOutputStream();
+             OutputStream upOutStream = upstreamSocket.getOutputStream();
+             InputStream upInStream = upstreamSocket.getInputStream()
+        ) {
+            Future<?> upTask = pumpExecutor().submit(() -> hookupStreams(upInStream, downOutStream, upToxic,
+                    StreamDirection.UPSTREAM, connectionMetrics));
+            hookupStreams(downInStream, upOutStream, downToxic, StreamDirection.DOWNSTREAM, connectionMetrics);
+            var unused = upTask.get();
+        }
+        catch (InterruptedException | ExecutionException e) {
+            logger.warn("Exchange interrupted");
+        }
+    }
+
+    // Exchange between socket channels - data is transformed only while toxic isn't pass-through
+    private void pumpChannels(SocketChannel downChannel, SocketChannel upChannel, Toxic downToxic, Toxic upToxic,
+            ConnectionMetrics connectionMetrics) {
+        try {
+            Future<?> upTask = pumpExecutor().submit(() -> hookupChannels(upChannel, downChannel, upToxic,
+                    StreamDirection.UPSTREAM, connectionMetrics));
+            hookupChannels(downChannel, upChannel, downToxic, StreamDirection.DOWNSTREAM, connectionMetrics);
+            var unused = upTask.get();
+        }
+        catch (InterruptedException | ExecutionException e) {
+            logger.warn("Exchange interrupted");
+        }
+    }
+
+    private void hookupChannels(SocketChannel source, SocketChannel target, Toxic toxic, StreamDirection direction,
+            ConnectionMetrics connectionMetrics) {
+        String logHint = direction.name().toLowerCase(Locale.ROOT);
+        logger.debug("Starting exchange {}", logHint);
+        TrafficCounters counters = connectionMetrics.getCounters(direction);
+        DelayHistogram actualDelay = metrics.getActualDelay(direction);
+        BufferPool.Lease lease = leaseBuffer(channelBuffers);
+        ByteBuffer buffer = lease.buffer();
+        ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_CHUNKS];
+        int len;
+        try {
+            while (stopped.getCount() > 0 && (len = source.read(buffer.limit(awaitRead(toxic, buffer)))) > 0) {
+                long readTime = System.nanoTime();
+                counters.onRead(len);
+                accountRead(toxic, len, readTime, counters);
+                buffer.flip();
+                captureData(connectionMetrics, direction, buffer);
+                mirrorData(connectionMetrics, direction, buffer);
+                if (toxic.isPassThrough()) {
+                    writeFully(target, buffer, counters);
+                    actualDelay.record(System.nanoTime() - readTime);
+                }
+                else {
+                    writeChunks(target, toxic.transformData(buffer), gathered, counters, actualDelay, readTime);
+                }
+                buffer.clear();
+            }
+        }
+        catch (ClosedByInterruptException ex) {
+            logger.debug("Exchange {} stopped", logHint);
+        }
+        catch (IOException ex) {
+            logger.error("Error in transmission", ex);
+        }
+        finally {
+            lease.release();
+        }
+        captureEnd(connectionMetrics, direction);
+        mirrorEnd(connectionMetrics, direction);
+        logger.debug("Done with exchange {}", logHint);
+    }
+
+    private static void writeFully(SocketChannel target, ByteBuffer buffer, TrafficCounters counters)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            counters.onWrite(target.write(buffer));
+        }
+        counters.onChunkWritten();
+    }
+
+    // Chunks that toxic returned in a collection are due now and written together, chunks of lazy iterable
+    // are due when iterator provides them
+    private static void writeChunks(SocketChannel target, Iterable<ByteBuffer> chunks, ByteBuffer[] gathered,
+            TrafficCounters counters, DelayHistogram actualDelay, long readTime) throws IOException {
+        boolean dueNow = chunks instanceof Collection;
+        int count = 0;
+        for (ByteBuffer chunk: chunks) {
+            gathered[count++] = chunk;
+            if (!dueNow || count == gathered.length) {
+                writeGathered(target, gathered, count, counters, actualDelay, readTime);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            writeGathered(target, gathered, count, counters, actualDelay, readTime);
+        }
+    }
+
+    private static void writeGathered(SocketChannel target, ByteBuffer[] gathered, int count,
+            TrafficCounters counters, DelayHistogram actualDelay, long readTime) throws IOException {
+        try {
+            while (gathered[count - 1].hasRemaining()) {
+                counters.onWrite(target.write(gathered, 0, count));
+            }
+        }
+        finally {
+            Arrays.fill(gathered, 0, count, null);
+        }
+        long delay = System.nanoTime() - readTime;
+        for (int i = 0; i < count; i++) {
+            counters.onChunkWritten();
+            actualDelay.record(delay);
         }
     }
 
     @SuppressWarnings("ByteBufferBackingArray")
-    private void hookupStreams(InputStream inputStream, OutputStream outputStream, String logHint) {
+    private void hookupStreams(InputStream inputStream, OutputStream outputStream, Toxic toxic,
+            StreamDirection direction, ConnectionMetrics connectionMetrics) {
+        String logHint = direction.name().toLowerCase(Locale.ROOT);
         logger.debug("Starting exchange {}", logHint);
-        ByteBuffer buffer = ByteBuffer.allocate(proxyConfig.bufSize());
+        TrafficCounters counters = connectionMetrics.getCounters(direction);
+        DelayHistogram actualDelay = metrics.getActualDelay(direction);
+        BufferPool.Lease lease = leaseBuffer(streamBuffers);
+        ByteBuffer buffer = lease.buffer();
         int len;
         try {
-            while (stopped.getCount() > 0 && (len = inputStream.read(buffer.array())) > 0) {
+            while (stopped.getCount() > 0
+                    && (len = inputStream.read(buffer.array(), buffer.arrayOffset(), awaitRead(toxic, buffer))) > 0) {
+                long readTime = System.nanoTime();
+                counters.onRead(len);
+                accountRead(toxic, len, readTime, counters);
                 buffer.limit(len);
-                for (ByteBuffer toxicBuffer: toxic.transformData(buffer)) {
-                    outputStream.write(toxicBuffer.array(), toxicBuffer.arrayOffset(), toxicBuffer.remaining());
+                captureData(connectionMetrics, direction, buffer);
+                mirrorData(connectionMetrics, direction, buffer);
+                Iterable<ByteBuffer> toxicBuffers = toxic.transformData(buffer);
+                // Chunks returned in a collection are due now and flushed together
+                boolean dueNow = toxicBuffers instanceof Collection;
+                for (ByteBuffer toxicBuffer: toxicBuffers) {
+                    outputStream.write(toxicBuffer.array(), toxicBuffer.arrayOffset() + toxicBuffer.position(),
+                            toxicBuffer.remaining());
+                    if (!dueNow) {
+                        outputStream.flush();
+                    }
+                    counters.onWrite(toxicBuffer.remaining());
+                    counters.onChunkWritten();
+                    actualDelay.record(System.nanoTime() - readTime);
+                }
+                if (dueNow) {
                     outputStream.flush();
                 }
             }
@@ -268,9 +672,79 @@ public class TcpProxy implements Interruptible {
         catch (IOException ex) {
             logger.error("Error in transmission", ex);
         }
+        finally {
+            lease.release();
+        }
+        captureEnd(connectionMetrics, direction);
+        mirrorEnd(connectionMetrics, direction);
         logger.debug("Done with exchange {}", logHint);
     }
 
+    // Waits till toxic allows reading and returns number of bytes to read
+    private static int awaitRead(Toxic toxic, ByteBuffer buffer) {
+        ReadPacing pacing = toxic.getReadPacing();
+        if (pacing == null) {
+            return buffer.capacity();
+        }
+        PreciseTiming.sleepUntil(pacing.nextReadTime());
+        return Math.min(buffer.capacity(), pacing.getReadSize());
+    }
+
+    private static void accountRead(Toxic toxic, int len, long readTime, TrafficCounters counters) {
+        ReadPacing pacing = toxic.getReadPacing();
+        if (pacing != null) {
+            counters.onBackpressure(pacing.onRead(len, readTime));
+        }
+    }
+
+    private static void setReceiveBuffer(Socket socket, Toxic toxic) {
+        int receiveBufferSize = toxic.getReceiveBufferSize();
+        if (receiveBufferSize > 0) {
+            try {
+                socket.setReceiveBufferSize(receiveBufferSize);
+            }
+            catch (SocketException ex) {
+                logger.debug("Can't set receive buffer - {}", ex.getMessage());
+            }
+        }
+    }
+
+    private BufferPool.Lease leaseBuffer(BufferPool bufferPool) {
+        BufferPool.Lease lease = bufferPool.lease();
+        if (!lease.isPooled()) {
+            metrics.onBufferPoolExhausted();
+        }
+        return lease;
+    }
+
+    private void captureData(ConnectionMetrics connectionMetrics, StreamDirection direction, ByteBuffer data) {
+        CaptureWriter captureWriter = capture;
+        if (captureWriter != null) {
+            captureWriter.append(connectionMetrics.getId(), direction, data);
+        }
+    }
+
+    private void captureEnd(ConnectionMetrics connectionMetrics, StreamDirection direction) {
+        CaptureWriter captureWriter = capture;
+        if (captureWriter != null) {
+            captureWriter.appendEnd(connectionMetrics.getId(), direction);
+        }
+    }
+
+    private void mirrorData(ConnectionMetrics connectionMetrics, StreamDirection direction, ByteBuffer data) {
+        ShadowMirror mirror = shadow;
+        if (mirror != null && direction == StreamDirection.DOWNSTREAM) {
+            mirror.append(connectionMetrics.getId(), data);
+        }
+    }
+
+    private void mirrorEnd(ConnectionMetrics connectionMetrics, StreamDirection direction) {
+        ShadowMirror mirror = shadow;
+        if (mirror != null && direction == StreamDirection.DOWNSTREAM) {
+            mirror.appendEnd(connectionMetrics.getId());
+        }
+    }
+
     // Force sending RST instead of FIN on a socket when closed
     private static void resetOnClose(Socket socket) {
         try {
@@ -0,0 +1,119 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Hashed timing wheel - timer that runs great number of short tasks with tick precision.
+ * Scheduling is O(1) and lock-free; tasks are run on the wheel thread, so they should only hand work over.
+ * Times are in {@link System#nanoTime()} scale.
+ */
+final class TimingWheel {
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<List<Timeout>> buckets;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread wheelThread;
+    private final long startNanos;
+    private volatile boolean running = true;
+    private long currentTick;
+
+    private record Timeout(long deadlineNanos, Runnable task) {
+    }
+
+    /**
+     * Creates the wheel
+     *
+     * @param tick duration of wheel tick
+     * @param wheelSize number of buckets, rounded up to power of two
+     * @param threadName name of wheel thread
+     */
+    TimingWheel(Duration tick, int wheelSize, String threadName) {
+        Utils.checkArgument(!tick.isNegative() && !tick.isZero(), "Tick duration should be positive");
+        Utils.checkArgument(wheelSize > 0, "Wheel size should be positive");
+        this.tickNanos = tick.toNanos();
+        int size = Integer.highestOneBit(wheelSize - 1 | 1) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.startNanos = System.nanoTime();
+        this.wheelThread = new Thread(this::run, threadName);
+        this.wheelThread.setDaemon(true);
+    }
+
+    /**
+     * Starts wheel thread
+     */
+    void start() {
+        wheelThread.start();
+    }
+
+    /**
+     * Stops wheel thread, pending tasks are dropped
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(wheelThread);
+    }
+
+    /**
+     * Schedules task to run at given time or on the next tick if the time has passed.
+     *
+     * @param deadlineNanos time to run the task
+     * @param task the task
+     */
+    void schedule(long deadlineNanos, Runnable task) {
+        newTimeouts.add(new Timeout(deadlineNanos, task));
+    }
+
+    private void run() {
+        while (running) {
+            long tickDeadline = startNanos + (currentTick + 1) * tickNanos;
+            long sleepNanos;
+            while (running && (sleepNanos = tickDeadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+            }
+            transferNewTimeouts();
+            expireBucket(buckets.get((int)(currentTick & mask)), tickDeadline);
+            currentTick++;
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            long ticks = Math.max(currentTick, (timeout.deadlineNanos() - startNanos) / tickNanos);
+            buckets.get((int)(ticks & mask)).add(timeout);
+        }
+    }
+
+    private static void expireBucket(List<Timeout> bucket, long tickDeadline) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.deadlineNanos() < tickDeadline) {
+                it.remove();
+                try {
+                    timeout.task().run();
+                }
+                catch (RuntimeException ex) {
+                    logger.error("Timer task failed", ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.Interruptible;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.aknopov.wssimulator.proxy.toxy.Toxic;
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
+
+/**
+ * Set of named toxics that can be changed while proxy is running. Every change is published atomically
+ * as a new immutable snapshot; live connections pick it up on the next data chunk,
+ * so forwarding doesn't need any locking. Toxics are applied in order they were added.
+ * <p>
+ * Use {@link ToxicControl#toxicFactory()} to create a proxy with {@link TcpProxy#createToxicProxy}.
+ */
+public final class ToxicControl {
+    private final AtomicReference<Snapshot> active = new AtomicReference<>(new Snapshot(0, List.of()));
+
+    /**
+     * Named toxic
+     *
+     * @param name unique name
+     * @param direction intoxicated direction, {@code null} for both directions
+     * @param type toxic type, see {@link ToxicTypes}
+     * @param attributes toxic attributes
+     * @param factory factory of toxic instances
+     */
+    public record Entry(String name, @Nullable StreamDirection direction, String type, Map<String, String> attributes,
+            ToxicFactory factory) {
+        public Entry {
+            attributes = Map.copyOf(attributes);
+        }
+
+        boolean appliesTo(StreamDirection streamDirection) {
+            return direction == null || direction == streamDirection;
+        }
+    }
+
+    /**
+     * Immutable version of toxic set
+     *
+     * @param version version that increases with each change
+     * @param entries toxics in order of application
+     */
+    record Snapshot(long version, List<Entry> entries) {
+    }
+
+    /**
+     * Adds toxic or replaces toxic with the same name keeping its position
+     *
+     * @param name toxic name
+     * @param direction intoxicated direction, {@code null} for both directions
+     * @param factory factory of toxic instances
+     */
+    public void set(String name, @Nullable StreamDirection direction, ToxicFactory factory) {
+        set(new Entry(name, direction, ToxicTypes.CUSTOM, Map.of(), factory));
+    }
+
+    /**
+     * Adds toxic of known type or replaces toxic with the same name keeping its position
+     *
+     * @param name toxic name
+     * @param direction intoxicated direction, {@code null} for both directions
+     * @param type toxic type
+     * @param attributes toxic attributes
+     * @throws IllegalArgumentException if type or attributes are invalid
+     */
+    public void set(String name, @Nullable StreamDirection direction, String type, Map<String, String> attributes) {
+        set(new Entry(name, direction, type, attributes, ToxicTypes.createFactory(type, attributes)));
+    }
+
+    /**
+     * Adds or replaces toxic
+     *
+     * @param entry toxic entry
+     */
+    public void set(Entry entry) {
+        update(entries -> {
+            List<Entry> newEntries = new ArrayList<>(entries);
+            int idx = indexOf(entries, entry.name());
+            if (idx < 0) {
+                newEntries.add(entry);
+            }
+            else {
+                newEntries.set(idx, entry);
+            }
+            return newEntries;
+        });
+    }
+
+    /**
+     * Removes toxic
+     *
+     * @param name toxic name
+     * @return {@code true} if toxic was removed
+     */
+    public boolean remove(String name) {
+        Snapshot previous = update(entries -> {
+            List<Entry> newEntries = new ArrayList<>(entries);
+            newEntries.removeIf(e -> e.name().equals(name));
+            return newEntries;
+        });
+        return indexOf(previous.entries(), name) >= 0;
+    }
+
+    /**
+     * Removes all toxics
+     */
+    public void clear() {
+        update(entries -> List.of());
+    }
+
+    /**
+     * Replaces all toxics at once
+     *
+     * @param entries new toxics in order of application
+     */
+    public void replaceAll(List<Entry> entries) {
+        Utils.checkArgument(entries.stream().map(Entry::name).distinct().count() == entries.size(),
+                "Toxic names should be unique");
+        update(old -> entries);
+    }
+
+    /**
+     * Gets active toxics
+     *
+     * @return toxics in order of application
+     */
+    public List<Entry> getEntries() {
+        return active.get().entries();
+    }
+
+    /**
+     * Gets factory of toxics that follow this control
+     *
+     * @return the factory
+     */
+    public ToxicFactory toxicFactory() {
+        return new ToxicFactory() {
+            @Override
+            public Toxic create(Interruptible connection) {
+                return create(connection, StreamDirection.DOWNSTREAM);
+            }
+
+            @Override
+            public Toxic create(Interruptible connection, StreamDirection direction) {
+                return new DynamicToxic(ToxicControl.this, connection, direction);
+            }
+        };
+    }
+
+    Snapshot getSnapshot() {
+        return active.get();
+    }
+
+    private Snapshot update(UnaryOperator<List<Entry>> change) {
+        while (true) {
+            Snapshot current = active.get();
+            Snapshot next = new Snapshot(current.version() + 1, List.copyOf(change.apply(current.entries())));
+            if (active.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    private static int indexOf(List<Entry> entries, String name) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).name().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
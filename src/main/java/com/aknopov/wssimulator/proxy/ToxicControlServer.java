@@ -0,0 +1,199 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP endpoint on localhost for changing toxics of running proxy, similar to toxiproxy API.
+ * Parameters are passed in query string or as form data, responses are JSON.
+ * <ul>
+ *     <li>{@code GET /toxics} - lists active toxics</li>
+ *     <li>{@code POST /toxics/<name>?type=latency&stream=upstream&latency=100&jitter=10} - adds or replaces toxic;
+ *     {@code stream} is {@code downstream}, {@code upstream} or omitted for both directions,
+ *     other parameters are toxic attributes, see {@link ToxicTypes}</li>
+ *     <li>{@code DELETE /toxics/<name>} - removes toxic</li>
+ *     <li>{@code DELETE /toxics} - removes all toxics</li>
+ * </ul>
+ */
+public final class ToxicControlServer {
+    private static final Logger logger = LoggerFactory.getLogger(ToxicControlServer.class);
+    private static final String TOXICS_PATH = "/toxics";
+
+    private final ToxicControl control;
+    private final HttpServer server;
+
+    /**
+     * Creates server bound to loopback address
+     *
+     * @param control controlled toxics
+     * @param port server port, {@code 0} for any free port
+     * @throws IOException if port can't be bound
+     */
+    public ToxicControlServer(ToxicControl control, int port) throws IOException {
+        this.control = control;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(TOXICS_PATH, this::handle);
+    }
+
+    /**
+     * Starts serving requests
+     */
+    public void start() {
+        server.start();
+        logger.debug("Started toxic control on port {}", getPort());
+    }
+
+    /**
+     * Stops the server
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Gets bound port
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String name = path.length() > TOXICS_PATH.length() + 1 ? path.substring(TOXICS_PATH.length() + 1) : "";
+            String method = exchange.getRequestMethod();
+            try {
+                if ("GET".equals(method) && name.isEmpty()) {
+                    sendResponse(exchange, 200, control.getEntries().stream()
+                            .map(ToxicControlServer::toJson)
+                            .collect(Collectors.joining(",", "[", "]")));
+                }
+                else if ("POST".equals(method) && !name.isEmpty()) {
+                    Map<String, String> attributes = parseParameters(exchange);
+                    String type = attributes.remove("type");
+                    if (type == null) {
+                        throw new IllegalArgumentException("Missing toxic type");
+                    }
+                    StreamDirection direction = parseDirection(attributes.remove("stream"));
+                    control.set(name, direction, type, attributes);
+                    sendResponse(exchange, 200, toJson(control.getEntries().stream()
+                            .filter(e -> e.name().equals(name))
+                            .findFirst()
+                            .orElseThrow()));
+                }
+                else if ("DELETE".equals(method)) {
+                    if (name.isEmpty()) {
+                        control.clear();
+                        sendResponse(exchange, 204, null);
+                    }
+                    else {
+                        sendResponse(exchange, control.remove(name) ? 204 : 404, null);
+                    }
+                }
+                else {
+                    sendResponse(exchange, 405, null);
+                }
+            }
+            catch (IllegalArgumentException ex) {
+                sendResponse(exchange, 400, "{\"error\":" + jsonString(ex.getMessage()) + "}");
+            }
+        }
+    }
+
+    @Nullable
+    private static StreamDirection parseDirection(@Nullable String stream) {
+        if (stream == null || stream.isEmpty()) {
+            return null;
+        }
+        return StreamDirection.valueOf(stream.toUpperCase(Locale.ROOT));
+    }
+
+    private static Map<String, String> parseParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parseQuery(exchange.getRequestURI().getRawQuery(), parameters);
+        parseQuery(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), parameters);
+        return parameters;
+    }
+
+    private static void parseQuery(@Nullable String query, Map<String, String> parameters) {
+        if (query == null || query.isBlank()) {
+            return;
+        }
+        for (String pair: query.trim().split("&")) {
+            int idx = pair.indexOf('=');
+            String key = idx < 0 ? pair : pair.substring(0, idx);
+            String value = idx < 0 ? "" : pair.substring(idx + 1);
+            parameters.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sendResponse(HttpExchange exchange, int status, @Nullable String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String toJson(ToxicControl.Entry entry) {
+        StreamDirection direction = entry.direction();
+        return "{\"name\":" + jsonString(entry.name())
+                + ",\"type\":" + jsonString(entry.type())
+                + ",\"stream\":" + (direction != null ? jsonString(direction.name().toLowerCase(Locale.ROOT)) : "null")
+                + ",\"attributes\":" + entry.attributes().entrySet().stream()
+                        .sorted(Map.Entry.comparingByKey())
+                        .map(e -> jsonString(e.getKey()) + ":" + jsonString(e.getValue()))
+                        .collect(Collectors.joining(",", "{", "}"))
+                + "}";
+    }
+
+    private static String jsonString(@Nullable String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c: value.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int)c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,141 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.util.Map;
+
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.ToxicBandwidth;
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
+import com.aknopov.wssimulator.proxy.toxy.ToxicInterrupter;
+import com.aknopov.wssimulator.proxy.toxy.ToxicLatency;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+import com.aknopov.wssimulator.proxy.toxy.ToxicReorder;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlicer;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlowReader;
+
+/**
+ * Toxics that can be created from type name and string attributes. Durations are in milliseconds.
+ * <ul>
+ *     <li>{@code latency} - {@code latency}, {@code jitter} (default 0), {@code start_delay} (default 0)</li>
+ *     <li>{@code bandwidth} - {@code rate} in KB/s, {@code burst} in bytes (default 16384),
+ *     {@code start_delay} (default 0)</li>
+ *     <li>{@code slow_reader} - {@code rate} in KB/s, {@code read_size} in bytes (default 1024),
+ *     {@code receive_buffer} in bytes (default 4096), {@code start_delay} (default 0)</li>
+ *     <li>{@code slicer} - {@code average_size} in bytes, {@code delay} (default 0)</li>
+ *     <li>{@code interrupter} - {@code timeout} till connection is closed</li>
+ *     <li>{@code reorder} - {@code reorder_rate} and {@code drop_rate} in percents (default 0),
+ *     {@code window} in chunks (default 8), {@code hold} (default 10), {@code start_delay} (default 0)</li>
+ *     <li>{@code noop} - no attributes</li>
+ * </ul>
+ */
+public final class ToxicTypes {
+    public static final String LATENCY = "latency";
+    public static final String BANDWIDTH = "bandwidth";
+    public static final String SLOW_READER = "slow_reader";
+    public static final String SLICER = "slicer";
+    public static final String INTERRUPTER = "interrupter";
+    public static final String REORDER = "reorder";
+    public static final String NOOP = "noop";
+    /**
+     * Type of toxics created from arbitrary factories
+     */
+    public static final String CUSTOM = "custom";
+
+    private static final int DEFAULT_BURST = 16384;
+    private static final int DEFAULT_READ_SIZE = 1024;
+    private static final int DEFAULT_RECEIVE_BUFFER = 4096;
+    private static final int DEFAULT_REORDER_WINDOW = 8;
+    private static final long DEFAULT_HOLD_MS = 10;
+
+    private ToxicTypes() {
+    }
+
+    /**
+     * Creates factory of toxics of given type
+     *
+     * @param type toxic type
+     * @param attributes toxic attributes
+     * @return toxic factory
+     * @throws IllegalArgumentException if type is unknown or attributes are invalid
+     */
+    public static ToxicFactory createFactory(String type, Map<String, String> attributes) {
+        return switch (type) {
+            case LATENCY -> {
+                Duration startDelay = getDuration(attributes, "start_delay", 0);
+                Duration latency = getDuration(attributes, "latency", -1);
+                Duration jitter = getDuration(attributes, "jitter", 0);
+                Utils.checkArgument(latency.compareTo(jitter) >= 0, "Average latency is less than jitter");
+                yield c -> new ToxicLatency(startDelay, latency, jitter);
+            }
+            case BANDWIDTH -> {
+                Duration startDelay = getDuration(attributes, "start_delay", 0);
+                long rate = getLong(attributes, "rate", -1) * 1024;
+                int burst = getInt(attributes, "burst", DEFAULT_BURST);
+                Utils.checkArgument(rate > 0 && burst > 0, "Rate and burst should be positive");
+                yield c -> new ToxicBandwidth(startDelay, rate, burst);
+            }
+            case SLOW_READER -> {
+                Duration startDelay = getDuration(attributes, "start_delay", 0);
+                long rate = getLong(attributes, "rate", -1) * 1024;
+                int readSize = getInt(attributes, "read_size", DEFAULT_READ_SIZE);
+                int receiveBuffer = getInt(attributes, "receive_buffer", DEFAULT_RECEIVE_BUFFER);
+                Utils.checkArgument(rate > 0 && readSize > 0, "Rate and read size should be positive");
+                yield c -> new ToxicSlowReader(startDelay, rate, readSize, receiveBuffer);
+            }
+            case SLICER -> {
+                int averageSize = getInt(attributes, "average_size", -1);
+                Utils.checkArgument(averageSize > 0, "Average size should be positive");
+                Duration delay = getDuration(attributes, "delay", 0);
+                yield c -> new ToxicSlicer(delay, averageSize);
+            }
+            case INTERRUPTER -> {
+                Duration timeout = getDuration(attributes, "timeout", -1);
+                yield c -> new ToxicInterrupter(timeout, c);
+            }
+            case REORDER -> {
+                Duration startDelay = getDuration(attributes, "start_delay", 0);
+                double reorderRate = getLong(attributes, "reorder_rate", 0) / 100.0;
+                double dropRate = getLong(attributes, "drop_rate", 0) / 100.0;
+                int window = getInt(attributes, "window", DEFAULT_REORDER_WINDOW);
+                Duration hold = getDuration(attributes, "hold", DEFAULT_HOLD_MS);
+                Utils.checkArgument(reorderRate + dropRate <= 1, "Sum of reorder and drop rates exceeds 100%");
+                Utils.checkArgument(window > 0, "Window size should be positive");
+                yield c -> new ToxicReorder(startDelay, reorderRate, dropRate, window, hold);
+            }
+            case NOOP -> c -> new ToxicNoop();
+            default -> throw new IllegalArgumentException("Unknown toxic type '" + type + "'");
+        };
+    }
+
+    private static Duration getDuration(Map<String, String> attributes, String name, long defaultMs) {
+        return Duration.ofMillis(getLong(attributes, name, defaultMs));
+    }
+
+    private static int getInt(Map<String, String> attributes, String name, int defaultValue) {
+        long value = getLong(attributes, name, defaultValue);
+        Utils.checkArgument(value <= Integer.MAX_VALUE, "Attribute '" + name + "' is too big");
+        return (int)value;
+    }
+
+    // Negative default means required attribute
+    private static long getLong(Map<String, String> attributes, String name, long defaultValue) {
+        String value = attributes.get(name);
+        if (value == null) {
+            if (defaultValue < 0) {
+                throw new IllegalArgumentException("Missing attribute '" + name + "'");
+            }
+            return defaultValue;
+        }
+        long result;
+        try {
+            result = Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid value of attribute '" + name + "': " + value, ex);
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException("Attribute '" + name + "' can't be negative");
+        }
+        return result;
+    }
+}
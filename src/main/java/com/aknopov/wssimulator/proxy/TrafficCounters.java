@@ -0,0 +1,118 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+/**
+ * Byte, chunk and write call counters of one traffic direction along with time the sender was held back.
+ * Connection counters also update counters of the whole proxy.
+ */
+public final class TrafficCounters {
+    @Nullable
+    private final TrafficCounters parent;
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder chunksRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder chunksWritten = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder backpressureNanos = new LongAdder();
+
+    TrafficCounters(@Nullable TrafficCounters parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Counts data chunk read from the source
+     *
+     * @param byteCount chunk size
+     */
+    void onRead(int byteCount) {
+        bytesRead.add(byteCount);
+        chunksRead.increment();
+        if (parent != null) {
+            parent.onRead(byteCount);
+        }
+    }
+
+    /**
+     * Counts write call to the target
+     *
+     * @param byteCount number of written bytes
+     */
+    void onWrite(long byteCount) {
+        bytesWritten.add(byteCount);
+        writes.increment();
+        if (parent != null) {
+            parent.onWrite(byteCount);
+        }
+    }
+
+    /**
+     * Counts data chunk that has been completely written
+     */
+    void onChunkWritten() {
+        chunksWritten.increment();
+        if (parent != null) {
+            parent.onChunkWritten();
+        }
+    }
+
+    /**
+     * Counts time the sender was held back by paced reading
+     *
+     * @param nanos hold time in nanoseconds
+     */
+    void onBackpressure(long nanos) {
+        if (nanos > 0) {
+            backpressureNanos.add(nanos);
+            if (parent != null) {
+                parent.onBackpressure(nanos);
+            }
+        }
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getChunksRead() {
+        return chunksRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getChunksWritten() {
+        return chunksWritten.sum();
+    }
+
+    /**
+     * Gets number of write calls. Chunks that are due at the same time can be written by one call.
+     *
+     * @return write count
+     */
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    /**
+     * Gets estimated time the sender was held back because reading was paced by a toxic, like
+     * {@link com.aknopov.wssimulator.proxy.toxy.ToxicSlowReader} - time data waited in the socket till proxy
+     * could read it. Aggregate counters sum times of all connections.
+     *
+     * @return backpressure time
+     */
+    public Duration getBackpressureTime() {
+        return Duration.ofNanos(backpressureNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "TrafficCounters{bytesRead=" + getBytesRead() + ", chunksRead=" + getChunksRead()
+                + ", bytesWritten=" + getBytesWritten() + ", chunksWritten=" + getChunksWritten()
+                + ", writes=" + getWrites() + ", backpressureTime=" + getBackpressureTime() + '}';
+    }
+}
@@ -0,0 +1,164 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.PreciseTiming;
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+/**
+ * Replays downstream data of a capture file against an upstream server on localhost.
+ * Each captured connection is opened at its original time relative to the first record and its data chunks
+ * are sent at original pace, optionally scaled. Responses are read and discarded. Capture file is streamed from
+ * memory-mapped regions.
+ */
+public class TrafficReplayer {
+    private static final Logger logger = LoggerFactory.getLogger(TrafficReplayer.class);
+    private static final int DRAIN_BUFFER_SIZE = 8192;
+
+    private final Path captureFile;
+    private final int upPort;
+    private final double speed;
+    private final Duration drainTimeout;
+    private final SocketFactory socketFactory;
+
+    /**
+     * Replay results
+     *
+     * @param connectionCount number of replayed connections
+     * @param bytesSent number of bytes sent upstream
+     * @param bytesReceived number of bytes received from upstream
+     */
+    public record ReplayResult(int connectionCount, long bytesSent, long bytesReceived) {
+    }
+
+    /**
+     * Creates replayer
+     *
+     * @param captureFile capture file
+     * @param upPort upstream port on localhost
+     * @param speed replay speed relative to original one, e.g. {@code 2.0} - twice as fast
+     * @param drainTimeout maximum time to wait for responses after all data is sent
+     */
+    public TrafficReplayer(Path captureFile, int upPort, double speed, Duration drainTimeout) {
+        this(captureFile, upPort, speed, drainTimeout, new SocketFactory());
+    }
+
+    // VisibleForTesting
+    TrafficReplayer(Path captureFile, int upPort, double speed, Duration drainTimeout, SocketFactory socketFactory) {
+        Utils.checkArgument(speed > 0, "Speed should be positive");
+        this.captureFile = captureFile;
+        this.upPort = upPort;
+        this.speed = speed;
+        this.drainTimeout = drainTimeout;
+        this.socketFactory = socketFactory;
+    }
+
+    /**
+     * Replays the capture, returns once all connections are done or drain timeout expires
+     *
+     * @return replay results
+     * @throws IOException if capture file can't be read or upstream connection fails
+     */
+    public ReplayResult replay() throws IOException {
+        Map<Long, ReplayConnection> connections = new HashMap<>();
+        ExecutorService readerExecutor = NamedThreadPool.createCachedPool("TrafficReplay");
+        LongAdder bytesReceived = new LongAdder();
+        long bytesSent = 0;
+        try (CaptureReader reader = new CaptureReader(captureFile)) {
+            long replayStart = System.nanoTime();
+            long firstTimestamp = -1;
+            while (reader.next()) {
+                // Idle time before the first record is skipped
+                if (firstTimestamp < 0) {
+                    firstTimestamp = reader.getTimestamp();
+                }
+                PreciseTiming.sleepUntil(replayStart
+                        + (long)((reader.getTimestamp() - firstTimestamp) / speed));
+                ReplayConnection connection = connections.get(reader.getConnectionId());
+                if (connection == null) {
+                    SocketChannel channel = socketFactory.creatUpstreamSocket(upPort).getChannel();
+                    connection = new ReplayConnection(channel,
+                            readerExecutor.submit(() -> drain(channel, bytesReceived)));
+                    connections.put(reader.getConnectionId(), connection);
+                }
+                if (reader.getDirection() != StreamDirection.DOWNSTREAM) {
+                    continue;
+                }
+                if (reader.isEndOfStream()) {
+                    connection.channel().shutdownOutput();
+                }
+                else {
+                    ByteBuffer payload = reader.getPayload();
+                    bytesSent += payload.remaining();
+                    while (payload.hasRemaining()) {
+                        connection.channel().write(payload);
+                    }
+                }
+            }
+            awaitResponses(connections);
+        }
+        finally {
+            for (ReplayConnection connection: connections.values()) {
+                connection.channel().close();
+            }
+            readerExecutor.shutdownNow();
+        }
+        return new ReplayResult(connections.size(), bytesSent, bytesReceived.sum());
+    }
+
+    private record ReplayConnection(SocketChannel channel, Future<?> reader) {
+    }
+
+    private void awaitResponses(Map<Long, ReplayConnection> connections) throws IOException {
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        for (ReplayConnection connection: connections.values()) {
+            if (!connection.channel().socket().isOutputShutdown()) {
+                connection.channel().shutdownOutput();
+            }
+            try {
+                connection.reader().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException ex) {
+                logger.debug("Replay connection hasn't been closed by upstream");
+            }
+            catch (ExecutionException ex) {
+                logger.debug("Replay connection failed", ex);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void drain(SocketChannel channel, LongAdder bytesReceived) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DRAIN_BUFFER_SIZE);
+        try {
+            int len;
+            while ((len = channel.read(buffer)) >= 0) {
+                bytesReceived.add(len);
+                buffer.clear();
+            }
+        }
+        catch (IOException ex) {
+            logger.debug("Replay connection closed - {}", ex.getMessage());
+        }
+    }
+}
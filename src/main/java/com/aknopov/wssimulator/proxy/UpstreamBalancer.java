@@ -0,0 +1,160 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Picks upstream node for accepted connection according to balance strategy. Nodes marked down after failed
+ * connect are skipped till their down time passes. When all nodes are down, the ones that aren't killed are picked
+ * regardless, so that a route with a single upstream keeps trying it.
+ * <p>
+ * Consistent hashing places {@value #VIRTUAL_NODES} points of each node on a ring of 64-bit hashes. Client address
+ * and port go to the first point at or after their hash that belongs to a node which is up. The port is hashed too,
+ * since all clients of the localhost proxy share the same address.
+ */
+final class UpstreamBalancer {
+    static final int VIRTUAL_NODES = 160;
+
+    private final List<UpstreamNode> nodes;
+    private final BalanceStrategy strategy;
+    private final long downNanos;
+    private final AtomicInteger nextNode = new AtomicInteger();
+    // Sorted hashes of ring points and indices of their nodes
+    private final long[] ringHashes;
+    private final int[] ringNodes;
+
+    private record RingPoint(long hash, int node) {
+    }
+
+    /**
+     * Creates balancer
+     *
+     * @param nodes upstream nodes with distinct ports
+     * @param strategy balance strategy
+     * @param downTime time node is skipped after a failed connect
+     */
+    UpstreamBalancer(List<UpstreamNode> nodes, BalanceStrategy strategy, Duration downTime) {
+        Utils.checkArgument(!nodes.isEmpty(), "There should be at least one upstream");
+        Utils.checkArgument(nodes.stream().mapToInt(UpstreamNode::getPort).distinct().count() == nodes.size(),
+                "Upstream ports should be distinct");
+        Utils.checkArgument(!downTime.isNegative(), "Down time can't be negative");
+        this.nodes = List.copyOf(nodes);
+        this.strategy = strategy;
+        this.downNanos = downTime.toNanos();
+
+        int ringSize = strategy == BalanceStrategy.CONSISTENT_HASH ? nodes.size() * VIRTUAL_NODES : 0;
+        RingPoint[] points = new RingPoint[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            int node = i / VIRTUAL_NODES;
+            points[i] = new RingPoint(mix(((long)nodes.get(node).getPort() << 32) | (i % VIRTUAL_NODES)), node);
+        }
+        Arrays.sort(points, Comparator.comparingLong(RingPoint::hash));
+        this.ringHashes = Arrays.stream(points).mapToLong(RingPoint::hash).toArray();
+        this.ringNodes = Arrays.stream(points).mapToInt(RingPoint::node).toArray();
+    }
+
+    List<UpstreamNode> getNodes() {
+        return nodes;
+    }
+
+    BalanceStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Picks node for a new connection
+     *
+     * @param clientAddress address and port of downstream client or {@code null} if it is unknown
+     * @return the node or {@code null} if all nodes are killed
+     */
+    @Nullable
+    UpstreamNode select(@Nullable InetSocketAddress clientAddress) {
+        UpstreamNode node = select(clientAddress, true);
+        return node != null ? node : select(clientAddress, false);
+    }
+
+    /**
+     * Marks node down after failed connect
+     *
+     * @param node the node
+     */
+    void onFailure(UpstreamNode node) {
+        node.markDown(downNanos);
+    }
+
+    @Nullable
+    private UpstreamNode select(@Nullable InetSocketAddress clientAddress, boolean upOnly) {
+        return switch (strategy) {
+            case ROUND_ROBIN -> roundRobin(upOnly);
+            case LEAST_CONNECTIONS -> leastConnections(upOnly);
+            case CONSISTENT_HASH -> consistentHash(clientAddress, upOnly);
+        };
+    }
+
+    @Nullable
+    private UpstreamNode roundRobin(boolean upOnly) {
+        for (int i = 0; i < nodes.size(); i++) {
+            UpstreamNode node = nodes.get(Math.floorMod(nextNode.getAndIncrement(), nodes.size()));
+            if (isEligible(node, upOnly)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    // Ties are broken in turn
+    @Nullable
+    private UpstreamNode leastConnections(boolean upOnly) {
+        int start = Math.floorMod(nextNode.getAndIncrement(), nodes.size());
+        UpstreamNode best = null;
+        for (int i = 0; i < nodes.size(); i++) {
+            UpstreamNode node = nodes.get((start + i) % nodes.size());
+            if (isEligible(node, upOnly)
+                    && (best == null || node.getConnectionCount() < best.getConnectionCount())) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    @Nullable
+    private UpstreamNode consistentHash(@Nullable InetSocketAddress clientAddress, boolean upOnly) {
+        long hash = mix(clientAddress != null ? clientHash(clientAddress) : 0);
+        int point = Arrays.binarySearch(ringHashes, hash);
+        if (point < 0) {
+            point = -point - 1;
+        }
+        for (int i = 0; i < ringHashes.length; i++) {
+            UpstreamNode node = nodes.get(ringNodes[(point + i) % ringHashes.length]);
+            if (isEligible(node, upOnly)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static long clientHash(InetSocketAddress clientAddress) {
+        byte[] ip = clientAddress.getAddress() != null ? clientAddress.getAddress().getAddress() : new byte[0];
+        return ((long)Arrays.hashCode(ip) << 32) | clientAddress.getPort();
+    }
+
+    private static boolean isEligible(UpstreamNode node, boolean upOnly) {
+        return upOnly ? node.isUp() : !node.isKilled();
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,106 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
+
+/**
+ * Upstream of a balanced route with its own toxics. Node keeps track of its connections - active and total
+ * count give how evenly load spreads. Node is marked down for a while when connect to it fails and can be killed,
+ * see {@link ProxyRoute#killUpstream(int)}.
+ * <p>
+ * Node instance keeps state of one route, so it shouldn't be shared by routes.
+ */
+public final class UpstreamNode {
+    private final int port;
+    private final ToxicFactory toxicFactory;
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long downUntilNanos = System.nanoTime();
+    private volatile boolean killed;
+
+    /**
+     * Creates the node
+     *
+     * @param port upstream port
+     * @param toxicFactory factory of toxics of node connections
+     */
+    public UpstreamNode(int port, ToxicFactory toxicFactory) {
+        this.port = port;
+        this.toxicFactory = toxicFactory;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ToxicFactory getToxicFactory() {
+        return toxicFactory;
+    }
+
+    /**
+     * Tells if node takes new connections - it isn't killed or marked down after a failure
+     *
+     * @return {@code true} if node is up
+     */
+    public boolean isUp() {
+        return !killed && System.nanoTime() - downUntilNanos >= 0;
+    }
+
+    public boolean isKilled() {
+        return killed;
+    }
+
+    /**
+     * Gets number of active connections of the node
+     *
+     * @return connection count
+     */
+    public int getConnectionCount() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Gets number of connections given to the node since route start
+     *
+     * @return connection count
+     */
+    public long getTotalConnections() {
+        return totalConnections.sum();
+    }
+
+    /**
+     * Gets number of failed connects to the node
+     *
+     * @return failure count
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    void onOpen() {
+        activeConnections.incrementAndGet();
+        totalConnections.increment();
+    }
+
+    void onClose() {
+        activeConnections.decrementAndGet();
+    }
+
+    void markDown(long downNanos) {
+        failures.increment();
+        downUntilNanos = System.nanoTime() + downNanos;
+    }
+
+    void setKilled(boolean killed) {
+        this.killed = killed;
+    }
+
+    @Override
+    public String toString() {
+        return "UpstreamNode{port=" + port + ", up=" + isUp() + ", connections=" + getConnectionCount()
+                + ", total=" + getTotalConnections() + ", failures=" + getFailures() + '}';
+    }
+}
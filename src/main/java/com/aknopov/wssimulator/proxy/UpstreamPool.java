@@ -0,0 +1,204 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Warm pool of connections to upstream port established before they are needed, so that accepted connection
+ * doesn't wait for an upstream connect round trip. Pool thread keeps the pool full - it replaces connections
+ * handed out and the ones that stayed idle longer than idle time, since upstream servers might close them.
+ * The most recently connected socket is handed out first.
+ * <p>
+ * Note that pooled connections are accepted by upstream server ahead of time - the pool doesn't suit
+ * servers that accept a single connection, like server simulator.
+ */
+final class UpstreamPool {
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamPool.class);
+    private static final long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int upPort;
+    private final int size;
+    private final long idleNanos;
+    private final SocketFactory socketFactory;
+    private final ProxyMetrics metrics;
+    private final Deque<IdleSocket> idleSockets = new ArrayDeque<>();
+    private final LongAdder evictions = new LongAdder();
+    private final Thread poolThread;
+    private volatile boolean running = true;
+
+    private record IdleSocket(Socket socket, long sinceNanos) {
+    }
+
+    /**
+     * Creates the pool
+     *
+     * @param upPort upstream port
+     * @param size number of idle connections to keep
+     * @param idleTime maximum time a connection stays in the pool
+     * @param socketFactory factory of upstream sockets
+     * @param metrics metrics to record pool hits and misses to
+     */
+    UpstreamPool(int upPort, int size, Duration idleTime, SocketFactory socketFactory, ProxyMetrics metrics) {
+        Utils.checkArgument(size > 0, "Pool size should be positive");
+        Utils.checkArgument(!idleTime.isNegative() && !idleTime.isZero(), "Idle time should be positive");
+        this.upPort = upPort;
+        this.size = size;
+        this.idleNanos = idleTime.toNanos();
+        this.socketFactory = socketFactory;
+        this.metrics = metrics;
+        this.poolThread = new Thread(this::run, "UpstreamPool-" + upPort);
+        this.poolThread.setDaemon(true);
+    }
+
+    /**
+     * Starts filling the pool
+     */
+    void start() {
+        poolThread.start();
+    }
+
+    /**
+     * Stops pool thread and closes idle connections
+     */
+    void stop() {
+        running = false;
+        poolThread.interrupt();
+        List<Socket> sockets = new ArrayList<>();
+        synchronized (this) {
+            idleSockets.forEach(s -> sockets.add(s.socket()));
+            idleSockets.clear();
+        }
+        sockets.forEach(UpstreamPool::closeSocket);
+    }
+
+    /**
+     * Takes connected upstream socket from the pool
+     *
+     * @return the socket or {@code null} if the pool is empty
+     */
+    @Nullable
+    Socket poll() {
+        IdleSocket idleSocket;
+        synchronized (this) {
+            idleSocket = idleSockets.pollLast();
+            notifyAll();
+        }
+        if (idleSocket == null) {
+            metrics.onUpstreamPoolMiss();
+            return null;
+        }
+        metrics.onUpstreamPoolHit();
+        return idleSocket.socket();
+    }
+
+    /**
+     * Gets number of connections waiting in the pool
+     *
+     * @return idle connection count
+     */
+    synchronized int getIdleCount() {
+        return idleSockets.size();
+    }
+
+    /**
+     * Gets number of connections closed for staying idle too long
+     *
+     * @return eviction count
+     */
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    private void run() {
+        logger.debug("Started upstream pool of port {}", upPort);
+        try {
+            while (running) {
+                evictExpired().forEach(UpstreamPool::closeSocket);
+                if (isFull()) {
+                    awaitChange();
+                    continue;
+                }
+                Socket socket;
+                try {
+                    socket = socketFactory.creatUpstreamSocket(upPort);
+                }
+                catch (IOException ex) {
+                    logger.debug("Failed to pre-connect port {} - {}", upPort, ex.getMessage());
+                    awaitRetry();
+                    continue;
+                }
+                if (!offer(socket)) {
+                    closeSocket(socket);
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            // stopped
+        }
+        logger.debug("Stopped upstream pool of port {}", upPort);
+    }
+
+    private synchronized boolean isFull() {
+        return idleSockets.size() >= size;
+    }
+
+    private synchronized boolean offer(Socket socket) {
+        if (!running || idleSockets.size() >= size) {
+            return false;
+        }
+        idleSockets.addLast(new IdleSocket(socket, System.nanoTime()));
+        return true;
+    }
+
+    private synchronized List<Socket> evictExpired() {
+        List<Socket> expired = new ArrayList<>();
+        long now = System.nanoTime();
+        IdleSocket oldest;
+        while ((oldest = idleSockets.peekFirst()) != null && now - oldest.sinceNanos() >= idleNanos) {
+            expired.add(idleSockets.removeFirst().socket());
+        }
+        evictions.add(expired.size());
+        return expired;
+    }
+
+    // Waits till a socket is taken or the oldest one expires
+    private synchronized void awaitChange() throws InterruptedException {
+        IdleSocket oldest = idleSockets.peekFirst();
+        if (running && oldest != null && idleSockets.size() >= size) {
+            long waitNanos = oldest.sinceNanos() + idleNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            }
+        }
+    }
+
+    private synchronized void awaitRetry() throws InterruptedException {
+        if (running) {
+            TimeUnit.NANOSECONDS.timedWait(this, RETRY_NANOS);
+        }
+    }
+
+    private static void closeSocket(Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            //ignore
+        }
+    }
+}
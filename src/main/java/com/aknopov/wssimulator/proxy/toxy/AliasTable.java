@@ -0,0 +1,86 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.util.SplittableRandom;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Distribution of histogram sampled with alias method (Vose) - a bucket is chosen in O(1) regardless of bucket count
+ * and a sample is uniformly distributed within the bucket.
+ */
+final class AliasTable implements LatencyDistribution {
+    private final long[] lowerNanos;
+    private final long[] widthNanos;
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    /**
+     * Creates table
+     *
+     * @param boundNanos ascending bucket bounds in nanoseconds, one more than buckets
+     * @param counts number of samples in buckets
+     */
+    AliasTable(long[] boundNanos, long[] counts) {
+        int size = counts.length;
+        this.lowerNanos = new long[size];
+        this.widthNanos = new long[size];
+        this.probabilities = new double[size];
+        this.aliases = new int[size];
+
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            Utils.checkArgument(counts[i] >= 0, "Bucket counts can't be negative");
+            total += counts[i];
+            lowerNanos[i] = Math.min(boundNanos[i], QuantileTable.MAX_NANOS);
+            widthNanos[i] = Math.min(boundNanos[i + 1], QuantileTable.MAX_NANOS) - lowerNanos[i];
+        }
+        Utils.checkArgument(total > 0, "Histogram is empty");
+
+        // Split buckets into the ones under and over average weight
+        double[] weights = new double[size];
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            weights[i] = (double)counts[i] * size / total;
+            if (weights[i] < 1) {
+                small[smallCount++] = i;
+            }
+            else {
+                large[largeCount++] = i;
+            }
+        }
+        // Each cell holds an underweight bucket topped up by an overweight one
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probabilities[less] = weights[less];
+            aliases[less] = more;
+            weights[more] += weights[less] - 1;
+            if (weights[more] < 1) {
+                small[smallCount++] = more;
+            }
+            else {
+                large[largeCount++] = more;
+            }
+        }
+        // Leftovers are full up to rounding errors
+        while (largeCount > 0) {
+            probabilities[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probabilities[small[--smallCount]] = 1;
+        }
+    }
+
+    @Override
+    public long nextNanos(SplittableRandom random) {
+        int bucket = random.nextInt(probabilities.length);
+        if (random.nextDouble() >= probabilities[bucket]) {
+            bucket = aliases[bucket];
+        }
+        long width = widthNanos[bucket];
+        return width > 0 ? lowerNanos[bucket] + random.nextLong(width) : lowerNanos[bucket];
+    }
+}
@@ -0,0 +1,43 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Timeline of data delivery in one proxy direction. Non-blocking toxics delay data
+ * by moving the timeline forward instead of sleeping. Times are in {@link System#nanoTime()} scale.
+ */
+public interface DeliverySchedule {
+    /**
+     * Gets time at which next delivered chunk is due
+     *
+     * @return due time
+     */
+    long dueTime();
+
+    /**
+     * Postpones delivery of following chunks. Times earlier than current due time are ignored,
+     * so that data order is preserved.
+     *
+     * @param nanoTime new due time
+     */
+    void delayUntil(long nanoTime);
+
+    /**
+     * Schedules chunk for delivery at current due time. The chunk should not be modified afterward.
+     *
+     * @param chunk data chunk
+     */
+    void deliver(ByteBuffer chunk);
+
+    /**
+     * Schedules chunk for delivery at the given time regardless of data order - following chunks
+     * can overtake it. Doesn't change current due time. Schedules that keep data order deliver chunk
+     * at current due time.
+     *
+     * @param chunk data chunk
+     * @param nanoTime delivery time
+     */
+    default void deliverAt(ByteBuffer chunk, long nanoTime) {
+        deliver(chunk);
+    }
+}
@@ -0,0 +1,147 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Distribution of data latency. Apart from uniform distribution, samples are drawn from tables precomputed
+ * on creation - inverse CDF arrays for analytical distributions and alias tables for empirical ones,
+ * so sampling costs O(1) regardless of distribution. Samples are clamped to range [0, 1 hour].
+ * <p>
+ * Distributions are immutable and can be shared by connections, while random generators are not -
+ * each toxic keeps its own generator.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    /**
+     * Draws latency sample
+     *
+     * @param random random generator
+     * @return latency in nanoseconds
+     */
+    long nextNanos(SplittableRandom random);
+
+    /**
+     * Creates distribution with latency uniformly spread over {@code [latency - jitter, latency + jitter]}
+     *
+     * @param latency average latency
+     * @param jitter maximum deviation from average latency, not greater than latency
+     * @return uniform distribution
+     */
+    static LatencyDistribution uniform(Duration latency, Duration jitter) {
+        Utils.checkArgument(!jitter.isNegative(), "Jitter can't be negative");
+        Utils.checkArgument(latency.compareTo(jitter) >= 0, "Average latency is less than jitter");
+        long latencyNanos = latency.toNanos();
+        long jitterNanos = jitter.toNanos();
+        return random -> latencyNanos + random.nextLong(-jitterNanos, jitterNanos + 1);
+    }
+
+    /**
+     * Creates normal distribution. Negative samples are clamped to zero.
+     *
+     * @param mean mean latency
+     * @param stdDev standard deviation
+     * @return normal distribution
+     */
+    static LatencyDistribution normal(Duration mean, Duration stdDev) {
+        Utils.checkArgument(!mean.isNegative(), "Mean latency can't be negative");
+        Utils.checkArgument(!stdDev.isNegative(), "Standard deviation can't be negative");
+        double meanNanos = mean.toNanos();
+        double stdDevNanos = stdDev.toNanos();
+        return new QuantileTable(p -> meanNanos + stdDevNanos * QuantileTable.inverseNormal(p));
+    }
+
+    /**
+     * Creates log-normal distribution - latency logarithm is distributed normally.
+     * The distribution has long tail to the right, as latency of real networks.
+     *
+     * @param median median latency
+     * @param sigma standard deviation of latency logarithm; e.g. {@code 0.5} gives p99 about 3.2 medians
+     * @return log-normal distribution
+     */
+    static LatencyDistribution logNormal(Duration median, double sigma) {
+        Utils.checkArgument(!median.isNegative() && !median.isZero(), "Median latency should be positive");
+        Utils.checkArgument(sigma > 0, "Sigma should be positive");
+        double medianNanos = median.toNanos();
+        return new QuantileTable(p -> medianNanos * Math.exp(sigma * QuantileTable.inverseNormal(p)));
+    }
+
+    /**
+     * Creates Pareto distribution - power-law tail, where rare latencies are far larger than typical ones
+     *
+     * @param minimum minimum latency (scale)
+     * @param shape tail index; the smaller the heavier the tail - mean is infinite for shape &lt;= 1
+     * @return Pareto distribution
+     */
+    static LatencyDistribution pareto(Duration minimum, double shape) {
+        Utils.checkArgument(!minimum.isNegative() && !minimum.isZero(), "Minimum latency should be positive");
+        Utils.checkArgument(shape > 0, "Shape should be positive");
+        double minimumNanos = minimum.toNanos();
+        return new QuantileTable(p -> minimumNanos / Math.pow(1 - p, 1 / shape));
+    }
+
+    /**
+     * Creates distribution from latency histogram, latencies are uniform within a bucket
+     *
+     * @param bucketBounds bounds of histogram buckets in ascending order - one more than bucket count;
+     *                     bucket {@code i} spans {@code [bucketBounds[i], bucketBounds[i + 1])}
+     * @param counts number of samples in buckets
+     * @return empirical distribution
+     */
+    static LatencyDistribution empirical(Duration[] bucketBounds, long[] counts) {
+        Utils.checkArgument(counts.length > 0 && bucketBounds.length == counts.length + 1,
+                "There should be one more bucket bound than bucket counts");
+        long[] boundNanos = new long[bucketBounds.length];
+        for (int i = 0; i < bucketBounds.length; i++) {
+            boundNanos[i] = bucketBounds[i].toNanos();
+            Utils.checkArgument(boundNanos[i] >= 0, "Bucket bounds can't be negative");
+            Utils.checkArgument(i == 0 || boundNanos[i] >= boundNanos[i - 1], "Bucket bounds should be ascending");
+        }
+        return new AliasTable(boundNanos, counts);
+    }
+
+    /**
+     * Loads empirical distribution from histogram file, such as an export of production RTTs.
+     * Each line holds bucket upper bound in microseconds and sample count, separated by spaces or a comma.
+     * Lower bound of a bucket is the upper bound of the previous one, zero for the first bucket.
+     * Empty lines and lines starting with {@code #} are skipped.
+     *
+     * @param histogramFile histogram file
+     * @return empirical distribution
+     * @throws IOException if file can't be read
+     * @throws IllegalArgumentException if file has invalid format
+     */
+    static LatencyDistribution empirical(Path histogramFile) throws IOException {
+        List<Duration> bounds = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        bounds.add(Duration.ZERO);
+        try (BufferedReader reader = Files.newBufferedReader(histogramFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("[\\s,]+");
+                Utils.checkArgument(fields.length == 2, "Invalid histogram line '" + line + "'");
+                try {
+                    bounds.add(Duration.ofNanos(Math.round(Double.parseDouble(fields[0]) * 1000)));
+                    counts.add(Long.parseLong(fields[1]));
+                }
+                catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid histogram line '" + line + "'", ex);
+                }
+            }
+        }
+        return empirical(bounds.toArray(new Duration[0]), counts.stream().mapToLong(Long::longValue).toArray());
+    }
+}
@@ -0,0 +1,94 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Distribution sampled with precomputed inverse CDF - quantiles at {@value #TABLE_SIZE} equidistant probabilities
+ * are linearly interpolated. The first and the last cells hold the distribution tails, where linear interpolation
+ * is poor, so samples falling into them are computed exactly. That costs a call of inverse CDF
+ * in {@code 2/}{@value #TABLE_SIZE} of samples.
+ */
+final class QuantileTable implements LatencyDistribution {
+    static final int TABLE_SIZE = 4096;
+    static final long MAX_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    // Coefficients of rational approximations of inverse normal CDF by P. J. Acklam
+    private static final double[] A = {
+            -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+            1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00
+    };
+    private static final double[] B = {
+            -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+            6.680131188771972e+01, -1.328068155288572e+01
+    };
+    private static final double[] C = {
+            -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+            -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00
+    };
+    private static final double[] D = {
+            7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00, 3.754408661907416e+00
+    };
+    private static final double P_LOW = 0.02425;
+
+    private final DoubleUnaryOperator inverseCdf;
+    private final double[] quantiles = new double[TABLE_SIZE + 1];
+
+    /**
+     * Creates table
+     *
+     * @param inverseCdf inverse cumulative distribution function - maps probability to latency in nanoseconds
+     */
+    QuantileTable(DoubleUnaryOperator inverseCdf) {
+        this.inverseCdf = inverseCdf;
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            quantiles[i] = inverseCdf.applyAsDouble((double)i / TABLE_SIZE);
+        }
+    }
+
+    @Override
+    public long nextNanos(SplittableRandom random) {
+        double position = random.nextDouble() * TABLE_SIZE;
+        int cell = (int)position;
+        double nanos = cell == 0 || cell >= TABLE_SIZE - 1
+                ? inverseCdf.applyAsDouble(position / TABLE_SIZE)
+                : quantiles[cell] + (quantiles[cell + 1] - quantiles[cell]) * (position - cell);
+        return clamp(nanos);
+    }
+
+    // Also maps NaN to zero
+    private static long clamp(double nanos) {
+        return nanos > 0 ? (long)Math.min(nanos, MAX_NANOS) : 0;
+    }
+
+    /**
+     * Computes inverse CDF of standard normal distribution with relative error below 1.2e-9
+     *
+     * @param p probability
+     * @return standard normal quantile; infinity for {@code p} of 0 or 1
+     */
+    static double inverseNormal(double p) {
+        if (p <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (p >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (p < P_LOW) {
+            return tail(Math.sqrt(-2 * Math.log(p)));
+        }
+        if (p > 1 - P_LOW) {
+            return -tail(Math.sqrt(-2 * Math.log(1 - p)));
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((A[0] * r + A[1]) * r + A[2]) * r + A[3]) * r + A[4]) * r + A[5]) * q
+                / (((((B[0] * r + B[1]) * r + B[2]) * r + B[3]) * r + B[4]) * r + 1);
+    }
+
+    private static double tail(double q) {
+        return (((((C[0] * q + C[1]) * q + C[2]) * q + C[3]) * q + C[4]) * q + C[5])
+                / ((((D[0] * q + D[1]) * q + D[2]) * q + D[3]) * q + 1);
+    }
+}
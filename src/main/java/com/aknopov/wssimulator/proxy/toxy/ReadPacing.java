@@ -0,0 +1,67 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.util.concurrent.TimeUnit;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Budget of reads from a socket - proxy reads at most read size bytes at a time and postpones next read
+ * till the average rate fits the limit. Data left unread fills socket receive buffer and TCP flow control
+ * eventually blocks the sender.
+ * <p>
+ * Pacing is not thread-safe - it is used by the thread reading connection direction.
+ */
+public final class ReadPacing {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final int readSize;
+    private long nextReadTime = System.nanoTime();
+    private long lastReadTime;
+    private boolean lastReadFull;
+
+    /**
+     * Creates pacing
+     *
+     * @param bytesPerSecond read rate limit
+     * @param readSize maximum number of bytes read at a time
+     */
+    public ReadPacing(long bytesPerSecond, int readSize) {
+        Utils.checkArgument(bytesPerSecond > 0, "Read rate should be positive");
+        Utils.checkArgument(readSize > 0, "Read size should be positive");
+        this.bytesPerSecond = bytesPerSecond;
+        this.readSize = readSize;
+    }
+
+    public int getReadSize() {
+        return readSize;
+    }
+
+    /**
+     * Gets time when next read is allowed, in {@link System#nanoTime()} scale
+     *
+     * @return next read time
+     */
+    public long nextReadTime() {
+        return nextReadTime;
+    }
+
+    /**
+     * Accounts read data. Previous read that filled whole read size most likely left data in the socket,
+     * so the time since then is counted as time the sender was held back.
+     *
+     * @param byteCount number of read bytes
+     * @param readNanos time of the read
+     * @return nanoseconds the sender was held back before this read
+     */
+    public long onRead(int byteCount, long readNanos) {
+        long heldNanos = lastReadFull ? Math.max(0, readNanos - lastReadTime) : 0;
+        lastReadFull = byteCount >= readSize;
+        lastReadTime = readNanos;
+        if (nextReadTime - readNanos < 0) {
+            nextReadTime = readNanos;
+        }
+        nextReadTime += byteCount * NANOS_PER_SECOND / bytesPerSecond;
+        return heldNanos;
+    }
+}
@@ -0,0 +1,15 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+/**
+ * Direction of proxied data
+ */
+public enum StreamDirection {
+    /**
+     * From connecting client to upstream server
+     */
+    DOWNSTREAM,
+    /**
+     * From upstream server back to the client
+     */
+    UPSTREAM
+}
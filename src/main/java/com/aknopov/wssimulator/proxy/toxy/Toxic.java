@@ -54,6 +54,47 @@ public abstract class Toxic {
         return !stopped && !Instant.now().isBefore(startTime);
     }
 
+    /**
+     * Tells if toxic can only transform data by blocking calling thread, for example by sleeping.
+     * Blocking toxics are not run on proxy event loops. Non-blocking toxics are run
+     * with {@link Toxic#transformData(ByteBuffer, DeliverySchedule)}.
+     *
+     * @return {@code true} unless toxic is known to return immediately
+     */
+    public boolean isBlocking() {
+        return true;
+    }
+
+    /**
+     * Tells if toxic passes data unchanged, so that proxy can skip the transformation.
+     *
+     * @return {@code true} if toxic has no effect on data
+     */
+    public boolean isPassThrough() {
+        return false;
+    }
+
+    /**
+     * Gets receive buffer size (SO_RCVBUF) to set on the socket the toxic direction reads from.
+     * Small buffer makes throttled reading reach the sender sooner.
+     *
+     * @return buffer size or {@code 0} to keep system default
+     */
+    public int getReceiveBufferSize() {
+        return 0;
+    }
+
+    /**
+     * Gets pacing of reads from the socket the toxic direction reads from. Unlike delays of read data,
+     * paced reading throttles the sender by TCP backpressure.
+     *
+     * @return read pacing or {@code null} if data is read as soon as it arrives
+     */
+    @Nullable
+    public ReadPacing getReadPacing() {
+        return null;
+    }
+
     /**
      * Transforms original data by splitting, modifying it and/or applying delay.
      *
@@ -61,4 +102,17 @@ public abstract class Toxic {
      * @return transformed data
      */
     public abstract Iterable<ByteBuffer> transformData(ByteBuffer inData);
+
+    /**
+     * Transforms original data without blocking - delays are applied to delivery schedule.
+     * Default implementation delivers result of {@link Toxic#transformData(ByteBuffer)} right away.
+     *
+     * @param inData original data
+     * @param schedule delivery schedule of transformed data
+     */
+    public void transformData(ByteBuffer inData, DeliverySchedule schedule) {
+        for (ByteBuffer chunk: transformData(inData)) {
+            schedule.deliver(chunk);
+        }
+    }
 }
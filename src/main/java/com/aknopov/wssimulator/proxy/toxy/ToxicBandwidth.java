@@ -0,0 +1,114 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import com.aknopov.wssimulator.PreciseTiming;
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * ToxicBandwidth limits throughput with a token bucket. Data is sliced to burst size pieces
+ * that are paced with nanosecond precision, so that average rate doesn't exceed the limit.
+ * Each instance has its own bucket, thus the limit applies per connection direction.
+ */
+public class ToxicBandwidth extends Toxic {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final int burstSize;
+    private final long burstNanos;
+    // Theoretical time when the bucket gets full again
+    private long fullTime = System.nanoTime();
+
+    /**
+     * Creates the instance
+     *
+     * @param startDelay start delay of toxic
+     * @param bytesPerSecond throughput limit
+     * @param burstSize bucket size - maximum number of bytes passed without pause
+     */
+    public ToxicBandwidth(Duration startDelay, long bytesPerSecond, int burstSize) {
+        super(startDelay);
+
+        Utils.checkArgument(bytesPerSecond > 0, "Throughput limit should be positive");
+        Utils.checkArgument(burstSize > 0, "Burst size should be positive");
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstSize = burstSize;
+        this.burstNanos = transmissionNanos(burstSize);
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
+        return () -> new PacedIterator(inData);
+    }
+
+    @Override
+    public void transformData(ByteBuffer inData, DeliverySchedule schedule) {
+        boolean throttled = canStart();
+        for (int offset = inData.position(); offset < inData.limit(); offset += burstSize) {
+            int sliceLength = Math.min(burstSize, inData.limit() - offset);
+            if (throttled) {
+                // Preceding toxics may have already delayed data
+                schedule.delayUntil(reserve(sliceLength, schedule.dueTime()));
+            }
+            schedule.deliver(inData.slice(offset, sliceLength));
+        }
+    }
+
+    // Takes tokens for the given number of bytes and returns time when the bytes can be sent
+    private long reserve(int byteCount, long now) {
+        if (fullTime - now < 0) {
+            fullTime = now;
+        }
+        fullTime += transmissionNanos(byteCount);
+        long dueTime = fullTime - burstNanos;
+        return dueTime - now > 0 ? dueTime : now;
+    }
+
+    private long transmissionNanos(long byteCount) {
+        return byteCount * NANOS_PER_SECOND / bytesPerSecond;
+    }
+
+    private class PacedIterator implements Iterator<ByteBuffer> {
+        private final ByteBuffer inBuffer;
+        private final boolean throttled;
+        private int offset;
+
+        private PacedIterator(ByteBuffer inBuffer) {
+            this.inBuffer = inBuffer;
+            this.throttled = canStart();
+            this.offset = inBuffer.position();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return offset < inBuffer.limit();
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int sliceOffset = offset;
+            int sliceLength = Math.min(burstSize, inBuffer.limit() - sliceOffset);
+            offset = sliceOffset + sliceLength;
+
+            if (throttled) {
+                long dueTime = reserve(sliceLength, System.nanoTime());
+                if (!stopped) {
+                    PreciseTiming.sleepUntil(dueTime);
+                }
+            }
+            return inBuffer.slice(sliceOffset, sliceLength);
+        }
+    }
+}
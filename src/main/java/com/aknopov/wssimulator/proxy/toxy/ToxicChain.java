@@ -0,0 +1,170 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * ToxicChain passes data through several toxics one after another. Chunks are streamed lazily -
+ * each chunk produced by a stage goes through the rest of the chain before the stage is asked for the next one.
+ * Only the last stage can deliver chunks out of order; chunks delivered so by other stages keep their order.
+ */
+public class ToxicChain extends Toxic {
+    private final List<Toxic> stages;
+    private final StageSchedule[] stageSchedules;
+
+    /**
+     * Creates the chain
+     *
+     * @param stages toxics in order of data transformation
+     */
+    public ToxicChain(List<Toxic> stages) {
+        super(Duration.ZERO);
+        Utils.checkArgument(!stages.isEmpty(), "Toxic chain can't be empty");
+        this.stages = List.copyOf(stages);
+        this.stageSchedules = new StageSchedule[stages.size()];
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        stages.forEach(Toxic::start);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        stages.forEach(Toxic::stop);
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return stages.stream().anyMatch(Toxic::isBlocking);
+    }
+
+    @Override
+    public boolean isPassThrough() {
+        return stages.stream().allMatch(Toxic::isPassThrough);
+    }
+
+    @Override
+    public int getReceiveBufferSize() {
+        return stages.stream().mapToInt(Toxic::getReceiveBufferSize).filter(size -> size > 0).min().orElse(0);
+    }
+
+    // Only one stage can pace reading - the first one that does
+    @Nullable
+    @Override
+    public ReadPacing getReadPacing() {
+        for (Toxic stage: stages) {
+            ReadPacing pacing = stage.getReadPacing();
+            if (pacing != null) {
+                return pacing;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
+        return () -> new ChainIterator(inData);
+    }
+
+    @Override
+    public void transformData(ByteBuffer inData, DeliverySchedule schedule) {
+        stages.get(0).transformData(inData, stageSchedule(1, schedule));
+    }
+
+    // Schedule that feeds delivered chunks to the given stage; delays go to the final schedule
+    private DeliverySchedule stageSchedule(int stage, DeliverySchedule schedule) {
+        if (stage == stages.size()) {
+            return schedule;
+        }
+        StageSchedule stageSchedule = stageSchedules[stage];
+        if (stageSchedule == null || stageSchedule.schedule != schedule) {
+            stageSchedule = new StageSchedule(stage, schedule);
+            stageSchedules[stage] = stageSchedule;
+        }
+        return stageSchedule;
+    }
+
+    private class StageSchedule implements DeliverySchedule {
+        private final int stage;
+        private final DeliverySchedule schedule;
+
+        StageSchedule(int stage, DeliverySchedule schedule) {
+            this.stage = stage;
+            this.schedule = schedule;
+        }
+
+        @Override
+        public long dueTime() {
+            return schedule.dueTime();
+        }
+
+        @Override
+        public void delayUntil(long nanoTime) {
+            schedule.delayUntil(nanoTime);
+        }
+
+        @Override
+        public void deliver(ByteBuffer chunk) {
+            stages.get(stage).transformData(chunk, stageSchedule(stage + 1, schedule));
+        }
+    }
+
+    // Depth-first walk over stage outputs
+    private class ChainIterator implements Iterator<ByteBuffer> {
+        private final Iterator<?>[] stageIterators;
+        @Nullable
+        private ByteBuffer nextChunk;
+
+        ChainIterator(ByteBuffer inData) {
+            this.stageIterators = new Iterator<?>[stages.size()];
+            this.stageIterators[0] = stages.get(0).transformData(inData).iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextChunk == null) {
+                nextChunk = advance();
+            }
+            return nextChunk != null;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuffer chunk = Utils.requireNonNull(nextChunk);
+            nextChunk = null;
+            return chunk;
+        }
+
+        @Nullable
+        private ByteBuffer advance() {
+            int last = stageIterators.length - 1;
+            while (true) {
+                int stage = last;
+                while (stage >= 0 && (stageIterators[stage] == null || !stageIterators[stage].hasNext())) {
+                    stage--;
+                }
+                if (stage < 0) {
+                    return null;
+                }
+                ByteBuffer chunk = (ByteBuffer)stageIterators[stage].next();
+                if (stage == last) {
+                    return chunk;
+                }
+                stageIterators[stage + 1] = stages.get(stage + 1).transformData(chunk).iterator();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates toxic instances for proxied connections, so that every connection has its own toxic state.
+ */
+@FunctionalInterface
+public interface ToxicFactory {
+    /**
+     * Creates toxic for one connection
+     *
+     * @param connection connection that toxic can interrupt
+     * @return new toxic instance
+     */
+    Toxic create(Interruptible connection);
+
+    /**
+     * Creates toxic for one direction of a connection. By default directions get same kind of toxics.
+     *
+     * @param connection connection that toxic can interrupt
+     * @param direction data direction
+     * @return new toxic instance
+     */
+    default Toxic create(Interruptible connection, StreamDirection direction) {
+        return create(connection);
+    }
+
+    /**
+     * Creates factory of different toxics for each direction
+     *
+     * @param downstreamFactory factory of downstream toxics
+     * @param upstreamFactory factory of upstream toxics
+     * @return combined factory
+     */
+    static ToxicFactory perDirection(ToxicFactory downstreamFactory, ToxicFactory upstreamFactory) {
+        return new ToxicFactory() {
+            @Override
+            public Toxic create(Interruptible connection) {
+                return create(connection, StreamDirection.DOWNSTREAM);
+            }
+
+            @Override
+            public Toxic create(Interruptible connection, StreamDirection direction) {
+                return direction == StreamDirection.DOWNSTREAM
+                        ? downstreamFactory.create(connection, direction)
+                        : upstreamFactory.create(connection, direction);
+            }
+        };
+    }
+
+    /**
+     * Creates factory of toxic chains - data is passed through toxics in the given order
+     *
+     * @param stageFactories factories of chain stages
+     * @return chain factory
+     */
+    static ToxicFactory chain(ToxicFactory... stageFactories) {
+        return new ToxicFactory() {
+            @Override
+            public Toxic create(Interruptible connection) {
+                return create(connection, StreamDirection.DOWNSTREAM);
+            }
+
+            @Override
+            public Toxic create(Interruptible connection, StreamDirection direction) {
+                List<Toxic> stages = new ArrayList<>(stageFactories.length);
+                for (ToxicFactory factory: stageFactories) {
+                    stages.add(factory.create(connection, direction));
+                }
+                return new ToxicChain(stages);
+            }
+        };
+    }
+}
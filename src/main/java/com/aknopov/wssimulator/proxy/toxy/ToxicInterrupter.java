@@ -21,6 +21,11 @@ public class ToxicInterrupter extends Toxic {
         this.stopper = stopper;
     }
 
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
     @Override
     public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
         if (canStart()) {
@@ -2,20 +2,20 @@ package com.aknopov.wssimulator.proxy.toxy;
 
 import java.nio.ByteBuffer;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.Collections;
-import java.util.Random;
+import java.util.SplittableRandom;
 
-import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.PreciseTiming;
 
 /**
- * ToxicLatency delays input data by {@code latency ± rand(jitter) }
+ * ToxicLatency delays input data by {@code latency ± rand(jitter) } or by latency drawn from
+ * a {@link LatencyDistribution}. Each toxic has its own random generator, so connections don't contend for it.
+ * On proxy event loops data is not slept on, but scheduled for delivery, so reading is not throttled.
+ * Scheduled delivery can't reorder data - a chunk is never delivered ahead of its predecessor.
  */
 public class ToxicLatency extends Toxic {
-    private static final Random randomizer = new Random(Instant.now().toEpochMilli());
-
-    private final long latencyMs;
-    private final long jitterMs;
+    private final LatencyDistribution distribution;
+    private final SplittableRandom randomizer = new SplittableRandom();
 
     /**
      * Creates the instance
@@ -25,19 +25,42 @@ public class ToxicLatency extends Toxic {
      * @param jitter latency variance <= latency
      */
     public ToxicLatency(Duration startDelay, Duration latency, Duration jitter) {
+        this(startDelay, LatencyDistribution.uniform(latency, jitter));
+    }
+
+    /**
+     * Creates the instance with latency distribution
+     *
+     * @param startDelay start delay of toxic
+     * @param distribution latency distribution
+     */
+    public ToxicLatency(Duration startDelay, LatencyDistribution distribution) {
         super(startDelay);
+        this.distribution = distribution;
+    }
 
-        Utils.checkArgument(latency.compareTo(jitter) >= 0, "Average latency is less than jitter");
-        this.latencyMs = latency.toMillis();
-        this.jitterMs = jitter.toMillis();
+    @Override
+    public boolean isBlocking() {
+        return false;
     }
 
     @Override
     public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
         if (canStart()) {
-            Duration sleepTime = Duration.ofMillis(latencyMs + randomizer.nextLong(-jitterMs, jitterMs));
-            Utils.sleepUnchecked(sleepTime);
+            PreciseTiming.sleepUnchecked(Duration.ofNanos(nextLatencyNanos()));
         }
         return Collections.singletonList(inData);
     }
+
+    @Override
+    public void transformData(ByteBuffer inData, DeliverySchedule schedule) {
+        if (canStart()) {
+            schedule.delayUntil(System.nanoTime() + nextLatencyNanos());
+        }
+        schedule.deliver(inData);
+    }
+
+    private long nextLatencyNanos() {
+        return distribution.nextNanos(randomizer);
+    }
 }
@@ -15,6 +15,16 @@ public class ToxicNoop extends Toxic {
         super(Duration.ZERO);
     }
 
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public boolean isPassThrough() {
+        return true;
+    }
+
     @Override
     public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
         return Collections.singletonList(inData);
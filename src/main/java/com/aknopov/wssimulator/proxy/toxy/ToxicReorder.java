@@ -0,0 +1,125 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * ToxicReorder simulates a faulty link that loses and reorders data chunks.
+ * <ul>
+ *     <li>with {@code dropRate} probability a chunk is silently dropped, while connection stays alive</li>
+ *     <li>with {@code reorderRate} probability a chunk is held back for {@code holdTime}, so that following
+ *     chunks overtake it; no more than {@code windowSize} chunks are held at a time</li>
+ * </ul>
+ * On proxy event loops held chunks are scheduled out of order and released by the proxy timer.
+ * In blocking mode held chunks are released after the first chunk that arrives past their hold time.
+ */
+public class ToxicReorder extends Toxic {
+    private final SplittableRandom randomizer = new SplittableRandom();
+
+    private final double reorderRate;
+    private final double dropRate;
+    private final int windowSize;
+    private final long holdNanos;
+    // Release times of held chunks - they are monotonic since hold time is constant
+    private final Deque<Long> releaseTimes = new ArrayDeque<>();
+    private final Deque<ByteBuffer> heldChunks = new ArrayDeque<>();
+
+    /**
+     * Creates the instance
+     *
+     * @param startDelay start delay of toxic
+     * @param reorderRate probability of chunk being held back
+     * @param dropRate probability of chunk drop
+     * @param windowSize maximum number of chunks held at a time
+     * @param holdTime time a chunk is held back
+     */
+    public ToxicReorder(Duration startDelay, double reorderRate, double dropRate, int windowSize, Duration holdTime) {
+        super(startDelay);
+
+        Utils.checkArgument(reorderRate >= 0 && reorderRate <= 1, "Reorder rate should be in [0, 1]");
+        Utils.checkArgument(dropRate >= 0 && dropRate <= 1, "Drop rate should be in [0, 1]");
+        Utils.checkArgument(reorderRate + dropRate <= 1, "Sum of reorder and drop rates exceeds 1");
+        Utils.checkArgument(windowSize > 0, "Window size should be positive");
+        Utils.checkArgument(!holdTime.isNegative(), "Hold time can't be negative");
+        this.reorderRate = reorderRate;
+        this.dropRate = dropRate;
+        this.windowSize = windowSize;
+        this.holdNanos = holdTime.toNanos();
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
+        if (!canStart() && heldChunks.isEmpty()) {
+            return Collections.singletonList(inData);
+        }
+        long now = System.nanoTime();
+        List<ByteBuffer> result = new ArrayList<>(1);
+        switch (canStart() ? nextAction() : Action.PASS) {
+            case DROP -> {
+                // Dropped
+            }
+            case HOLD -> {
+                // Input buffer is reused by the caller
+                ByteBuffer copy = ByteBuffer.allocate(inData.remaining()).put(inData.duplicate()).flip();
+                releaseTimes.addLast(now + holdNanos);
+                heldChunks.addLast(copy);
+            }
+            case PASS -> result.add(inData);
+        }
+        while (!heldChunks.isEmpty() && releaseTimes.getFirst() - now <= 0) {
+            releaseTimes.removeFirst();
+            result.add(heldChunks.removeFirst());
+        }
+        return result;
+    }
+
+    @Override
+    public void transformData(ByteBuffer inData, DeliverySchedule schedule) {
+        if (!canStart()) {
+            schedule.deliver(inData);
+            return;
+        }
+        long now = schedule.dueTime();
+        while (!releaseTimes.isEmpty() && releaseTimes.getFirst() - now <= 0) {
+            releaseTimes.removeFirst();
+        }
+        switch (nextAction()) {
+            case DROP -> {
+                // Dropped
+            }
+            case HOLD -> {
+                releaseTimes.addLast(now + holdNanos);
+                schedule.deliverAt(inData, now + holdNanos);
+            }
+            case PASS -> schedule.deliver(inData);
+        }
+    }
+
+    private enum Action {
+        PASS, HOLD, DROP
+    }
+
+    private Action nextAction() {
+        double r = randomizer.nextDouble();
+        if (r < dropRate) {
+            return Action.DROP;
+        }
+        if (r < dropRate + reorderRate && releaseTimes.size() < windowSize) {
+            return Action.HOLD;
+        }
+        return Action.PASS;
+    }
+}
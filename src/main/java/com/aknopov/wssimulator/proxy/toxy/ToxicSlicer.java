@@ -2,18 +2,19 @@ package com.aknopov.wssimulator.proxy.toxy;
 
 import java.nio.ByteBuffer;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.List;
+import java.util.SplittableRandom;
 
-import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.PreciseTiming;
 
 /**
- * ToxicSlicer slices data into multiple smaller fragments, delaying randomly their transform
+ * ToxicSlicer slices data into multiple smaller fragments, delaying randomly their transform.
+ * Without delay slices are returned as a list, so that proxy can write them together.
  */
 public class ToxicSlicer extends Toxic {
-    private static final Random randomizer = new Random(Instant.now().toEpochMilli());
-
+    private final SplittableRandom randomizer = new SplittableRandom();
     private final Duration packetDelay;
     private final int averageSize;
 
@@ -29,22 +30,39 @@ public class ToxicSlicer extends Toxic {
         this.averageSize = sliceSize;
     }
 
+    @Override
+    public boolean isBlocking() {
+        return isDelaying();
+    }
+
     @Override
     public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
-        return () -> new SlicesIterator(inData, packetDelay, averageSize);
+        if (isDelaying()) {
+            return () -> new SlicesIterator(inData, packetDelay, averageSize, randomizer);
+        }
+        List<ByteBuffer> slices = new ArrayList<>();
+        new SlicesIterator(inData, packetDelay, averageSize, randomizer).forEachRemaining(slices::add);
+        return slices;
+    }
+
+    private boolean isDelaying() {
+        return packetDelay.compareTo(Duration.ZERO) > 0;
     }
 
     private static class SlicesIterator implements Iterator<ByteBuffer> {
         private final ByteBuffer inBuffer;
-        private final long packetDelayMs;
+        private final long packetDelayNanos;
         private final int averageSize;
+        private final SplittableRandom randomizer;
 
         private int offset = 0;
 
-        private SlicesIterator(ByteBuffer inBuffer, Duration packetDelay, int averageSize) {
+        private SlicesIterator(ByteBuffer inBuffer, Duration packetDelay, int averageSize,
+                SplittableRandom randomizer) {
             this.inBuffer = inBuffer;
-            this.packetDelayMs = packetDelay.toMillis();
+            this.packetDelayNanos = packetDelay.toNanos();
             this.averageSize = averageSize;
+            this.randomizer = randomizer;
         }
 
         @Override
@@ -59,9 +77,8 @@ public class ToxicSlicer extends Toxic {
             int sliceLength = Math.min(remained, randomizer.nextInt(1, 2 * averageSize));
             this.offset = sliceOffset + sliceLength;
 
-            if (packetDelayMs > 0) {
-                Duration sleepTime = Duration.ofMillis(randomizer.nextLong(packetDelayMs));
-                Utils.sleepUnchecked(sleepTime);
+            if (packetDelayNanos > 0) {
+                PreciseTiming.sleepUnchecked(Duration.ofNanos(randomizer.nextLong(packetDelayNanos)));
             }
 
             return inBuffer.slice(sliceOffset, sliceLength);
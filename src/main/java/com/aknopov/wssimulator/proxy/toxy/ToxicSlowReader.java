@@ -0,0 +1,63 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collections;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * ToxicSlowReader models a peer that reads data slowly. Instead of delaying read data, proxy drains the socket
+ * the direction reads from with limited rate and sets small receive buffer on it, so that real TCP backpressure
+ * reaches the sender - its writes block or its outbound queue grows. Data passes unchanged.
+ * Time the sender was held back is reported by {@link com.aknopov.wssimulator.proxy.TrafficCounters}
+ * of the direction.
+ */
+public class ToxicSlowReader extends Toxic {
+    private final ReadPacing pacing;
+    private final int receiveBufferSize;
+
+    /**
+     * Creates the instance
+     *
+     * @param startDelay start delay of toxic
+     * @param bytesPerSecond read rate limit
+     * @param readSize maximum number of bytes read at a time
+     * @param receiveBufferSize receive buffer size (SO_RCVBUF); {@code 0} - keep system default
+     */
+    public ToxicSlowReader(Duration startDelay, long bytesPerSecond, int readSize, int receiveBufferSize) {
+        super(startDelay);
+
+        Utils.checkArgument(receiveBufferSize >= 0, "Receive buffer size can't be negative");
+        this.pacing = new ReadPacing(bytesPerSecond, readSize);
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public boolean isPassThrough() {
+        return true;
+    }
+
+    @Override
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    @Nullable
+    @Override
+    public ReadPacing getReadPacing() {
+        return canStart() ? pacing : null;
+    }
+
+    @Override
+    public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
+        return Collections.singletonList(inData);
+    }
+}
@@ -0,0 +1,270 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+import com.aknopov.wssimulator.PreciseTiming;
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * ToxicWebSocketFrames applies toxic effects to WebSocket frames rather than to raw data.
+ * Data passes unchanged until the end of HTTP Upgrade headers; if upgrade is refused (status other than 101),
+ * the toxic stays transparent. Then frames are parsed incrementally and
+ * <ul>
+ *     <li>data frames are randomly delayed or dropped</li>
+ *     <li>data frames with payload larger than fragment size are re-fragmented into continuation frames</li>
+ *     <li>control frames (ping, pong, close) are held back</li>
+ * </ul>
+ * Since TCP keeps data order, a delayed frame delays following frames as well.
+ * The toxic keeps stream state, so it shouldn't be replaced in the middle of a connection.
+ */
+public class ToxicWebSocketFrames extends Toxic {
+    private static final int HEADER_END = 0x0D0A0D0A;
+
+    private final SplittableRandom randomizer = new SplittableRandom();
+    private final Config config;
+    private final WebSocketFrameParser parser = new WebSocketFrameParser();
+    // HTTP Upgrade state
+    private boolean upgraded;
+    private boolean transparent;
+    private int lastBytes;
+    private int firstLineLength;
+    private final byte[] statusBytes = new byte[12];
+    // Frame state
+    private boolean dropping;
+    private boolean fragmenting;
+    private int fragmentOpcode;
+    private int fragmentRsv;
+    private boolean fragmentFin;
+    private long fragmentLeft;
+    private long payloadLeft;
+
+    /**
+     * Frame toxic configuration
+     *
+     * @param frameDelay delay of data frames
+     * @param delayRate probability of data frame delay
+     * @param dropRate probability of data frame drop
+     * @param fragmentSize maximum payload size of data frames, rounded down to multiple of 4; {@code 0} - no limit
+     * @param controlDelay delay of control frames
+     */
+    public record Config(Duration frameDelay, double delayRate, double dropRate, int fragmentSize,
+            Duration controlDelay) {
+        public Config {
+            Utils.checkArgument(delayRate >= 0 && delayRate <= 1, "Delay rate should be in [0, 1]");
+            Utils.checkArgument(dropRate >= 0 && dropRate <= 1, "Drop rate should be in [0, 1]");
+            Utils.checkArgument(fragmentSize == 0 || fragmentSize >= 4, "Fragment size should be 0 or at least 4");
+            fragmentSize = fragmentSize & ~3;
+        }
+    }
+
+    /**
+     * Creates the instance
+     *
+     * @param startDelay start delay of toxic
+     * @param config frame toxic configuration
+     */
+    public ToxicWebSocketFrames(Duration startDelay, Config config) {
+        super(startDelay);
+        this.config = config;
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    @Override
+    public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
+        RecordingSchedule schedule = new RecordingSchedule();
+        transformData(inData, schedule);
+        return () -> new DelayingIterator(schedule.chunks, schedule.dueTimes);
+    }
+
+    @Override
+    public void transformData(ByteBuffer inData, DeliverySchedule schedule) {
+        ByteBuffer data = inData.duplicate();
+        while (data.hasRemaining()) {
+            if (transparent) {
+                schedule.deliver(data);
+                return;
+            }
+            if (!upgraded) {
+                int start = data.position();
+                scanUpgrade(data);
+                schedule.deliver(data.slice(start, data.position() - start));
+                continue;
+            }
+            int start = data.position();
+            switch (parser.next(data)) {
+                case HEADER -> onHeader(data, start, schedule);
+                case PAYLOAD -> onPayload(data, schedule);
+                case NEED_MORE -> {
+                    // Header will be re-emitted once complete
+                }
+            }
+        }
+    }
+
+    // Looks for the end of HTTP headers
+    private void scanUpgrade(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            byte b = data.get();
+            if (firstLineLength >= 0) {
+                if (firstLineLength < statusBytes.length) {
+                    statusBytes[firstLineLength] = b;
+                }
+                // Negative length marks the end of the first line
+                firstLineLength = b == '\n' ? -1 : firstLineLength + 1;
+            }
+            lastBytes = lastBytes << 8 | b & 0xFF;
+            if (lastBytes == HEADER_END) {
+                upgraded = true;
+                transparent = isRefusedUpgrade();
+                return;
+            }
+        }
+    }
+
+    // Response status line "HTTP/1.1 101 ..." - requests are assumed to be upgraded
+    private boolean isRefusedUpgrade() {
+        if (statusBytes[0] != 'H' || statusBytes[1] != 'T' || statusBytes[2] != 'T' || statusBytes[3] != 'P') {
+            return false;
+        }
+        return statusBytes[9] != '1' || statusBytes[10] != '0' || statusBytes[11] != '1';
+    }
+
+    private void onHeader(ByteBuffer data, int start, DeliverySchedule schedule) {
+        boolean active = canStart();
+        dropping = false;
+        fragmenting = false;
+        if (parser.isControl()) {
+            if (active && !config.controlDelay().isZero()) {
+                schedule.delayUntil(System.nanoTime() + config.controlDelay().toNanos());
+            }
+        }
+        else if (active) {
+            if (config.dropRate() > 0 && randomizer.nextDouble() < config.dropRate()) {
+                dropping = true;
+                return;
+            }
+            if (config.delayRate() > 0 && randomizer.nextDouble() < config.delayRate()) {
+                schedule.delayUntil(System.nanoTime() + config.frameDelay().toNanos());
+            }
+            long payloadLength = parser.getPayloadLength();
+            if (config.fragmentSize() > 0 && payloadLength > config.fragmentSize()) {
+                fragmenting = true;
+                fragmentOpcode = parser.getOpcode();
+                fragmentRsv = parser.getRsv();
+                fragmentFin = parser.isFin();
+                payloadLeft = payloadLength;
+                fragmentLeft = 0;
+                return;
+            }
+        }
+
+        int headerLength = parser.getHeaderLength();
+        if (data.position() - start == headerLength) {
+            schedule.deliver(data.slice(start, headerLength));
+        }
+        else {
+            byte[] header = new byte[headerLength];
+            parser.copyHeader(header);
+            schedule.deliver(ByteBuffer.wrap(header));
+        }
+    }
+
+    private void onPayload(ByteBuffer data, DeliverySchedule schedule) {
+        if (dropping) {
+            return;
+        }
+        int offset = parser.getSegmentOffset();
+        int length = parser.getSegmentLength();
+        if (!fragmenting) {
+            schedule.deliver(data.slice(offset, length));
+            return;
+        }
+        // Fragment boundaries are multiples of 4, so masked payload is copied as is with the same key
+        while (length > 0) {
+            if (fragmentLeft == 0) {
+                startFragment(schedule);
+            }
+            int sliceLength = (int)Math.min(fragmentLeft, length);
+            schedule.deliver(data.slice(offset, sliceLength));
+            offset += sliceLength;
+            length -= sliceLength;
+            fragmentLeft -= sliceLength;
+            payloadLeft -= sliceLength;
+        }
+    }
+
+    private void startFragment(DeliverySchedule schedule) {
+        boolean first = payloadLeft == parser.getPayloadLength();
+        fragmentLeft = Math.min(config.fragmentSize(), payloadLeft);
+        boolean last = fragmentLeft == payloadLeft;
+        boolean masked = parser.isMasked();
+
+        ByteBuffer header = ByteBuffer.allocate(WebSocketFrameParser.headerLength(masked, fragmentLeft));
+        WebSocketFrameParser.writeHeader(header, last && fragmentFin, first ? fragmentRsv : 0,
+                first ? fragmentOpcode : WebSocketFrameParser.OPCODE_CONTINUATION, masked, parser.getMaskingKey(),
+                fragmentLeft);
+        schedule.deliver(header.flip());
+    }
+
+    // Collects transformed data for blocking transform
+    private static class RecordingSchedule implements DeliverySchedule {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private final List<Long> dueTimes = new ArrayList<>();
+        private long dueTime = System.nanoTime();
+
+        @Override
+        public long dueTime() {
+            return dueTime;
+        }
+
+        @Override
+        public void delayUntil(long nanoTime) {
+            if (nanoTime - dueTime > 0) {
+                dueTime = nanoTime;
+            }
+        }
+
+        @Override
+        public void deliver(ByteBuffer chunk) {
+            chunks.add(chunk);
+            dueTimes.add(dueTime);
+        }
+    }
+
+    private class DelayingIterator implements Iterator<ByteBuffer> {
+        private final List<ByteBuffer> chunks;
+        private final List<Long> dueTimes;
+        private int idx;
+
+        DelayingIterator(List<ByteBuffer> chunks, List<Long> dueTimes) {
+            this.chunks = chunks;
+            this.dueTimes = dueTimes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx < chunks.size();
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (!stopped) {
+                PreciseTiming.sleepUntil(dueTimes.get(idx));
+            }
+            return chunks.get(idx++);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental parser of RFC 6455 frames. Data is fed in chunks of any size; the parser doesn't allocate
+ * and doesn't copy payload - it reports where payload segments are in the fed chunk.
+ * <pre>
+ * while (chunk.hasRemaining()) {
+ *     switch (parser.next(chunk)) {
+ *         case HEADER -> ... // header fields are available
+ *         case PAYLOAD -> ... // chunk bytes from segmentOffset() of segmentLength() belong to payload
+ *         case NEED_MORE -> ... // chunk is consumed
+ *     }
+ * }
+ * </pre>
+ */
+public final class WebSocketFrameParser {
+    public static final int OPCODE_CONTINUATION = 0x0;
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_BINARY = 0x2;
+    public static final int OPCODE_CLOSE = 0x8;
+    public static final int OPCODE_PING = 0x9;
+    public static final int OPCODE_PONG = 0xA;
+    public static final int MAX_HEADER_LENGTH = 14;
+
+    /**
+     * Parsing events
+     */
+    public enum Event {
+        /**
+         * Frame header is parsed
+         */
+        HEADER,
+        /**
+         * Payload segment is found
+         */
+        PAYLOAD,
+        /**
+         * Chunk is consumed without complete header
+         */
+        NEED_MORE
+    }
+
+    private final byte[] header = new byte[MAX_HEADER_LENGTH];
+    private int headerFilled;
+    private int headerLength;
+    private long payloadLength;
+    private long payloadRemaining;
+    private boolean inPayload;
+    private int segmentOffset;
+    private int segmentLength;
+
+    /**
+     * Parses the next portion of data and advances chunk position past it
+     *
+     * @param chunk data chunk
+     * @return parsing event
+     */
+    public Event next(ByteBuffer chunk) {
+        if (inPayload) {
+            segmentOffset = chunk.position();
+            segmentLength = (int)Math.min(payloadRemaining, chunk.remaining());
+            chunk.position(segmentOffset + segmentLength);
+            payloadRemaining -= segmentLength;
+            if (payloadRemaining == 0) {
+                inPayload = false;
+            }
+            return Event.PAYLOAD;
+        }
+
+        while (chunk.hasRemaining()) {
+            header[headerFilled++] = chunk.get();
+            if (headerFilled == 2) {
+                headerLength = 2 + extendedLengthSize() + (isMasked() ? 4 : 0);
+            }
+            if (headerFilled >= 2 && headerFilled == headerLength) {
+                completeHeader();
+                return Event.HEADER;
+            }
+        }
+        return Event.NEED_MORE;
+    }
+
+    /**
+     * Tells if the last parsed frame is complete, i.e. all its payload has been reported
+     *
+     * @return {@code true} if frame is complete
+     */
+    public boolean isFrameComplete() {
+        return !inPayload && headerFilled == 0;
+    }
+
+    public boolean isFin() {
+        return (header[0] & 0x80) != 0;
+    }
+
+    /**
+     * Gets RSV1-3 bits in their positions of the first header byte
+     *
+     * @return reserved bits
+     */
+    public int getRsv() {
+        return header[0] & 0x70;
+    }
+
+    public int getOpcode() {
+        return header[0] & 0x0F;
+    }
+
+    public boolean isControl() {
+        return (getOpcode() & 0x08) != 0;
+    }
+
+    public boolean isMasked() {
+        return (header[1] & 0x80) != 0;
+    }
+
+    /**
+     * Gets masking key as big-endian integer
+     *
+     * @return masking key or 0 if payload is not masked
+     */
+    public int getMaskingKey() {
+        if (!isMasked()) {
+            return 0;
+        }
+        int offset = headerLength - 4;
+        return (header[offset] & 0xFF) << 24 | (header[offset + 1] & 0xFF) << 16
+                | (header[offset + 2] & 0xFF) << 8 | header[offset + 3] & 0xFF;
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    public long getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Gets offset of last payload segment in the chunk
+     *
+     * @return segment offset
+     */
+    public int getSegmentOffset() {
+        return segmentOffset;
+    }
+
+    /**
+     * Gets length of last payload segment
+     *
+     * @return segment length
+     */
+    public int getSegmentLength() {
+        return segmentLength;
+    }
+
+    /**
+     * Copies header of the last frame
+     *
+     * @param target target array of at least {@link #getHeaderLength()} size
+     */
+    public void copyHeader(byte[] target) {
+        System.arraycopy(header, 0, target, 0, headerLength);
+    }
+
+    /**
+     * Writes frame header
+     *
+     * @param target target buffer
+     * @param fin FIN flag
+     * @param rsv reserved bits in their positions
+     * @param opcode frame opcode
+     * @param maskingKey masking key, used only if {@code masked} is set
+     * @param masked whether payload is masked
+     * @param payloadLength payload length
+     */
+    public static void writeHeader(ByteBuffer target, boolean fin, int rsv, int opcode, boolean masked,
+            int maskingKey, long payloadLength) {
+        target.put((byte)((fin ? 0x80 : 0) | rsv & 0x70 | opcode & 0x0F));
+        int maskBit = masked ? 0x80 : 0;
+        if (payloadLength < 126) {
+            target.put((byte)(maskBit | (int)payloadLength));
+        }
+        else if (payloadLength <= 0xFFFF) {
+            target.put((byte)(maskBit | 126));
+            target.putShort((short)payloadLength);
+        }
+        else {
+            target.put((byte)(maskBit | 127));
+            target.putLong(payloadLength);
+        }
+        if (masked) {
+            target.putInt(maskingKey);
+        }
+    }
+
+    /**
+     * Calculates header length
+     *
+     * @param masked whether payload is masked
+     * @param payloadLength payload length
+     * @return header length
+     */
+    public static int headerLength(boolean masked, long payloadLength) {
+        int lengthSize = payloadLength < 126 ? 0 : payloadLength <= 0xFFFF ? 2 : 8;
+        return 2 + lengthSize + (masked ? 4 : 0);
+    }
+
+    private int extendedLengthSize() {
+        int length = header[1] & 0x7F;
+        return length == 126 ? 2 : length == 127 ? 8 : 0;
+    }
+
+    private void completeHeader() {
+        int length = header[1] & 0x7F;
+        if (length == 126) {
+            payloadLength = (header[2] & 0xFF) << 8 | header[3] & 0xFF;
+        }
+        else if (length == 127) {
+            long value = 0;
+            for (int i = 2; i < 10; i++) {
+                value = value << 8 | header[i] & 0xFF;
+            }
+            payloadLength = value;
+        }
+        else {
+            payloadLength = length;
+        }
+        payloadRemaining = payloadLength;
+        inPayload = payloadLength > 0;
+        segmentLength = 0;
+        headerFilled = 0;
+    }
+}
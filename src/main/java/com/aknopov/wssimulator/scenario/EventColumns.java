@@ -0,0 +1,105 @@
+package com.aknopov.wssimulator.scenario;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size block of history events stored column-wise - {@link System#nanoTime()} timestamp, event type, payload
+ * length and references to description parts. Description is rendered when event is read.
+ * <p>
+ * Each slot has a stamp - zero for an empty slot, sequence number of the event plus one for a published event
+ * and {@link #WRITING} while the event is being written. Stamp is set after other columns, so reader that sees
+ * stamp of an event sees the event.
+ */
+final class EventColumns {
+    static final long EMPTY = 0;
+    static final long WRITING = -1;
+
+    // How description is rendered
+    static final byte DESCRIPTION = 0;
+    static final byte TEXT = 1;
+    static final byte BINARY = 2;
+
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final long[] nanoTimes;
+    private final byte[] eventTypes;
+    private final byte[] kinds;
+    private final int[] lengths;
+    private final String[] prefixes;
+    private final String[] details;
+    private final AtomicLongArray stamps;
+
+    EventColumns(int size) {
+        this.nanoTimes = new long[size];
+        this.eventTypes = new byte[size];
+        this.kinds = new byte[size];
+        this.lengths = new int[size];
+        this.prefixes = new String[size];
+        this.details = new String[size];
+        this.stamps = new AtomicLongArray(size);
+    }
+
+    /**
+     * Writes event columns and publishes the event
+     */
+    void write(int slot, long sequence, long nanoTime, EventType eventType, byte kind, int length, String prefix,
+            String detail) {
+        nanoTimes[slot] = nanoTime;
+        eventTypes[slot] = (byte)eventType.ordinal();
+        kinds[slot] = kind;
+        lengths[slot] = length;
+        prefixes[slot] = prefix;
+        details[slot] = detail;
+        stamps.setRelease(slot, sequence + 1);
+    }
+
+    long stamp(int slot) {
+        return stamps.getAcquire(slot);
+    }
+
+    /**
+     * Marks slot as being rewritten if it holds the expected stamp
+     *
+     * @return {@code true} if slot is marked
+     */
+    boolean markWriting(int slot, long expectedStamp) {
+        return stamps.compareAndSet(slot, expectedStamp, WRITING);
+    }
+
+    long nanoTime(int slot) {
+        return nanoTimes[slot];
+    }
+
+    EventType eventType(int slot) {
+        return EVENT_TYPES[eventTypes[slot]];
+    }
+
+    byte kind(int slot) {
+        return kinds[slot];
+    }
+
+    int length(int slot) {
+        return lengths[slot];
+    }
+
+    String prefix(int slot) {
+        return prefixes[slot];
+    }
+
+    String detail(int slot) {
+        return details[slot];
+    }
+
+    Event render(int slot, TimeBase timeBase) {
+        return new Event(timeBase.toInstant(nanoTimes[slot]), eventType(slot),
+                describe(kinds[slot], prefixes[slot], details[slot], lengths[slot]));
+    }
+
+    static String describe(byte kind, String prefix, String detail, int length) {
+        return switch (kind) {
+            case TEXT -> prefix + detail;
+            case BINARY -> prefix + "Binary, len=" + length;
+            default -> detail;
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package com.aknopov.wssimulator.scenario;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Unbounded append-only log of events without locks. Each event gets its index with an atomic increment and is
+ * stored in a block that is never moved - blocks double in size, so the log grows without copying.
+ */
+final class EventLog {
+    private static final int FIRST_BLOCK_SHIFT = 10;
+    // Blocks of sizes 2^10 ... 2^30 hold about 2^31 events
+    private static final int MAX_BLOCKS = Integer.SIZE - 1 - FIRST_BLOCK_SHIFT;
+
+    private final AtomicReferenceArray<EventColumns> blocks = new AtomicReferenceArray<>(MAX_BLOCKS);
+    private final AtomicInteger claimed = new AtomicInteger();
+    // Hint for readers - all events below it are published
+    private final AtomicInteger published = new AtomicInteger();
+
+    /**
+     * Appends event, its index is its sequence number
+     */
+    void add(long nanoTime, EventType eventType, byte kind, int length, String prefix, String detail) {
+        append(-1, nanoTime, eventType, kind, length, prefix, detail);
+    }
+
+    /**
+     * Appends event of another storage
+     *
+     * @param sequence sequence number of the event in history
+     */
+    void add(long sequence, long nanoTime, EventType eventType, byte kind, int length, String prefix,
+            String detail) {
+        append(sequence, nanoTime, eventType, kind, length, prefix, detail);
+    }
+
+    /**
+     * Gets number of published events. Events are published out of order when writers race, so the count stops
+     * at the first one that is still being written.
+     *
+     * @return event count
+     */
+    int publishedCount() {
+        int count = published.get();
+        int limit = claimed.get();
+        while (count < limit && isPublished(count)) {
+            count++;
+        }
+        published.accumulateAndGet(count, Math::max);
+        return count;
+    }
+
+    /**
+     * Gets sequence number of published event
+     *
+     * @param index event index
+     * @return sequence number
+     */
+    long sequence(int index) {
+        int blockIndex = blockOf(index);
+        return blocks.get(blockIndex).stamp(offsetIn(index, blockIndex)) - 1;
+    }
+
+    /**
+     * Gets type of published event
+     *
+     * @param index event index
+     * @return event type
+     */
+    EventType eventType(int index) {
+        int blockIndex = blockOf(index);
+        return blocks.get(blockIndex).eventType(offsetIn(index, blockIndex));
+    }
+
+    /**
+     * Renders published event
+     *
+     * @param index event index
+     * @param timeBase time base of event timestamps
+     * @return the event
+     */
+    Event get(int index, TimeBase timeBase) {
+        int blockIndex = blockOf(index);
+        return blocks.get(blockIndex).render(offsetIn(index, blockIndex), timeBase);
+    }
+
+    private void append(long sequence, long nanoTime, EventType eventType, byte kind, int length, String prefix,
+            String detail) {
+        int index = claimed.getAndIncrement();
+        int blockIndex = blockOf(index);
+        Utils.checkState(index >= 0 && blockIndex < MAX_BLOCKS, "History is full");
+        blockAt(blockIndex).write(offsetIn(index, blockIndex), sequence >= 0 ? sequence : index, nanoTime,
+                eventType, kind, length, prefix, detail);
+    }
+
+    private EventColumns blockAt(int blockIndex) {
+        EventColumns block = blocks.get(blockIndex);
+        if (block == null) {
+            blocks.compareAndSet(blockIndex, null, new EventColumns(1 << (FIRST_BLOCK_SHIFT + blockIndex)));
+            block = blocks.get(blockIndex);
+        }
+        return block;
+    }
+
+    private boolean isPublished(int index) {
+        int blockIndex = blockOf(index);
+        EventColumns block = blocks.get(blockIndex);
+        return block != null && block.stamp(offsetIn(index, blockIndex)) != EventColumns.EMPTY;
+    }
+
+    // Block k starts at index 2^10 * (2^k - 1)
+    private static int blockOf(int index) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros((index >>> FIRST_BLOCK_SHIFT) + 1);
+    }
+
+    private static int offsetIn(int index, int blockIndex) {
+        return index - (((1 << blockIndex) - 1) << FIRST_BLOCK_SHIFT);
+    }
+}
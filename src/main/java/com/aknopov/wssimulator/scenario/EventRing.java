@@ -0,0 +1,150 @@
+package com.aknopov.wssimulator.scenario;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Ring of the last events without locks. Event with sequence number {@code s} goes to slot {@code s % capacity}
+ * and evicts event {@code s - capacity}. Writer waits before eviction while the evicted event is not spilled and
+ * while writer of the previous round of the slot isn't done - both happen only when the ring is lapped.
+ * Spiller is woken up once half a ring of events is added and while writer waits for it.
+ * <p>
+ * Readers copy events without holding back writers - slot stamp is checked before and after reading the columns,
+ * and the event is missed if it was evicted meanwhile.
+ */
+final class EventRing {
+    private static final long RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final int capacity;
+    private final int spillBatch;
+    private final EventColumns slots;
+    private final AtomicLong claimed = new AtomicLong();
+    // Number of the first events that can be evicted
+    private volatile LongSupplier evictableCount = () -> Long.MAX_VALUE;
+    private volatile Runnable spillWakeup = () -> {};
+
+    /**
+     * Events copied from the ring
+     *
+     * @param sequences sequence numbers of the events in ascending order
+     * @param events the events
+     * @param end sequence number after the copied range - the first event that wasn't published yet
+     * @param lastMissed the last sequence number before the end that was evicted or {@code -1}
+     */
+    record Recent(long[] sequences, List<Event> events, long end, long lastMissed) {
+    }
+
+    EventRing(int capacity) {
+        Utils.checkArgument(capacity > 0, "Capacity should be positive");
+        this.capacity = capacity;
+        this.spillBatch = Math.max(1, capacity / 2);
+        this.slots = new EventColumns(capacity);
+    }
+
+    void setEvictableCount(LongSupplier evictableCount) {
+        this.evictableCount = evictableCount;
+    }
+
+    void setSpillWakeup(Runnable spillWakeup) {
+        this.spillWakeup = spillWakeup;
+    }
+
+    /**
+     * Adds event
+     *
+     * @return sequence number of the event
+     */
+    long add(long nanoTime, EventType eventType, byte kind, int length, String prefix, String detail) {
+        long sequence = claimed.getAndIncrement();
+        int slot = slotOf(sequence);
+        long evicted = sequence - capacity;
+        while (evicted >= 0 && evictableCount.getAsLong() <= evicted) {
+            // Spiller could have parked before the evicted event was published
+            spillWakeup.run();
+            LockSupport.parkNanos(this, RETRY_NANOS);
+        }
+        while (!slots.markWriting(slot, evicted >= 0 ? evicted + 1 : EventColumns.EMPTY)) {
+            LockSupport.parkNanos(this, RETRY_NANOS);
+        }
+        slots.write(slot, sequence, nanoTime, eventType, kind, length, prefix, detail);
+        if ((sequence + 1) % spillBatch == 0) {
+            spillWakeup.run();
+        }
+        return sequence;
+    }
+
+    long claimedCount() {
+        return claimed.get();
+    }
+
+    /**
+     * Tells if event is published in its slot
+     *
+     * @param sequence sequence number of the event
+     * @return {@code true} if event is published and not evicted
+     */
+    boolean isPublished(long sequence) {
+        return slots.stamp(slotOf(sequence)) == sequence + 1;
+    }
+
+    /**
+     * Gets slot columns for reading published events that can't be evicted
+     *
+     * @return slot columns
+     */
+    EventColumns slots() {
+        return slots;
+    }
+
+    int slotOf(long sequence) {
+        return (int)(sequence % capacity);
+    }
+
+    /**
+     * Copies published events from the given sequence number till the first one that isn't published yet.
+     * Events before {@code claimedCount() - capacity} are evicted unless writers wait for spilling.
+     *
+     * @param from the first sequence number to copy
+     * @param timeBase time base of event timestamps
+     * @return copied events
+     */
+    Recent copy(long from, TimeBase timeBase) {
+        long end = claimed.get();
+        long lastMissed = -1;
+        long[] sequences = new long[(int)Math.max(0, end - from)];
+        List<Event> events = new ArrayList<>(sequences.length);
+        long sequence = from;
+        for (; sequence < end; sequence++) {
+            int slot = slotOf(sequence);
+            long stamp = slots.stamp(slot);
+            if (stamp == sequence + 1) {
+                Event event = slots.render(slot, timeBase);
+                // Columns are read before the stamp is checked again
+                VarHandle.acquireFence();
+                if (slots.stamp(slot) == sequence + 1) {
+                    sequences[events.size()] = sequence;
+                    events.add(event);
+                }
+                else {
+                    lastMissed = sequence;
+                }
+            }
+            else if (stamp > sequence + 1
+                    || stamp == EventColumns.WRITING && claimed.get() > sequence + capacity) {
+                lastMissed = sequence;
+            }
+            else {
+                break;
+            }
+        }
+        return new Recent(Arrays.copyOf(sequences, events.size()), events, sequence, lastMissed);
+    }
+}
@@ -1,30 +1,384 @@
 package com.aknopov.wssimulator.scenario;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.ThreadMode;
+import com.aknopov.wssimulator.Utils;
 
 /**
- * A collection of simulator events
+ * A collection of simulator events. Events are added from scenario thread, WebSocket container threads and user
+ * threads sending messages.
+ * <p>
+ * Events are stored without locks and column-wise - {@link System#nanoTime()} timestamp, event type, payload length
+ * and references to description parts. {@link Event} records with descriptions are built only when snapshot is
+ * read, so that sending a message neither copies its text nor allocates anything. Snapshot of the history holds
+ * events published before it was taken and reading it doesn't hold back writers.
+ * <p>
+ * How many events are kept depends on {@link HistoryRetention}. Unbounded history is an append-only log that grows
+ * in blocks. Bounded history keeps the last events in a ring and errors in a separate log. With spill file, spill
+ * thread writes events to the file before the ring evicts them - writers wait only when spilling falls a ring behind.
+ * The file stays open for reading till history is {@link #discard() discarded}.
  */
 public class History {
-    private final List<Event> events = new ArrayList<>();
+    private static final Set<EventType> SAMPLED_EVENTS = Set.of(EventType.SEND_MESSAGE, EventType.RECEIVE_MESSAGE);
+
+    private final HistoryRetention retention;
+    private final TimeBase timeBase = TimeBase.now();
+    private final AtomicLong sampledEvents = new AtomicLong();
+    private final LongAdder droppedEvents = new LongAdder();
+    // Unbounded history
+    @Nullable
+    private final EventLog log;
+    // Bounded history
+    @Nullable
+    private final EventRing ring;
+    @Nullable
+    private final EventLog errors;
+    @Nullable
+    private final SpillFile spill;
+
+    private record Sequenced(long sequence, Event event) {
+    }
+
+    /**
+     * Creates unbounded history
+     */
+    public History() {
+        this(HistoryRetention.unbounded());
+    }
 
     /**
-     * Provides immutable copy of history events
+     * Creates history with platform spill thread
+     *
+     * @param retention retention policy
+     * @throws java.io.UncheckedIOException if spill file can't be created
+     */
+    public History(HistoryRetention retention) {
+        this(retention, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * Creates history
+     *
+     * @param retention retention policy
+     * @param threadMode kind of spill thread
+     * @throws java.io.UncheckedIOException if spill file can't be created
+     */
+    public History(HistoryRetention retention, ThreadMode threadMode) {
+        this.retention = retention;
+        if (retention.isBounded()) {
+            this.log = null;
+            this.ring = new EventRing(retention.capacity());
+            this.errors = new EventLog();
+            this.spill = retention.spillFile() != null
+                    ? new SpillFile(retention.spillFile(), ring, threadMode) : null;
+            if (spill != null) {
+                ring.setEvictableCount(spill::getEvictableCount);
+                ring.setSpillWakeup(spill::wakeUp);
+                spill.start();
+            }
+        }
+        else {
+            this.log = new EventLog();
+            this.ring = null;
+            this.errors = null;
+            this.spill = null;
+        }
+    }
+
+    public HistoryRetention getRetention() {
+        return retention;
+    }
+
+    /**
+     * Provides immutable snapshot of history events. Events that are still being added by other threads
+     * don't get into the snapshot. Spilled events are read from the file when snapshot is iterated.
      *
      * @return list of events
+     * @throws IllegalStateException if spilled history is too long for a list
      */
     public List<Event> getEvents() {
+        if (log != null) {
+            return new LogSnapshot(log.publishedCount());
+        }
+
+        EventRing eventRing = Utils.requireNonNull(ring);
+        // Spilled events aren't evicted till they are written to the file
+        long fileStart = spill != null ? spill.getFlushedCount()
+                : Math.max(0, eventRing.claimedCount() - retention.capacity());
+        EventRing.Recent recent = eventRing.copy(fileStart, timeBase);
+        long fileCount = 0;
+        if (spill != null) {
+            // Events evicted while copying are in the file by now
+            fileCount = Math.min(spill.getFlushedCount(), Math.max(fileStart, recent.lastMissed() + 1));
+        }
+        List<Event> inMemory = merge(recent, fileCount);
+        if (fileCount == 0) {
+            return Collections.unmodifiableList(inMemory);
+        }
+        Utils.checkState(fileCount + inMemory.size() <= Integer.MAX_VALUE, "History is too long for a list");
+        return new SpilledSnapshot((int)fileCount, inMemory);
+    }
+
+    /**
+     * Provides error events. Errors are kept regardless of retention policy.
+     *
+     * @return list of errors
+     */
+    public List<Event> getErrors() {
+        if (log != null) {
+            return getEvents().stream()
+                    .filter(e -> e.eventType() == EventType.ERROR)
+                    .toList();
+        }
+        EventLog errorLog = Utils.requireNonNull(errors);
+        int count = errorLog.publishedCount();
+        List<Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(errorLog.get(i, timeBase));
+        }
         return Collections.unmodifiableList(events);
     }
 
+    /**
+     * Tells if there are error events
+     *
+     * @return {@code true} if there are errors
+     */
+    public boolean hasErrors() {
+        if (log != null) {
+            return getEvents().stream().anyMatch(e -> e.eventType() == EventType.ERROR);
+        }
+        return Utils.requireNonNull(errors).publishedCount() > 0;
+    }
+
+    /**
+     * Tells if history still holds all added events - none of them was sampled out or evicted without spilling
+     *
+     * @return {@code true} if no event is lost
+     */
+    public boolean isComplete() {
+        if (droppedEvents.sum() > 0) {
+            return false;
+        }
+        if (ring == null) {
+            return true;
+        }
+        long kept = retention.capacity() + (spill != null ? spill.getFlushedCount() : 0);
+        return ring.claimedCount() <= kept;
+    }
+
+    /**
+     * Gets number of events that weren't kept by sampling
+     *
+     * @return event count
+     */
+    public long getDroppedCount() {
+        return droppedEvents.sum();
+    }
+
     /**
      * Adds event into the history
      *
      * @param event the event
      */
     public void addEvent(Event event) {
-        events.add(event);
+        add(timeBase.toNanoTime(event.eventTime()), event.eventType(), EventColumns.DESCRIPTION, 0, "",
+                Objects.requireNonNullElse(event.description(), ""));
+    }
+
+    /**
+     * Adds event with current timestamp and empty description
+     *
+     * @param eventType the type of the event
+     */
+    public void addEvent(EventType eventType) {
+        addEvent(eventType, "");
+    }
+
+    /**
+     * Adds event with current timestamp
+     *
+     * @param eventType the type of the event
+     * @param description event description
+     */
+    public void addEvent(EventType eventType, String description) {
+        add(System.nanoTime(), eventType, EventColumns.DESCRIPTION, 0, "", description);
+    }
+
+    /**
+     * Adds event of text message with current timestamp. Description "prefix + text" is built when event is read.
+     *
+     * @param eventType the type of the event
+     * @param prefix description prefix
+     * @param text message text
+     */
+    public void addTextMessage(EventType eventType, String prefix, String text) {
+        add(System.nanoTime(), eventType, EventColumns.TEXT, text.length(), prefix, text);
+    }
+
+    /**
+     * Adds event of binary message with current timestamp. Description "prefix + Binary, len=N" is built when
+     * event is read.
+     *
+     * @param eventType the type of the event
+     * @param prefix description prefix
+     * @param length message length
+     */
+    public void addBinaryMessage(EventType eventType, String prefix, int length) {
+        add(System.nanoTime(), eventType, EventColumns.BINARY, length, prefix, "");
+    }
+
+    /**
+     * Gets number of events in the history. For bounded history it takes a snapshot.
+     *
+     * @return event count
+     */
+    public int size() {
+        return log != null ? log.publishedCount() : getEvents().size();
+    }
+
+    /**
+     * Stops spilling once events added so far are written to the file. Events added later are kept as if there
+     * were no spill file. Spilled events can still be read.
+     */
+    public void close() {
+        if (spill != null) {
+            spill.stop();
+        }
+    }
+
+    /**
+     * Stops spilling and closes spill file. Spilled events can't be read afterwards - reading them throws
+     * {@link IllegalStateException}, events kept in memory are still available.
+     */
+    public void discard() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    private void add(long nanoTime, EventType eventType, byte kind, int length, String prefix, String detail) {
+        if (retention.sampleRate() > 1 && SAMPLED_EVENTS.contains(eventType)
+                && sampledEvents.getAndIncrement() % retention.sampleRate() != 0) {
+            droppedEvents.increment();
+            return;
+        }
+        if (log != null) {
+            log.add(nanoTime, eventType, kind, length, prefix, detail);
+            return;
+        }
+        long sequence = Utils.requireNonNull(ring).add(nanoTime, eventType, kind, length, prefix, detail);
+        if (eventType == EventType.ERROR) {
+            Utils.requireNonNull(errors).add(sequence, nanoTime, eventType, kind, length, prefix, detail);
+        }
+    }
+
+    // Events copied from the ring and errors evicted from it in order of sequence numbers
+    private List<Event> merge(EventRing.Recent recent, long fileCount) {
+        long[] sequences = recent.sequences();
+        List<Sequenced> merged = new ArrayList<>(sequences.length);
+        for (int i = 0; i < sequences.length; i++) {
+            if (sequences[i] >= fileCount) {
+                merged.add(new Sequenced(sequences[i], recent.events().get(i)));
+            }
+        }
+        EventLog errorLog = Utils.requireNonNull(errors);
+        int errorCount = errorLog.publishedCount();
+        for (int i = 0; i < errorCount; i++) {
+            long sequence = errorLog.sequence(i);
+            if (sequence >= fileCount && sequence < recent.end() && Arrays.binarySearch(sequences, sequence) < 0) {
+                merged.add(new Sequenced(sequence, errorLog.get(i, timeBase)));
+            }
+        }
+        merged.sort(Comparator.comparingLong(Sequenced::sequence));
+        return merged.stream().map(Sequenced::event).toList();
+    }
+
+    private final class LogSnapshot extends AbstractList<Event> implements RandomAccess {
+        private final int size;
+
+        private LogSnapshot(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Event get(int index) {
+            Objects.checkIndex(index, size);
+            return Utils.requireNonNull(log).get(index, timeBase);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // Sequential access is fast, random access reads file from the nearest indexed event
+    private final class SpilledSnapshot extends AbstractList<Event> {
+        private final int fileCount;
+        private final List<Event> inMemory;
+
+        private SpilledSnapshot(int fileCount, List<Event> inMemory) {
+            this.fileCount = fileCount;
+            this.inMemory = inMemory;
+        }
+
+        @Override
+        public Event get(int index) {
+            Objects.checkIndex(index, size());
+            if (index >= fileCount) {
+                return inMemory.get(index - fileCount);
+            }
+            return Utils.requireNonNull(spill).open(index, fileCount, timeBase).next();
+        }
+
+        @Override
+        public int size() {
+            return fileCount + inMemory.size();
+        }
+
+        @Override
+        public Iterator<Event> iterator() {
+            return new Iterator<>() {
+                private int next;
+                @Nullable
+                private SpillFile.Cursor cursor;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size();
+                }
+
+                @Override
+                public Event next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (next >= fileCount) {
+                        return inMemory.get(next++ - fileCount);
+                    }
+                    if (cursor == null) {
+                        cursor = Utils.requireNonNull(spill).open(next, fileCount, timeBase);
+                    }
+                    next++;
+                    return cursor.next();
+                }
+            };
+        }
     }
 }
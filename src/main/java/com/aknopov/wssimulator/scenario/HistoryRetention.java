@@ -0,0 +1,69 @@
+package com.aknopov.wssimulator.scenario;
+
+import java.nio.file.Path;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Policy of keeping simulator history. By default all events are kept in memory. For long runs history can keep
+ * only the last events in a ring buffer, sample message events and spill evicted events to a file. Errors are always
+ * kept in memory.
+ *
+ * @param capacity number of the last events kept in memory, zero for unbounded history
+ * @param sampleRate every which message event is kept, one to keep all of them
+ * @param spillFile file that events evicted from the ring are written to, or {@code null}
+ */
+public record HistoryRetention(int capacity, int sampleRate, @Nullable Path spillFile) {
+    public HistoryRetention {
+        Utils.checkArgument(capacity >= 0, "Capacity can't be negative");
+        Utils.checkArgument(sampleRate > 0, "Sample rate should be positive");
+        Utils.checkArgument(spillFile == null || capacity > 0, "Only bounded history can be spilled");
+    }
+
+    /**
+     * Keeps all events in memory
+     *
+     * @return the policy
+     */
+    public static HistoryRetention unbounded() {
+        return new HistoryRetention(0, 1, null);
+    }
+
+    /**
+     * Keeps the last events in memory, older ones except errors are dropped
+     *
+     * @param capacity number of the events
+     * @return the policy
+     */
+    public static HistoryRetention lastEvents(int capacity) {
+        Utils.checkArgument(capacity > 0, "Capacity should be positive");
+        return new HistoryRetention(capacity, 1, null);
+    }
+
+    /**
+     * Keeps only every N-th sent and received message event. Other events aren't sampled.
+     *
+     * @param rate sample rate N
+     * @return the policy
+     */
+    public HistoryRetention withSampling(int rate) {
+        return new HistoryRetention(capacity, rate, spillFile);
+    }
+
+    /**
+     * Writes events evicted from memory to the file, so that history still provides them. Existing file is
+     * truncated.
+     *
+     * @param file the file
+     * @return the policy
+     */
+    public HistoryRetention withSpillFile(Path file) {
+        return new HistoryRetention(capacity, sampleRate, file);
+    }
+
+    public boolean isBounded() {
+        return capacity > 0;
+    }
+}
@@ -0,0 +1,420 @@
+package com.aknopov.wssimulator.scenario;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.ThreadMode;
+import com.aknopov.wssimulator.Utils;
+
+/**
+ * Append-only file of history events. Spill thread copies events from the ring in order of their sequence numbers,
+ * so that the file holds the first {@link #getFlushedCount()} events and the ring can evict them. The thread is
+ * parked till the ring wakes it up.
+ * <p>
+ * Record of event has timestamp as variable length difference from the previous one, event type, description kind,
+ * payload length, ID of description prefix and UTF-8 description text. Prefixes are few - they are kept in memory.
+ * Every {@value #INDEX_INTERVAL}th record has its offset in the index, so that events can be read from the middle
+ * of the file.
+ * <p>
+ * Cursors read the file in blocks through one shared file that stays open till {@link #close()}, so that abandoned
+ * cursors don't hold file descriptors. Unlike file channel reads, the reads aren't aborted by interrupts.
+ */
+final class SpillFile {
+    private static final Logger logger = LoggerFactory.getLogger(SpillFile.class);
+
+    static final int INDEX_INTERVAL = 1024;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Timestamp, type, kind, length, prefix ID and text length
+    private static final int MAX_HEADER_SIZE = 10 + 1 + 1 + 5 + 5 + 5;
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final Path path;
+    private final EventRing ring;
+    private final FileChannel channel;
+    // Shared by cursors, guarded by itself
+    private final RandomAccessFile reader;
+    private final Thread spillThread;
+    private final List<String> prefixes = new CopyOnWriteArrayList<>();
+    // Accessed by spill thread only
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Map<String, Integer> prefixIds = new HashMap<>();
+    private long spilledCount;
+    private long fileSize;
+    private long lastNanoTime;
+    // Offset and previous timestamp of every INDEX_INTERVAL-th record, published with flushed count
+    private volatile long[] index = new long[64];
+    private volatile long flushedCount;
+    private volatile boolean running = true;
+    private volatile boolean stopped;
+    private volatile boolean closed;
+
+    /**
+     * Creates the file, existing file is truncated
+     *
+     * @param path file path
+     * @param ring ring to spill events from
+     * @param threadMode kind of spill thread
+     * @throws UncheckedIOException if file can't be created
+     */
+    SpillFile(Path path, EventRing ring, ThreadMode threadMode) {
+        this.path = path;
+        this.ring = ring;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Can't create history spill file " + path, e);
+        }
+        try {
+            this.reader = new RandomAccessFile(path.toFile(), "r");
+        }
+        catch (IOException e) {
+            closeChannel();
+            throw new UncheckedIOException("Can't open history spill file " + path, e);
+        }
+        this.spillThread = threadMode.newThread(this::run, "HistorySpill");
+        this.spillThread.setDaemon(true);
+    }
+
+    /**
+     * Starts spill thread
+     */
+    void start() {
+        spillThread.start();
+    }
+
+    /**
+     * Stops spill thread once events added so far are spilled. Reading of the file is still possible.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(spillThread);
+    }
+
+    /**
+     * Wakes up spill thread to spill events added so far
+     */
+    void wakeUp() {
+        LockSupport.unpark(spillThread);
+    }
+
+    /**
+     * Stops spill thread and closes the file for reading. Spilled events can't be read afterwards.
+     */
+    void close() {
+        stop();
+        synchronized (reader) {
+            closed = true;
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                logger.warn("Can't close history spill file {}", path, e);
+            }
+        }
+    }
+
+    /**
+     * Gets number of events written to the file
+     *
+     * @return event count
+     */
+    long getFlushedCount() {
+        return flushedCount;
+    }
+
+    /**
+     * Gets number of the first events the ring can evict - all of them once spilling stopped
+     *
+     * @return event count
+     */
+    long getEvictableCount() {
+        return stopped ? Long.MAX_VALUE : flushedCount;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Opens cursor that reads events in the given range. Cursor doesn't need closing.
+     *
+     * @param first index of the first event to read
+     * @param end index after the last event to read, it can't exceed flushed count
+     * @param timeBase time base of event timestamps
+     * @return the cursor
+     * @throws UncheckedIOException if file can't be read
+     * @throws IllegalStateException if file is closed
+     */
+    Cursor open(long first, long end, TimeBase timeBase) {
+        Utils.checkState(!closed, "History spill file is closed");
+        try {
+            return new Cursor(first, end, timeBase);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Can't read history spill file " + path, e);
+        }
+    }
+
+    private void run() {
+        try {
+            boolean spilling = true;
+            while (spilling) {
+                // Events added before stop are spilled in the last round
+                spilling = running;
+                spillAvailable();
+                writeBuffer();
+                if (spilling) {
+                    LockSupport.park(this);
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.error("Can't spill history to {}, spilling stopped", path, e);
+        }
+        finally {
+            stopped = true;
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            logger.warn("Can't close history spill file {}", path, e);
+        }
+    }
+
+    // Reads block of the file at given position
+    private int read(byte[] block, int offset, int length, long position) throws IOException {
+        synchronized (reader) {
+            reader.seek(position);
+            return reader.read(block, offset, length);
+        }
+    }
+
+    private void spillAvailable() throws IOException {
+        EventColumns slots = ring.slots();
+        while (ring.isPublished(spilledCount)) {
+            // Event can't be evicted till it is flushed
+            int slot = ring.slotOf(spilledCount);
+            byte kind = slots.kind(slot);
+            byte[] text = kind == EventColumns.BINARY ? new byte[0]
+                    : slots.detail(slot).getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < MAX_HEADER_SIZE + text.length) {
+                writeBuffer();
+            }
+            if (spilledCount % INDEX_INTERVAL == 0) {
+                addIndexEntry(fileSize + buffer.position(), lastNanoTime);
+            }
+            if (buffer.remaining() < MAX_HEADER_SIZE + text.length) {
+                // Record doesn't fit the buffer
+                ByteBuffer record = ByteBuffer.allocate(MAX_HEADER_SIZE + text.length);
+                encode(record, slots, slot, text);
+                writeFully(record.flip());
+            }
+            else {
+                encode(buffer, slots, slot, text);
+            }
+            spilledCount++;
+        }
+    }
+
+    private void encode(ByteBuffer out, EventColumns slots, int slot, byte[] text) {
+        long nanoTime = slots.nanoTime(slot);
+        putVarLong(out, zigZag(nanoTime - lastNanoTime));
+        lastNanoTime = nanoTime;
+        out.put((byte)slots.eventType(slot).ordinal());
+        byte kind = slots.kind(slot);
+        out.put(kind);
+        if (kind != EventColumns.DESCRIPTION) {
+            putVarLong(out, slots.length(slot));
+            putVarLong(out, prefixId(slots.prefix(slot)));
+        }
+        if (kind != EventColumns.BINARY) {
+            putVarLong(out, text.length);
+            out.put(text);
+        }
+    }
+
+    private int prefixId(String prefix) {
+        return prefixIds.computeIfAbsent(prefix, p -> {
+            prefixes.add(p);
+            return prefixes.size() - 1;
+        });
+    }
+
+    private void addIndexEntry(long offset, long previousNanoTime) {
+        int entry = (int)(spilledCount / INDEX_INTERVAL);
+        long[] entries = index;
+        if (2 * entry + 1 >= entries.length) {
+            entries = Arrays.copyOf(entries, 2 * entries.length);
+        }
+        entries[2 * entry] = offset;
+        entries[2 * entry + 1] = previousNanoTime;
+        index = entries;
+    }
+
+    private void writeBuffer() throws IOException {
+        writeFully(buffer.flip());
+        buffer.clear();
+        flushedCount = spilledCount;
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            fileSize += channel.write(data, fileSize);
+        }
+    }
+
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Sequential reader of spilled events
+     */
+    final class Cursor {
+        private final TimeBase timeBase;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+        private final long end;
+        private long next;
+        private long position;
+        private long previousNanoTime;
+
+        private Cursor(long first, long end, TimeBase timeBase) throws IOException {
+            // Flushed count is read before the index it publishes
+            Utils.checkArgument(first < end && end <= flushedCount, "Events aren't spilled");
+            long[] entries = index;
+            int entry = (int)(first / INDEX_INTERVAL);
+            this.end = end;
+            this.timeBase = timeBase;
+            this.next = (long)entry * INDEX_INTERVAL;
+            this.position = entries[2 * entry];
+            this.previousNanoTime = entries[2 * entry + 1];
+            while (next < first) {
+                read();
+            }
+        }
+
+        boolean hasNext() {
+            return next < end;
+        }
+
+        /**
+         * Reads next event
+         *
+         * @return the event
+         * @throws UncheckedIOException if file can't be read
+         */
+        Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return read();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Can't read history spill file " + path, e);
+            }
+        }
+
+        private Event read() throws IOException {
+            long nanoTime = previousNanoTime + unZigZag(getVarLong());
+            previousNanoTime = nanoTime;
+            EventType eventType = EVENT_TYPES[getByte()];
+            byte kind = getByte();
+            int length = 0;
+            String prefix = "";
+            if (kind != EventColumns.DESCRIPTION) {
+                length = (int)getVarLong();
+                prefix = prefixes.get((int)getVarLong());
+            }
+            String detail = "";
+            if (kind != EventColumns.BINARY) {
+                detail = new String(getBytes((int)getVarLong()), StandardCharsets.UTF_8);
+            }
+            next++;
+            return new Event(timeBase.toInstant(nanoTime), eventType,
+                    EventColumns.describe(kind, prefix, detail, length));
+        }
+
+        private byte getByte() throws IOException {
+            fill(1);
+            return readBuffer.get();
+        }
+
+        private long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = getByte();
+                value |= (long)(b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private byte[] getBytes(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                fill(1);
+                int count = Math.min(length - offset, readBuffer.remaining());
+                readBuffer.get(bytes, offset, count);
+                offset += count;
+            }
+            return bytes;
+        }
+
+        private void fill(int count) throws IOException {
+            if (readBuffer.remaining() >= count) {
+                return;
+            }
+            readBuffer.compact();
+            while (readBuffer.position() < count) {
+                int read = SpillFile.this.read(readBuffer.array(), readBuffer.position(), readBuffer.remaining(),
+                        position);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of history spill file " + path);
+                }
+                readBuffer.position(readBuffer.position() + read);
+                position += read;
+            }
+            readBuffer.flip();
+        }
+
+    }
+}
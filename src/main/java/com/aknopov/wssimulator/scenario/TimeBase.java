@@ -0,0 +1,24 @@
+package com.aknopov.wssimulator.scenario;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Maps {@link System#nanoTime()} readings of history events to wall clock time
+ *
+ * @param time wall clock time of the base
+ * @param nanos nano time of the base
+ */
+record TimeBase(Instant time, long nanos) {
+    static TimeBase now() {
+        return new TimeBase(Instant.now(), System.nanoTime());
+    }
+
+    Instant toInstant(long nanoTime) {
+        return time.plusNanos(nanoTime - nanos);
+    }
+
+    long toNanoTime(Instant instant) {
+        return nanos + Duration.between(time, instant).toNanos();
+    }
+}
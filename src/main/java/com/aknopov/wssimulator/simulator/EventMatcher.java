@@ -0,0 +1,71 @@
+package com.aknopov.wssimulator.simulator;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.aknopov.wssimulator.scenario.EventType;
+
+/**
+ * Matches simulator events with events expected by scenario acts as they happen, so that the result doesn't depend
+ * on how many events history keeps. Only the first mismatch is remembered. Scenario thread adds expected event
+ * before it plays the act; actual events are added by any thread.
+ */
+final class EventMatcher {
+    private static final Set<EventType> IGNORED_EVENTS = EnumSet.of(EventType.STARTED, EventType.ERROR);
+
+    private final List<EventType> expectedEvents = new ArrayList<>();
+    private int actualCount;
+    private int mismatchIndex = -1;
+    @Nullable
+    private EventType mismatchedEvent;
+
+    /**
+     * Adds event expected by the next scenario act
+     *
+     * @param eventType event type
+     */
+    synchronized void expect(EventType eventType) {
+        if (!IGNORED_EVENTS.contains(eventType)) {
+            expectedEvents.add(eventType);
+        }
+    }
+
+    /**
+     * Matches event that happened
+     *
+     * @param eventType event type
+     */
+    synchronized void onEvent(EventType eventType) {
+        if (IGNORED_EVENTS.contains(eventType)) {
+            return;
+        }
+        if (mismatchIndex < 0
+                && (actualCount >= expectedEvents.size() || expectedEvents.get(actualCount) != eventType)) {
+            mismatchIndex = actualCount;
+            mismatchedEvent = eventType;
+        }
+        actualCount++;
+    }
+
+    /**
+     * Describes the first difference between expected and actual events
+     *
+     * @return description of the difference or {@code null} if events match
+     */
+    @Nullable
+    synchronized String getMismatch() {
+        if (mismatchIndex >= 0) {
+            String expected = mismatchIndex < expectedEvents.size() ? expectedEvents.get(mismatchIndex).name()
+                    : "no more events";
+            return String.format("event #%d is %s, expected %s", mismatchIndex + 1, mismatchedEvent, expected);
+        }
+        if (actualCount < expectedEvents.size()) {
+            return String.format("event #%d %s didn't happen", actualCount + 1, expectedEvents.get(actualCount));
+        }
+        return null;
+    }
+}
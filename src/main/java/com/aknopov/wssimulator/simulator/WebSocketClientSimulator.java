@@ -5,7 +5,6 @@ import java.net.http.HttpHeaders;
 import java.time.Duration;
 
 import com.aknopov.wssimulator.SessionConfig;
-import com.aknopov.wssimulator.scenario.Event;
 import com.aknopov.wssimulator.scenario.EventType;
 import com.aknopov.wssimulator.tyrus.WebSocketClient;
 
@@ -17,7 +16,7 @@ public class WebSocketClientSimulator extends WebSocketSimulatorBase {
     private final WebSocketClient wsClient;
 
     public WebSocketClientSimulator(String serverUrl, SessionConfig sessionConfig) {
-        super("Client");
+        super("Client", sessionConfig);
         try {
             this.wsClient = new WebSocketClient(serverUrl, this, sessionConfig);
         }
@@ -28,7 +27,7 @@ public class WebSocketClientSimulator extends WebSocketSimulatorBase {
 
 
     public WebSocketClientSimulator(String serverUrl, SessionConfig sessionConfig, HttpHeaders extraHeaders) {
-        super("Client");
+        super("Client", sessionConfig);
         try {
             this.wsClient = new WebSocketClient(serverUrl, this, sessionConfig, extraHeaders);
         }
@@ -49,7 +48,7 @@ public class WebSocketClientSimulator extends WebSocketSimulatorBase {
         awaitScenarioStart(OPEN_WAIT_DURATION);
         // ... then client
         wsClient.start();
-        history.addEvent(Event.create(EventType.STARTED));
+        history.addEvent(EventType.STARTED);
     }
 
     @Override
@@ -4,11 +4,12 @@ import java.util.Map;
 
 import com.aknopov.wssimulator.SessionConfig;
 import com.aknopov.wssimulator.injection.ServiceLocator;
-import com.aknopov.wssimulator.scenario.Event;
 import com.aknopov.wssimulator.scenario.EventType;
 import com.aknopov.wssimulator.TimeoutException;
 import com.aknopov.wssimulator.tyrus.WebSocketServer;
 
+import static com.aknopov.wssimulator.SocketFactory.getAvailablePort;
+
 /**
  * Implementation of WebSocketSimulator for the server
  */
@@ -24,14 +25,13 @@ public class WebSocketServerSimulator extends WebSocketSimulatorBase {
      * @param port port number, 0 - is for dynamic
      */
     public WebSocketServerSimulator(SessionConfig config, int port) {
-        this(config, port != DYNAMIC_PORT
-                ? new WebSocketServer("localhost", "/", Map.of(), port)
-                : new WebSocketServer("localhost", "/", Map.of()));
+        this(config, new WebSocketServer("localhost", "/", Map.of(), port != DYNAMIC_PORT ? port : getAvailablePort(),
+                config.threadMode()));
     }
 
     //VisibleForTesting
     WebSocketServerSimulator(SessionConfig config, WebSocketServer wsServer) {
-        super("Server");
+        super("Server", config);
         this.wsServer = wsServer;
         this.config = config;
         ServiceLocator.init(config, this);
@@ -45,7 +45,7 @@ public class WebSocketServerSimulator extends WebSocketSimulatorBase {
             if (!wsServer.waitForStart(config.idleTimeout())) {
                 throw new TimeoutException("Wait for server start timed out");
             }
-            history.addEvent(Event.create(EventType.STARTED));
+            history.addEvent(EventType.STARTED);
         }
         catch (RuntimeException e) {
             recordError(e.getMessage());
@@ -3,14 +3,11 @@ package com.aknopov.wssimulator.simulator;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
@@ -19,8 +16,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.aknopov.wssimulator.EventListener;
+import com.aknopov.wssimulator.EventQueue;
+import com.aknopov.wssimulator.OverflowPolicy;
+import com.aknopov.wssimulator.PreciseTiming;
 import com.aknopov.wssimulator.ProtocolUpgrade;
-import com.aknopov.wssimulator.ResettableLock;
+import com.aknopov.wssimulator.SessionConfig;
 import com.aknopov.wssimulator.SimulatorEndpoint;
 import com.aknopov.wssimulator.Utils;
 import com.aknopov.wssimulator.WebSocketSimulator;
@@ -28,9 +28,11 @@ import com.aknopov.wssimulator.scenario.Act;
 import com.aknopov.wssimulator.scenario.Event;
 import com.aknopov.wssimulator.scenario.EventType;
 import com.aknopov.wssimulator.scenario.History;
+import com.aknopov.wssimulator.scenario.HistoryRetention;
 import com.aknopov.wssimulator.Scenario;
 import com.aknopov.wssimulator.scenario.ScenarioImpl;
 import com.aknopov.wssimulator.ScenarioInterruptedException;
+import com.aknopov.wssimulator.ThreadMode;
 import com.aknopov.wssimulator.TimeoutException;
 import com.aknopov.wssimulator.scenario.ValidationException;
 import com.aknopov.wssimulator.message.BinaryWebSocketMessage;
@@ -40,34 +42,58 @@ import com.aknopov.wssimulator.tyrus.WebSocketEndpoint;
 import jakarta.websocket.CloseReason.CloseCodes;
 
 import static com.aknopov.wssimulator.Utils.requireNonNull;
-import static java.util.function.Predicate.not;
 
 /**
  * Common functionality of client and server simulators
  */
 public abstract class WebSocketSimulatorBase implements WebSocketSimulator, EventListener {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketSimulatorBase.class);
+    // Upgrade, open and close happen once per session
+    private static final int SESSION_EVENT_QUEUE_CAPACITY = 4;
 
-    private static final Set<EventType> IGNORED_EVENTS = Set.of(EventType.STARTED, EventType.ERROR);
-    private static final Set<EventType> MATCHING_EVENTS = Arrays.stream(EventType.values()).filter(not(IGNORED_EVENTS::contains))
-            .collect(Collectors.toSet());
-
-    protected final History history = new History();
+    protected final History history;
     protected final Scenario scenario = new ScenarioImpl();
     protected final Thread scenarioThread;
     protected final String role;
+    private final String rolePrefix;
     @Nullable
     protected SimulatorEndpoint endpoint;
-    private final Map<EventType, ResettableLock<?>> eventLocks = Map.of(
-            EventType.UPGRADE, new ResettableLock<>(ProtocolUpgrade.class),
-            EventType.OPEN, new ResettableLock<>(WebSocketEndpoint.class),
-            EventType.CLOSED, new ResettableLock<>(CloseCodes.class),
-            EventType.RECEIVE_MESSAGE, new ResettableLock<>(WebSocketMessage.class));
-    private final List<EventType> expectedEvents = new ArrayList<>();
+    private final Map<EventType, EventQueue<?>> eventQueues;
+    private final EventMatcher eventMatcher = new EventMatcher();
 
     protected WebSocketSimulatorBase(String role) {
-        this.scenarioThread = new Thread(this::playScenario, role + "Simulator");
+        this(role, ThreadMode.PLATFORM, SessionConfig.DEFAULT_EVENT_QUEUE_CAPACITY, OverflowPolicy.BLOCK,
+                HistoryRetention.unbounded());
+    }
+
+    protected WebSocketSimulatorBase(String role, SessionConfig config) {
+        this(role, config.threadMode(), config.eventQueueCapacity(), config.overflowPolicy(),
+                config.historyRetention());
+    }
+
+    /**
+     * Creates simulator
+     *
+     * @param role simulator role
+     * @param threadMode kind of scenario and history spill threads
+     * @param eventQueueCapacity maximum number of received messages waiting for scenario acts
+     * @param overflowPolicy what happens to received event when its queue is full
+     * @param historyRetention what events are kept in history
+     */
+    protected WebSocketSimulatorBase(String role, ThreadMode threadMode, int eventQueueCapacity,
+            OverflowPolicy overflowPolicy, HistoryRetention historyRetention) {
+        this.history = new History(historyRetention, threadMode);
+        this.scenarioThread = threadMode.newThread(this::playScenario, role + "Simulator");
         this.role = role;
+        this.rolePrefix = role + ": ";
+        this.eventQueues = Map.of(
+                EventType.UPGRADE, new EventQueue<>(ProtocolUpgrade.class, SESSION_EVENT_QUEUE_CAPACITY,
+                        overflowPolicy),
+                EventType.OPEN, new EventQueue<>(WebSocketEndpoint.class, SESSION_EVENT_QUEUE_CAPACITY,
+                        overflowPolicy),
+                EventType.CLOSED, new EventQueue<>(CloseCodes.class, SESSION_EVENT_QUEUE_CAPACITY, overflowPolicy),
+                EventType.RECEIVE_MESSAGE, new EventQueue<>(WebSocketMessage.class, eventQueueCapacity,
+                        overflowPolicy));
     }
 
     //
@@ -84,6 +110,11 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
         return history.getEvents();
     }
 
+    @Override
+    public void discardHistory() {
+        history.discard();
+    }
+
     // VisibleForTesting
     void setEndpoint(SimulatorEndpoint endpoint) {
         this.endpoint = endpoint;
@@ -101,7 +132,8 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
     private void sendTextMessage(String message) {
         try {
             requireNonNull(endpoint).sendTextMessage(message);
-            history.addEvent(Event.create(EventType.SEND_MESSAGE, role + ": " + message));
+            history.addTextMessage(EventType.SEND_MESSAGE, rolePrefix, message);
+            eventMatcher.onEvent(EventType.SEND_MESSAGE);
         }
         catch (IllegalStateException e) {
             recordError("Attempted to send text message before establishing connection");
@@ -114,7 +146,8 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
     private void sendBinaryMessage(ByteBuffer message) {
         try {
             requireNonNull(endpoint).sendBinaryMessage(message);
-            history.addEvent(Event.create(EventType.SEND_MESSAGE, role + ": Binary, len=" + message.remaining()));
+            history.addBinaryMessage(EventType.SEND_MESSAGE, rolePrefix, message.remaining());
+            eventMatcher.onEvent(EventType.SEND_MESSAGE);
         }
         catch (IllegalStateException e) {
             recordError("Attempted to send binary message before establishing connection");
@@ -126,15 +159,12 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
 
     @Override
     public boolean hasErrors() {
-        return history.getEvents().stream().anyMatch(e -> e.eventType() == EventType.ERROR);
+        return history.hasErrors();
     }
 
     @Override
     public List<Event> getErrors() {
-        return history.getEvents()
-                .stream()
-                .filter(e -> e.eventType() == EventType.ERROR)
-                .toList();
+        return history.getErrors();
     }
 
     @Override
@@ -147,18 +177,21 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
             return false;
         }
 
-        List<EventType> expectedFiltered = expectedEvents.stream().filter(MATCHING_EVENTS::contains).toList();
-        List<EventType> actualFiltered = getHistory().stream().map(Event::eventType).filter(MATCHING_EVENTS::contains).toList();
-        if (!expectedFiltered.equals(actualFiltered)) {
-            recordError(String.format("Scenario doesn't match actual events.%nExpected: %s%nActual: %s",
-                    expectedFiltered, getHistory().stream().filter(e -> MATCHING_EVENTS.contains(e.eventType())).toList()));
+        String mismatch = eventMatcher.getMismatch();
+        if (mismatch != null) {
+            recordError("Scenario doesn't match actual events - " + mismatch);
             return false;
         }
         return true;
     }
 
+    private void addEvent(EventType eventType) {
+        history.addEvent(eventType);
+        eventMatcher.onEvent(eventType);
+    }
+
     protected void recordError(String message) {
-        history.addEvent(Event.error(role + ": " + message));
+        history.addEvent(EventType.ERROR, rolePrefix + message);
     }
 
     @Override
@@ -170,10 +203,13 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
     @SuppressWarnings("Interruption")
     public void stop() {
         scenario.requestStop();
+        eventQueues.values().forEach(EventQueue::close);
         if (scenarioThread.isAlive()) {
             scenarioThread.interrupt();
         }
-        history.addEvent(Event.create(EventType.STOPPED, role));
+        history.addEvent(EventType.STOPPED, role);
+        eventMatcher.onEvent(EventType.STOPPED);
+        history.close();
     }
 
     @Override
@@ -197,7 +233,7 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
     private void playScenario() {
         try {
             for (Act<?> act: scenario) {
-                expectedEvents.add(act.eventType());
+                eventMatcher.expect(act.eventType());
                 playOneAct(act);
             }
         }
@@ -205,6 +241,8 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
             recordError("Scenario run has been interrupted: " + Utils.stringify(ex));
         }
         finally {
+            // Releasing threads mustn't wait for acts that won't come
+            eventQueues.values().forEach(EventQueue::close);
             scenario.markCompletion();
         }
     }
@@ -236,16 +274,16 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
                 CloseCodes code = provideData(act, CloseCodes.class);
                 Utils.requireNonNull(endpoint)
                         .closeConnection(code);
-                history.addEvent(Event.create(EventType.DO_CLOSE));
+                addEvent(EventType.DO_CLOSE);
             });
             case WAIT -> process(() -> {
                 wait(act.delay());
-                history.addEvent(Event.create(EventType.WAIT));
+                addEvent(EventType.WAIT);
             });
             case ACTION -> process(() -> {
                 wait(act.delay());
                 consumeData(act, null);
-                history.addEvent(Event.create(EventType.ACTION));
+                addEvent(EventType.ACTION);
             });
             default -> recordError("Internal error, act " + act.eventType() + " is not processable");
         }
@@ -273,7 +311,7 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
     private void wait(Duration waitDuration) {
         logger.debug("{}: Waiting for {} msec", role, waitDuration.toMillis());
         try {
-            Thread.sleep(waitDuration.toMillis());
+            PreciseTiming.sleep(waitDuration);
         }
         catch (InterruptedException e) {
             throw new ScenarioInterruptedException(e);
@@ -283,10 +321,10 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
     @SuppressWarnings("unchecked")
     private <T> T waitFor(Act<?> act, Class<T> klaz) {
         logger.debug("{}: Waiting {} object for {} msec", role, klaz.getSimpleName(), act.delay().toMillis());
-        ResettableLock<T> lock = (ResettableLock<T>)requireNonNull(eventLocks.get(act.eventType()));
+        EventQueue<T> queue = (EventQueue<T>)requireNonNull(eventQueues.get(act.eventType()));
         try {
-            T ret = requireNonNull(lock.await(act.delay()));
-            history.addEvent(Event.create(act.eventType()));
+            T ret = requireNonNull(queue.await(act.delay()));
+            addEvent(act.eventType());
             return ret;
         }
         catch (InterruptedException e) {
@@ -297,8 +335,15 @@ public abstract class WebSocketSimulatorBase implements WebSocketSimulator, Even
     @SuppressWarnings("unchecked")
     private <T> void releaseEvent(EventType eventType, T payload) {
         logger.debug("{}: Releasing {} object", role, payload.getClass().getSimpleName());
-        requireNonNull((ResettableLock<T>)eventLocks.get(eventType))
-                .release(payload);
+        EventQueue<T> queue = (EventQueue<T>)requireNonNull(eventQueues.get(eventType));
+        if (!queue.offer(payload) && !queue.isClosed()) {
+            if (queue.getOverflowPolicy() == OverflowPolicy.FAIL) {
+                recordError("Event queue overflow, " + eventType + " event dropped");
+            }
+            else {
+                logger.debug("{}: Event queue is full, {} event dropped", role, eventType);
+            }
+        }
     }
 
     @SuppressWarnings("unchecked")
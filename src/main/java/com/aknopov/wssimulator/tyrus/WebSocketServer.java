@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import com.aknopov.wssimulator.EventListener;
 import com.aknopov.wssimulator.ProtocolUpgrade;
 import com.aknopov.wssimulator.SessionConfig;
+import com.aknopov.wssimulator.ThreadMode;
 import com.aknopov.wssimulator.injection.ServiceLocator;
 import jakarta.websocket.DeploymentException;
 import jakarta.websocket.Endpoint;
@@ -31,6 +32,7 @@ public class WebSocketServer {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServer.class);
 
     private final int port;
+    private final ThreadMode threadMode;
     private final Server server;
     private final CountDownLatch started;
     private final CountDownLatch stopRequested;
@@ -45,7 +47,22 @@ public class WebSocketServer {
      * @param port port to run on
      */
     public WebSocketServer(String host, String path, Map<String, Object> properties, int port) {
+        this(host, path, properties, port, ThreadMode.PLATFORM);
+    }
+
+    /**
+     * Creates server instant that runs on given kind of thread.
+     *
+     * @param host host name
+     * @param path root path
+     * @param properties Tyrus server configuration properties
+     * @param port port to run on
+     * @param threadMode kind of server thread
+     */
+    public WebSocketServer(String host, String path, Map<String, Object> properties, int port,
+            ThreadMode threadMode) {
         this.port = port;
+        this.threadMode = threadMode;
         this.server = new Server(host, port, path, properties, MyServerApplicationConfig.class);
         this.started = new CountDownLatch(1);
         this.stopRequested = new CountDownLatch(1);
@@ -74,7 +91,7 @@ public class WebSocketServer {
             throw new IllegalStateException("Server is neither in initial state nor stopped");
         }
         logger.debug("Starting WS server on port {}", port);
-        new Thread(this::runServer).start();
+        threadMode.newThread(this::runServer, "WebSocketServer-" + port).start();
     }
 
     /**
@@ -0,0 +1,160 @@
+package com.aknopov.wssimulator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventQueueTest {
+    private static final Duration WAIT_TIME = Duration.ofMillis(200);
+    private static final Duration EXPECT_WINDOW = Duration.ofSeconds(5);
+    private static final int CAPACITY = 4;
+    private static final int PRODUCERS = 4;
+    private static final int BURST_SIZE = 10_000;
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new EventQueue<>(Integer.class, 0, OverflowPolicy.BLOCK));
+    }
+
+    @Test
+    void testOrder() throws Exception {
+        EventQueue<Integer> queue = new EventQueue<>(Integer.class, CAPACITY, OverflowPolicy.BLOCK);
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < CAPACITY; i++) {
+                assertTrue(queue.offer(round * CAPACITY + i));
+            }
+            assertEquals(CAPACITY, queue.size());
+            for (int i = 0; i < CAPACITY; i++) {
+                assertEquals(round * CAPACITY + i, queue.await(Duration.ZERO));
+            }
+            assertEquals(0, queue.size());
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testAwaitTimeout() throws Exception {
+        EventQueue<Integer> queue = new EventQueue<>(Integer.class, CAPACITY, OverflowPolicy.BLOCK);
+
+        Instant start = Instant.now();
+        assertThrows(TimeoutException.class, () -> queue.await(WAIT_TIME));
+        assertThat(Duration.between(start, Instant.now()), greaterThanOrEqualTo(WAIT_TIME));
+
+        Thread producer = new Thread(() -> {
+            Utils.sleepUnchecked(WAIT_TIME);
+            queue.offer(1);
+        });
+        producer.start();
+        start = Instant.now();
+        assertEquals(1, queue.await(EXPECT_WINDOW));
+        assertThat(Duration.between(start, Instant.now()), lessThan(EXPECT_WINDOW));
+        producer.join();
+    }
+
+    @Test
+    void testDropNewest() {
+        EventQueue<Integer> queue = new EventQueue<>(Integer.class, CAPACITY, OverflowPolicy.DROP_NEWEST);
+
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(CAPACITY));
+        assertEquals(1, queue.getDropped());
+
+        assertEquals(0, queue.poll());
+        assertTrue(queue.offer(CAPACITY + 1));
+        List<Integer> rest = new ArrayList<>();
+        for (Integer event = queue.poll(); event != null; event = queue.poll()) {
+            rest.add(event);
+        }
+        assertEquals(List.of(1, 2, 3, CAPACITY + 1), rest);
+    }
+
+    @Test
+    void testBlockWaitsForFreeSlot() throws Exception {
+        EventQueue<Integer> queue = new EventQueue<>(Integer.class, 1, OverflowPolicy.BLOCK);
+        AtomicBoolean offered = new AtomicBoolean();
+        queue.offer(0);
+
+        Thread producer = new Thread(() -> offered.set(queue.offer(1)));
+        producer.start();
+        Utils.sleepUnchecked(WAIT_TIME);
+        assertFalse(offered.get());
+
+        assertEquals(0, queue.await(Duration.ZERO));
+        assertEquals(1, queue.await(EXPECT_WINDOW));
+        producer.join();
+        assertTrue(offered.get());
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    void testCloseReleasesBlockedProducer() throws Exception {
+        EventQueue<Integer> queue = new EventQueue<>(Integer.class, 1, OverflowPolicy.BLOCK);
+        CountDownLatch returned = new CountDownLatch(1);
+        queue.offer(0);
+
+        Thread producer = new Thread(() -> {
+            queue.offer(1);
+            returned.countDown();
+        });
+        producer.start();
+        Utils.sleepUnchecked(WAIT_TIME);
+        assertEquals(1, returned.getCount());
+
+        queue.close();
+        assertTrue(queue.isClosed());
+        producer.join(EXPECT_WINDOW.toMillis());
+        assertEquals(0, returned.getCount());
+        assertFalse(queue.offer(2));
+        assertEquals(2, queue.getDropped());
+    }
+
+    // Bursts from several producers into a small queue lose nothing and keep order of each producer
+    @Test
+    void testConcurrentBursts() throws Exception {
+        EventQueue<Integer> queue = new EventQueue<>(Integer.class, 64, OverflowPolicy.BLOCK);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producerId = p;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < BURST_SIZE; i++) {
+                    queue.offer(producerId * BURST_SIZE + i);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        int[] lastEvents = new int[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            lastEvents[p] = p * BURST_SIZE - 1;
+        }
+        for (int i = 0; i < PRODUCERS * BURST_SIZE; i++) {
+            int event = queue.await(EXPECT_WINDOW);
+            int producerId = event / BURST_SIZE;
+            assertEquals(lastEvents[producerId] + 1, event);
+            lastEvents[producerId] = event;
+        }
+        for (Thread producer: producers) {
+            producer.join();
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.getDropped());
+    }
+}
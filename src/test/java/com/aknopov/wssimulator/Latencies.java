@@ -0,0 +1,28 @@
+package com.aknopov.wssimulator;
+
+import java.util.Arrays;
+
+/**
+ * Summary of latencies measured by benchmark tests
+ */
+final class Latencies {
+    private Latencies() {
+    }
+
+    /**
+     * Describes distribution of latencies
+     *
+     * @param nanos latencies in nanoseconds
+     * @return percentiles in microseconds
+     */
+    static String describe(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50=%d p90=%d p99=%d max=%d", percentile(sorted, 0.5) / 1000,
+                percentile(sorted, 0.9) / 1000, percentile(sorted, 0.99) / 1000, percentile(sorted, 1.0) / 1000);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int)Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))];
+    }
+}
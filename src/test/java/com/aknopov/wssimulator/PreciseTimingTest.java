@@ -0,0 +1,113 @@
+package com.aknopov.wssimulator;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PreciseTimingTest {
+    private static final Logger logger = LoggerFactory.getLogger(PreciseTimingTest.class);
+
+    private static final Duration SHORT_DELAY = Duration.ofNanos(300_000);
+    private static final Duration LONG_DELAY = Duration.ofMillis(200);
+    private static final Duration SPIN_TIME = Duration.ofNanos(100_000);
+    private static final int SAMPLES = 200;
+
+    @AfterEach
+    void tearDown() {
+        PreciseTiming.setSpinTime(Duration.ZERO);
+    }
+
+    @Test
+    void testSleepIsNotShorter() {
+        for (Duration spinTime: new Duration[] {Duration.ZERO, SPIN_TIME}) {
+            PreciseTiming.setSpinTime(spinTime);
+            for (int i = 0; i < 10; i++) {
+                long startNanos = System.nanoTime();
+                PreciseTiming.sleepUnchecked(SHORT_DELAY);
+                assertThat(System.nanoTime() - startNanos, greaterThanOrEqualTo(SHORT_DELAY.toNanos()));
+            }
+        }
+    }
+
+    @Test
+    void testSpinTime() {
+        assertEquals(Duration.ZERO, PreciseTiming.getSpinTime());
+        PreciseTiming.setSpinTime(SPIN_TIME);
+        assertEquals(SPIN_TIME, PreciseTiming.getSpinTime());
+        assertThrows(IllegalArgumentException.class, () -> PreciseTiming.setSpinTime(Duration.ofNanos(-1)));
+    }
+
+    @Test
+    void testInterruption() throws Exception {
+        AtomicBoolean completed = new AtomicBoolean(true);
+        AtomicBoolean interruptedAfter = new AtomicBoolean(true);
+        Thread thread = new Thread(() -> {
+            completed.set(PreciseTiming.sleepUntil(System.nanoTime() + LONG_DELAY.toNanos()));
+            interruptedAfter.set(Thread.currentThread().isInterrupted());
+        });
+        long startNanos = System.nanoTime();
+        thread.start();
+        Utils.sleepUnchecked(Duration.ofMillis(10));
+        thread.interrupt();
+        thread.join();
+
+        assertThat(System.nanoTime() - startNanos, lessThan(LONG_DELAY.toNanos()));
+        assertFalse(completed.get());
+        assertTrue(interruptedAfter.get());
+    }
+
+    @Test
+    void testCheckedSleepInterruption() {
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> PreciseTiming.sleep(LONG_DELAY));
+        assertFalse(Thread.currentThread().isInterrupted());
+
+        // Unchecked sleep ends early and clears the flag
+        Thread.currentThread().interrupt();
+        long startNanos = System.nanoTime();
+        PreciseTiming.sleepUnchecked(LONG_DELAY);
+        assertThat(System.nanoTime() - startNanos, lessThan(LONG_DELAY.toNanos()));
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    // Benchmark of actual versus requested delay - it is susceptible to CPU load, so results are only logged
+    @Test
+    void testDelayDistribution() throws Exception {
+        long[] sleepOvershoots = new long[SAMPLES];
+        long[] parkOvershoots = new long[SAMPLES];
+        long[] spinOvershoots = new long[SAMPLES];
+        long requestedNanos = SHORT_DELAY.toNanos();
+        for (int i = 0; i < SAMPLES; i++) {
+            long startNanos = System.nanoTime();
+            Thread.sleep(SHORT_DELAY.toMillis(), (int)(requestedNanos % 1_000_000));
+            sleepOvershoots[i] = System.nanoTime() - startNanos - requestedNanos;
+        }
+        for (int i = 0; i < SAMPLES; i++) {
+            long startNanos = System.nanoTime();
+            PreciseTiming.sleep(SHORT_DELAY);
+            parkOvershoots[i] = System.nanoTime() - startNanos - requestedNanos;
+        }
+        PreciseTiming.setSpinTime(SPIN_TIME);
+        for (int i = 0; i < SAMPLES; i++) {
+            long startNanos = System.nanoTime();
+            PreciseTiming.sleep(SHORT_DELAY);
+            spinOvershoots[i] = System.nanoTime() - startNanos - requestedNanos;
+        }
+
+        logger.info("Overshoot of {} us delay, us - Thread.sleep: {}; park: {}; park+spin: {}",
+                SHORT_DELAY.toNanos() / 1000, Latencies.describe(sleepOvershoots),
+                Latencies.describe(parkOvershoots), Latencies.describe(spinOvershoots));
+    }
+}
@@ -2,18 +2,27 @@ package com.aknopov.wssimulator;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ResettableLockTest {
+    private static final Logger logger = LoggerFactory.getLogger(ResettableLockTest.class);
 
     private static final long WAIT_TIME_MSEC = 200;
     private static final long MAX_WAIT_MSEC = 300;
     private static final int USES_COUNT = 3;
+    private static final int SAMPLES = 1000;
+    private static final Duration EXPECT_WINDOW = Duration.ofSeconds(1);
 
     @Test
     void testPrematureRelease() throws Exception {
@@ -26,6 +35,64 @@ class ResettableLockTest {
         assertTrue(rl.await(Duration.ofMillis(0)));
     }
 
+    @Test
+    void testPendingPayloadIsHandedOffAtOnce() throws Exception {
+        ResettableLock<Boolean> rl = new ResettableLock<>(Boolean.class);
+
+        rl.release(Boolean.TRUE);
+        Instant start = Instant.now();
+        assertTrue(rl.await(EXPECT_WINDOW));
+        assertThat(Duration.between(start, Instant.now()), lessThan(Duration.ofMillis(WAIT_TIME_MSEC)));
+
+        // Payload is consumed
+        assertThrows(TimeoutException.class, () -> rl.await(Duration.ofMillis(1)));
+    }
+
+    // Benchmark of expect-act latency - time from event release till waiting thread gets it. Latencies depend on
+    // CPU load, so they are only logged.
+    @Test
+    void testHandOffLatency() throws Exception {
+        ResettableLock<Integer> rl = new ResettableLock<>(Integer.class);
+        long[] pendingLatencies = new long[SAMPLES];
+        long[] waitingLatencies = new long[SAMPLES];
+
+        // Event arrives before expectation
+        for (int i = 0; i < SAMPLES; i++) {
+            long startNanos = System.nanoTime();
+            rl.release(i);
+            assertEquals(i, rl.await(EXPECT_WINDOW));
+            pendingLatencies[i] = System.nanoTime() - startNanos;
+        }
+
+        // Event arrives while expectation waits
+        long[] releaseTimes = new long[SAMPLES];
+        CountDownLatch[] awaiting = new CountDownLatch[SAMPLES];
+        Arrays.setAll(awaiting, i -> new CountDownLatch(1));
+        Thread releaser = new Thread(() -> {
+            for (int i = 0; i < SAMPLES; i++) {
+                try {
+                    awaiting[i].await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                Utils.sleepUnchecked(Duration.ofNanos(100_000));
+                releaseTimes[i] = System.nanoTime();
+                rl.release(i);
+            }
+        });
+        releaser.start();
+        for (int i = 0; i < SAMPLES; i++) {
+            awaiting[i].countDown();
+            assertEquals(i, rl.await(EXPECT_WINDOW));
+            waitingLatencies[i] = System.nanoTime() - releaseTimes[i];
+        }
+        releaser.join();
+
+        logger.info("Hand-off latency, us - pending: {}; waiting: {}", Latencies.describe(pendingLatencies),
+                Latencies.describe(waitingLatencies));
+    }
+
     @Test
     void testReusability() throws Exception {
         ResettableLock<Boolean> rl = new ResettableLock<>(Boolean.class);
@@ -0,0 +1,42 @@
+package com.aknopov.wssimulator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThreadModeTest {
+    private static final long WAIT_MS = 1000;
+
+    @Test
+    void testPlatformThread() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Thread thread = ThreadMode.PLATFORM.newThread(done::countDown, "platform");
+
+        assertEquals("platform", thread.getName());
+        assertFalse(thread.isDaemon());
+        thread.start();
+        assertTrue(done.await(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testVirtualThread() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Thread thread = ThreadMode.VIRTUAL.newThread(done::countDown, "virtual");
+
+        // Virtual threads are always daemon ones, so is the fallback
+        assertEquals("virtual", thread.getName());
+        assertTrue(thread.isDaemon());
+        thread.start();
+        assertTrue(done.await(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testVirtualSupport() {
+        assertEquals(Runtime.version().feature() >= 21, ThreadMode.isVirtualSupported());
+    }
+}
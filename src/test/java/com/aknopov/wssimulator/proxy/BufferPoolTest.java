@@ -0,0 +1,107 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+    private static final int BUF_SIZE = 64;
+
+    @Test
+    void testLeaseAndRelease() {
+        BufferPool pool = new BufferPool(BUF_SIZE, 4, true);
+
+        BufferPool.Lease lease = pool.lease();
+        ByteBuffer buffer = lease.buffer();
+        assertTrue(lease.isPooled());
+        assertTrue(buffer.isDirect());
+        assertEquals(0, buffer.position());
+        assertEquals(BUF_SIZE, buffer.capacity());
+        assertEquals(3, pool.getAvailable());
+
+        buffer.put((byte)1);
+        lease.release();
+        assertEquals(4, pool.getAvailable());
+        assertThrows(IllegalStateException.class, lease::release);
+        assertThrows(IllegalStateException.class, lease::retain);
+
+        // Buffer is cleared on return
+        List<BufferPool.Lease> leases = new ArrayList<>();
+        for (int i = 0; i < pool.getCapacity(); i++) {
+            leases.add(pool.lease());
+        }
+        assertTrue(leases.contains(lease));
+        assertEquals(0, buffer.position());
+        assertEquals(0, pool.getExhaustions());
+    }
+
+    @Test
+    void testBuffersDoNotOverlap() {
+        BufferPool pool = new BufferPool(BUF_SIZE, BufferPool.SLAB_BUFFERS, false);
+        List<BufferPool.Lease> leases = new ArrayList<>();
+        for (int i = 0; i < pool.getCapacity(); i++) {
+            BufferPool.Lease lease = pool.lease();
+            while (lease.buffer().hasRemaining()) {
+                lease.buffer().put((byte)i);
+            }
+            leases.add(lease);
+        }
+
+        for (int i = 0; i < leases.size(); i++) {
+            ByteBuffer buffer = leases.get(i).buffer().flip();
+            while (buffer.hasRemaining()) {
+                assertEquals(i, buffer.get());
+            }
+        }
+    }
+
+    @Test
+    void testReferenceCounting() {
+        BufferPool pool = new BufferPool(BUF_SIZE, 1, true);
+        BufferPool.Lease lease = pool.lease();
+
+        lease.retain();
+        lease.retain();
+        lease.release();
+        lease.release();
+        assertEquals(0, pool.getAvailable());
+
+        lease.release();
+        assertEquals(1, pool.getAvailable());
+        assertSame(lease, pool.lease());
+    }
+
+    @Test
+    void testExhaustion() {
+        BufferPool pool = new BufferPool(BUF_SIZE, 2, true);
+        BufferPool.Lease lease1 = pool.lease();
+        BufferPool.Lease lease2 = pool.lease();
+
+        BufferPool.Lease extraLease = pool.lease();
+        assertFalse(extraLease.isPooled());
+        assertEquals(BUF_SIZE, extraLease.buffer().capacity());
+        assertEquals(1, pool.getExhaustions());
+
+        extraLease.release();
+        assertEquals(0, pool.getAvailable());
+
+        lease1.release();
+        lease2.release();
+        assertTrue(pool.lease().isPooled());
+        assertEquals(1, pool.getExhaustions());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(0, 1, true));
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(BUF_SIZE, 0, true));
+    }
+}
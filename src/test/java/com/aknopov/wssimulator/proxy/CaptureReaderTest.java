@@ -0,0 +1,123 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CaptureReaderTest {
+    private Path captureFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        captureFile = Files.createTempFile("capture", ".bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(captureFile);
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        Instant startTime = Instant.now();
+        ByteBuffer data = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 });
+        data.position(1);
+        try (CaptureWriter writer = new CaptureWriter(captureFile)) {
+            writer.append(1, StreamDirection.DOWNSTREAM, data);
+            writer.append(2, StreamDirection.UPSTREAM, ByteBuffer.allocate(0));
+            writer.appendEnd(1, StreamDirection.DOWNSTREAM);
+        }
+        assertEquals(1, data.position());
+        assertEquals(CaptureWriter.FILE_HEADER_SIZE + 3 * CaptureWriter.RECORD_HEADER_SIZE + 3,
+                Files.size(captureFile));
+
+        try (CaptureReader reader = new CaptureReader(captureFile)) {
+            assertThat(Duration.between(startTime, reader.getStartTime()), lessThanOrEqualTo(Duration.ofSeconds(1)));
+
+            assertTrue(reader.next());
+            assertEquals(1, reader.getConnectionId());
+            assertEquals(StreamDirection.DOWNSTREAM, reader.getDirection());
+            assertFalse(reader.isEndOfStream());
+            assertEquals(ByteBuffer.wrap(new byte[] { 2, 3, 4 }), reader.getPayload());
+            long firstTimestamp = reader.getTimestamp();
+
+            assertTrue(reader.next());
+            assertEquals(2, reader.getConnectionId());
+            assertEquals(StreamDirection.UPSTREAM, reader.getDirection());
+            assertEquals(0, reader.getPayload().remaining());
+            assertThat(reader.getTimestamp(), greaterThan(firstTimestamp - 1));
+
+            assertTrue(reader.next());
+            assertTrue(reader.isEndOfStream());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void testRecordsAcrossRegions() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(CaptureWriter.REGION_SIZE / 3);
+        int recordCount = 7;
+        try (CaptureWriter writer = new CaptureWriter(captureFile)) {
+            for (int i = 0; i < recordCount; i++) {
+                data.put(0, (byte)i);
+                writer.append(i, StreamDirection.DOWNSTREAM, data);
+            }
+        }
+
+        try (CaptureReader reader = new CaptureReader(captureFile)) {
+            for (int i = 0; i < recordCount; i++) {
+                assertTrue(reader.next());
+                assertEquals(i, reader.getConnectionId());
+                assertEquals(data.capacity(), reader.getPayload().remaining());
+                assertEquals((byte)i, reader.getPayload().get(0));
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void testUnclosedCapture() throws IOException {
+        CaptureWriter writer = new CaptureWriter(captureFile);
+        writer.append(1, StreamDirection.DOWNSTREAM, ByteBuffer.wrap(new byte[] { 1, 2 }));
+        writer.append(2, StreamDirection.UPSTREAM, ByteBuffer.allocate(0));
+        assertEquals(CaptureWriter.REGION_SIZE, Files.size(captureFile));
+
+        try (CaptureReader reader = new CaptureReader(captureFile)) {
+            assertTrue(reader.next());
+            assertEquals(1, reader.getConnectionId());
+            assertTrue(reader.next());
+            assertEquals(2, reader.getConnectionId());
+            assertFalse(reader.next());
+            assertFalse(reader.next());
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void testInvalidFile() throws IOException {
+        Files.write(captureFile, new byte[] { 1, 2, 3 });
+        assertThrows(IOException.class, () -> new CaptureReader(captureFile));
+
+        Files.write(captureFile, new byte[CaptureWriter.FILE_HEADER_SIZE]);
+        assertThrows(IOException.class, () -> new CaptureReader(captureFile));
+    }
+}
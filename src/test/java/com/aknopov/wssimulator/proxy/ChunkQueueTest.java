@@ -0,0 +1,128 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkQueueTest {
+    @Test
+    void testEmptyQueue() {
+        ChunkQueue queue = new ChunkQueue();
+
+        assertTrue(queue.isEmpty());
+        assertThrows(IllegalStateException.class, queue::peek);
+        assertThrows(IllegalStateException.class, queue::peekDueTime);
+        assertThrows(IllegalStateException.class, queue::peekReadTime);
+        assertThrows(IllegalStateException.class, queue::peekOwner);
+        assertThrows(IllegalStateException.class, queue::remove);
+    }
+
+    @Test
+    void testFifoOrderWithWrapAndGrowth() {
+        ChunkQueue queue = new ChunkQueue();
+        ByteBuffer[] chunks = new ByteBuffer[100];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocate(1);
+        }
+
+        // Shift head to make ring wrap before growth
+        for (int i = 0; i < 10; i++) {
+            queue.add(chunks[i], i - 1, i);
+        }
+        for (int i = 0; i < 10; i++) {
+            queue.remove();
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            queue.add(chunks[i], i - 1, i);
+        }
+
+        assertEquals(chunks.length, queue.size());
+        for (int i = 0; i < chunks.length; i++) {
+            assertSame(chunks[i], queue.peek());
+            assertEquals(i, queue.peekDueTime());
+            assertEquals(i - 1, queue.peekReadTime());
+            queue.remove();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testOutOfOrderInsertion() {
+        ChunkQueue queue = new ChunkQueue();
+        ByteBuffer late = ByteBuffer.allocate(1);
+        ByteBuffer early = ByteBuffer.allocate(1);
+        ByteBuffer same = ByteBuffer.allocate(1);
+
+        queue.add(late, 0, 20);
+        queue.add(early, 0, 10);
+        queue.add(same, 0, 10);
+
+        assertSame(early, queue.peek());
+        queue.remove();
+        assertSame(same, queue.peek());
+        queue.remove();
+        assertSame(late, queue.peek());
+        assertEquals(20, queue.peekDueTime());
+    }
+
+    @Test
+    void testStartedHeadIsNotPreceded() {
+        ChunkQueue queue = new ChunkQueue();
+        ByteBuffer head = ByteBuffer.allocate(1);
+        ByteBuffer next = ByteBuffer.allocate(1);
+
+        queue.add(head, 0, 20);
+        queue.markHeadStarted();
+        queue.add(next, 0, 10);
+
+        assertSame(head, queue.peek());
+        queue.remove();
+        assertSame(next, queue.peek());
+    }
+
+    @Test
+    void testOwnersFollowChunks() {
+        ChunkQueue queue = new ChunkQueue();
+        BufferPool pool = new BufferPool(16, 2, false);
+        BufferPool.Lease lease1 = pool.lease();
+        BufferPool.Lease lease2 = pool.lease();
+        ByteBuffer chunk1 = lease1.buffer();
+        ByteBuffer chunk2 = lease2.buffer();
+        ByteBuffer chunk3 = ByteBuffer.allocate(1);
+
+        queue.add(chunk1, lease1, 0, 20);
+        queue.add(chunk2, lease2, 0, 10);
+        queue.add(chunk3, 0, 30);
+
+        assertSame(chunk2, queue.peek());
+        assertSame(lease2, queue.peekOwner());
+        queue.remove();
+        assertSame(lease1, queue.peekOwner());
+        queue.remove();
+        assertNull(queue.peekOwner());
+    }
+
+    @Test
+    void testGatherDueChunks() {
+        ChunkQueue queue = new ChunkQueue();
+        ByteBuffer[] chunks = new ByteBuffer[4];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocate(1);
+            queue.add(chunks[i], 0, i < 3 ? 10 : 20);
+        }
+
+        ByteBuffer[] gathered = new ByteBuffer[8];
+        assertEquals(0, queue.gather(gathered, 5));
+        assertEquals(3, queue.gather(gathered, 10));
+        assertSame(chunks[0], gathered[0]);
+        assertSame(chunks[2], gathered[2]);
+        assertEquals(4, queue.gather(gathered, 20));
+        assertEquals(2, queue.gather(new ByteBuffer[2], 20));
+    }
+}
@@ -0,0 +1,44 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DelayHistogramTest {
+    @Test
+    void testEmptyHistogram() {
+        DelayHistogram histogram = new DelayHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(Duration.ZERO, histogram.getMean());
+        assertEquals(Duration.ZERO, histogram.getMax());
+        assertEquals(Duration.ZERO, histogram.getPercentile(99));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(0));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(101));
+    }
+
+    @Test
+    void testPercentiles() {
+        DelayHistogram histogram = new DelayHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(Duration.ofMillis(1).toNanos());
+        }
+        histogram.record(Duration.ofMillis(100).toNanos());
+        histogram.record(-1);
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(Duration.ofMillis(100), histogram.getMax());
+        assertThat(histogram.getMean(), greaterThanOrEqualTo(Duration.ofMillis(1)));
+        assertThat(histogram.getMean(), lessThan(Duration.ofMillis(3)));
+        // Buckets are precise within factor 2
+        assertThat(histogram.getPercentile(50), greaterThanOrEqualTo(Duration.ofMillis(1)));
+        assertThat(histogram.getPercentile(50), lessThan(Duration.ofMillis(2)));
+        assertEquals(Duration.ofMillis(100), histogram.getPercentile(100));
+    }
+}
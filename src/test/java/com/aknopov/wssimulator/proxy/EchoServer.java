@@ -0,0 +1,78 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Upstream server of proxy tests that sends back everything it receives
+ */
+final class EchoServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * Starts server on an ephemeral port
+     *
+     * @throws IOException if server socket can't be opened
+     */
+    EchoServer() throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        Future<?> unused = executor.submit(this::run);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Sends message through the socket and checks it comes back
+     *
+     * @param socket client socket
+     * @param message message
+     * @return received message
+     * @throws IOException if message can't be sent or received
+     */
+    static String echo(Socket socket, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        socket.getOutputStream().write(bytes);
+        byte[] received = socket.getInputStream().readNBytes(bytes.length);
+        assertArrayEquals(bytes, received);
+        return new String(received, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void run() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                Future<?> unused = executor.submit(() -> echoLoop(socket));
+            }
+        }
+        catch (IOException ex) {
+            // server closed
+        }
+    }
+
+    private static void echoLoop(Socket socket) {
+        try (socket; InputStream in = socket.getInputStream(); OutputStream out = socket.getOutputStream()) {
+            in.transferTo(out);
+        }
+        catch (IOException ex) {
+            // connection closed
+        }
+    }
+}
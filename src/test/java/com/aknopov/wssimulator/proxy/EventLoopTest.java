@@ -0,0 +1,71 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLoopTest {
+    private static final long WAIT_SECS = 5;
+
+    // Handler that throws is closed, other handlers of the loop keep working
+    @Test
+    void testFailedHandlerIsClosed() throws Exception {
+        EventLoop loop = new EventLoop();
+        Thread loopThread = new Thread(loop, "EventLoopTest");
+        loopThread.start();
+        Pipe failing = Pipe.open();
+        Pipe healthy = Pipe.open();
+        CountDownLatch failedClosed = new CountDownLatch(1);
+        CountDownLatch healthyRead = new CountDownLatch(1);
+        try {
+            loop.execute(() -> {
+                try {
+                    failing.source().configureBlocking(false);
+                    loop.register(failing.source(), SelectionKey.OP_READ, new EventLoop.ChannelHandler() {
+                        @Override
+                        public void onReady(SelectionKey key) {
+                            throw new IllegalStateException("Toxic failure");
+                        }
+
+                        @Override
+                        public void close() {
+                            failedClosed.countDown();
+                        }
+                    });
+                    healthy.source().configureBlocking(false);
+                    loop.register(healthy.source(), SelectionKey.OP_READ, new EventLoop.ChannelHandler() {
+                        @Override
+                        public void onReady(SelectionKey key) {
+                            healthyRead.countDown();
+                        }
+
+                        @Override
+                        public void close() {
+                        }
+                    });
+                }
+                catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            failing.sink().write(ByteBuffer.wrap(new byte[] {1}));
+            assertTrue(failedClosed.await(WAIT_SECS, TimeUnit.SECONDS));
+            healthy.sink().write(ByteBuffer.wrap(new byte[] {1}));
+            assertTrue(healthyRead.await(WAIT_SECS, TimeUnit.SECONDS));
+            assertTrue(loopThread.isAlive());
+        }
+        finally {
+            loop.shutdown();
+            loopThread.join(TimeUnit.SECONDS.toMillis(WAIT_SECS));
+            failing.sink().close();
+            healthy.sink().close();
+        }
+    }
+}
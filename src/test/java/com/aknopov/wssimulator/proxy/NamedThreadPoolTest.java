@@ -8,6 +8,8 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
 
+import com.aknopov.wssimulator.ThreadMode;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -47,4 +49,29 @@ class NamedThreadPoolTest {
 
         assertThat(threadNameRef.get(), startsWith("prefix"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCachedPoolThreadName() throws Exception {
+        AtomicReference<String> threadNameRef = new AtomicReference<>();
+
+        ExecutorService executor = NamedThreadPool.createCachedPool("cached");
+        executor.execute(() -> threadNameRef.set(Thread.currentThread().getName()));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        assertThat(threadNameRef.get(), startsWith("cached"));
+    }
+
+    @Test
+    void testVirtualPool() throws Exception {
+        AtomicReference<Thread> threadRef = new AtomicReference<>();
+
+        ExecutorService executor = NamedThreadPool.createFixedPool(2, "virtual", ThreadMode.VIRTUAL);
+        executor.execute(() -> threadRef.set(Thread.currentThread()));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        assertThat(threadRef.get().getName(), startsWith("virtual"));
+        assertTrue(threadRef.get().isDaemon());
+    }
+}
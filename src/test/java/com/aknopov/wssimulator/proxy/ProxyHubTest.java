@@ -0,0 +1,170 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.aknopov.wssimulator.proxy.toxy.ToxicLatency;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyHubTest {
+    private static final int ROUTE_COUNT = 10;
+    private static final Duration LATENCY = Duration.ofMillis(50);
+    private static final Duration SHORT_PAUSE = Duration.ofMillis(100);
+    private static final String MESSAGE = "ping";
+
+    private EchoServer echoServer;
+    private ProxyHub hub;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        echoServer = new EchoServer();
+        hub = new ProxyHub(2, 1024);
+        hub.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        hub.stop();
+        echoServer.close();
+    }
+
+    @Test
+    void testManyRoutes() throws Exception {
+        List<ProxyRoute> routes = new ArrayList<>();
+        for (int i = 0; i < ROUTE_COUNT; i++) {
+            routes.add(hub.addRoute(0, echoServer.getPort(), c -> new ToxicNoop()));
+        }
+        assertEquals(ROUTE_COUNT, hub.getRoutes().size());
+
+        for (ProxyRoute route: routes) {
+            assertSame(route, hub.getRoute(route.getDownPort()));
+            assertEquals(echoServer.getPort(), route.getUpPort());
+            try (Socket client = new Socket("localhost", route.getDownPort())) {
+                EchoServer.echo(client, MESSAGE);
+            }
+            assertEquals(MESSAGE.length(), route.getMetrics().getCounters(StreamDirection.DOWNSTREAM).getBytesRead());
+        }
+    }
+
+    @Test
+    void testRouteToxics() throws Exception {
+        ProxyRoute plainRoute = hub.addRoute(0, echoServer.getPort(), c -> new ToxicNoop());
+        ProxyRoute slowRoute = hub.addRoute(0, echoServer.getPort(),
+                c -> new ToxicLatency(Duration.ZERO, LATENCY, Duration.ZERO));
+
+        try (Socket plainClient = new Socket("localhost", plainRoute.getDownPort());
+             Socket slowClient = new Socket("localhost", slowRoute.getDownPort())) {
+            assertThat(echoTime(plainClient), lessThan(LATENCY));
+            assertThat(echoTime(slowClient), greaterThanOrEqualTo(LATENCY.multipliedBy(2)));
+            assertEquals(2, hub.getConnectionCount());
+        }
+    }
+
+    @Test
+    void testRemoveRoute() throws Exception {
+        ProxyRoute route = hub.addRoute(0, echoServer.getPort(), c -> new ToxicNoop());
+        int port = route.getDownPort();
+
+        try (Socket client = new Socket("localhost", port)) {
+            EchoServer.echo(client, MESSAGE);
+            assertTrue(hub.removeRoute(route));
+            assertFalse(hub.removeRoute(route));
+            assertNull(hub.getRoute(port));
+
+            // Route connections are closed
+            assertEquals(-1, client.getInputStream().read());
+        }
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        assertThrows(IOException.class, () -> new Socket("localhost", port).close());
+        assertEquals(0, route.getConnectionCount());
+    }
+
+    @Test
+    void testBalancedRoute() throws Exception {
+        try (EchoServer secondServer = new EchoServer()) {
+            int deadPort = SocketFactory.getAvailablePort();
+            List<UpstreamNode> upstreams = List.of(new UpstreamNode(echoServer.getPort(), c -> new ToxicNoop()),
+                    new UpstreamNode(secondServer.getPort(), c -> new ToxicNoop()),
+                    new UpstreamNode(deadPort, c -> new ToxicNoop()));
+            ProxyRoute route = hub.addRoute(0, upstreams, BalanceStrategy.ROUND_ROBIN, Duration.ofMinutes(1));
+            List<UpstreamNode> nodes = route.getUpstreams();
+
+            List<Socket> clients = new ArrayList<>();
+            try {
+                // Connection to dead node is closed and the node is skipped afterwards
+                for (int i = 0; i < 3; i++) {
+                    try (Socket client = new Socket("localhost", route.getDownPort())) {
+                        if (i == 2) {
+                            assertEquals(-1, client.getInputStream().read());
+                        }
+                    }
+                }
+                Utils.sleepUnchecked(SHORT_PAUSE);
+                assertFalse(nodes.get(2).isUp());
+                assertEquals(1, nodes.get(2).getFailures());
+
+                for (int i = 0; i < 6; i++) {
+                    Socket client = new Socket("localhost", route.getDownPort());
+                    clients.add(client);
+                    EchoServer.echo(client, MESSAGE);
+                }
+                assertEquals(3, nodes.get(0).getConnectionCount());
+                assertEquals(3, nodes.get(1).getConnectionCount());
+
+                // Killed node drops its connections, clients reconnect to the other node
+                route.killUpstream(secondServer.getPort());
+                Utils.sleepUnchecked(SHORT_PAUSE);
+                assertEquals(0, nodes.get(1).getConnectionCount());
+                for (int i = 0; i < 3; i++) {
+                    Socket client = new Socket("localhost", route.getDownPort());
+                    clients.add(client);
+                    EchoServer.echo(client, MESSAGE);
+                }
+                assertEquals(6, nodes.get(0).getConnectionCount());
+                assertEquals(6, route.getConnectionCount());
+
+                route.reviveUpstream(secondServer.getPort());
+                assertTrue(nodes.get(1).isUp());
+                assertThrows(IllegalArgumentException.class, () -> route.killUpstream(route.getDownPort()));
+            }
+            finally {
+                for (Socket client: clients) {
+                    client.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    void testStoppedHub() {
+        hub.stop();
+        assertThrows(IllegalStateException.class,
+                () -> hub.addRoute(0, echoServer.getPort(), c -> new ToxicNoop()));
+    }
+
+    private static Duration echoTime(Socket socket) throws IOException {
+        long startNanos = System.nanoTime();
+        EchoServer.echo(socket, MESSAGE);
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+}
@@ -15,6 +15,7 @@ import com.aknopov.wssimulator.SocketFactory;
 import com.aknopov.wssimulator.WebSocketSimulator;
 import com.aknopov.wssimulator.message.TextWebSocketMessage;
 import com.aknopov.wssimulator.message.WebSocketMessage;
+import com.aknopov.wssimulator.proxy.toxy.ToxicWebSocketFrames;
 import com.aknopov.wssimulator.scenario.Event;
 import com.aknopov.wssimulator.scenario.ValidationException;
 import com.aknopov.wssimulator.simulator.WebSocketClientSimulator;
@@ -174,6 +175,49 @@ public class ProxyIntegrationTest {
         assertNoErrors(clientSimulator, "Client");
     }
 
+    @Test
+    void testLowBandwidth() {
+        String url = "ws://localhost:" + proxyConfig.downPort() + A_PATH;
+        WebSocketClientSimulator clientSimulator = new WebSocketClientSimulator(url, SESSION_CONFIG);
+        TcpProxy proxy = TcpProxy.createBandwidthProxy(proxyConfig, Duration.ZERO, 2_000, 16, new SocketFactory());
+
+        configureScenarios(serverSimulator, clientSimulator, PING_PONG_COUNT);
+
+        proxy.start();
+        serverSimulator.start();
+        clientSimulator.start();
+
+        clientSimulator.awaitScenarioCompletion(LONG_WAIT);
+        serverSimulator.awaitScenarioCompletion(LONG_WAIT);
+        proxy.stop();
+
+        assertNoErrors(serverSimulator, "Server");
+        assertNoErrors(clientSimulator, "Client");
+    }
+
+    @Test
+    void testFrameFragmentation() {
+        String url = "ws://localhost:" + proxyConfig.downPort() + A_PATH;
+        WebSocketClientSimulator clientSimulator = new WebSocketClientSimulator(url, SESSION_CONFIG);
+        // Messages are split into 4-byte frames, pings and pongs are held back
+        TcpProxy proxy = TcpProxy.createWebSocketFrameProxy(proxyConfig, Duration.ZERO,
+                new ToxicWebSocketFrames.Config(Duration.ofMillis(10), 0.5, 0, 4, Duration.ofMillis(20)),
+                new SocketFactory());
+
+        configureScenarios(serverSimulator, clientSimulator, PING_PONG_COUNT);
+
+        proxy.start();
+        serverSimulator.start();
+        clientSimulator.start();
+
+        clientSimulator.awaitScenarioCompletion(LONG_WAIT);
+        serverSimulator.awaitScenarioCompletion(LONG_WAIT);
+        proxy.stop();
+
+        assertNoErrors(serverSimulator, "Server");
+        assertNoErrors(clientSimulator, "Client");
+    }
+
     private void configureScenarios(WebSocketServerSimulator serverSimulator, WebSocketClientSimulator clientSimulator,
             int messageCount) {
         Scenario serverScenario = serverSimulator.getScenario();
@@ -0,0 +1,69 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProxyMetricsTest {
+    @Test
+    void testConnectionCounters() {
+        ProxyMetrics metrics = new ProxyMetrics();
+        ConnectionMetrics connection1 = metrics.openConnection();
+        ConnectionMetrics connection2 = metrics.openConnection();
+
+        connection1.getCounters(StreamDirection.DOWNSTREAM).onRead(10);
+        connection1.getCounters(StreamDirection.DOWNSTREAM).onWrite(4);
+        connection1.getCounters(StreamDirection.DOWNSTREAM).onWrite(6);
+        connection1.getCounters(StreamDirection.DOWNSTREAM).onChunkWritten();
+        connection2.getCounters(StreamDirection.DOWNSTREAM).onRead(5);
+        connection2.getCounters(StreamDirection.UPSTREAM).onRead(7);
+
+        TrafficCounters counters1 = connection1.getCounters(StreamDirection.DOWNSTREAM);
+        assertEquals(10, counters1.getBytesRead());
+        assertEquals(1, counters1.getChunksRead());
+        assertEquals(10, counters1.getBytesWritten());
+        assertEquals(1, counters1.getChunksWritten());
+        assertEquals(2, counters1.getWrites());
+
+        TrafficCounters downCounters = metrics.getCounters(StreamDirection.DOWNSTREAM);
+        assertEquals(15, downCounters.getBytesRead());
+        assertEquals(2, downCounters.getChunksRead());
+        assertEquals(10, downCounters.getBytesWritten());
+        assertEquals(7, metrics.getCounters(StreamDirection.UPSTREAM).getBytesRead());
+        assertThat(metrics.getThroughput(StreamDirection.DOWNSTREAM), greaterThan(0.0));
+        assertThat(connection1.getThroughput(StreamDirection.DOWNSTREAM), greaterThan(0.0));
+        assertEquals(0.0, connection2.getThroughput(StreamDirection.DOWNSTREAM));
+    }
+
+    @Test
+    void testConnectionLifetime() {
+        ProxyMetrics metrics = new ProxyMetrics();
+        ConnectionMetrics connection1 = metrics.openConnection();
+        ConnectionMetrics connection2 = metrics.openConnection();
+        assertEquals(List.of(connection1, connection2), metrics.getActiveConnections());
+
+        Utils.sleepUnchecked(Duration.ofMillis(10));
+        metrics.closeConnection(connection1);
+        metrics.closeConnection(connection1);
+
+        assertTrue(connection1.isClosed());
+        assertFalse(connection2.isClosed());
+        assertEquals(List.of(connection2), metrics.getActiveConnections());
+        assertEquals(2, metrics.getOpenedConnections());
+        assertEquals(1, metrics.getClosedConnections());
+        assertEquals(connection1.getLifetime(), connection1.getLifetime());
+        // Connection 2 was opened slightly later
+        Utils.sleepUnchecked(Duration.ofMillis(1));
+        assertThat(connection2.getLifetime(), greaterThan(connection1.getLifetime()));
+    }
+}
@@ -0,0 +1,500 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.ThreadMode;
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.ToxicBandwidth;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.aknopov.wssimulator.proxy.toxy.ToxicFactory;
+import com.aknopov.wssimulator.proxy.toxy.ToxicLatency;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+import com.aknopov.wssimulator.proxy.toxy.ToxicReorder;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlicer;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlowReader;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SelectorEngineTest {
+    private static final Logger logger = LoggerFactory.getLogger(SelectorEngineTest.class);
+
+    private static final Duration TEST_DURATION = Duration.ofSeconds(10);
+    private static final Duration SHORT_PAUSE = Duration.ofMillis(100);
+    private static final int CONNECTION_COUNT = 200;
+    private static final Duration LATENCY = Duration.ofMillis(50);
+    private static final Duration SEND_INTERVAL = Duration.ofMillis(5);
+    private static final int LATENCY_MESSAGES = 40;
+    private static final long BANDWIDTH = 200_000;
+    private static final int BANDWIDTH_BURST = 4096;
+    private static final long SLOW_READ_RATE = 32 * 1024;
+    private static final int THROUGHPUT_BUF_SIZE = 64 * 1024;
+    private static final long THROUGHPUT_BYTES = 8L * 1024 * 1024;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ProxyMetrics metrics = new ProxyMetrics();
+    private EchoServer echoServer;
+    private ProxyConfig proxyConfig;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        echoServer = new EchoServer();
+        proxyConfig = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getPort(), 60_000, 1024,
+                TEST_DURATION).withEventLoops(2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        echoServer.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentConnections() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig, c -> new ToxicNoop());
+
+        List<Socket> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < CONNECTION_COUNT; i++) {
+                clients.add(new Socket("localhost", proxyConfig.downPort()));
+            }
+            // All connections are served simultaneously
+            for (int i = 0; i < CONNECTION_COUNT; i++) {
+                assertEquals("Hello " + i, EchoServer.echo(clients.get(i), "Hello " + i));
+            }
+            assertEquals(CONNECTION_COUNT, engine.getConnectionCount());
+        }
+        finally {
+            for (Socket client: clients) {
+                client.close();
+            }
+        }
+
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        assertEquals(0, engine.getConnectionCount());
+        // Idle connections don't hold buffers
+        assertEquals(0, metrics.getBufferPoolExhaustions());
+        engine.stop();
+    }
+
+    @Test
+    void testBufferPoolExhaustion() throws Exception {
+        ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getPort(), 60_000,
+                1024, TEST_DURATION).withEventLoops(2).withBufferPoolSize(1);
+        SelectorEngine engine = startEngine(config, c -> new ToxicLatency(Duration.ZERO, LATENCY, Duration.ZERO));
+
+        // Delayed data of both connections keeps buffers leased
+        try (Socket client1 = new Socket("localhost", config.downPort());
+             Socket client2 = new Socket("localhost", config.downPort())) {
+            client1.getOutputStream().write("ping1".getBytes(StandardCharsets.UTF_8));
+            client2.getOutputStream().write("ping2".getBytes(StandardCharsets.UTF_8));
+            assertEquals("ping1", new String(client1.getInputStream().readNBytes(5), StandardCharsets.UTF_8));
+            assertEquals("ping2", new String(client2.getInputStream().readNBytes(5), StandardCharsets.UTF_8));
+        }
+        engine.stop();
+
+        assertThat(metrics.getBufferPoolExhaustions(), greaterThan(0L));
+    }
+
+    @Test
+    void testUpstreamPool() throws Exception {
+        ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getPort(), 60_000,
+                1024, TEST_DURATION).withEventLoops(1).withUpstreamPool(4, TEST_DURATION);
+        SelectorEngine engine = startEngine(config, c -> new ToxicNoop());
+        Utils.sleepUnchecked(SHORT_PAUSE);
+
+        List<Socket> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                clients.add(new Socket("localhost", config.downPort()));
+            }
+            for (int i = 0; i < clients.size(); i++) {
+                assertEquals("Hello " + i, EchoServer.echo(clients.get(i), "Hello " + i));
+            }
+        }
+        finally {
+            for (Socket client: clients) {
+                client.close();
+            }
+        }
+        engine.stop();
+
+        assertThat(metrics.getUpstreamPoolHits(), greaterThanOrEqualTo(4L));
+        assertEquals(8, metrics.getUpstreamPoolHits() + metrics.getUpstreamPoolMisses());
+    }
+
+    @Test
+    void testShadowMirror() throws Exception {
+        try (ServerSocket shadowServer = new ServerSocket(0)) {
+            ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getPort(), 60_000,
+                    1024, TEST_DURATION).withEventLoops(1)
+                    .withShadow(shadowServer.getLocalPort(), ProxyConfig.DEFAULT_SHADOW_QUEUE_SIZE);
+            SelectorEngine engine = startEngine(config, c -> new ToxicLatency(Duration.ZERO, LATENCY, Duration.ZERO));
+
+            Future<byte[]> shadowData = executor.submit(() -> {
+                try (Socket socket = shadowServer.accept()) {
+                    // Shadow response is dropped
+                    socket.getOutputStream().write("Shadow".getBytes(StandardCharsets.UTF_8));
+                    return socket.getInputStream().readAllBytes();
+                }
+            });
+            try (Socket client = new Socket("localhost", config.downPort())) {
+                assertEquals("Hello", EchoServer.echo(client, "Hello"));
+                assertEquals("World", EchoServer.echo(client, "World"));
+            }
+
+            assertEquals("HelloWorld", new String(shadowData.get(), StandardCharsets.UTF_8));
+            engine.stop();
+        }
+
+        assertEquals(10, metrics.getShadowMirroredBytes());
+        assertEquals(0, metrics.getShadowDroppedBytes());
+    }
+
+    @Test
+    void testSlowReader() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig, ToxicFactory.perDirection(
+                c -> new ToxicSlowReader(Duration.ZERO, SLOW_READ_RATE, 1024, 4096), c -> new ToxicNoop()));
+
+        byte[] data = new byte[(int)SLOW_READ_RATE];
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            long startNanos = System.nanoTime();
+            Future<?> writer = executor.submit(() -> {
+                client.getOutputStream().write(data);
+                return null;
+            });
+            assertEquals(data.length, client.getInputStream().readNBytes(data.length).length);
+            writer.get();
+            // Draining a second worth of data at the rate
+            assertThat(System.nanoTime() - startNanos, greaterThan(SHORT_PAUSE.multipliedBy(8).toNanos()));
+        }
+        engine.stop();
+
+        Duration backpressureTime = metrics.getCounters(StreamDirection.DOWNSTREAM).getBackpressureTime();
+        logger.info("Sender was held back for {} ms", backpressureTime.toMillis());
+        assertThat(backpressureTime, greaterThan(SHORT_PAUSE));
+        assertEquals(Duration.ZERO, metrics.getCounters(StreamDirection.UPSTREAM).getBackpressureTime());
+    }
+
+    @Test
+    void testBlockingToxic() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig, c -> new ToxicSlicer(Duration.ofMillis(2), 8));
+
+        String message = "A message that is going to be sliced into several pieces";
+        try (Socket client1 = new Socket("localhost", proxyConfig.downPort());
+             Socket client2 = new Socket("localhost", proxyConfig.downPort())) {
+            assertEquals(message, EchoServer.echo(client1, message));
+            assertEquals(message, EchoServer.echo(client2, message));
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testResetReleasesBuffers() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig, c -> new ToxicLatency(Duration.ZERO, LATENCY, Duration.ZERO));
+
+        List<Socket> clients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Socket client = new Socket("localhost", proxyConfig.downPort());
+            assertEquals("ping", EchoServer.echo(client, "ping"));
+            clients.add(client);
+        }
+        // Connections are reset while delayed data keeps buffers leased
+        for (Socket client: clients) {
+            client.getOutputStream().write("data".getBytes(StandardCharsets.UTF_8));
+            client.setSoLinger(true, 0);
+            client.close();
+        }
+
+        long deadline = System.nanoTime() + TEST_DURATION.toNanos();
+        while ((engine.getConnectionCount() > 0 || engine.getLeasedBuffers() > 0) && System.nanoTime() < deadline) {
+            Utils.sleepUnchecked(SHORT_PAUSE);
+        }
+        assertEquals(0, engine.getConnectionCount());
+        assertEquals(0, engine.getLeasedBuffers());
+        engine.stop();
+    }
+
+    @Test
+    void testVirtualThreadToxics() throws Exception {
+        ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getPort(), 60_000,
+                1024, TEST_DURATION).withEventLoops(1).withThreadMode(ThreadMode.VIRTUAL);
+        SelectorEngine engine = startEngine(config, c -> new ToxicSlicer(Duration.ofMillis(1), 4));
+
+        List<Socket> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                clients.add(new Socket("localhost", config.downPort()));
+            }
+            for (int i = 0; i < clients.size(); i++) {
+                assertEquals("Sliced message " + i, EchoServer.echo(clients.get(i), "Sliced message " + i));
+            }
+        }
+        finally {
+            for (Socket client: clients) {
+                client.close();
+            }
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testGatheringWrites() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig, c -> new ToxicSlicer(Duration.ZERO, 1));
+
+        String message = "A message that is going to be sliced into single bytes and written in a few calls";
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            assertEquals(message, EchoServer.echo(client, message));
+        }
+        engine.stop();
+
+        TrafficCounters counters = metrics.getCounters(StreamDirection.DOWNSTREAM);
+        assertEquals(message.length(), counters.getChunksWritten());
+        assertThat(counters.getWrites(), lessThan(counters.getChunksWritten() / 2));
+    }
+
+    @Test
+    void testLatencyDoesNotThrottleReads() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig,
+                c -> new ToxicLatency(Duration.ZERO, LATENCY, Duration.ZERO));
+
+        byte[] message = "0123456789".getBytes(StandardCharsets.UTF_8);
+        ExecutorService writerExecutor = Executors.newSingleThreadExecutor();
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            long startNanos = System.nanoTime();
+            Future<?> writer = writerExecutor.submit(() -> {
+                for (int i = 0; i < LATENCY_MESSAGES; i++) {
+                    client.getOutputStream().write(message);
+                    Utils.sleepUnchecked(SEND_INTERVAL);
+                }
+                return null;
+            });
+
+            InputStream in = client.getInputStream();
+            assertArrayEquals(message, in.readNBytes(message.length));
+            // Echo passes the proxy both ways
+            Duration firstDelay = Duration.ofNanos(System.nanoTime() - startNanos);
+            assertThat(firstDelay, greaterThanOrEqualTo(LATENCY.multipliedBy(2)));
+
+            for (int i = 1; i < LATENCY_MESSAGES; i++) {
+                assertArrayEquals(message, in.readNBytes(message.length));
+            }
+            writer.get();
+            // Sleeping toxic would need at least LATENCY_MESSAGES * LATENCY
+            Duration totalTime = Duration.ofNanos(System.nanoTime() - startNanos);
+            assertThat(totalTime, lessThan(LATENCY.multipliedBy(LATENCY_MESSAGES / 2)));
+
+            // Downstream data has been written before it was echoed back
+            assertEquals((long)LATENCY_MESSAGES * message.length,
+                    metrics.getCounters(StreamDirection.DOWNSTREAM).getBytesWritten());
+            DelayHistogram configuredDelay = metrics.getConfiguredDelay(StreamDirection.DOWNSTREAM);
+            DelayHistogram actualDelay = metrics.getActualDelay(StreamDirection.DOWNSTREAM);
+            assertThat(configuredDelay.getPercentile(50), greaterThanOrEqualTo(LATENCY));
+            assertThat(actualDelay.getMean(), greaterThanOrEqualTo(configuredDelay.getMean()));
+            assertEquals(1, metrics.getActiveConnections().size());
+        }
+        finally {
+            writerExecutor.shutdown();
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testBandwidthLimit() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig,
+                c -> new ToxicBandwidth(Duration.ZERO, BANDWIDTH, BANDWIDTH_BURST));
+
+        // Half a second worth of data - echo directions are paced independently
+        byte[] data = new byte[(int)(BANDWIDTH / 2)];
+        ExecutorService writerExecutor = Executors.newSingleThreadExecutor();
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            long startNanos = System.nanoTime();
+            Future<?> writer = writerExecutor.submit(() -> {
+                client.getOutputStream().write(data);
+                return null;
+            });
+            assertArrayEquals(data, client.getInputStream().readNBytes(data.length));
+            writer.get();
+
+            Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+            Duration expected = Duration.ofSeconds(data.length - BANDWIDTH_BURST).dividedBy(BANDWIDTH);
+            assertThat(duration, greaterThanOrEqualTo(expected));
+            assertThat(duration, lessThan(expected.multipliedBy(2)));
+        }
+        finally {
+            writerExecutor.shutdown();
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testAsymmetricToxics() throws Exception {
+        ToxicFactory toxicFactory = ToxicFactory.perDirection(c -> new ToxicNoop(),
+                ToxicFactory.chain(c -> new ToxicLatency(Duration.ZERO, LATENCY, Duration.ZERO),
+                        c -> new ToxicBandwidth(Duration.ZERO, BANDWIDTH, BANDWIDTH_BURST)));
+        SelectorEngine engine = startEngine(proxyConfig, toxicFactory);
+
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            long startNanos = System.nanoTime();
+            assertEquals("ping", EchoServer.echo(client, "ping"));
+            Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+            // Only upstream direction is delayed
+            assertThat(duration, greaterThanOrEqualTo(LATENCY));
+            assertThat(duration, lessThan(LATENCY.multipliedBy(2)));
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testReordering() throws Exception {
+        ToxicFactory toxicFactory = ToxicFactory.perDirection(c -> new ToxicNoop(),
+                c -> new ToxicReorder(Duration.ZERO, 1, 0, 1, SHORT_PAUSE));
+        SelectorEngine engine = startEngine(proxyConfig, toxicFactory);
+
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            client.setTcpNoDelay(true);
+            OutputStream out = client.getOutputStream();
+            out.write('a');
+            Utils.sleepUnchecked(LATENCY);
+            out.write('b');
+
+            // First chunk is held back, the second one fills the window and overtakes it
+            byte[] received = client.getInputStream().readNBytes(2);
+            assertEquals("ba", new String(received, StandardCharsets.UTF_8));
+            assertEquals("ping", EchoServer.echo(client, "ping"));
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testRuntimeReconfiguration() throws Exception {
+        ToxicControl control = new ToxicControl();
+        SelectorEngine engine = startEngine(proxyConfig, control.toxicFactory());
+
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            assertThat(echoTime(client), lessThan(LATENCY));
+
+            control.set("latency", StreamDirection.DOWNSTREAM, ToxicTypes.LATENCY,
+                    Map.of("latency", String.valueOf(LATENCY.toMillis())));
+            assertThat(echoTime(client), greaterThanOrEqualTo(LATENCY));
+
+            control.clear();
+            assertThat(echoTime(client), lessThan(LATENCY));
+            assertEquals(1, engine.getConnectionCount());
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testInterruption() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig, c -> new ToxicNoop());
+
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            assertEquals("ping", EchoServer.echo(client, "ping"));
+
+            engine.interruptAll();
+            Utils.sleepUnchecked(SHORT_PAUSE);
+
+            assertEquals(0, engine.getConnectionCount());
+            assertEquals(-1, client.getInputStream().read());
+        }
+        engine.stop();
+    }
+
+    @Test
+    void testStop() throws Exception {
+        SelectorEngine engine = startEngine(proxyConfig, c -> new ToxicNoop());
+
+        try (Socket client = new Socket("localhost", proxyConfig.downPort())) {
+            assertEquals("ping", EchoServer.echo(client, "ping"));
+            engine.stop();
+            Utils.sleepUnchecked(SHORT_PAUSE);
+            assertEquals(-1, client.getInputStream().read());
+        }
+        assertThrows(IOException.class, () -> new Socket("localhost", proxyConfig.downPort()).close());
+    }
+
+    // Compares pass-through proxy with raw loopback connection - log-only since rates depend on CPU load
+    @Test
+    void testPassThroughThroughput() throws Exception {
+        ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getPort(), 60_000,
+                THROUGHPUT_BUF_SIZE, TEST_DURATION).withEventLoops(1);
+        SelectorEngine engine = startEngine(config, c -> new ToxicNoop());
+
+        double rawRate = measureThroughput(echoServer.getPort());
+        double proxyRate = measureThroughput(config.downPort());
+        engine.stop();
+
+        logger.info("Raw loopback {} MB/s, pass-through proxy {} MB/s ({}%)", Math.round(rawRate),
+                Math.round(proxyRate), Math.round(100 * proxyRate / rawRate));
+    }
+
+    // Sends data in one direction and waits for echoed data in another - returns MB/s
+    private static double measureThroughput(int port) throws Exception {
+        byte[] outBlock = new byte[THROUGHPUT_BUF_SIZE];
+        byte[] inBlock = new byte[THROUGHPUT_BUF_SIZE];
+        ExecutorService writerExecutor = Executors.newSingleThreadExecutor();
+        try (Socket socket = new Socket("localhost", port)) {
+            long startNanos = System.nanoTime();
+            Future<?> writer = writerExecutor.submit(() -> {
+                OutputStream out = socket.getOutputStream();
+                for (long sent = 0; sent < THROUGHPUT_BYTES; sent += outBlock.length) {
+                    out.write(outBlock);
+                }
+                return null;
+            });
+            InputStream in = socket.getInputStream();
+            long received = 0;
+            while (received < THROUGHPUT_BYTES) {
+                int read = in.read(inBlock);
+                assertTrue(read >= 0, "Connection closed after " + received + " bytes");
+                received += read;
+            }
+            writer.get();
+            return THROUGHPUT_BYTES * 1e3 / (System.nanoTime() - startNanos);
+        }
+        finally {
+            writerExecutor.shutdown();
+        }
+    }
+
+    private SelectorEngine startEngine(ProxyConfig config, ToxicFactory toxicFactory) throws IOException {
+        SelectorEngine engine = new SelectorEngine(config.eventLoops(), config.bufSize(),
+                config.bufferPoolSize(), config.captureFile(), config.threadMode(), new SocketFactory(), s -> {});
+        engine.start();
+        engine.addListener(config.downPort(), config.upPort(), config.upstreamPoolSize(), config.upstreamIdleTime(),
+                config.shadowPort(), config.shadowQueueSize(), toxicFactory, metrics);
+        return engine;
+    }
+
+    private static Duration echoTime(Socket socket) throws IOException {
+        long startNanos = System.nanoTime();
+        assertEquals("ping", EchoServer.echo(socket, "ping"));
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+}
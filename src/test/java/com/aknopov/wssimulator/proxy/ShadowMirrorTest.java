@@ -0,0 +1,153 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.Utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShadowMirrorTest {
+    private static final Duration SHORT_PAUSE = Duration.ofMillis(100);
+    private static final int QUEUE_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 1024;
+
+    private final ProxyMetrics metrics = new ProxyMetrics();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private ServerSocket shadowServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        shadowServer = new ServerSocket(0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        shadowServer.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShadowMirror(shadowServer.getLocalPort(), 0, new SocketFactory(), metrics));
+    }
+
+    @Test
+    void testMirroring() throws Exception {
+        byte[] data = new byte[16 * CHUNK_SIZE];
+        new Random(42).nextBytes(data);
+        // Shadow responds before reading - the response has to be drained
+        Future<byte[]> shadowData = executor.submit(() -> {
+            try (Socket socket = shadowServer.accept()) {
+                socket.getOutputStream().write(new byte[QUEUE_SIZE * 16]);
+                return socket.getInputStream().readAllBytes();
+            }
+        });
+        ShadowMirror mirror = new ShadowMirror(shadowServer.getLocalPort(), QUEUE_SIZE, new SocketFactory(),
+                metrics);
+        mirror.start();
+
+        for (int i = 0; i < data.length; i += CHUNK_SIZE) {
+            ByteBuffer chunk = ByteBuffer.wrap(data, i, CHUNK_SIZE);
+            mirror.append(1, chunk);
+            // Copy doesn't consume source data
+            assertEquals(CHUNK_SIZE, chunk.remaining());
+        }
+        mirror.appendEnd(1);
+
+        assertArrayEquals(data, shadowData.get());
+        mirror.stop();
+        assertEquals(data.length, metrics.getShadowMirroredBytes());
+        assertEquals(0, metrics.getShadowDroppedBytes());
+        assertEquals(0, mirror.getQueuedBytes());
+    }
+
+    @Test
+    void testQueueOverflow() throws Exception {
+        // Shadow accepts connection, but doesn't read
+        Future<Socket> shadowSocket = executor.submit(() -> shadowServer.accept());
+        ShadowMirror mirror = new ShadowMirror(shadowServer.getLocalPort(), QUEUE_SIZE, new SocketFactory(),
+                metrics);
+        mirror.start();
+
+        long total = 0;
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        long startNanos = System.nanoTime();
+        while (metrics.getShadowDroppedBytes() == 0) {
+            mirror.append(1, chunk);
+            total += CHUNK_SIZE;
+        }
+        // Further data of the connection is dropped too
+        for (int i = 0; i < 10; i++) {
+            mirror.append(1, chunk);
+            total += CHUNK_SIZE;
+        }
+        assertThat(System.nanoTime() - startNanos, lessThan(Duration.ofSeconds(5).toNanos()));
+        Utils.sleepUnchecked(SHORT_PAUSE);
+
+        assertThat(metrics.getShadowDroppedBytes(), greaterThan(10L * CHUNK_SIZE));
+        assertEquals(total, metrics.getShadowMirroredBytes() + metrics.getShadowDroppedBytes());
+        assertEquals(0, mirror.getQueuedBytes());
+        mirror.appendEnd(1);
+        mirror.stop();
+        try (Socket socket = shadowSocket.get()) {
+            // Shadow connection is closed
+            socket.getInputStream().skip(Long.MAX_VALUE);
+        }
+        catch (IOException ex) {
+            // reset
+        }
+    }
+
+    @Test
+    void testUnavailableShadow() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(SocketFactory.getAvailablePort(), QUEUE_SIZE, new SocketFactory(),
+                metrics);
+        mirror.start();
+
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        mirror.append(1, chunk);
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        mirror.append(1, chunk);
+        mirror.appendEnd(1);
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        mirror.stop();
+
+        assertEquals(2 * CHUNK_SIZE, metrics.getShadowDroppedBytes());
+        assertEquals(0, metrics.getShadowMirroredBytes());
+        assertEquals(0, mirror.getQueuedBytes());
+    }
+
+    @Test
+    void testAppendAfterStop() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(shadowServer.getLocalPort(), CHUNK_SIZE, new SocketFactory(), metrics);
+        mirror.start();
+        mirror.stop();
+        Utils.sleepUnchecked(SHORT_PAUSE);
+
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        mirror.append(1, chunk);
+        mirror.append(1, chunk);
+        mirror.appendEnd(1);
+
+        assertEquals(CHUNK_SIZE, metrics.getShadowDroppedBytes());
+    }
+}
@@ -7,8 +7,10 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -19,11 +21,18 @@ import org.mockito.MockedConstruction;
 import org.mockito.MockedStatic;
 
 import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.ThreadMode;
 import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+import com.aknopov.wssimulator.proxy.toxy.ToxicWebSocketFrames;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.AdditionalAnswers.answersWithDelay;
@@ -80,8 +89,13 @@ class TcpProxyTest {
             TcpProxy unused2 = TcpProxy.createJitterProxy(PROXY_CONFIG, ACCEPT_PAUSE, SHORT_PAUSE, Duration.ZERO);
             TcpProxy unused3 = TcpProxy.createInterruptingProxy(PROXY_CONFIG, ACCEPT_PAUSE);
             TcpProxy unused4 = TcpProxy.createSlicerProxy(PROXY_CONFIG, 64, ACCEPT_PAUSE);
+            TcpProxy unused5 = TcpProxy.createBandwidthProxy(PROXY_CONFIG, ACCEPT_PAUSE, 1024, 64);
+            TcpProxy unused6 = TcpProxy.createToxicProxy(PROXY_CONFIG, c -> new ToxicNoop());
+            TcpProxy unused7 = TcpProxy.createWebSocketFrameProxy(PROXY_CONFIG, ACCEPT_PAUSE,
+                    new ToxicWebSocketFrames.Config(SHORT_PAUSE, 0.5, 0, 64, SHORT_PAUSE));
+            TcpProxy unused8 = TcpProxy.createReorderProxy(PROXY_CONFIG, ACCEPT_PAUSE, 0.1, 0.1, 4, SHORT_PAUSE);
 
-            assertThat(clientMockClass.constructed(), hasSize(4));
+            assertThat(clientMockClass.constructed(), hasSize(8));
         }
     }
 
@@ -98,6 +112,157 @@ class TcpProxyTest {
         assertTrue(endTime.isBefore(startTime.plus(TEST_DURATION.multipliedBy(2))));
     }
 
+    @Test
+    void testMultiplexedLifeSpan() {
+        ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), 4321, 60_000, 1024, TEST_DURATION)
+                .withEventLoops(2);
+        TcpProxy proxy = TcpProxy.createNonToxicProxy(config, new SocketFactory());
+
+        Instant startTime = Instant.now();
+        proxy.start();
+        assertFalse(proxy.awaitTermination(SHORT_PAUSE));
+        assertEquals(0, proxy.getConnectionCount());
+        proxy.awaitTermination(TEST_DURATION);
+        Instant endTime = Instant.now();
+
+        assertTrue(endTime.isAfter(startTime.plus(TEST_DURATION)));
+        assertTrue(endTime.isBefore(startTime.plus(TEST_DURATION.multipliedBy(2))));
+    }
+
+    @Test
+    void testChannelPassThrough() throws Exception {
+        try (ServerSocket echoServer = new ServerSocket(0)) {
+            ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getLocalPort(), 60_000,
+                    1024, TEST_DURATION);
+            TcpProxy proxy = TcpProxy.createNonToxicProxy(config, new SocketFactory());
+            proxy.start();
+            Utils.sleepUnchecked(SHORT_PAUSE);
+
+            byte[] message = "Hello".getBytes(StandardCharsets.UTF_8);
+            try (Socket client = new Socket("localhost", config.downPort());
+                 Socket server = echoServer.accept()) {
+                client.getOutputStream().write(message);
+                byte[] received = server.getInputStream().readNBytes(message.length);
+                server.getOutputStream().write(received);
+
+                assertArrayEquals(message, client.getInputStream().readNBytes(message.length));
+            }
+            proxy.stop();
+        }
+    }
+
+    @Test
+    void testChannelReconfiguration() throws Exception {
+        try (ServerSocket echoServer = new ServerSocket(0)) {
+            ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getLocalPort(), 60_000,
+                    1024, TEST_DURATION);
+            ToxicControl control = new ToxicControl();
+            TcpProxy proxy = TcpProxy.createToxicProxy(config, control.toxicFactory(), new SocketFactory());
+            proxy.start();
+            Utils.sleepUnchecked(SHORT_PAUSE);
+
+            byte[] message = "Hello".getBytes(StandardCharsets.UTF_8);
+            try (Socket client = new Socket("localhost", config.downPort());
+                 Socket server = echoServer.accept()) {
+                client.getOutputStream().write(message);
+                assertArrayEquals(message, server.getInputStream().readNBytes(message.length));
+
+                // Toxic is applied to the live connection
+                control.set("slicer", null, ToxicTypes.SLICER, Map.of("average_size", "1"));
+                client.getOutputStream().write(message);
+                assertArrayEquals(message, server.getInputStream().readNBytes(message.length));
+                assertEquals(1, proxy.getConnectionCount());
+
+                ProxyMetrics metrics = proxy.getMetrics();
+                assertEquals(1, metrics.getOpenedConnections());
+                assertEquals(2L * message.length, metrics.getCounters(StreamDirection.DOWNSTREAM).getBytesRead());
+                assertEquals(2, metrics.getActiveConnections().get(0).getCounters(StreamDirection.DOWNSTREAM)
+                        .getChunksRead());
+            }
+            proxy.stop();
+        }
+    }
+
+    @Test
+    void testChannelGatheredWrites() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), server.getLocalPort(), 60_000,
+                    1024, TEST_DURATION);
+            TcpProxy proxy = TcpProxy.createSlicerProxy(config, 1, Duration.ZERO);
+            proxy.start();
+            Utils.sleepUnchecked(SHORT_PAUSE);
+
+            byte[] message = "Sliced into single bytes that are due at once".getBytes(StandardCharsets.UTF_8);
+            try (Socket client = new Socket("localhost", config.downPort());
+                 Socket upstream = server.accept()) {
+                client.getOutputStream().write(message);
+                assertArrayEquals(message, upstream.getInputStream().readNBytes(message.length));
+                // Counters are updated once data is written
+                Utils.sleepUnchecked(SHORT_PAUSE);
+            }
+            proxy.stop();
+
+            TrafficCounters counters = proxy.getMetrics().getCounters(StreamDirection.DOWNSTREAM);
+            assertEquals(message.length, counters.getChunksWritten());
+            assertThat(counters.getWrites(), lessThan(counters.getChunksWritten() / 2));
+        }
+    }
+
+    @Test
+    void testVirtualConcurrentConnections() throws Exception {
+        try (ServerSocket echoServer = new ServerSocket(0)) {
+            ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getLocalPort(), 60_000,
+                    1024, TEST_DURATION).withThreadMode(ThreadMode.VIRTUAL);
+            TcpProxy proxy = TcpProxy.createNonToxicProxy(config, new SocketFactory());
+            proxy.start();
+            Utils.sleepUnchecked(SHORT_PAUSE);
+
+            byte[] message = "Hello".getBytes(StandardCharsets.UTF_8);
+            try (Socket client1 = new Socket("localhost", config.downPort());
+                 Socket server1 = echoServer.accept();
+                 Socket client2 = new Socket("localhost", config.downPort());
+                 Socket server2 = echoServer.accept()) {
+                // Both connections are served while the first one is open
+                client2.getOutputStream().write(message);
+                assertArrayEquals(message, server2.getInputStream().readNBytes(message.length));
+                client1.getOutputStream().write(message);
+                assertArrayEquals(message, server1.getInputStream().readNBytes(message.length));
+                assertEquals(2, proxy.getConnectionCount());
+
+                proxy.interrupt();
+                assertEquals(-1, client1.getInputStream().read());
+                assertEquals(-1, client2.getInputStream().read());
+            }
+            proxy.stop();
+        }
+    }
+
+    @Test
+    void testSlowReader() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), server.getLocalPort(), 60_000,
+                    1024, Duration.ofSeconds(10));
+            TcpProxy proxy = TcpProxy.createSlowReaderProxy(config, Duration.ZERO, 16 * 1024, 1024, 4096,
+                    new SocketFactory());
+            proxy.start();
+            Utils.sleepUnchecked(SHORT_PAUSE);
+
+            byte[] data = new byte[16 * 1024];
+            try (Socket client = new Socket("localhost", config.downPort());
+                 Socket upstream = server.accept()) {
+                long startNanos = System.nanoTime();
+                upstream.getOutputStream().write(data);
+                assertArrayEquals(data, client.getInputStream().readNBytes(data.length));
+                assertTrue(System.nanoTime() - startNanos > TEST_DURATION.toNanos());
+            }
+            proxy.stop();
+
+            ProxyMetrics metrics = proxy.getMetrics();
+            assertTrue(metrics.getCounters(StreamDirection.UPSTREAM).getBackpressureTime().compareTo(SHORT_PAUSE) > 0);
+            assertEquals(Duration.ZERO, metrics.getCounters(StreamDirection.DOWNSTREAM).getBackpressureTime());
+        }
+    }
+
     @Test
     void testIncomingConnections() throws Exception {
         when(mockInStreamUp.read(any(BYTE_ARRAY_TYPE))).thenReturn(0);
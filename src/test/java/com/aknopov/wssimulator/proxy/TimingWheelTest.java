@@ -0,0 +1,85 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.Utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    private static final Duration TICK = Duration.ofMillis(1);
+    private static final long PRECISION_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final TimingWheel wheel = new TimingWheel(TICK, 8, "TestTimer");
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(Duration.ZERO, 8, "BadTimer"));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(TICK, 0, "BadTimer"));
+    }
+
+    @Test
+    void testDeadlines() throws Exception {
+        wheel.start();
+        long startNanos = System.nanoTime();
+        // Deadlines span several wheel rounds
+        long[] delays = { 30, 5, 17, 2, 11 };
+        long[] fireTimes = new long[delays.length];
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        for (int i = 0; i < delays.length; i++) {
+            int idx = i;
+            wheel.schedule(startNanos + TimeUnit.MILLISECONDS.toNanos(delays[i]), () -> {
+                fireTimes[idx] = System.nanoTime();
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < delays.length; i++) {
+            long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(delays[i]);
+            assertThat(fireTimes[i], greaterThanOrEqualTo(deadline));
+            assertThat(fireTimes[i] - deadline, lessThan(PRECISION_NANOS));
+        }
+    }
+
+    @Test
+    void testPastDeadline() throws Exception {
+        wheel.start();
+        CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule(System.nanoTime() - TimeUnit.SECONDS.toNanos(1), latch::countDown);
+
+        assertTrue(latch.await(PRECISION_NANOS, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void testOrderAndFailures() throws Exception {
+        wheel.start();
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3);
+        wheel.schedule(deadline, () -> fired.add(1));
+        wheel.schedule(deadline, () -> {
+            throw new IllegalStateException("Test failure");
+        });
+        wheel.schedule(deadline + TimeUnit.MILLISECONDS.toNanos(3), () -> fired.add(2));
+
+        Utils.sleepUnchecked(Duration.ofMillis(50));
+        assertEquals(List.of(1, 2), fired);
+    }
+}
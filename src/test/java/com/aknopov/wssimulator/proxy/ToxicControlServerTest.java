@@ -0,0 +1,88 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToxicControlServerTest {
+    private final ToxicControl control = new ToxicControl();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ToxicControlServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new ToxicControlServer(control, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testToxicLifecycle() throws Exception {
+        HttpResponse<String> response = send("POST", "/toxics/lag?type=latency&stream=upstream&latency=100&jitter=10");
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"name\":\"lag\",\"type\":\"latency\",\"stream\":\"upstream\","
+                + "\"attributes\":{\"jitter\":\"10\",\"latency\":\"100\"}}", response.body());
+        assertEquals(StreamDirection.UPSTREAM, control.getEntries().get(0).direction());
+
+        // Retune with form data
+        response = send("POST", "/toxics/lag", "type=latency&latency=200");
+        assertEquals(200, response.statusCode());
+        assertEquals(Map.of("latency", "200"), control.getEntries().get(0).attributes());
+
+        response = send("GET", "/toxics");
+        assertEquals(200, response.statusCode());
+        assertEquals("[{\"name\":\"lag\",\"type\":\"latency\",\"stream\":null,\"attributes\":{\"latency\":\"200\"}}]",
+                response.body());
+
+        assertEquals(204, send("DELETE", "/toxics/lag").statusCode());
+        assertEquals(404, send("DELETE", "/toxics/lag").statusCode());
+        assertEquals("[]", send("GET", "/toxics").body());
+    }
+
+    @Test
+    void testBadRequests() throws Exception {
+        assertEquals(400, send("POST", "/toxics/x?type=poison").statusCode());
+        assertEquals(400, send("POST", "/toxics/x?latency=10").statusCode());
+        assertEquals(400, send("POST", "/toxics/x?type=latency&latency=10&stream=sideways").statusCode());
+        assertEquals(405, send("PUT", "/toxics/x").statusCode());
+        assertTrue(control.getEntries().isEmpty());
+    }
+
+    @Test
+    void testReset() throws Exception {
+        control.set("a", null, ToxicTypes.NOOP, Map.of());
+        control.set("b", null, ToxicTypes.NOOP, Map.of());
+
+        assertEquals(204, send("DELETE", "/toxics").statusCode());
+        assertEquals(List.of(), control.getEntries());
+    }
+
+    private HttpResponse<String> send(String method, String path) throws Exception {
+        return send(method, path, "");
+    }
+
+    private HttpResponse<String> send(String method, String path, String form) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .method(method, form.isEmpty() ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,129 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.proxy.toxy.Interruptible;
+import com.aknopov.wssimulator.proxy.toxy.StreamDirection;
+import com.aknopov.wssimulator.proxy.toxy.Toxic;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlicer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToxicControlTest {
+    private static final Interruptible CONNECTION = () -> {};
+    private static final ByteBuffer DATA = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+
+    private final ToxicControl control = new ToxicControl();
+
+    @Test
+    void testSetAndRemove() {
+        control.set("lat", StreamDirection.UPSTREAM, ToxicTypes.LATENCY, Map.of("latency", "10"));
+        control.set("noop", null, c -> new ToxicNoop());
+        control.set("lat", null, ToxicTypes.LATENCY, Map.of("latency", "20", "jitter", "5"));
+
+        List<ToxicControl.Entry> entries = control.getEntries();
+        assertEquals(List.of("lat", "noop"), entries.stream().map(ToxicControl.Entry::name).toList());
+        assertEquals(Map.of("latency", "20", "jitter", "5"), entries.get(0).attributes());
+        assertEquals(ToxicTypes.CUSTOM, entries.get(1).type());
+
+        assertTrue(control.remove("lat"));
+        assertFalse(control.remove("lat"));
+        assertEquals(1, control.getEntries().size());
+
+        control.clear();
+        assertTrue(control.getEntries().isEmpty());
+    }
+
+    @Test
+    void testInvalidToxics() {
+        assertThrows(IllegalArgumentException.class, () -> control.set("x", null, "unknown", Map.of()));
+        assertThrows(IllegalArgumentException.class,
+                () -> control.set("x", null, ToxicTypes.LATENCY, Map.of("latency", "abc")));
+        ToxicControl.Entry entry = new ToxicControl.Entry("x", null, ToxicTypes.NOOP, Map.of(), c -> new ToxicNoop());
+        assertThrows(IllegalArgumentException.class, () -> control.replaceAll(List.of(entry, entry)));
+        assertTrue(control.getEntries().isEmpty());
+    }
+
+    @Test
+    void testSnapshotVersions() {
+        long version = control.getSnapshot().version();
+        control.set("noop", null, c -> new ToxicNoop());
+        assertTrue(control.getSnapshot().version() > version);
+    }
+
+    @Test
+    void testDynamicToxic() {
+        Toxic downToxic = control.toxicFactory().create(CONNECTION, StreamDirection.DOWNSTREAM);
+        Toxic upToxic = control.toxicFactory().create(CONNECTION, StreamDirection.UPSTREAM);
+        downToxic.start();
+        upToxic.start();
+        assertTrue(downToxic.isPassThrough());
+        assertEquals(List.of(DATA), downToxic.transformData(DATA));
+
+        // Changes are picked up by live toxics
+        control.set("slicer", StreamDirection.UPSTREAM, c -> new ToxicSlicer(Duration.ZERO, 1));
+        assertTrue(downToxic.isPassThrough());
+        assertFalse(upToxic.isPassThrough());
+        assertTrue(upToxic.isBlocking());
+        int sliceCount = 0;
+        for (ByteBuffer unused: upToxic.transformData(DATA.duplicate())) {
+            sliceCount++;
+        }
+        assertTrue(sliceCount > 1);
+
+        control.set("noop", null, c -> new ToxicNoop());
+        control.set("latency", StreamDirection.DOWNSTREAM, ToxicTypes.LATENCY, Map.of("latency", "10"));
+        assertFalse(downToxic.isPassThrough());
+        assertFalse(downToxic.isBlocking());
+
+        control.clear();
+        assertTrue(upToxic.isPassThrough());
+        assertEquals(List.of(DATA), upToxic.transformData(DATA));
+
+        downToxic.stop();
+        upToxic.stop();
+    }
+
+    // Event loop resolves toxic once per chunk, so that all checks of the chunk see the same toxic
+    @Test
+    void testCurrentToxic() {
+        DynamicToxic toxic = (DynamicToxic)control.toxicFactory().create(CONNECTION, StreamDirection.UPSTREAM);
+        toxic.start();
+        Toxic noToxic = toxic.current();
+        assertTrue(noToxic.isPassThrough());
+        assertFalse(noToxic.isBlocking());
+
+        control.set("slicer", null, c -> new ToxicSlicer(Duration.ZERO, 1));
+        Toxic slicer = toxic.current();
+        assertSame(slicer, toxic.current());
+        assertTrue(slicer.isBlocking());
+
+        // Resolved toxic stays the same for the chunk after reconfiguration
+        control.clear();
+        assertTrue(slicer.isBlocking());
+        assertTrue(toxic.current().isPassThrough());
+        toxic.stop();
+    }
+
+    @Test
+    void testChainOrder() {
+        control.set("first", null, c -> new ToxicNoop());
+        control.set("second", null, c -> new ToxicSlicer(Duration.ZERO, 4));
+        Toxic toxic = control.toxicFactory().create(CONNECTION);
+        toxic.start();
+
+        assertFalse(toxic.isPassThrough());
+        assertTrue(toxic.isBlocking());
+        toxic.stop();
+    }
+}
@@ -0,0 +1,60 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.proxy.toxy.Interruptible;
+import com.aknopov.wssimulator.proxy.toxy.ToxicBandwidth;
+import com.aknopov.wssimulator.proxy.toxy.ToxicInterrupter;
+import com.aknopov.wssimulator.proxy.toxy.ToxicLatency;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+import com.aknopov.wssimulator.proxy.toxy.ToxicReorder;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlicer;
+import com.aknopov.wssimulator.proxy.toxy.ToxicSlowReader;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ToxicTypesTest {
+    private static final Interruptible CONNECTION = () -> {};
+
+    @Test
+    void testKnownTypes() {
+        assertInstanceOf(ToxicLatency.class, ToxicTypes.createFactory(ToxicTypes.LATENCY,
+                Map.of("latency", "100", "jitter", "10", "start_delay", "5")).create(CONNECTION));
+        assertInstanceOf(ToxicBandwidth.class, ToxicTypes.createFactory(ToxicTypes.BANDWIDTH,
+                Map.of("rate", "64")).create(CONNECTION));
+        assertInstanceOf(ToxicSlicer.class, ToxicTypes.createFactory(ToxicTypes.SLICER,
+                Map.of("average_size", "16", "delay", "10")).create(CONNECTION));
+        assertInstanceOf(ToxicSlowReader.class, ToxicTypes.createFactory(ToxicTypes.SLOW_READER,
+                Map.of("rate", "16", "receive_buffer", "2048")).create(CONNECTION));
+        assertInstanceOf(ToxicInterrupter.class, ToxicTypes.createFactory(ToxicTypes.INTERRUPTER,
+                Map.of("timeout", "1000")).create(CONNECTION));
+        assertInstanceOf(ToxicReorder.class, ToxicTypes.createFactory(ToxicTypes.REORDER,
+                Map.of("reorder_rate", "10", "drop_rate", "5")).create(CONNECTION));
+        assertInstanceOf(ToxicNoop.class, ToxicTypes.createFactory(ToxicTypes.NOOP, Map.of()).create(CONNECTION));
+    }
+
+    @Test
+    void testInvalidAttributes() {
+        assertThrows(IllegalArgumentException.class, () -> ToxicTypes.createFactory("poison", Map.of()));
+        assertThrows(IllegalArgumentException.class, () -> ToxicTypes.createFactory(ToxicTypes.LATENCY, Map.of()));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.LATENCY, Map.of("latency", "10", "jitter", "20")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.BANDWIDTH, Map.of("rate", "-1")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.BANDWIDTH, Map.of("rate", "0")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.SLICER, Map.of("average_size", "x")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.SLOW_READER, Map.of("rate", "16", "read_size", "0")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.SLICER, Map.of("average_size", "99999999999")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.REORDER, Map.of("reorder_rate", "60", "drop_rate", "50")));
+        assertThrows(IllegalArgumentException.class,
+                () -> ToxicTypes.createFactory(ToxicTypes.REORDER, Map.of("window", "0")));
+    }
+}
@@ -0,0 +1,75 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.Utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrafficReplayerTest {
+    private static final Duration TEST_DURATION = Duration.ofSeconds(10);
+    private static final Duration PAUSE = Duration.ofMillis(200);
+    private static final String MESSAGE = "Hello";
+
+    private EchoServer echoServer;
+    private Path captureFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        echoServer = new EchoServer();
+        captureFile = Files.createTempFile("capture", ".bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        echoServer.close();
+        Files.deleteIfExists(captureFile);
+    }
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new TrafficReplayer(captureFile, 1, 0, PAUSE));
+    }
+
+    @Test
+    void testCaptureAndReplay() throws Exception {
+        ProxyConfig config = new ProxyConfig(SocketFactory.getAvailablePort(), echoServer.getPort(), 60_000,
+                1024, TEST_DURATION).withEventLoops(1).withCaptureFile(captureFile);
+        TcpProxy proxy = TcpProxy.createNonToxicProxy(config, new SocketFactory());
+        proxy.start();
+        try (Socket client = new Socket("localhost", config.downPort())) {
+            EchoServer.echo(client, MESSAGE);
+            Utils.sleepUnchecked(PAUSE);
+            EchoServer.echo(client, MESSAGE);
+        }
+        try (Socket client = new Socket("localhost", config.downPort())) {
+            EchoServer.echo(client, MESSAGE);
+        }
+        // Let proxy see end of streams
+        Utils.sleepUnchecked(PAUSE);
+        proxy.stop();
+
+        long startNanos = System.nanoTime();
+        TrafficReplayer.ReplayResult result = new TrafficReplayer(captureFile, echoServer.getPort(), 2,
+                TEST_DURATION).replay();
+        Duration replayTime = Duration.ofNanos(System.nanoTime() - startNanos);
+
+        assertEquals(new TrafficReplayer.ReplayResult(2, 3L * MESSAGE.length(), 3L * MESSAGE.length()), result);
+        // Pause between messages is halved
+        assertThat(replayTime, greaterThanOrEqualTo(PAUSE.dividedBy(2)));
+        assertThat(replayTime, lessThan(PAUSE.multipliedBy(2)));
+    }
+}
@@ -0,0 +1,152 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.Utils;
+import com.aknopov.wssimulator.proxy.toxy.ToxicNoop;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamBalancerTest {
+    private static final Duration DOWN_TIME = Duration.ofMillis(100);
+    private static final int CLIENT_COUNT = 10_000;
+
+    private final List<UpstreamNode> nodes = List.of(node(8001), node(8002), node(8003));
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new UpstreamBalancer(List.of(), BalanceStrategy.ROUND_ROBIN, DOWN_TIME));
+        assertThrows(IllegalArgumentException.class,
+                () -> new UpstreamBalancer(List.of(node(8001), node(8001)), BalanceStrategy.ROUND_ROBIN, DOWN_TIME));
+        assertThrows(IllegalArgumentException.class,
+                () -> new UpstreamBalancer(nodes, BalanceStrategy.ROUND_ROBIN, Duration.ofMillis(-1)));
+    }
+
+    @Test
+    void testRoundRobin() {
+        UpstreamBalancer balancer = new UpstreamBalancer(nodes, BalanceStrategy.ROUND_ROBIN, DOWN_TIME);
+
+        for (int i = 0; i < 6; i++) {
+            assertSame(nodes.get(i % 3), balancer.select(null));
+        }
+
+        // Failed node is skipped till down time passes
+        balancer.onFailure(nodes.get(1));
+        assertFalse(nodes.get(1).isUp());
+        assertEquals(1, nodes.get(1).getFailures());
+        for (int i = 0; i < 4; i++) {
+            assertNotEquals(nodes.get(1), balancer.select(null));
+        }
+        Utils.sleepUnchecked(DOWN_TIME);
+        assertTrue(nodes.get(1).isUp());
+        assertEquals(3, List.of(balancer.select(null), balancer.select(null), balancer.select(null)).stream()
+                .distinct()
+                .count());
+    }
+
+    @Test
+    void testLeastConnections() {
+        UpstreamBalancer balancer = new UpstreamBalancer(nodes, BalanceStrategy.LEAST_CONNECTIONS, DOWN_TIME);
+        nodes.get(0).onOpen();
+        nodes.get(0).onOpen();
+        nodes.get(2).onOpen();
+
+        assertSame(nodes.get(1), balancer.select(null));
+        nodes.get(1).onOpen();
+        UpstreamNode node = balancer.select(null);
+        assertTrue(node == nodes.get(1) || node == nodes.get(2));
+
+        nodes.get(0).onClose();
+        nodes.get(0).onClose();
+        assertSame(nodes.get(0), balancer.select(null));
+        assertEquals(2, nodes.get(0).getTotalConnections());
+        assertEquals(0, nodes.get(0).getConnectionCount());
+    }
+
+    @Test
+    void testConsistentHash() throws Exception {
+        UpstreamBalancer balancer = new UpstreamBalancer(nodes, BalanceStrategy.CONSISTENT_HASH, DOWN_TIME);
+
+        Map<InetSocketAddress, UpstreamNode> assignment = new HashMap<>();
+        Map<UpstreamNode, Integer> load = new HashMap<>();
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            InetSocketAddress client = clientAddress(i);
+            UpstreamNode node = balancer.select(client);
+            assignment.put(client, node);
+            load.merge(node, 1, Integer::sum);
+            // Client sticks to its node
+            assertSame(node, balancer.select(client));
+        }
+        for (UpstreamNode node: nodes) {
+            assertThat(load.get(node) / (double)CLIENT_COUNT, closeTo(1 / 3.0, 0.05));
+        }
+
+        // Only clients of failed node move
+        balancer.onFailure(nodes.get(0));
+        for (Map.Entry<InetSocketAddress, UpstreamNode> entry: assignment.entrySet()) {
+            UpstreamNode node = balancer.select(entry.getKey());
+            if (entry.getValue() == nodes.get(0)) {
+                assertNotEquals(nodes.get(0), node);
+            }
+            else {
+                assertSame(entry.getValue(), node);
+            }
+        }
+    }
+
+    @Test
+    void testConsistentHashOfLocalClients() {
+        UpstreamBalancer balancer = new UpstreamBalancer(nodes, BalanceStrategy.CONSISTENT_HASH, DOWN_TIME);
+
+        // Clients of localhost proxy differ only in port
+        Map<UpstreamNode, Integer> load = new HashMap<>();
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            InetSocketAddress client = new InetSocketAddress(InetAddress.getLoopbackAddress(), 40_000 + i);
+            UpstreamNode node = balancer.select(client);
+            load.merge(node, 1, Integer::sum);
+            assertSame(node, balancer.select(client));
+        }
+        for (UpstreamNode node: nodes) {
+            assertThat(load.get(node) / (double)CLIENT_COUNT, closeTo(1 / 3.0, 0.05));
+        }
+    }
+
+    @Test
+    void testAllNodesDown() {
+        UpstreamBalancer balancer = new UpstreamBalancer(nodes, BalanceStrategy.LEAST_CONNECTIONS, DOWN_TIME);
+        nodes.forEach(balancer::onFailure);
+        nodes.get(0).setKilled(true);
+
+        // Nodes that are down are tried anyway
+        UpstreamNode node = balancer.select(null);
+        assertTrue(node == nodes.get(1) || node == nodes.get(2));
+
+        nodes.forEach(n -> n.setKilled(true));
+        assertNull(balancer.select(null));
+    }
+
+    private static UpstreamNode node(int port) {
+        return new UpstreamNode(port, c -> new ToxicNoop());
+    }
+
+    private static InetSocketAddress clientAddress(int index) throws Exception {
+        return new InetSocketAddress(InetAddress.getByAddress(new byte[] {10, 0, (byte)(index >> 8), (byte)index}),
+                40_000 + index % 1000);
+    }
+}
@@ -0,0 +1,123 @@
+package com.aknopov.wssimulator.proxy;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.SocketFactory;
+import com.aknopov.wssimulator.Utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamPoolTest {
+    private static final Duration IDLE_TIME = Duration.ofSeconds(10);
+    private static final Duration SHORT_PAUSE = Duration.ofMillis(100);
+    private static final int POOL_SIZE = 3;
+
+    private final ProxyMetrics metrics = new ProxyMetrics();
+    private ServerSocket upstreamServer;
+    private final List<Socket> accepted = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        upstreamServer = new ServerSocket(0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        upstreamServer.close();
+        for (Socket socket: accepted) {
+            socket.close();
+        }
+    }
+
+    @Test
+    void testConstructor() {
+        SocketFactory socketFactory = new SocketFactory();
+        int port = upstreamServer.getLocalPort();
+        assertThrows(IllegalArgumentException.class,
+                () -> new UpstreamPool(port, 0, IDLE_TIME, socketFactory, metrics));
+        assertThrows(IllegalArgumentException.class,
+                () -> new UpstreamPool(port, POOL_SIZE, Duration.ZERO, socketFactory, metrics));
+    }
+
+    @Test
+    void testHitsAndMisses() throws Exception {
+        UpstreamPool pool = new UpstreamPool(upstreamServer.getLocalPort(), POOL_SIZE, IDLE_TIME,
+                new SocketFactory(), metrics);
+        pool.start();
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        assertEquals(POOL_SIZE, pool.getIdleCount());
+
+        List<Socket> sockets = new ArrayList<>();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Socket socket = pool.poll();
+            assertNotNull(socket);
+            assertTrue(socket.isConnected());
+            sockets.add(socket);
+        }
+        assertEquals(POOL_SIZE, metrics.getUpstreamPoolHits());
+
+        // Taken connections are replaced
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        assertEquals(POOL_SIZE, pool.getIdleCount());
+        pool.stop();
+        assertEquals(0, pool.getIdleCount());
+        assertNull(pool.poll());
+        assertEquals(1, metrics.getUpstreamPoolMisses());
+        for (Socket socket: sockets) {
+            socket.close();
+        }
+    }
+
+    @Test
+    void testIdleEviction() throws Exception {
+        UpstreamPool pool = new UpstreamPool(upstreamServer.getLocalPort(), 1, Duration.ofMillis(20),
+                new SocketFactory(), metrics);
+        pool.start();
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        pool.stop();
+
+        assertThat(pool.getEvictions(), greaterThan(1L));
+    }
+
+    @Test
+    void testStopClosesIdleConnections() throws Exception {
+        UpstreamPool pool = new UpstreamPool(upstreamServer.getLocalPort(), 1, IDLE_TIME, new SocketFactory(),
+                metrics);
+        pool.start();
+        Socket serverSide = upstreamServer.accept();
+        accepted.add(serverSide);
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        pool.stop();
+
+        assertEquals(-1, serverSide.getInputStream().read());
+    }
+
+    @Test
+    void testUnavailableUpstream() throws Exception {
+        UpstreamPool pool = new UpstreamPool(upstreamServer.getLocalPort(), POOL_SIZE, IDLE_TIME,
+                new SocketFactory(), metrics);
+        upstreamServer.close();
+        pool.start();
+        Utils.sleepUnchecked(SHORT_PAUSE);
+        pool.stop();
+
+        assertNull(pool.poll());
+        assertEquals(0, metrics.getUpstreamPoolHits());
+        assertEquals(1, metrics.getUpstreamPoolMisses());
+    }
+}
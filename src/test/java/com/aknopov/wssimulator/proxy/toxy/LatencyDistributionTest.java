@@ -0,0 +1,173 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LatencyDistributionTest {
+    private static final int SAMPLES = 100_000;
+    private static final Duration LATENCY = Duration.ofMillis(10);
+    private static final double NANOS_PER_MS = 1e6;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Test
+    void testUniform() {
+        long[] samples = sample(LatencyDistribution.uniform(LATENCY, Duration.ofMillis(2)));
+
+        assertThat(samples[0], greaterThanOrEqualTo(Duration.ofMillis(8).toNanos()));
+        assertThat(samples[SAMPLES - 1], lessThanOrEqualTo(Duration.ofMillis(12).toNanos()));
+        assertThat(mean(samples) / NANOS_PER_MS, closeTo(10, 0.05));
+        assertThrows(IllegalArgumentException.class,
+                () -> LatencyDistribution.uniform(LATENCY, LATENCY.plusNanos(1)));
+    }
+
+    @Test
+    void testNormal() {
+        long[] samples = sample(LatencyDistribution.normal(LATENCY, Duration.ofMillis(2)));
+
+        double mean = mean(samples);
+        assertThat(mean / NANOS_PER_MS, closeTo(10, 0.05));
+        double variance = Arrays.stream(samples).mapToDouble(s -> (s - mean) * (s - mean)).sum() / SAMPLES;
+        assertThat(Math.sqrt(variance) / NANOS_PER_MS, closeTo(2, 0.05));
+
+        // Negative values are clamped
+        long[] wideSamples = sample(LatencyDistribution.normal(LATENCY, LATENCY));
+        assertEquals(0, wideSamples[0]);
+    }
+
+    @Test
+    void testLogNormal() {
+        double sigma = 0.5;
+        long[] samples = sample(LatencyDistribution.logNormal(LATENCY, sigma));
+
+        assertThat(percentile(samples, 0.5) / NANOS_PER_MS, closeTo(10, 0.2));
+        // z(0.99) = 2.3263
+        assertThat(percentile(samples, 0.99) / NANOS_PER_MS, closeTo(10 * Math.exp(2.3263 * sigma), 1.0));
+        assertThat(samples[0], greaterThanOrEqualTo(0L));
+        assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.logNormal(Duration.ZERO, sigma));
+        assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.logNormal(LATENCY, 0));
+    }
+
+    @Test
+    void testPareto() {
+        double shape = 2;
+        long[] samples = sample(LatencyDistribution.pareto(LATENCY, shape));
+
+        assertThat(samples[0], greaterThanOrEqualTo(LATENCY.toNanos()));
+        assertThat(percentile(samples, 0.5) / NANOS_PER_MS, closeTo(10 * Math.sqrt(2), 0.2));
+        assertThat(percentile(samples, 0.99) / NANOS_PER_MS, closeTo(100, 10));
+        assertThat(samples[SAMPLES - 1], lessThanOrEqualTo(QuantileTable.MAX_NANOS));
+        assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.pareto(LATENCY, 0));
+    }
+
+    @Test
+    void testHeavyTailIsClamped() {
+        long[] samples = sample(LatencyDistribution.pareto(LATENCY, 0.1));
+
+        assertEquals(QuantileTable.MAX_NANOS, samples[SAMPLES - 1]);
+    }
+
+    @Test
+    void testEmpirical() {
+        Duration[] bounds = {Duration.ofMillis(1), Duration.ofMillis(2), Duration.ofMillis(2), Duration.ofMillis(4),
+                Duration.ofMillis(100)};
+        long[] counts = {70, 10, 15, 5};
+        long[] samples = sample(LatencyDistribution.empirical(bounds, counts));
+
+        // Zero width bucket gives its bound only
+        long[] bucketCounts = new long[counts.length];
+        for (long sample: samples) {
+            if (sample < bounds[1].toNanos()) {
+                bucketCounts[0]++;
+            }
+            else if (sample == bounds[2].toNanos()) {
+                bucketCounts[1]++;
+            }
+            else if (sample < bounds[3].toNanos()) {
+                bucketCounts[2]++;
+            }
+            else {
+                bucketCounts[3]++;
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            assertThat((double)bucketCounts[i] / SAMPLES, closeTo(counts[i] / 100.0, 0.01));
+        }
+        assertThat(samples[0], greaterThanOrEqualTo(bounds[0].toNanos()));
+        assertThat(samples[SAMPLES - 1], lessThanOrEqualTo(bounds[4].toNanos()));
+    }
+
+    @Test
+    void testInvalidEmpirical() {
+        Duration[] bounds = {Duration.ofMillis(1), Duration.ofMillis(2)};
+        assertThrows(IllegalArgumentException.class,
+                () -> LatencyDistribution.empirical(bounds, new long[] {1, 2}));
+        assertThrows(IllegalArgumentException.class,
+                () -> LatencyDistribution.empirical(bounds, new long[] {0}));
+        assertThrows(IllegalArgumentException.class,
+                () -> LatencyDistribution.empirical(bounds, new long[] {-1}));
+        assertThrows(IllegalArgumentException.class,
+                () -> LatencyDistribution.empirical(new Duration[] {LATENCY, Duration.ZERO}, new long[] {1}));
+    }
+
+    @Test
+    void testEmpiricalFromFile() throws Exception {
+        Path histogramFile = Files.createTempFile("rtt", ".txt");
+        try {
+            Files.writeString(histogramFile, "# upper bound (us), count\n500 90\n\n1000,10\n",
+                    StandardCharsets.UTF_8);
+            long[] samples = sample(LatencyDistribution.empirical(histogramFile));
+
+            assertThat(samples[SAMPLES - 1], lessThanOrEqualTo(Duration.ofMillis(1).toNanos()));
+            assertThat(percentile(samples, 0.5) / NANOS_PER_MS, closeTo(0.28, 0.01));
+
+            Files.writeString(histogramFile, "500 90 1\n", StandardCharsets.UTF_8);
+            assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.empirical(histogramFile));
+            Files.writeString(histogramFile, "500 many\n", StandardCharsets.UTF_8);
+            assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.empirical(histogramFile));
+        }
+        finally {
+            Files.delete(histogramFile);
+        }
+    }
+
+    @Test
+    void testInverseNormal() {
+        assertEquals(0, QuantileTable.inverseNormal(0.5), 1e-9);
+        assertEquals(1.959964, QuantileTable.inverseNormal(0.975), 1e-6);
+        assertEquals(-2.326348, QuantileTable.inverseNormal(0.01), 1e-6);
+        assertEquals(Double.POSITIVE_INFINITY, QuantileTable.inverseNormal(1));
+        assertEquals(Double.NEGATIVE_INFINITY, QuantileTable.inverseNormal(0));
+    }
+
+    // Returns sorted samples
+    private long[] sample(LatencyDistribution distribution) {
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = distribution.nextNanos(random);
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static double mean(long[] samples) {
+        return Arrays.stream(samples).average().orElse(0);
+    }
+
+    private static double percentile(long[] sortedSamples, double fraction) {
+        return sortedSamples[(int)(fraction * (sortedSamples.length - 1))];
+    }
+}
@@ -0,0 +1,103 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.Utils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ToxicBandwidthTest extends ToxicTestBase {
+    private static final long RATE = 100_000;
+    private static final int BURST_SIZE = 1000;
+    private static final int DATA_SIZE = 10 * BURST_SIZE;
+    // Data beyond the first burst takes 90 ms at the rate
+    private static final Duration PACED_TIME = Duration.ofMillis(90);
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new ToxicBandwidth(Duration.ZERO, 0, BURST_SIZE));
+        assertThrows(IllegalArgumentException.class, () -> new ToxicBandwidth(Duration.ZERO, RATE, 0));
+    }
+
+    @Test
+    void testBlockingPacing() {
+        ToxicBandwidth toxic = new ToxicBandwidth(Duration.ZERO, RATE, BURST_SIZE);
+        toxic.start();
+
+        long startNanos = System.nanoTime();
+        int totalSize = 0;
+        for (ByteBuffer slice: toxic.transformData(ByteBuffer.allocate(DATA_SIZE))) {
+            assertThat(slice.remaining(), lessThanOrEqualTo(BURST_SIZE));
+            totalSize += slice.remaining();
+        }
+        Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+
+        assertEquals(DATA_SIZE, totalSize);
+        assertThat(duration, greaterThanOrEqualTo(PACED_TIME));
+        assertThat(duration, lessThanOrEqualTo(PACED_TIME.plus(TIME_PRECISION)));
+    }
+
+    @Test
+    void testScheduledPacing() {
+        ToxicBandwidth toxic = new ToxicBandwidth(Duration.ZERO, RATE, BURST_SIZE);
+        toxic.start();
+        assertFalse(toxic.isBlocking());
+
+        List<Long> dueTimes = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        toxic.transformData(ByteBuffer.allocate(DATA_SIZE), new DeliverySchedule() {
+            private long dueTime = startNanos;
+
+            @Override
+            public long dueTime() {
+                return dueTime;
+            }
+
+            @Override
+            public void delayUntil(long nanoTime) {
+                dueTime = Math.max(dueTime, nanoTime);
+            }
+
+            @Override
+            public void deliver(ByteBuffer chunk) {
+                assertEquals(BURST_SIZE, chunk.remaining());
+                dueTimes.add(dueTime);
+            }
+        });
+
+        assertEquals(DATA_SIZE / BURST_SIZE, dueTimes.size());
+        // First burst is free, then one slice per BURST_SIZE / RATE
+        long sliceNanos = Duration.ofSeconds(1).toNanos() * BURST_SIZE / RATE;
+        assertThat(dueTimes.get(0) - startNanos, lessThanOrEqualTo(TIME_PRECISION.toNanos()));
+        for (int i = 1; i < dueTimes.size(); i++) {
+            assertEquals(sliceNanos, dueTimes.get(i) - dueTimes.get(i - 1), (double)TIME_PRECISION.toNanos());
+        }
+        long pacedNanos = dueTimes.get(dueTimes.size() - 1) - startNanos;
+        assertThat(pacedNanos, greaterThanOrEqualTo(PACED_TIME.toNanos()));
+    }
+
+    @Test
+    void testStartDelay() {
+        ToxicBandwidth toxic = new ToxicBandwidth(START_DELAY, RATE, BURST_SIZE);
+        toxic.start();
+
+        long startNanos = System.nanoTime();
+        toxic.transformData(ByteBuffer.allocate(DATA_SIZE)).forEach(b -> {});
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos), lessThanOrEqualTo(TIME_PRECISION));
+
+        Utils.sleepUnchecked(START_DELAY.plus(TIME_PRECISION));
+        startNanos = System.nanoTime();
+        toxic.transformData(ByteBuffer.allocate(DATA_SIZE)).forEach(b -> {});
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos), greaterThanOrEqualTo(PACED_TIME));
+    }
+}
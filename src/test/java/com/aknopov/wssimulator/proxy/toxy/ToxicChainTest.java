@@ -0,0 +1,160 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToxicChainTest extends ToxicTestBase {
+    private static final ByteBuffer LONG_DATA = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new ToxicChain(List.of()));
+    }
+
+    @Test
+    void testProperties() {
+        ToxicChain noopChain = new ToxicChain(List.of(new ToxicNoop(), new ToxicNoop()));
+        assertTrue(noopChain.isPassThrough());
+        assertFalse(noopChain.isBlocking());
+
+        ToxicChain latencyChain = new ToxicChain(List.of(new ToxicNoop(),
+                new ToxicLatency(Duration.ZERO, Duration.ofMillis(10), Duration.ZERO)));
+        assertFalse(latencyChain.isPassThrough());
+        assertFalse(latencyChain.isBlocking());
+
+        ToxicChain slicerChain = new ToxicChain(List.of(new ToxicSlicer(Duration.ofMillis(1), 2), new ToxicNoop()));
+        assertTrue(slicerChain.isBlocking());
+    }
+
+    @Test
+    void testLazyStreaming() {
+        List<String> trace = new ArrayList<>();
+        ToxicChain chain = new ToxicChain(List.of(new SplittingToxic("A", 3, trace), new SplittingToxic("B", 2, trace)));
+        chain.start();
+
+        List<ByteBuffer> result = new ArrayList<>();
+        for (ByteBuffer chunk: chain.transformData(LONG_DATA.duplicate())) {
+            trace.add("out" + chunk.remaining());
+            result.add(chunk);
+        }
+
+        assertEquals(LONG_DATA.duplicate(), concat(result));
+        // Second stage output is consumed before the first stage is asked for the next chunk
+        assertEquals(List.of("A3", "B2", "out2", "B1", "out1", "A3", "B2", "out2", "B1", "out1",
+                "A3", "B2", "out2", "B1", "out1"), trace);
+    }
+
+    @Test
+    void testScheduledChain() {
+        ToxicChain chain = new ToxicChain(List.of(
+                new ToxicLatency(Duration.ZERO, Duration.ofMillis(20), Duration.ZERO),
+                new ToxicBandwidth(Duration.ZERO, 1000, 4)));
+        chain.start();
+
+        List<ByteBuffer> chunks = new ArrayList<>();
+        List<Long> dueTimes = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        chain.transformData(LONG_DATA.duplicate(), new DeliverySchedule() {
+            private long dueTime = startNanos;
+
+            @Override
+            public long dueTime() {
+                return dueTime;
+            }
+
+            @Override
+            public void delayUntil(long nanoTime) {
+                dueTime = Math.max(dueTime, nanoTime);
+            }
+
+            @Override
+            public void deliver(ByteBuffer chunk) {
+                chunks.add(chunk);
+                dueTimes.add(dueTime);
+            }
+        });
+
+        assertEquals(List.of(4, 4, 1), chunks.stream().map(ByteBuffer::remaining).toList());
+        assertEquals(LONG_DATA.duplicate(), concat(chunks));
+        assertTrue(dueTimes.get(0) - startNanos >= Duration.ofMillis(20).toNanos());
+        assertTrue(dueTimes.get(2) - dueTimes.get(0) >= Duration.ofMillis(4).toNanos());
+    }
+
+    @Test
+    void testStartStop() {
+        ToxicLatency latency = new ToxicLatency(Duration.ZERO, Duration.ofMillis(10), Duration.ZERO);
+        ToxicChain chain = new ToxicChain(List.of(latency));
+
+        assertThrows(IllegalStateException.class, () -> latency.transformData(IN_DATA, new NoDelaySchedule()));
+        chain.start();
+        assertTrue(latency.canStart());
+        chain.stop();
+        assertFalse(latency.canStart());
+    }
+
+    private static ByteBuffer concat(List<ByteBuffer> chunks) {
+        ByteBuffer result = ByteBuffer.allocate(chunks.stream().mapToInt(ByteBuffer::remaining).sum());
+        chunks.forEach(c -> result.put(c.duplicate()));
+        return result.flip();
+    }
+
+    // Splits data into pieces of fixed size, recording when pieces are produced
+    private static class SplittingToxic extends Toxic {
+        private final String name;
+        private final int pieceSize;
+        private final List<String> trace;
+
+        SplittingToxic(String name, int pieceSize, List<String> trace) {
+            super(Duration.ZERO);
+            this.name = name;
+            this.pieceSize = pieceSize;
+            this.trace = trace;
+        }
+
+        @Override
+        public Iterable<ByteBuffer> transformData(ByteBuffer inData) {
+            return () -> new Iterator<>() {
+                private int offset = inData.position();
+
+                @Override
+                public boolean hasNext() {
+                    return offset < inData.limit();
+                }
+
+                @Override
+                public ByteBuffer next() {
+                    int length = Math.min(pieceSize, inData.limit() - offset);
+                    ByteBuffer piece = inData.slice(offset, length);
+                    offset += length;
+                    trace.add(name + length);
+                    return piece;
+                }
+            };
+        }
+    }
+
+    private static class NoDelaySchedule implements DeliverySchedule {
+        @Override
+        public long dueTime() {
+            return 0;
+        }
+
+        @Override
+        public void delayUntil(long nanoTime) {
+        }
+
+        @Override
+        public void deliver(ByteBuffer chunk) {
+        }
+    }
+}
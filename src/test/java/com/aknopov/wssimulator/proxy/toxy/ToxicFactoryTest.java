@@ -0,0 +1,52 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToxicFactoryTest {
+    private static final Interruptible CONNECTION = () -> {};
+
+    @Test
+    void testDefaultDirection() {
+        ToxicFactory factory = c -> new ToxicNoop();
+
+        Toxic downToxic = factory.create(CONNECTION, StreamDirection.DOWNSTREAM);
+        Toxic upToxic = factory.create(CONNECTION, StreamDirection.UPSTREAM);
+
+        assertInstanceOf(ToxicNoop.class, downToxic);
+        assertInstanceOf(ToxicNoop.class, upToxic);
+        assertNotSame(downToxic, upToxic);
+    }
+
+    @Test
+    void testPerDirection() {
+        ToxicFactory factory = ToxicFactory.perDirection(c -> new ToxicNoop(),
+                c -> new ToxicLatency(Duration.ZERO, Duration.ofMillis(10), Duration.ZERO));
+
+        assertInstanceOf(ToxicNoop.class, factory.create(CONNECTION));
+        assertInstanceOf(ToxicNoop.class, factory.create(CONNECTION, StreamDirection.DOWNSTREAM));
+        assertInstanceOf(ToxicLatency.class, factory.create(CONNECTION, StreamDirection.UPSTREAM));
+    }
+
+    @Test
+    void testChain() {
+        ToxicFactory factory = ToxicFactory.chain(
+                ToxicFactory.perDirection(c -> new ToxicNoop(), c -> new ToxicSlicer(Duration.ZERO, 4)),
+                c -> new ToxicNoop());
+
+        Toxic downToxic = factory.create(CONNECTION, StreamDirection.DOWNSTREAM);
+        Toxic upToxic = factory.create(CONNECTION, StreamDirection.UPSTREAM);
+
+        assertInstanceOf(ToxicChain.class, downToxic);
+        assertTrue(downToxic.isPassThrough());
+        assertInstanceOf(ToxicChain.class, upToxic);
+        assertFalse(upToxic.isPassThrough());
+        assertTrue(upToxic.isBlocking());
+    }
+}
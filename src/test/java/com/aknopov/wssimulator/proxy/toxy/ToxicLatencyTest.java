@@ -1,7 +1,9 @@
 package com.aknopov.wssimulator.proxy.toxy;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
@@ -13,6 +15,7 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ToxicLatencyTest extends ToxicTestBase {
@@ -56,4 +59,79 @@ class ToxicLatencyTest extends ToxicTestBase {
             assertThat(duration, lessThanOrEqualTo(DELAY_PLUS_JITTER));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testScheduledDelivery() {
+        ToxicLatency toxic = new ToxicLatency(Duration.ZERO, DATA_DELAY, JITTER_SPAN);
+        toxic.start();
+        assertFalse(toxic.isBlocking());
+
+        TestSchedule schedule = new TestSchedule();
+        Instant testStartTime = Instant.now();
+        for (int i = 0; i < 5; i++) {
+            long readTime = System.nanoTime();
+            toxic.transformData(IN_DATA, schedule);
+
+            long delay = schedule.dueTimes.get(i) - readTime;
+            if (i == 0) {
+                assertThat(delay, greaterThanOrEqualTo(DELAY_MINUS_JITTER.toNanos()));
+            }
+            assertThat(delay, lessThanOrEqualTo(DELAY_PLUS_JITTER.plus(TIME_PRECISION).toNanos()));
+            if (i > 0) {
+                assertThat(schedule.dueTimes.get(i), greaterThanOrEqualTo(schedule.dueTimes.get(i - 1)));
+            }
+        }
+        // No sleeping
+        assertThat(Duration.between(testStartTime, Instant.now()), lessThanOrEqualTo(TIME_PRECISION));
+        assertEquals(List.of(IN_DATA, IN_DATA, IN_DATA, IN_DATA, IN_DATA), schedule.chunks);
+    }
+
+    @Test
+    void testZeroJitter() {
+        ToxicLatency toxic = new ToxicLatency(Duration.ZERO, DATA_DELAY, Duration.ZERO);
+        toxic.start();
+
+        TestSchedule schedule = new TestSchedule();
+        long readTime = System.nanoTime();
+        toxic.transformData(IN_DATA, schedule);
+
+        assertThat(schedule.dueTimes.get(0) - readTime, greaterThanOrEqualTo(DATA_DELAY.toNanos()));
+        assertThat(schedule.dueTimes.get(0) - readTime, lessThanOrEqualTo(DATA_DELAY.plus(TIME_PRECISION).toNanos()));
+    }
+
+    @Test
+    void testDistribution() {
+        ToxicLatency toxic = new ToxicLatency(Duration.ZERO, LatencyDistribution.pareto(DATA_DELAY, 3));
+        toxic.start();
+
+        TestSchedule schedule = new TestSchedule();
+        for (int i = 0; i < 5; i++) {
+            long readTime = System.nanoTime();
+            toxic.transformData(IN_DATA, schedule);
+            assertThat(schedule.dueTimes.get(i) - readTime, greaterThanOrEqualTo(DATA_DELAY.toNanos()));
+        }
+        assertEquals(5, schedule.chunks.size());
+    }
+
+    private static class TestSchedule implements DeliverySchedule {
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        final List<Long> dueTimes = new ArrayList<>();
+        long dueTime = System.nanoTime();
+
+        @Override
+        public long dueTime() {
+            return dueTime;
+        }
+
+        @Override
+        public void delayUntil(long nanoTime) {
+            dueTime = Math.max(dueTime, nanoTime);
+        }
+
+        @Override
+        public void deliver(ByteBuffer chunk) {
+            chunks.add(chunk);
+            dueTimes.add(dueTime);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.Utils;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToxicReorderTest extends ToxicTestBase {
+    private static final Duration HOLD_TIME = Duration.ofMillis(50);
+
+    @Test
+    void testConstructor() {
+        assertDoesNotThrow(() -> new ToxicReorder(Duration.ZERO, 0.5, 0.5, 1, HOLD_TIME));
+        assertThrows(IllegalArgumentException.class, () -> new ToxicReorder(Duration.ZERO, 0.6, 0.5, 1, HOLD_TIME));
+        assertThrows(IllegalArgumentException.class, () -> new ToxicReorder(Duration.ZERO, -0.1, 0, 1, HOLD_TIME));
+        assertThrows(IllegalArgumentException.class, () -> new ToxicReorder(Duration.ZERO, 0.1, 0, 0, HOLD_TIME));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ToxicReorder(Duration.ZERO, 0.1, 0, 1, Duration.ofMillis(-1)));
+    }
+
+    @Test
+    void testDropAll() {
+        ToxicReorder toxic = new ToxicReorder(Duration.ZERO, 0, 1, 1, HOLD_TIME);
+        toxic.start();
+        assertFalse(toxic.isBlocking());
+
+        assertFalse(toxic.transformData(IN_DATA).iterator().hasNext());
+
+        TestSchedule schedule = new TestSchedule();
+        toxic.transformData(IN_DATA, schedule);
+        assertTrue(schedule.chunks.isEmpty());
+    }
+
+    @Test
+    void testNotStarted() {
+        ToxicReorder toxic = new ToxicReorder(START_DELAY, 0, 1, 1, HOLD_TIME);
+        toxic.start();
+
+        assertEquals(List.of(IN_DATA), toxic.transformData(IN_DATA));
+    }
+
+    @Test
+    void testScheduledReordering() {
+        ToxicReorder toxic = new ToxicReorder(Duration.ZERO, 1, 0, 2, HOLD_TIME);
+        toxic.start();
+
+        TestSchedule schedule = new TestSchedule();
+        ByteBuffer[] chunks = { ByteBuffer.allocate(1), ByteBuffer.allocate(1), ByteBuffer.allocate(1) };
+        for (ByteBuffer chunk: chunks) {
+            toxic.transformData(chunk, schedule);
+        }
+
+        // Window holds two chunks, the third one overtakes them
+        assertEquals(List.of(chunks[0], chunks[1], chunks[2]), schedule.chunks);
+        assertEquals(schedule.dueTime + HOLD_TIME.toNanos(), schedule.dueTimes.get(0));
+        assertEquals(schedule.dueTime + HOLD_TIME.toNanos(), schedule.dueTimes.get(1));
+        assertEquals(schedule.dueTime, schedule.dueTimes.get(2));
+
+        // Window is free again after hold time
+        schedule.dueTime += HOLD_TIME.toNanos();
+        toxic.transformData(chunks[0], schedule);
+        assertEquals(schedule.dueTime + HOLD_TIME.toNanos(), schedule.dueTimes.get(3));
+    }
+
+    @Test
+    void testBlockingReordering() {
+        ToxicReorder toxic = new ToxicReorder(Duration.ZERO, 1, 0, 1, HOLD_TIME);
+        toxic.start();
+
+        ByteBuffer first = ByteBuffer.wrap(new byte[] { 1 });
+        ByteBuffer second = ByteBuffer.wrap(new byte[] { 2 });
+        assertFalse(toxic.transformData(first).iterator().hasNext());
+
+        Utils.sleepUnchecked(HOLD_TIME.plus(TIME_PRECISION));
+
+        // Window is full, so the second chunk passes followed by released copy of the first one
+        List<ByteBuffer> result = new ArrayList<>();
+        toxic.transformData(second).forEach(result::add);
+        assertEquals(2, result.size());
+        assertSame(second, result.get(0));
+        assertNotSame(first, result.get(1));
+        assertEquals(first, result.get(1));
+    }
+
+    private static class TestSchedule implements DeliverySchedule {
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        final List<Long> dueTimes = new ArrayList<>();
+        long dueTime = System.nanoTime();
+
+        @Override
+        public long dueTime() {
+            return dueTime;
+        }
+
+        @Override
+        public void delayUntil(long nanoTime) {
+            dueTime = Math.max(dueTime, nanoTime);
+        }
+
+        @Override
+        public void deliver(ByteBuffer chunk) {
+            deliverAt(chunk, dueTime);
+        }
+
+        @Override
+        public void deliverAt(ByteBuffer chunk, long nanoTime) {
+            chunks.add(chunk);
+            dueTimes.add(nanoTime);
+        }
+    }
+}
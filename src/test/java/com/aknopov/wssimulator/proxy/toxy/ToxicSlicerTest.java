@@ -3,6 +3,7 @@ package com.aknopov.wssimulator.proxy.toxy;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -30,6 +31,17 @@ class ToxicSlicerTest extends ToxicTestBase {
         }
     }
 
+    @Test
+    void testSlicesWithoutDelayAreDueNow() {
+        ToxicSlicer toxic = new ToxicSlicer(Duration.ZERO, 7);
+        assertFalse(toxic.isBlocking());
+        assertTrue(toxic.transformData(ByteBuffer.allocate(64)) instanceof List);
+
+        ToxicSlicer delayingToxic = new ToxicSlicer(Duration.ofMillis(1), 7);
+        assertTrue(delayingToxic.isBlocking());
+        assertFalse(delayingToxic.transformData(ByteBuffer.allocate(64)) instanceof List);
+    }
+
     @Test
     void testDelays() {
         long maxDelayMs = 50;
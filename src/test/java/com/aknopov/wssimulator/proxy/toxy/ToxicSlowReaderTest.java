@@ -0,0 +1,72 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.Utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToxicSlowReaderTest extends ToxicTestBase {
+    private static final long RATE = 1000;
+    private static final int READ_SIZE = 100;
+    private static final long READ_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void testConstructor() {
+        assertThrows(IllegalArgumentException.class, () -> new ToxicSlowReader(Duration.ZERO, 0, READ_SIZE, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ToxicSlowReader(Duration.ZERO, RATE, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ToxicSlowReader(Duration.ZERO, RATE, READ_SIZE, -1));
+    }
+
+    @Test
+    void testDataPassesUnchanged() {
+        ToxicSlowReader toxic = new ToxicSlowReader(Duration.ZERO, RATE, READ_SIZE, 2048);
+        toxic.start();
+
+        assertTrue(toxic.isPassThrough());
+        assertFalse(toxic.isBlocking());
+        assertEquals(2048, toxic.getReceiveBufferSize());
+        assertEquals(List.of(IN_DATA), toxic.transformData(IN_DATA));
+    }
+
+    @Test
+    void testStartAndStop() {
+        ToxicSlowReader toxic = new ToxicSlowReader(START_DELAY, RATE, READ_SIZE, 0);
+        toxic.start();
+        assertNull(toxic.getReadPacing());
+
+        Utils.sleepUnchecked(START_DELAY.plus(TIME_PRECISION));
+        assertNotNull(toxic.getReadPacing());
+
+        toxic.stop();
+        assertNull(toxic.getReadPacing());
+    }
+
+    @Test
+    void testPacing() {
+        ReadPacing pacing = new ReadPacing(RATE, READ_SIZE);
+        assertEquals(READ_SIZE, pacing.getReadSize());
+
+        long now = System.nanoTime();
+        assertEquals(0, pacing.onRead(READ_SIZE, now));
+        assertEquals(now + READ_NANOS, pacing.nextReadTime());
+
+        // Full read left data waiting
+        assertEquals(READ_NANOS, pacing.onRead(READ_SIZE / 2, now + READ_NANOS));
+        assertEquals(now + READ_NANOS + READ_NANOS / 2, pacing.nextReadTime());
+
+        // Partial read drained the socket
+        assertEquals(0, pacing.onRead(READ_SIZE, now + 10 * READ_NANOS));
+        // Budget isn't accumulated while idle
+        assertEquals(now + 11 * READ_NANOS, pacing.nextReadTime());
+    }
+}
@@ -0,0 +1,169 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static com.aknopov.wssimulator.proxy.toxy.WebSocketFrameParserTest.concat;
+import static com.aknopov.wssimulator.proxy.toxy.WebSocketFrameParserTest.frame;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToxicWebSocketFramesTest extends ToxicTestBase {
+    private static final byte[] UPGRADE_REQUEST = ("GET /path HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UPGRADE_RESPONSE = ("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] REFUSED_RESPONSE = ("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final ToxicWebSocketFrames.Config NO_EFFECTS =
+            new ToxicWebSocketFrames.Config(Duration.ZERO, 0, 0, 0, Duration.ZERO);
+
+    @Test
+    void testConfig() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ToxicWebSocketFrames.Config(Duration.ZERO, 1.5, 0, 0, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ToxicWebSocketFrames.Config(Duration.ZERO, 0, -1, 0, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ToxicWebSocketFrames.Config(Duration.ZERO, 0, 0, 3, Duration.ZERO));
+        assertEquals(8, new ToxicWebSocketFrames.Config(Duration.ZERO, 0, 0, 10, Duration.ZERO).fragmentSize());
+    }
+
+    @Test
+    void testTransparentFrames() {
+        byte[] stream = concat(UPGRADE_REQUEST, frame(WebSocketFrameParser.OPCODE_TEXT, true, 200),
+                frame(WebSocketFrameParser.OPCODE_PING, true, 4));
+        ToxicWebSocketFrames toxic = new ToxicWebSocketFrames(Duration.ZERO, NO_EFFECTS);
+        toxic.start();
+
+        assertArrayEquals(stream, transformInChunks(toxic, stream, 7));
+    }
+
+    @Test
+    void testRefragmentation() {
+        byte[] message = frame(WebSocketFrameParser.OPCODE_BINARY, true, 1000);
+        byte[] stream = concat(UPGRADE_RESPONSE, message, frame(WebSocketFrameParser.OPCODE_PONG, true, 0));
+        ToxicWebSocketFrames toxic = new ToxicWebSocketFrames(Duration.ZERO,
+                new ToxicWebSocketFrames.Config(Duration.ZERO, 0, 0, 300, Duration.ZERO));
+        toxic.start();
+
+        byte[] result = transformInChunks(toxic, stream, 97);
+
+        ByteBuffer frames = ByteBuffer.wrap(result, UPGRADE_RESPONSE.length, result.length - UPGRADE_RESPONSE.length);
+        WebSocketFrameParser parser = new WebSocketFrameParser();
+        List<String> headers = new ArrayList<>();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        while (frames.hasRemaining()) {
+            switch (parser.next(frames)) {
+                case HEADER -> headers.add(parser.getOpcode() + (parser.isFin() ? "F" : "") + parser.getPayloadLength()
+                        + (parser.isMasked() ? "M" + Integer.toHexString(parser.getMaskingKey()) : ""));
+                case PAYLOAD -> payload.write(result, parser.getSegmentOffset(), parser.getSegmentLength());
+                case NEED_MORE -> throw new AssertionError("Incomplete frame");
+            }
+        }
+        assertEquals(List.of("2300M11223344", "0300M11223344", "0300M11223344", "0F100M11223344", "10F0M11223344"),
+                headers);
+        // Masked payload is kept as is
+        byte[] expectedPayload = new byte[1000];
+        System.arraycopy(message, message.length - 1000, expectedPayload, 0, 1000);
+        assertArrayEquals(expectedPayload, Arrays.copyOf(payload.toByteArray(), 1000));
+    }
+
+    @Test
+    void testDropFrames() {
+        byte[] stream = concat(UPGRADE_REQUEST, frame(WebSocketFrameParser.OPCODE_TEXT, true, 20),
+                frame(WebSocketFrameParser.OPCODE_CLOSE, true, 2));
+        ToxicWebSocketFrames toxic = new ToxicWebSocketFrames(Duration.ZERO,
+                new ToxicWebSocketFrames.Config(Duration.ZERO, 0, 1, 0, Duration.ZERO));
+        toxic.start();
+
+        // Control frames are not dropped
+        assertArrayEquals(concat(UPGRADE_REQUEST, frame(WebSocketFrameParser.OPCODE_CLOSE, true, 2)),
+                transformInChunks(toxic, stream, 5));
+    }
+
+    @Test
+    void testRefusedUpgrade() {
+        byte[] stream = concat(REFUSED_RESPONSE, frame(WebSocketFrameParser.OPCODE_TEXT, false, 20));
+        ToxicWebSocketFrames toxic = new ToxicWebSocketFrames(Duration.ZERO,
+                new ToxicWebSocketFrames.Config(Duration.ZERO, 0, 1, 0, Duration.ZERO));
+        toxic.start();
+
+        assertArrayEquals(stream, transformInChunks(toxic, stream, 11));
+    }
+
+    @Test
+    void testScheduledDelays() {
+        byte[] stream = concat(UPGRADE_REQUEST, frame(WebSocketFrameParser.OPCODE_TEXT, true, 10),
+                frame(WebSocketFrameParser.OPCODE_PING, true, 1));
+        ToxicWebSocketFrames toxic = new ToxicWebSocketFrames(Duration.ZERO,
+                new ToxicWebSocketFrames.Config(Duration.ofMillis(30), 1, 0, 0, Duration.ofMillis(100)));
+        toxic.start();
+        assertFalse(toxic.isBlocking());
+
+        List<Long> dueTimes = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        toxic.transformData(ByteBuffer.wrap(stream), new DeliverySchedule() {
+            private long dueTime = startNanos;
+
+            @Override
+            public long dueTime() {
+                return dueTime;
+            }
+
+            @Override
+            public void delayUntil(long nanoTime) {
+                dueTime = Math.max(dueTime, nanoTime);
+            }
+
+            @Override
+            public void deliver(ByteBuffer chunk) {
+                dueTimes.add(dueTime);
+            }
+        });
+
+        // Upgrade, text header, text payload, ping header, ping payload
+        assertEquals(5, dueTimes.size());
+        assertEquals(startNanos, dueTimes.get(0));
+        assertThat(dueTimes.get(1) - startNanos, greaterThanOrEqualTo(Duration.ofMillis(30).toNanos()));
+        assertThat(dueTimes.get(3) - startNanos, greaterThanOrEqualTo(Duration.ofMillis(100).toNanos()));
+        assertTrue(dueTimes.get(3) > dueTimes.get(2));
+    }
+
+    @Test
+    void testBlockingDelays() {
+        byte[] stream = concat(UPGRADE_REQUEST, frame(WebSocketFrameParser.OPCODE_TEXT, true, 10));
+        ToxicWebSocketFrames toxic = new ToxicWebSocketFrames(Duration.ZERO,
+                new ToxicWebSocketFrames.Config(Duration.ofMillis(50), 1, 0, 0, Duration.ZERO));
+        toxic.start();
+
+        long startNanos = System.nanoTime();
+        assertArrayEquals(stream, transformInChunks(toxic, stream, stream.length));
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos), greaterThanOrEqualTo(Duration.ofMillis(50)));
+    }
+
+    private static byte[] transformInChunks(Toxic toxic, byte[] stream, int chunkSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset < stream.length; offset += chunkSize) {
+            ByteBuffer chunk = ByteBuffer.wrap(stream, offset, Math.min(chunkSize, stream.length - offset));
+            for (ByteBuffer piece: toxic.transformData(chunk)) {
+                byte[] bytes = new byte[piece.remaining()];
+                piece.duplicate().get(bytes);
+                out.writeBytes(bytes);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,107 @@
+package com.aknopov.wssimulator.proxy.toxy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebSocketFrameParserTest {
+    @Test
+    void testHeaderRoundTrip() {
+        long[] lengths = { 0, 125, 126, 65535, 65536, 1L << 40 };
+        for (long length: lengths) {
+            for (boolean masked: new boolean[] { false, true }) {
+                ByteBuffer header = ByteBuffer.allocate(WebSocketFrameParser.headerLength(masked, length));
+                WebSocketFrameParser.writeHeader(header, true, 0x40, WebSocketFrameParser.OPCODE_BINARY, masked,
+                        0x01020304, length);
+                assertFalse(header.hasRemaining());
+
+                WebSocketFrameParser parser = new WebSocketFrameParser();
+                assertEquals(WebSocketFrameParser.Event.HEADER, parser.next(header.flip()));
+                assertTrue(parser.isFin());
+                assertEquals(0x40, parser.getRsv());
+                assertEquals(WebSocketFrameParser.OPCODE_BINARY, parser.getOpcode());
+                assertFalse(parser.isControl());
+                assertEquals(masked, parser.isMasked());
+                assertEquals(masked ? 0x01020304 : 0, parser.getMaskingKey());
+                assertEquals(length, parser.getPayloadLength());
+                assertEquals(header.limit(), parser.getHeaderLength());
+                assertEquals(length == 0, parser.isFrameComplete());
+            }
+        }
+    }
+
+    @Test
+    void testByteByByteParsing() {
+        byte[] stream = concat(frame(WebSocketFrameParser.OPCODE_TEXT, true, 300),
+                frame(WebSocketFrameParser.OPCODE_PING, false, 0),
+                frame(WebSocketFrameParser.OPCODE_CLOSE, true, 2));
+
+        WebSocketFrameParser parser = new WebSocketFrameParser();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        StringBuilder opcodes = new StringBuilder();
+        for (byte b: stream) {
+            ByteBuffer chunk = ByteBuffer.wrap(new byte[] { b });
+            while (chunk.hasRemaining()) {
+                switch (parser.next(chunk)) {
+                    case HEADER -> opcodes.append(parser.getOpcode()).append(',');
+                    case PAYLOAD -> payload.write(chunk.array(), parser.getSegmentOffset(), parser.getSegmentLength());
+                    case NEED_MORE -> assertFalse(chunk.hasRemaining());
+                }
+            }
+        }
+
+        assertTrue(parser.isFrameComplete());
+        assertEquals("1,9,8,", opcodes.toString());
+        assertEquals(302, payload.size());
+    }
+
+    @Test
+    void testWholeChunkParsing() {
+        byte[] first = frame(WebSocketFrameParser.OPCODE_BINARY, true, 70_000);
+        byte[] second = frame(WebSocketFrameParser.OPCODE_PONG, true, 5);
+        ByteBuffer chunk = ByteBuffer.wrap(concat(first, second));
+
+        WebSocketFrameParser parser = new WebSocketFrameParser();
+        assertEquals(WebSocketFrameParser.Event.HEADER, parser.next(chunk));
+        assertEquals(WebSocketFrameParser.Event.PAYLOAD, parser.next(chunk));
+        assertEquals(first.length - parser.getHeaderLength(), parser.getSegmentLength());
+        assertTrue(parser.isFrameComplete());
+
+        assertEquals(WebSocketFrameParser.Event.HEADER, parser.next(chunk));
+        assertTrue(parser.isControl());
+        assertTrue(parser.isMasked());
+        assertEquals(WebSocketFrameParser.Event.PAYLOAD, parser.next(chunk));
+        assertEquals(5, parser.getSegmentLength());
+        assertFalse(chunk.hasRemaining());
+
+        byte[] header = new byte[parser.getHeaderLength()];
+        parser.copyHeader(header);
+        byte[] expected = new byte[header.length];
+        System.arraycopy(second, 0, expected, 0, header.length);
+        assertArrayEquals(expected, header);
+    }
+
+    static byte[] frame(int opcode, boolean masked, int payloadLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(WebSocketFrameParser.headerLength(masked, payloadLength)
+                + payloadLength);
+        WebSocketFrameParser.writeHeader(buffer, true, 0, opcode, masked, 0x11223344, payloadLength);
+        for (int i = 0; i < payloadLength; i++) {
+            buffer.put((byte)i);
+        }
+        return buffer.array();
+    }
+
+    static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] array: arrays) {
+            out.writeBytes(array);
+        }
+        return out.toByteArray();
+    }
+}
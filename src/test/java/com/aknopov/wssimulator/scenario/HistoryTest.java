@@ -0,0 +1,382 @@
+package com.aknopov.wssimulator.scenario;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aknopov.wssimulator.ThreadMode;
+import com.aknopov.wssimulator.Utils;
+import com.sun.management.UnixOperatingSystemMXBean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class HistoryTest {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryTest.class);
+
+    private static final int WRITERS = 8;
+    private static final int EVENTS_PER_WRITER = 50_000;
+    private static final int RING_CAPACITY = 100;
+    private static final int SPILLED_EVENTS = 20_000;
+    private static final Duration SPILL_WAIT = Duration.ofMillis(100);
+    private static final int ITERATIONS = 1000;
+
+    private final History history = new History();
+
+    @Test
+    void testAddEvents() {
+        assertTrue(history.getEvents().isEmpty());
+
+        // Crosses several chunk boundaries
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            history.addEvent(Event.create(EventType.SEND_MESSAGE, String.valueOf(i)));
+        }
+
+        List<Event> events = history.getEvents();
+        assertEquals(count, events.size());
+        assertEquals(count, history.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(String.valueOf(i), events.get(i).description());
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> events.get(count));
+        assertThrows(UnsupportedOperationException.class, () -> events.add(Event.create(EventType.WAIT)));
+    }
+
+    @Test
+    void testSnapshotIsStable() {
+        history.addEvent(Event.create(EventType.STARTED));
+        List<Event> snapshot = history.getEvents();
+
+        history.addEvent(Event.create(EventType.STOPPED));
+        assertEquals(1, snapshot.size());
+        assertEquals(EventType.STARTED, snapshot.get(0).eventType());
+        assertEquals(2, history.getEvents().size());
+    }
+
+    @Test
+    void testEventRendering() {
+        Instant eventTime = Instant.now().minusSeconds(10);
+        history.addEvent(new Event(eventTime, EventType.OPEN, "opened"));
+        history.addTextMessage(EventType.SEND_MESSAGE, "Client: ", "Hello");
+        history.addBinaryMessage(EventType.SEND_MESSAGE, "Server: ", 42);
+        history.addEvent(EventType.ERROR, "failure");
+        Instant afterAdding = Instant.now();
+
+        List<Event> events = history.getEvents();
+        assertEquals(new Event(eventTime, EventType.OPEN, "opened"), events.get(0));
+        assertEquals(EventType.SEND_MESSAGE, events.get(1).eventType());
+        assertEquals("Client: Hello", events.get(1).description());
+        assertEquals("Server: Binary, len=42", events.get(2).description());
+        assertEquals(EventType.ERROR, events.get(3).eventType());
+        assertEquals("failure", events.get(3).description());
+        for (int i = 1; i < events.size(); i++) {
+            assertFalse(events.get(i).eventTime().isBefore(events.get(i - 1).eventTime()));
+            assertFalse(events.get(i).eventTime().isAfter(afterAdding.plusMillis(1)));
+        }
+    }
+
+    // Writers don't lose events and keep their order while readers stream snapshots, adding rate is only logged
+    @Test
+    void testConcurrentWriters() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            String prefix = w + ":";
+            Thread writer = new Thread(() -> {
+                awaitUnchecked(start);
+                for (int i = 0; i < EVENTS_PER_WRITER; i++) {
+                    history.addTextMessage(EventType.RECEIVE_MESSAGE, prefix, String.valueOf(i));
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        List<Integer> snapshotSizes = new ArrayList<>();
+        // Assertions fail the test only on test thread
+        AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    List<Event> events = history.getEvents();
+                    events.forEach(e -> assertNotNull(e));
+                    snapshotSizes.add(events.size());
+                }
+            }
+            catch (AssertionError | RuntimeException e) {
+                readerFailure.set(e);
+            }
+        });
+        reader.start();
+
+        Instant startTime = Instant.now();
+        start.countDown();
+        for (Thread writer: writers) {
+            writer.join();
+        }
+        Duration elapsed = Duration.between(startTime, Instant.now());
+        writing.set(false);
+        reader.join();
+        assertNull(readerFailure.get());
+
+        List<Event> events = history.getEvents();
+        assertEquals(WRITERS * EVENTS_PER_WRITER, events.size());
+        int[] nextEvents = new int[WRITERS];
+        for (Event event: events) {
+            String[] parts = event.description().split(":");
+            int writer = Integer.parseInt(parts[0]);
+            assertEquals(nextEvents[writer]++, Integer.parseInt(parts[1]));
+        }
+        for (int i = 1; i < snapshotSizes.size(); i++) {
+            assertFalse(snapshotSizes.get(i) < snapshotSizes.get(i - 1));
+        }
+
+        long eventsPerSec = WRITERS * EVENTS_PER_WRITER * 1_000_000_000L / Math.max(1, elapsed.toNanos());
+        logger.info("{} events added in {} msec - {} events/sec", events.size(), elapsed.toMillis(), eventsPerSec);
+    }
+
+    @Test
+    void testRetentionValidation() {
+        assertThrows(IllegalArgumentException.class, () -> HistoryRetention.lastEvents(0));
+        assertThrows(IllegalArgumentException.class, () -> HistoryRetention.unbounded().withSampling(0));
+        assertThrows(IllegalArgumentException.class,
+                () -> HistoryRetention.unbounded().withSpillFile(Path.of("history.bin")));
+    }
+
+    @Test
+    void testRingKeepsLastEventsAndErrors() {
+        History ring = new History(HistoryRetention.lastEvents(RING_CAPACITY));
+        for (int i = 0; i < 10 * RING_CAPACITY; i++) {
+            if (i == 10 || i == 5 * RING_CAPACITY) {
+                ring.addEvent(EventType.ERROR, "error " + i);
+            }
+            else {
+                ring.addTextMessage(EventType.SEND_MESSAGE, "Client: ", String.valueOf(i));
+            }
+        }
+
+        List<Event> events = ring.getEvents();
+        assertEquals(RING_CAPACITY + 2, events.size());
+        assertEquals("error 10", events.get(0).description());
+        assertEquals("error " + 5 * RING_CAPACITY, events.get(1).description());
+        for (int i = 0; i < RING_CAPACITY; i++) {
+            assertEquals("Client: " + (9 * RING_CAPACITY + i), events.get(i + 2).description());
+        }
+        assertTrue(ring.hasErrors());
+        assertEquals(2, ring.getErrors().size());
+        assertFalse(ring.isComplete());
+    }
+
+    @Test
+    void testSampling() {
+        History sampled = new History(HistoryRetention.unbounded().withSampling(10));
+        for (int i = 0; i < 100; i++) {
+            sampled.addTextMessage(EventType.RECEIVE_MESSAGE, "Server: ", String.valueOf(i));
+            if (i % 20 == 0) {
+                sampled.addEvent(EventType.WAIT);
+            }
+        }
+
+        List<Event> events = sampled.getEvents();
+        assertEquals(15, events.size());
+        assertEquals(5, events.stream().filter(e -> e.eventType() == EventType.WAIT).count());
+        assertEquals(List.of("Server: 0", "Server: 10", "Server: 20"), events.stream()
+                .filter(e -> e.eventType() == EventType.RECEIVE_MESSAGE)
+                .limit(3)
+                .map(Event::description)
+                .toList());
+        assertEquals(90, sampled.getDroppedCount());
+        assertFalse(sampled.isComplete());
+    }
+
+    @Test
+    void testSpill() throws Exception {
+        Path spillFile = Files.createTempFile("history", ".bin");
+        History spilled = new History(HistoryRetention.lastEvents(RING_CAPACITY).withSpillFile(spillFile));
+        try {
+            List<String> expected = new ArrayList<>();
+            String longText = "x".repeat(100_000);
+            int errorCount = 0;
+            for (int i = 0; i < SPILLED_EVENTS; i++) {
+                if (i % 1000 == 0) {
+                    spilled.addTextMessage(EventType.SEND_MESSAGE, "Client: ", longText);
+                    expected.add("Client: " + longText);
+                }
+                else if (i % 3 == 0) {
+                    spilled.addBinaryMessage(EventType.RECEIVE_MESSAGE, "Server: ", i);
+                    expected.add("Server: Binary, len=" + i);
+                }
+                else if (i % 100 == 1) {
+                    spilled.addEvent(EventType.ERROR, "\u00e9chec " + i);
+                    expected.add("\u00e9chec " + i);
+                    errorCount++;
+                }
+                else {
+                    spilled.addEvent(EventType.ACTION, "\u00e9v\u00e9nement " + i);
+                    expected.add("\u00e9v\u00e9nement " + i);
+                }
+            }
+            assertTrue(spilled.isComplete());
+            assertSpilled(spilled, expected);
+
+            spilled.close();
+            Utils.sleepUnchecked(SPILL_WAIT);
+            assertThat(Files.size(spillFile), greaterThan(0L));
+            spilled.addEvent(EventType.STOPPED);
+            expected.add("");
+            assertSpilled(spilled, expected);
+            assertEquals(errorCount, spilled.getErrors().size());
+        }
+        finally {
+            spilled.discard();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    // Writers are slowed down when spilling falls a ring behind, no event is lost
+    @Test
+    void testConcurrentSpill() throws Exception {
+        Path spillFile = Files.createTempFile("history", ".bin");
+        History spilled = new History(HistoryRetention.lastEvents(RING_CAPACITY).withSpillFile(spillFile));
+        try {
+            List<Thread> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                String prefix = w + ":";
+                Thread writer = new Thread(() -> {
+                    for (int i = 0; i < EVENTS_PER_WRITER; i++) {
+                        spilled.addTextMessage(EventType.RECEIVE_MESSAGE, prefix, String.valueOf(i));
+                    }
+                });
+                writers.add(writer);
+                writer.start();
+            }
+            int lastSize = 0;
+            while (writers.stream().anyMatch(Thread::isAlive)) {
+                int size = spilled.size();
+                assertThat(size, greaterThanOrEqualTo(lastSize));
+                lastSize = size;
+            }
+            for (Thread writer: writers) {
+                writer.join();
+            }
+
+            int[] nextEvents = new int[WRITERS];
+            int count = 0;
+            for (Event event: spilled.getEvents()) {
+                String[] parts = event.description().split(":");
+                int writer = Integer.parseInt(parts[0]);
+                assertEquals(nextEvents[writer]++, Integer.parseInt(parts[1]));
+                count++;
+            }
+            assertEquals(WRITERS * EVENTS_PER_WRITER, count);
+        }
+        finally {
+            spilled.discard();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    // Abandoned iterators don't hold spill file descriptors
+    @Test
+    void testPartialIteration() throws Exception {
+        assumeTrue(ManagementFactory.getOperatingSystemMXBean() instanceof UnixOperatingSystemMXBean);
+        UnixOperatingSystemMXBean osBean = (UnixOperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean();
+        Path spillFile = Files.createTempFile("history", ".bin");
+        History spilled = new History(HistoryRetention.lastEvents(RING_CAPACITY).withSpillFile(spillFile));
+        try {
+            for (int i = 0; i < SPILLED_EVENTS; i++) {
+                spilled.addEvent(EventType.ACTION, String.valueOf(i));
+            }
+            spilled.close();
+            Utils.sleepUnchecked(SPILL_WAIT);
+
+            long openFiles = osBean.getOpenFileDescriptorCount();
+            for (int i = 0; i < ITERATIONS; i++) {
+                Iterator<Event> iterator = spilled.getEvents().iterator();
+                assertEquals("0", iterator.next().description());
+                assertEquals("1", iterator.next().description());
+            }
+            assertThat(osBean.getOpenFileDescriptorCount(), lessThan(openFiles + ITERATIONS / 10));
+        }
+        finally {
+            spilled.discard();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    // Discarded history closes spill file, events kept in memory are still available
+    @Test
+    void testDiscard() throws Exception {
+        assumeTrue(ManagementFactory.getOperatingSystemMXBean() instanceof UnixOperatingSystemMXBean);
+        UnixOperatingSystemMXBean osBean = (UnixOperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean();
+        Path spillFile = Files.createTempFile("history", ".bin");
+        try {
+            History spilled = new History(HistoryRetention.lastEvents(RING_CAPACITY).withSpillFile(spillFile),
+                    ThreadMode.VIRTUAL);
+            for (int i = 0; i < SPILLED_EVENTS; i++) {
+                spilled.addEvent(EventType.ACTION, String.valueOf(i));
+            }
+            long openFiles = osBean.getOpenFileDescriptorCount();
+            spilled.discard();
+            Utils.sleepUnchecked(SPILL_WAIT);
+
+            // The file was open for writing and for reading
+            assertThat(osBean.getOpenFileDescriptorCount(), lessThanOrEqualTo(openFiles - 2));
+            spilled.addEvent(EventType.STOPPED, "Stopped");
+            List<Event> events = spilled.getEvents();
+            assertEquals(SPILLED_EVENTS + 1, events.size());
+            assertThrows(IllegalStateException.class, () -> events.get(0));
+            assertEquals("Stopped", events.get(SPILLED_EVENTS).description());
+        }
+        finally {
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    private static void assertSpilled(History spilled, List<String> expected) {
+        List<Event> events = spilled.getEvents();
+        assertEquals(expected.size(), events.size());
+        Instant lastTime = Instant.MIN;
+        int i = 0;
+        for (Event event: events) {
+            assertEquals(expected.get(i++), event.description());
+            assertFalse(event.eventTime().isBefore(lastTime));
+            lastTime = event.eventTime();
+        }
+        for (int index: new int[] {0, 1, 1023, 1024, 1025, expected.size() / 2, expected.size() - 1}) {
+            assertEquals(expected.get(index), events.get(index).description());
+        }
+    }
+
+    private static void awaitUnchecked(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
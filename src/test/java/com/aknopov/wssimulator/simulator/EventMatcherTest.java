@@ -0,0 +1,58 @@
+package com.aknopov.wssimulator.simulator;
+
+import org.junit.jupiter.api.Test;
+
+import com.aknopov.wssimulator.scenario.EventType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EventMatcherTest {
+
+    @Test
+    void testMatchingEvents() {
+        EventMatcher matcher = new EventMatcher();
+        assertNull(matcher.getMismatch());
+
+        matcher.onEvent(EventType.STARTED);
+        matcher.expect(EventType.OPEN);
+        matcher.onEvent(EventType.OPEN);
+        matcher.onEvent(EventType.ERROR);
+        matcher.expect(EventType.SEND_MESSAGE);
+        matcher.onEvent(EventType.SEND_MESSAGE);
+
+        assertNull(matcher.getMismatch());
+    }
+
+    @Test
+    void testFirstMismatchIsKept() {
+        EventMatcher matcher = new EventMatcher();
+        matcher.expect(EventType.OPEN);
+        matcher.onEvent(EventType.OPEN);
+        matcher.expect(EventType.RECEIVE_MESSAGE);
+        matcher.onEvent(EventType.SEND_MESSAGE);
+        matcher.onEvent(EventType.CLOSED);
+
+        assertEquals("event #2 is SEND_MESSAGE, expected RECEIVE_MESSAGE", matcher.getMismatch());
+    }
+
+    @Test
+    void testUnexpectedEvent() {
+        EventMatcher matcher = new EventMatcher();
+        matcher.expect(EventType.OPEN);
+        matcher.onEvent(EventType.OPEN);
+        matcher.onEvent(EventType.STOPPED);
+
+        assertEquals("event #2 is STOPPED, expected no more events", matcher.getMismatch());
+    }
+
+    @Test
+    void testMissingEvent() {
+        EventMatcher matcher = new EventMatcher();
+        matcher.expect(EventType.OPEN);
+        matcher.onEvent(EventType.OPEN);
+        matcher.expect(EventType.CLOSED);
+
+        assertEquals("event #2 CLOSED didn't happen", matcher.getMismatch());
+    }
+}
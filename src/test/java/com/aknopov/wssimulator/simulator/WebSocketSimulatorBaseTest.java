@@ -4,13 +4,18 @@ import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.aknopov.wssimulator.OverflowPolicy;
+import com.aknopov.wssimulator.SessionConfig;
 import com.aknopov.wssimulator.SimulatorEndpoint;
 import com.aknopov.wssimulator.scenario.Event;
 import com.aknopov.wssimulator.scenario.EventType;
@@ -32,18 +37,27 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 
 class WebSocketSimulatorBaseTest {
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketSimulatorBaseTest.class);
+
     private static final String TEXT_MESSAGE = "Hello!";
     private static final ByteBuffer BINARY_MESSAGE =
             ByteBuffer.wrap("Binary message".getBytes(StandardCharsets.UTF_8));
     private static final TextWebSocketMessage WRAPPED_TEXT = new TextWebSocketMessage(TEXT_MESSAGE);
     private static final Duration TEST_WAIT = Duration.ofMillis(200);
     private static final String ROLE = "Test";
+    private static final int BURST_SIZE = 20_000;
+    private static final Duration BURST_WAIT = Duration.ofSeconds(10);
+    private static final int SMALL_QUEUE_CAPACITY = 2;
 
     private static class TestWebSocketSimulator extends WebSocketSimulatorBase {
         protected TestWebSocketSimulator() {
             super(ROLE);
         }
 
+        protected TestWebSocketSimulator(SessionConfig config) {
+            super(ROLE, config);
+        }
+
         @Override
         public int getPort() {
             return -1;
@@ -188,4 +202,71 @@ class WebSocketSimulatorBaseTest {
 
         assertEquals(1, simulator.getErrors().size());
     }
-}
\ No newline at end of file
+
+    // Messages streamed faster than scenario takes them wait in the queue, receiver is held while it is full
+    @Test
+    void testMessageBurst() {
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < BURST_SIZE; i++) {
+            simulator.getScenario()
+                    .expectMessage(m -> received.add(m.getMessageText()), TEST_WAIT);
+        }
+        simulator.start();
+        simulator.awaitScenarioStart(TEST_WAIT);
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < BURST_SIZE; i++) {
+            simulator.onTextMessage(String.valueOf(i));
+        }
+        assertTrue(simulator.awaitScenarioCompletion(BURST_WAIT));
+        long elapsedNanos = System.nanoTime() - startNanos;
+        logger.info("{} messages validated in {} msec - {} messages/sec", BURST_SIZE, elapsedNanos / 1_000_000,
+                BURST_SIZE * 1_000_000_000L / Math.max(1, elapsedNanos));
+
+        assertEquals(List.of(), simulator.getErrors());
+        assertEquals(BURST_SIZE, received.size());
+        for (int i = 0; i < BURST_SIZE; i++) {
+            assertEquals(String.valueOf(i), received.get(i));
+        }
+        assertTrue(simulator.noMoreEvents());
+    }
+
+    @Test
+    void testQueueOverflowFailure() {
+        TestWebSocketSimulator failingSimulator = new TestWebSocketSimulator(
+                new SessionConfig("/").withEventQueue(SMALL_QUEUE_CAPACITY, OverflowPolicy.FAIL));
+
+        List<String> received = playOverflow(failingSimulator);
+
+        assertEquals(List.of("0", "1"), received);
+        List<Event> errors = failingSimulator.getErrors();
+        assertEquals(1, errors.size());
+        assertEquals(ROLE + ": Event queue overflow, RECEIVE_MESSAGE event dropped", errors.get(0).description());
+    }
+
+    @Test
+    void testQueueOverflowDrop() {
+        TestWebSocketSimulator droppingSimulator = new TestWebSocketSimulator(
+                new SessionConfig("/").withEventQueue(SMALL_QUEUE_CAPACITY, OverflowPolicy.DROP_NEWEST));
+
+        List<String> received = playOverflow(droppingSimulator);
+
+        assertEquals(List.of("0", "1"), received);
+        assertEquals(List.of(), droppingSimulator.getErrors());
+    }
+
+    // Releases one message more than the queue holds before scenario takes them
+    private static List<String> playOverflow(TestWebSocketSimulator testSimulator) {
+        List<String> received = new ArrayList<>();
+        for (int i = 0; i < SMALL_QUEUE_CAPACITY; i++) {
+            testSimulator.getScenario()
+                    .expectMessage(m -> received.add(m.getMessageText()), TEST_WAIT);
+        }
+        for (int i = 0; i <= SMALL_QUEUE_CAPACITY; i++) {
+            testSimulator.onTextMessage(String.valueOf(i));
+        }
+        testSimulator.start();
+        assertTrue(testSimulator.awaitScenarioCompletion(TEST_WAIT.multipliedBy(2)));
+        return received;
+    }
+}